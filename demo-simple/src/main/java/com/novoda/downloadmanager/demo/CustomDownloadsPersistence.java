@@ -47,6 +47,17 @@ public class CustomDownloadsPersistence implements DownloadsPersistence {
         Log.v(TAG, "Persist file id: " + filePersisted.downloadFileId());
     }
 
+    @Override
+    public void persistFiles(List<DownloadsFilePersisted> filesPersisted) {
+        Log.v(TAG, "Persist " + filesPersisted.size() + " files");
+    }
+
+    @Override
+    public int updateFiles(List<DownloadsFilePersisted> filesPersisted) {
+        Log.v(TAG, "Update " + filesPersisted.size() + " files");
+        return filesPersisted.size();
+    }
+
     @Override
     public List<DownloadsFilePersisted> loadAllFiles() {
         Log.v(TAG, "Load all files");
@@ -65,18 +76,36 @@ public class CustomDownloadsPersistence implements DownloadsPersistence {
         return true;
     }
 
+    @Override
+    public int delete(List<DownloadBatchId> downloadBatchIds) {
+        Log.v(TAG, "Delete " + downloadBatchIds.size() + " batches");
+        return downloadBatchIds.size();
+    }
+
     @Override
     public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
         Log.v(TAG, "update batch id: " + downloadBatchId.rawId() + " with status: " + status);
         return true;
     }
 
+    @Override
+    public int update(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        Log.v(TAG, "update " + downloadBatchIds.size() + " batches with status: " + status);
+        return downloadBatchIds.size();
+    }
+
     @Override
     public boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen) {
         Log.v(TAG, "update batch id: " + downloadBatchId.rawId() + " with notificationSeen: " + notificationSeen);
         return true;
     }
 
+    @Override
+    public int update(List<DownloadBatchId> downloadBatchIds, boolean notificationSeen) {
+        Log.v(TAG, "update " + downloadBatchIds.size() + " batches with notificationSeen: " + notificationSeen);
+        return downloadBatchIds.size();
+    }
+
     @Override
     public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
         Log.v(TAG, "Persist completed batch id: " + completedDownloadBatch.downloadBatchId());
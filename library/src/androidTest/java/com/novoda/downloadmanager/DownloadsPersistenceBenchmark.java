@@ -0,0 +1,195 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares how long each {@link DownloadsPersistence} takes to write the status updates of a busy download session,
+ * flushing the statuses and progress of a few batches at a time like {@link CoalescingBatchStatusWriter} does.
+ * It also compares persisting the files of a large batch one by one with persisting them in a single call.
+ * Run it on a device and compare the timings logged under the "DownloadsPersistenceBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DownloadsPersistenceBenchmark {
+
+    private static final String TAG = "DownloadsPersistenceBenchmark";
+    private static final int BATCH_COUNT = 50;
+    private static final int FILES_PER_BATCH = 5;
+    private static final int BATCHES_PER_FLUSH = 10;
+    private static final int FLUSH_COUNT = 1000;
+    private static final int WARM_UP_FLUSH_COUNT = 100;
+    private static final long FILE_SIZE_IN_BYTES = 10 * 1024 * 1024;
+    private static final int FILES_PER_LARGE_BATCH = 1000;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+    private final List<DownloadBatchId> downloadBatchIds = new ArrayList<>(BATCH_COUNT);
+
+    private DownloadsPersistence persistence;
+
+    @After
+    public void tearDown() {
+        persistence.startTransaction();
+        try {
+            persistence.delete(downloadBatchIds);
+            persistence.transactionSuccess();
+        } finally {
+            persistence.endTransaction();
+        }
+        new File(context.getFilesDir(), "downloads.journal").delete();
+    }
+
+    @Test
+    public void roomDownloadsPersistence() {
+        persistence = RoomDownloadsPersistence.newInstance(context);
+
+        benchmark("RoomDownloadsPersistence");
+    }
+
+    @Test
+    public void journalDownloadsPersistence() {
+        persistence = JournalDownloadsPersistence.newInstance(context);
+
+        benchmark("JournalDownloadsPersistence");
+    }
+
+    @Test
+    public void roomDownloadsPersistence_persistingALargeBatch() {
+        persistence = RoomDownloadsPersistence.newInstance(context);
+
+        benchmarkPersistingALargeBatch("RoomDownloadsPersistence");
+    }
+
+    @Test
+    public void journalDownloadsPersistence_persistingALargeBatch() {
+        persistence = JournalDownloadsPersistence.newInstance(context);
+
+        benchmarkPersistingALargeBatch("JournalDownloadsPersistence");
+    }
+
+    private void benchmarkPersistingALargeBatch(String name) {
+        long fileByFileDurationInNanos = persistLargeBatch("benchmark_large_batch_file_by_file", false);
+        long singleCallDurationInNanos = persistLargeBatch("benchmark_large_batch_single_call", true);
+
+        Log.i(TAG, name + " persisted a batch of " + FILES_PER_LARGE_BATCH + " files in "
+                + TimeUnit.NANOSECONDS.toMillis(fileByFileDurationInNanos) + "ms file by file, "
+                + TimeUnit.NANOSECONDS.toMillis(singleCallDurationInNanos) + "ms in a single call");
+    }
+
+    private long persistLargeBatch(String rawBatchId, boolean inSingleCall) {
+        DownloadBatchId downloadBatchId = DownloadBatchIdCreator.createSanitizedFrom(rawBatchId);
+        downloadBatchIds.add(downloadBatchId);
+        List<DownloadsFilePersisted> files = filesOf(downloadBatchId, DownloadFileStatus.Status.QUEUED, 0, FILES_PER_LARGE_BATCH);
+
+        long startTimeInNanos = System.nanoTime();
+        persistence.startTransaction();
+        try {
+            persistence.persistBatch(aBatchPersisted(downloadBatchId, rawBatchId));
+            if (inSingleCall) {
+                persistence.persistFiles(files);
+            } else {
+                for (DownloadsFilePersisted file : files) {
+                    persistence.persistFile(file);
+                }
+            }
+            persistence.transactionSuccess();
+        } finally {
+            persistence.endTransaction();
+        }
+        return System.nanoTime() - startTimeInNanos;
+    }
+
+    private void benchmark(String name) {
+        persistBatches();
+        flush(WARM_UP_FLUSH_COUNT);
+
+        long startTimeInNanos = System.nanoTime();
+        flush(FLUSH_COUNT);
+        long durationInNanos = System.nanoTime() - startTimeInNanos;
+
+        Log.i(TAG, name + " wrote " + FLUSH_COUNT + " flushes of " + BATCHES_PER_FLUSH + " batches in "
+                + TimeUnit.NANOSECONDS.toMillis(durationInNanos) + "ms, "
+                + TimeUnit.NANOSECONDS.toMicros(durationInNanos / FLUSH_COUNT) + "us per flush");
+    }
+
+    private void persistBatches() {
+        persistence.startTransaction();
+        try {
+            for (int batchIndex = 0; batchIndex < BATCH_COUNT; batchIndex++) {
+                DownloadBatchId downloadBatchId = DownloadBatchIdCreator.createSanitizedFrom("benchmark_batch_" + batchIndex);
+                downloadBatchIds.add(downloadBatchId);
+                persistence.persistBatch(aBatchPersisted(downloadBatchId, "Benchmark batch " + batchIndex));
+                persistence.persistFiles(filesOf(downloadBatchId, DownloadFileStatus.Status.QUEUED, 0, FILES_PER_BATCH));
+            }
+            persistence.transactionSuccess();
+        } finally {
+            persistence.endTransaction();
+        }
+    }
+
+    private void flush(int flushCount) {
+        for (int flushIndex = 0; flushIndex < flushCount; flushIndex++) {
+            List<DownloadBatchId> flushedBatchIds = new ArrayList<>(BATCHES_PER_FLUSH);
+            List<DownloadsFilePersisted> flushedFiles = new ArrayList<>(BATCHES_PER_FLUSH * FILES_PER_BATCH);
+            long bytesDownloaded = (flushIndex * 4096L) % FILE_SIZE_IN_BYTES;
+            for (int batchIndex = 0; batchIndex < BATCHES_PER_FLUSH; batchIndex++) {
+                DownloadBatchId downloadBatchId = downloadBatchIds.get((flushIndex * BATCHES_PER_FLUSH + batchIndex) % BATCH_COUNT);
+                flushedBatchIds.add(downloadBatchId);
+                flushedFiles.addAll(filesOf(downloadBatchId, DownloadFileStatus.Status.DOWNLOADING, bytesDownloaded, FILES_PER_BATCH));
+            }
+
+            persistence.startTransaction();
+            try {
+                persistence.update(flushedBatchIds, DownloadBatchStatus.Status.DOWNLOADING);
+                persistence.updateFiles(flushedFiles);
+                persistence.transactionSuccess();
+            } finally {
+                persistence.endTransaction();
+            }
+        }
+    }
+
+    private DownloadsBatchPersisted aBatchPersisted(DownloadBatchId downloadBatchId, String title) {
+        return new LiteDownloadsBatchPersisted(
+                DownloadBatchTitleCreator.createFrom(title),
+                downloadBatchId,
+                DownloadBatchStatus.Status.QUEUED,
+                System.currentTimeMillis(),
+                false,
+                context.getFilesDir().getPath()
+        );
+    }
+
+    private List<DownloadsFilePersisted> filesOf(DownloadBatchId downloadBatchId,
+                                                 DownloadFileStatus.Status status,
+                                                 long bytesDownloaded,
+                                                 int fileCount) {
+        List<DownloadsFilePersisted> files = new ArrayList<>(fileCount);
+        for (int fileIndex = 0; fileIndex < fileCount; fileIndex++) {
+            String rawFileId = downloadBatchId.rawId() + "_file_" + fileIndex;
+            files.add(new LiteDownloadsFilePersisted(
+                    downloadBatchId,
+                    DownloadFileIdCreator.createFrom(rawFileId),
+                    new LiteFilePath(new File(context.getFilesDir(), rawFileId).getPath()),
+                    FILE_SIZE_IN_BYTES,
+                    "http://example.com/" + rawFileId,
+                    status,
+                    bytesDownloaded,
+                    null,
+                    null,
+                    null
+            ));
+        }
+        return files;
+    }
+}
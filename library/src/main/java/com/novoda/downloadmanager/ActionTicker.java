@@ -0,0 +1,53 @@
+package com.novoda.downloadmanager;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performs every registered {@link ActionScheduler.Action} on the same fixed rate ticks of a single shared scheduler,
+ * so that the actions of all the batches run together rather than each on its own timer.
+ * The ticks only run while there is at least one action registered.
+ */
+class ActionTicker {
+
+    private final ScheduledExecutorService scheduler;
+    private final long tickIntervalInMillis;
+    private final Set<ActionScheduler.Action> actions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private ScheduledFuture<?> ticks;
+
+    ActionTicker(ScheduledExecutorService scheduler, long tickIntervalInMillis) {
+        this.scheduler = scheduler;
+        this.tickIntervalInMillis = tickIntervalInMillis;
+    }
+
+    synchronized void add(ActionScheduler.Action action) {
+        actions.add(action);
+        if (ticks == null) {
+            ticks = scheduler.scheduleAtFixedRate(this::tick, tickIntervalInMillis, tickIntervalInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void remove(ActionScheduler.Action action) {
+        actions.remove(action);
+        if (actions.isEmpty() && ticks != null) {
+            ticks.cancel(false);
+            ticks = null;
+        }
+    }
+
+    private void tick() {
+        for (ActionScheduler.Action action : actions) {
+            try {
+                action.perform();
+            } catch (RuntimeException e) {
+                // Any exception would cancel the ticks of every other action.
+                Logger.e(e, "action failed on tick");
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Keeps the bytes downloaded of a batch as a running total, updated by the difference with the last value reported
+ * for a file, so that reading the batch progress does not depend on the number of files.
+ * <p>
+ * Files are addressed by their position in the batch. The files of a batch are downloaded one after the other,
+ * on the thread downloading the batch, so no synchronisation is needed.
+ */
+final class BatchBytesDownloaded {
+
+    private final long[] fileBytesDownloaded;
+    private long totalBytesDownloaded;
+
+    BatchBytesDownloaded(long... fileBytesDownloaded) {
+        this.fileBytesDownloaded = fileBytesDownloaded;
+        for (long bytesDownloaded : fileBytesDownloaded) {
+            totalBytesDownloaded += bytesDownloaded;
+        }
+    }
+
+    static BatchBytesDownloaded ofFiles(int fileCount) {
+        return new BatchBytesDownloaded(new long[fileCount]);
+    }
+
+    /**
+     * @return the bytes downloaded of the whole batch, including the given file.
+     */
+    long update(int fileOrdinal, long bytesDownloaded) {
+        totalBytesDownloaded += bytesDownloaded - fileBytesDownloaded[fileOrdinal];
+        fileBytesDownloaded[fileOrdinal] = bytesDownloaded;
+        return totalBytesDownloaded;
+    }
+
+    long total() {
+        return totalBytesDownloaded;
+    }
+}
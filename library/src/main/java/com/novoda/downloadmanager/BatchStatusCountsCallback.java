@@ -0,0 +1,12 @@
+package com.novoda.downloadmanager;
+
+import java.util.Map;
+
+/**
+ * Given to the asynchronous call {@link DownloadManager#getDownloadBatchCountsByStatus(BatchStatusCountsCallback)},
+ * to receive the number of {@link DownloadBatchStatus} stored by the download-manager for each {@link DownloadBatchStatus.Status}.
+ */
+public interface BatchStatusCountsCallback {
+
+    void onReceived(Map<DownloadBatchStatus.Status, Integer> batchCountsByStatus);
+}
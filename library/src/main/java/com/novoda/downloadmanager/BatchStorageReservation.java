@@ -0,0 +1,61 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * Reserves the bytes a batch has left to download before any of its files is created, so that batches
+ * starting at the same time cannot each pass the storage requirement rules for space only one of them can use.
+ * The reservation shrinks as the batch reports downloaded bytes, and is released once the batch stops downloading.
+ */
+final class BatchStorageReservation {
+
+    private final StorageLedger storageLedger;
+    private final StorageRequirementRule storageRequirementRule;
+    private final String reservationKey;
+
+    private long consumedUpToBytesDownloaded;
+
+    BatchStorageReservation(StorageLedger storageLedger, StorageRequirementRule storageRequirementRule, DownloadBatchId downloadBatchId) {
+        this.storageLedger = storageLedger;
+        this.storageRequirementRule = storageRequirementRule;
+        this.reservationKey = downloadBatchId.rawId();
+    }
+
+    /**
+     * @return whether the bytes left to download could be reserved without violating the storage requirement rule.
+     */
+    boolean tryReserve(@Nullable String storageRoot, long bytesDownloaded, long totalBatchSizeBytes) {
+        consumedUpToBytesDownloaded = bytesDownloaded;
+        long remainingBytes = totalBatchSizeBytes - bytesDownloaded;
+        if (storageRoot == null) {
+            Logger.w("batch " + reservationKey + " has no storage root, reserving " + remainingBytes + " bytes without checking the storage");
+            storageLedger.reserve(reservationKey, remainingBytes);
+            return true;
+        }
+        return storageLedger.tryReserve(reservationKey, existingDirectoryOf(new File(storageRoot)), remainingBytes, storageRequirementRule);
+    }
+
+    void consumeUpTo(long bytesDownloaded) {
+        if (bytesDownloaded > consumedUpToBytesDownloaded) {
+            storageLedger.consume(reservationKey, bytesDownloaded - consumedUpToBytesDownloaded);
+            consumedUpToBytesDownloaded = bytesDownloaded;
+        }
+    }
+
+    void release() {
+        storageLedger.release(reservationKey);
+    }
+
+    /**
+     * The storage root may not have been created yet, while its closest existing ancestor is on the same volume.
+     */
+    private static File existingDirectoryOf(File storageRoot) {
+        File directory = storageRoot;
+        while (!directory.exists() && directory.getParentFile() != null) {
+            directory = directory.getParentFile();
+        }
+        return directory;
+    }
+}
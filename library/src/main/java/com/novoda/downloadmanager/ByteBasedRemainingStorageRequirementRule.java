@@ -1,29 +1,26 @@
 package com.novoda.downloadmanager;
 
-import android.annotation.SuppressLint;
-
 import java.io.File;
 
 class ByteBasedRemainingStorageRequirementRule implements StorageRequirementRule {
 
-    private final StorageCapacityReader storageCapacityReader;
+    private final StorageLedger storageLedger;
     private final long bytesRemainingAfterDownload;
 
-    ByteBasedRemainingStorageRequirementRule(StorageCapacityReader storageCapacityReader, long bytesRemainingAfterDownload) {
-        this.storageCapacityReader = storageCapacityReader;
+    ByteBasedRemainingStorageRequirementRule(StorageLedger storageLedger, long bytesRemainingAfterDownload) {
+        this.storageLedger = storageLedger;
         this.bytesRemainingAfterDownload = bytesRemainingAfterDownload;
     }
 
-    @SuppressLint("UsableSpace")
     @Override
     public boolean hasViolatedRule(File storageDirectory,
                                    FileSize downloadFileSize) {
-        long storageCapacityInBytes = storageCapacityReader.storageCapacityInBytes(storageDirectory.getPath());
-        long usableStorageInBytes = storageDirectory.getUsableSpace();
-        long remainingStorageAfterDownloadInBytes = usableStorageInBytes - downloadFileSize.remainingSize();
+        long storageCapacityInBytes = storageLedger.capacityInBytes(storageDirectory);
+        long availableStorageInBytes = storageLedger.availableInBytes(storageDirectory);
+        long remainingStorageAfterDownloadInBytes = availableStorageInBytes - downloadFileSize.remainingSize();
 
         Logger.v("Storage capacity in bytes: ", storageCapacityInBytes);
-        Logger.v("Usable storage in bytes: ", usableStorageInBytes);
+        Logger.v("Available storage in bytes: ", availableStorageInBytes);
         Logger.v("Minimum required storage in bytes: ", bytesRemainingAfterDownload);
         return remainingStorageAfterDownloadInBytes < bytesRemainingAfterDownload;
     }
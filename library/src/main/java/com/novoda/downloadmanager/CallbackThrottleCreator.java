@@ -1,50 +1,93 @@
 package com.novoda.downloadmanager;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 final class CallbackThrottleCreator {
 
     private static final Class<? extends FileCallbackThrottle> NO_CUSTOM_CALLBACK_THROTTLE = null;
-    private static final TimeUnit UNUSED_TIME_UNIT = TimeUnit.SECONDS;
-    private static final int UNUSED_FREQUENCY = 0;
+    private static final ActionTicker NO_ACTION_TICKER = null;
+    private static final Clock NO_CLOCK = null;
+    private static final long UNUSED_MIN_INTERVAL = 0;
+    private static final long UNUSED_MIN_BYTES_DELTA = 0;
 
     enum Type {
         THROTTLE_BY_TIME,
         THROTTLE_BY_PROGRESS_INCREASE,
+        THROTTLE_HYBRID,
         CUSTOM
     }
 
     private final Type type;
-    private final TimeUnit timeUnit;
-    private final long frequency;
     private final Class<? extends FileCallbackThrottle> customCallbackThrottle;
+    private final ActionTicker actionTicker;
+    private final Clock clock;
+    private final long minIntervalInMillis;
+    private final long minBytesDelta;
 
-    static CallbackThrottleCreator byTime(TimeUnit timeUnit, long quantity) {
-        return new CallbackThrottleCreator(Type.THROTTLE_BY_TIME, timeUnit, quantity, NO_CUSTOM_CALLBACK_THROTTLE);
+    /**
+     * The throttles of every batch share the ticks of the given scheduler, so their updates are delivered together.
+     */
+    static CallbackThrottleCreator byTime(ScheduledExecutorService scheduler, TimeUnit timeUnit, long quantity) {
+        ActionTicker actionTicker = new ActionTicker(scheduler, timeUnit.toMillis(quantity));
+        return new CallbackThrottleCreator(Type.THROTTLE_BY_TIME, actionTicker);
     }
 
     static CallbackThrottleCreator byProgressIncrease() {
-        return new CallbackThrottleCreator(Type.THROTTLE_BY_PROGRESS_INCREASE, UNUSED_TIME_UNIT, UNUSED_FREQUENCY, NO_CUSTOM_CALLBACK_THROTTLE);
+        return new CallbackThrottleCreator(Type.THROTTLE_BY_PROGRESS_INCREASE, NO_ACTION_TICKER);
+    }
+
+    /**
+     * Updates held back by the throttles are emitted on the shared ticks of the given scheduler, once the interval has elapsed.
+     */
+    static CallbackThrottleCreator hybrid(ScheduledExecutorService scheduler, Clock clock, TimeUnit timeUnit, long minInterval, long minBytesDelta) {
+        return new CallbackThrottleCreator(
+                Type.THROTTLE_HYBRID,
+                NO_CUSTOM_CALLBACK_THROTTLE,
+                new ActionTicker(scheduler, timeUnit.toMillis(minInterval)),
+                clock,
+                timeUnit.toMillis(minInterval),
+                minBytesDelta
+        );
     }
 
     static CallbackThrottleCreator byCustomThrottle(Class<? extends FileCallbackThrottle> customCallbackThrottle) {
-        return new CallbackThrottleCreator(Type.CUSTOM, UNUSED_TIME_UNIT, UNUSED_FREQUENCY, customCallbackThrottle);
+        return new CallbackThrottleCreator(
+                Type.CUSTOM,
+                customCallbackThrottle,
+                NO_ACTION_TICKER,
+                NO_CLOCK,
+                UNUSED_MIN_INTERVAL,
+                UNUSED_MIN_BYTES_DELTA
+        );
+    }
+
+    private CallbackThrottleCreator(Type type, ActionTicker actionTicker) {
+        this(type, NO_CUSTOM_CALLBACK_THROTTLE, actionTicker, NO_CLOCK, UNUSED_MIN_INTERVAL, UNUSED_MIN_BYTES_DELTA);
     }
 
-    private CallbackThrottleCreator(Type type, TimeUnit timeUnit, long frequency, Class<? extends FileCallbackThrottle> customCallbackThrottle) {
+    private CallbackThrottleCreator(Type type,
+                                    Class<? extends FileCallbackThrottle> customCallbackThrottle,
+                                    ActionTicker actionTicker,
+                                    Clock clock,
+                                    long minIntervalInMillis,
+                                    long minBytesDelta) {
         this.type = type;
-        this.timeUnit = timeUnit;
-        this.frequency = frequency;
         this.customCallbackThrottle = customCallbackThrottle;
+        this.actionTicker = actionTicker;
+        this.clock = clock;
+        this.minIntervalInMillis = minIntervalInMillis;
+        this.minBytesDelta = minBytesDelta;
     }
 
     FileCallbackThrottle create() {
         switch (type) {
             case THROTTLE_BY_TIME:
-                ActionScheduler actionScheduler = SchedulerFactory.createFixedRateTimerScheduler(timeUnit.toMillis(frequency));
-                return new FileCallbackThrottleByTime(actionScheduler);
+                return new FileCallbackThrottleByTime(new TickingActionScheduler(actionTicker));
             case THROTTLE_BY_PROGRESS_INCREASE:
                 return new FileCallbackThrottleByProgressIncrease();
+            case THROTTLE_HYBRID:
+                return new FileCallbackThrottleHybrid(new TickingActionScheduler(actionTicker), clock, minIntervalInMillis, minBytesDelta);
             case CUSTOM:
                 return createCallbackThrottle();
             default:
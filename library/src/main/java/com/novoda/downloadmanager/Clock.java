@@ -0,0 +1,6 @@
+package com.novoda.downloadmanager;
+
+interface Clock {
+
+    long nowInMillis();
+}
@@ -0,0 +1,223 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps only the latest pending status and notification seen flag for each batch, as well as the latest state of each file,
+ * and writes them all in a single transaction, either after a short interval
+ * or straight away for transitions that must not be lost, e.g. DELETED.
+ * A file may be handed over as a snapshot that keeps changing, so files are copied when they are flushed.
+ * Flushes run on the persistence executor, so they stay ordered with every other write,
+ * and are then applied to the {@link InFlightDownloadsSnapshot}.
+ */
+class CoalescingBatchStatusWriter {
+
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final long flushIntervalInMillis;
+    private final DownloadsPersistence downloadsPersistence;
+    private final InFlightDownloadsSnapshot inFlightDownloadsSnapshot;
+
+    private final Object lock = new Object();
+    private final Map<DownloadBatchId, DownloadBatchStatus.Status> pendingStatuses = new LinkedHashMap<>();
+    private final Map<DownloadBatchId, Boolean> pendingNotificationSeen = new LinkedHashMap<>();
+    private final Map<DownloadBatchId, Map<String, DownloadsFilePersisted>> pendingFiles = new LinkedHashMap<>();
+
+    private boolean flushScheduled;
+
+    CoalescingBatchStatusWriter(Executor executor,
+                                ScheduledExecutorService scheduler,
+                                long flushIntervalInMillis,
+                                DownloadsPersistence downloadsPersistence,
+                                InFlightDownloadsSnapshot inFlightDownloadsSnapshot) {
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.flushIntervalInMillis = flushIntervalInMillis;
+        this.downloadsPersistence = downloadsPersistence;
+        this.inFlightDownloadsSnapshot = inFlightDownloadsSnapshot;
+    }
+
+    void updateStatus(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        synchronized (lock) {
+            pendingStatuses.put(downloadBatchId, status);
+        }
+
+        if (mustBeFlushedImmediately(status)) {
+            flushAsync();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    private static boolean mustBeFlushedImmediately(DownloadBatchStatus.Status status) {
+        switch (status) {
+            case QUEUED:
+            case DOWNLOADING:
+            case WAITING_FOR_NETWORK:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    void updateFile(DownloadsFilePersisted filePersisted) {
+        synchronized (lock) {
+            Map<String, DownloadsFilePersisted> batchFiles = pendingFiles.get(filePersisted.downloadBatchId());
+            if (batchFiles == null) {
+                batchFiles = new LinkedHashMap<>();
+                pendingFiles.put(filePersisted.downloadBatchId(), batchFiles);
+            }
+            batchFiles.put(filePersisted.downloadFileId().rawId(), filePersisted);
+        }
+
+        if (mustBeFlushedImmediately(filePersisted.fileStatus())) {
+            flushAsync();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    private static boolean mustBeFlushedImmediately(DownloadFileStatus.Status status) {
+        switch (status) {
+            case QUEUED:
+            case DOWNLOADING:
+            case WAITING_FOR_NETWORK:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    void updateNotificationSeen(DownloadBatchId downloadBatchId, boolean notificationSeen) {
+        synchronized (lock) {
+            pendingNotificationSeen.put(downloadBatchId, notificationSeen);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Drops any pending update for the batch, e.g. because it is about to be deleted.
+     */
+    void discard(DownloadBatchId downloadBatchId) {
+        synchronized (lock) {
+            pendingStatuses.remove(downloadBatchId);
+            pendingNotificationSeen.remove(downloadBatchId);
+            pendingFiles.remove(downloadBatchId);
+        }
+    }
+
+    /**
+     * Drops any pending update for the file, e.g. because the file is about to be written as a whole.
+     */
+    void discardFile(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId) {
+        synchronized (lock) {
+            Map<String, DownloadsFilePersisted> batchFiles = pendingFiles.get(downloadBatchId);
+            if (batchFiles != null && batchFiles.remove(downloadFileId.rawId()) != null && batchFiles.isEmpty()) {
+                pendingFiles.remove(downloadBatchId);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        synchronized (lock) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        scheduler.schedule(this::flushAsync, flushIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void flushAsync() {
+        executor.execute(this::flushSync);
+    }
+
+    @WorkerThread
+    void flushSync() {
+        Map<DownloadBatchId, DownloadBatchStatus.Status> statuses;
+        Map<DownloadBatchId, Boolean> notificationSeen;
+        List<DownloadsFilePersisted> files = new ArrayList<>();
+        synchronized (lock) {
+            flushScheduled = false;
+            if (pendingStatuses.isEmpty() && pendingNotificationSeen.isEmpty() && pendingFiles.isEmpty()) {
+                return;
+            }
+            statuses = new LinkedHashMap<>(pendingStatuses);
+            notificationSeen = new LinkedHashMap<>(pendingNotificationSeen);
+            for (Map<String, DownloadsFilePersisted> batchFiles : pendingFiles.values()) {
+                for (DownloadsFilePersisted filePersisted : batchFiles.values()) {
+                    files.add(LiteDownloadsFilePersisted.copyOf(filePersisted));
+                }
+            }
+            pendingStatuses.clear();
+            pendingNotificationSeen.clear();
+            pendingFiles.clear();
+        }
+
+        downloadsPersistence.startTransaction();
+        try {
+            for (Map.Entry<DownloadBatchStatus.Status, List<DownloadBatchId>> entry : groupByStatus(statuses).entrySet()) {
+                List<DownloadBatchId> downloadBatchIds = entry.getValue();
+                int updatedCount = downloadsPersistence.update(downloadBatchIds, entry.getKey());
+                if (updatedCount != downloadBatchIds.size()) {
+                    Logger.e("could not update batch status " + entry.getKey() + " for " + (downloadBatchIds.size() - updatedCount) + " batches");
+                }
+            }
+            for (Map.Entry<Boolean, List<DownloadBatchId>> entry : groupByNotificationSeen(notificationSeen).entrySet()) {
+                List<DownloadBatchId> downloadBatchIds = entry.getValue();
+                int updatedCount = downloadsPersistence.update(downloadBatchIds, entry.getKey());
+                if (updatedCount != downloadBatchIds.size()) {
+                    Logger.e("could not update notification seen to " + entry.getKey()
+                                     + " for " + (downloadBatchIds.size() - updatedCount) + " batches");
+                }
+            }
+            if (!files.isEmpty()) {
+                int updatedCount = downloadsPersistence.updateFiles(files);
+                if (updatedCount != files.size()) {
+                    Logger.e("could not update " + (files.size() - updatedCount) + " files");
+                }
+            }
+            downloadsPersistence.transactionSuccess();
+        } finally {
+            downloadsPersistence.endTransaction();
+        }
+        inFlightDownloadsSnapshot.update(statuses, files);
+        Logger.v("flushed " + statuses.size() + " batch statuses, " + notificationSeen.size() + " notification seen flags and "
+                         + files.size() + " files");
+    }
+
+    private static Map<DownloadBatchStatus.Status, List<DownloadBatchId>> groupByStatus(Map<DownloadBatchId, DownloadBatchStatus.Status> statuses) {
+        Map<DownloadBatchStatus.Status, List<DownloadBatchId>> batchIdsByStatus = new EnumMap<>(DownloadBatchStatus.Status.class);
+        for (Map.Entry<DownloadBatchId, DownloadBatchStatus.Status> entry : statuses.entrySet()) {
+            List<DownloadBatchId> downloadBatchIds = batchIdsByStatus.get(entry.getValue());
+            if (downloadBatchIds == null) {
+                downloadBatchIds = new ArrayList<>();
+                batchIdsByStatus.put(entry.getValue(), downloadBatchIds);
+            }
+            downloadBatchIds.add(entry.getKey());
+        }
+        return batchIdsByStatus;
+    }
+
+    private static Map<Boolean, List<DownloadBatchId>> groupByNotificationSeen(Map<DownloadBatchId, Boolean> notificationSeen) {
+        Map<Boolean, List<DownloadBatchId>> batchIdsByNotificationSeen = new LinkedHashMap<>();
+        for (Map.Entry<DownloadBatchId, Boolean> entry : notificationSeen.entrySet()) {
+            List<DownloadBatchId> downloadBatchIds = batchIdsByNotificationSeen.get(entry.getValue());
+            if (downloadBatchIds == null) {
+                downloadBatchIds = new ArrayList<>();
+                batchIdsByNotificationSeen.put(entry.getValue(), downloadBatchIds);
+            }
+            downloadBatchIds.add(entry.getKey());
+        }
+        return batchIdsByNotificationSeen;
+    }
+}
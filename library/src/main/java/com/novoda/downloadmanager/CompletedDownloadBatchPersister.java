@@ -0,0 +1,67 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+final class CompletedDownloadBatchPersister {
+
+    private static final boolean NOTIFICATION_SEEN = true;
+    private static final String NO_VALIDATOR = null;
+    private static final DownloadError.Type NO_ERROR_TYPE = null;
+    private static final String NO_ERROR_MESSAGE = null;
+
+    private CompletedDownloadBatchPersister() {
+        // Uses static methods.
+    }
+
+    static void persist(CompletedDownloadBatch completedDownloadBatch, DownloadsPersistence downloadsPersistence) {
+        DownloadBatchId downloadBatchId = completedDownloadBatch.downloadBatchId();
+        DownloadBatchTitle downloadBatchTitle = completedDownloadBatch.downloadBatchTitle();
+        DownloadBatchStatus.Status downloadBatchStatus = DownloadBatchStatus.Status.DOWNLOADED;
+        long downloadedDateTimeInMillis = completedDownloadBatch.downloadedDateTimeInMillis();
+        StorageRoot storageRoot = completedDownloadBatch.storageRoot();
+
+        DownloadsBatchPersisted persistedBatch = new LiteDownloadsBatchPersisted(
+                downloadBatchTitle,
+                downloadBatchId,
+                downloadBatchStatus,
+                downloadedDateTimeInMillis,
+                NOTIFICATION_SEEN,
+                storageRoot.path()
+        );
+        downloadsPersistence.persistBatch(persistedBatch);
+
+        List<CompletedDownloadFile> completedDownloadFiles = completedDownloadBatch.completedDownloadFiles();
+        List<DownloadsFilePersisted> persistedFiles = new ArrayList<>(completedDownloadFiles.size());
+        for (CompletedDownloadFile completedDownloadFile : completedDownloadFiles) {
+            String url = completedDownloadFile.originalNetworkAddress();
+
+            String rawDownloadFileId = rawFileIdFrom(completedDownloadBatch.downloadBatchTitle(), completedDownloadFile);
+            DownloadFileId downloadFileId = DownloadFileIdCreator.createFrom(rawDownloadFileId);
+
+            DownloadsFilePersisted persistedFile = new LiteDownloadsFilePersisted(
+                    downloadBatchId,
+                    downloadFileId,
+                    new LiteFilePath(completedDownloadFile.newFileLocation()),
+                    completedDownloadFile.fileSize().totalSize(),
+                    url,
+                    DownloadFileStatus.Status.DOWNLOADED,
+                    completedDownloadFile.fileSize().totalSize(),
+                    NO_VALIDATOR,
+                    NO_ERROR_TYPE,
+                    NO_ERROR_MESSAGE
+            );
+            persistedFiles.add(persistedFile);
+        }
+        downloadsPersistence.persistFiles(persistedFiles);
+    }
+
+    private static String rawFileIdFrom(DownloadBatchTitle batch, CompletedDownloadFile completedDownloadFile) {
+        if (completedDownloadFile.fileId() == null || completedDownloadFile.fileId().isEmpty()) {
+            return batch.asString() + UUID.randomUUID();
+        } else {
+            return completedDownloadFile.fileId();
+        }
+    }
+}
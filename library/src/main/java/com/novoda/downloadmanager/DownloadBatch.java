@@ -4,8 +4,8 @@ import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.List;
-import java.util.Map;
 
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETING;
@@ -25,32 +25,41 @@ class DownloadBatch {
     private static final String STATUS = ", status ";
     private static final String BATCH = "batch ";
 
-    private final Map<DownloadFileId, Long> fileBytesDownloadedMap;
+    private final BatchBytesDownloaded batchBytesDownloaded;
+    private final DownloadFile.Callback[] fileDownloadCallbacks;
     private final InternalDownloadBatchStatus downloadBatchStatus;
     private final List<DownloadFile> downloadFiles;
     private final DownloadsBatchPersistence downloadsBatchPersistence;
     private final FileCallbackThrottle fileCallbackThrottle;
     private final ConnectionChecker connectionChecker;
     private final DownloadBatchRequirementRule downloadBatchRequirementRule;
+    private final BatchStorageReservation storageReservation;
 
     private long totalBatchSizeBytes;
     private DownloadBatchStatusCallback callback;
 
+    @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     DownloadBatch(InternalDownloadBatchStatus internalDownloadBatchStatus,
                   List<DownloadFile> downloadFiles,
-                  Map<DownloadFileId, Long> fileBytesDownloadedMap,
+                  BatchBytesDownloaded batchBytesDownloaded,
                   DownloadsBatchPersistence downloadsBatchPersistence,
                   FileCallbackThrottle fileCallbackThrottle,
                   ConnectionChecker connectionChecker,
-                  DownloadBatchRequirementRule downloadBatchRequirementRule
+                  DownloadBatchRequirementRule downloadBatchRequirementRule,
+                  BatchStorageReservation storageReservation
     ) {
         this.downloadFiles = downloadFiles;
-        this.fileBytesDownloadedMap = fileBytesDownloadedMap;
+        this.batchBytesDownloaded = batchBytesDownloaded;
+        this.fileDownloadCallbacks = new DownloadFile.Callback[downloadFiles.size()];
+        for (int fileOrdinal = 0; fileOrdinal < fileDownloadCallbacks.length; fileOrdinal++) {
+            fileDownloadCallbacks[fileOrdinal] = new FileDownloadCallback(fileOrdinal);
+        }
         this.downloadBatchStatus = internalDownloadBatchStatus;
         this.downloadsBatchPersistence = downloadsBatchPersistence;
         this.fileCallbackThrottle = fileCallbackThrottle;
         this.connectionChecker = connectionChecker;
         this.downloadBatchRequirementRule = downloadBatchRequirementRule;
+        this.storageReservation = storageReservation;
     }
 
     void setCallback(DownloadBatchStatusCallback callback) {
@@ -86,11 +95,26 @@ class DownloadBatch {
             return;
         }
 
-        for (DownloadFile downloadFile : downloadFiles) {
-            if (batchCannotContinue(downloadBatchStatus, connectionChecker, downloadsBatchPersistence, callback)) {
-                break;
+        if (!storageReservation.tryReserve(downloadBatchStatus.storageRoot(), downloadBatchStatus.bytesDownloaded(), totalBatchSizeBytes)) {
+            DownloadError downloadError = DownloadErrorFactory.createInsufficientFreeSpaceError(
+                    downloadBatchStatus.getDownloadBatchId(),
+                    totalBatchSizeBytes - downloadBatchStatus.bytesDownloaded()
+            );
+            downloadBatchStatus.markAsError(Optional.of(downloadError), downloadsBatchPersistence);
+            notifyCallback(callback, downloadBatchStatus);
+            Logger.v("abort download " + rawBatchId + " because " + downloadError.message());
+            return;
+        }
+
+        try {
+            for (int fileOrdinal = 0; fileOrdinal < downloadFiles.size(); fileOrdinal++) {
+                if (batchCannotContinue(downloadBatchStatus, connectionChecker, downloadsBatchPersistence, callback)) {
+                    break;
+                }
+                downloadFiles.get(fileOrdinal).download(fileDownloadCallbacks[fileOrdinal]);
             }
-            downloadFile.download(fileDownloadCallback);
+        } finally {
+            storageReservation.release();
         }
 
         if (networkError(downloadBatchStatus)) {
@@ -100,6 +124,7 @@ class DownloadBatch {
         deleteBatchIfNeeded(downloadBatchStatus, downloadsBatchPersistence, callback);
         notifyCallback(callback, downloadBatchStatus);
         fileCallbackThrottle.stopUpdates();
+        downloadsBatchPersistence.flushPendingUpdatesAsync();
         Logger.v("end sync download " + rawBatchId);
     }
 
@@ -154,7 +179,7 @@ class DownloadBatch {
 
     private static void notifyCallback(DownloadBatchStatusCallback callback, InternalDownloadBatchStatus downloadBatchStatus) {
         if (callback != null) {
-            callback.onUpdate(downloadBatchStatus.copy());
+            callback.onUpdate(downloadBatchStatus);
         }
     }
 
@@ -237,12 +262,19 @@ class DownloadBatch {
         }
     }
 
-    private final DownloadFile.Callback fileDownloadCallback = new DownloadFile.Callback() {
+    private final class FileDownloadCallback implements DownloadFile.Callback {
+
+        private final int fileOrdinal;
+
+        FileDownloadCallback(int fileOrdinal) {
+            this.fileOrdinal = fileOrdinal;
+        }
+
         @Override
         public void onUpdate(InternalDownloadFileStatus downloadFileStatus) {
-            fileBytesDownloadedMap.put(downloadFileStatus.downloadFileId(), downloadFileStatus.bytesDownloaded());
-            long currentBytesDownloaded = getBytesDownloadedFrom(fileBytesDownloadedMap);
+            long currentBytesDownloaded = batchBytesDownloaded.update(fileOrdinal, downloadFileStatus.bytesDownloaded());
             downloadBatchStatus.updateDownloaded(currentBytesDownloaded);
+            storageReservation.consumeUpTo(currentBytesDownloaded);
 
             if (currentBytesDownloaded > totalBatchSizeBytes) {
                 DownloadError downloadError = DownloadErrorFactory.createSizeMismatchError(downloadFileStatus);
@@ -271,14 +303,6 @@ class DownloadBatch {
         public void onDelete() {
             deleteDownloadDirectories();
         }
-    };
-
-    private static long getBytesDownloadedFrom(Map<DownloadFileId, Long> fileBytesDownloadedMap) {
-        long bytesDownloaded = 0;
-        for (Map.Entry<DownloadFileId, Long> entry : fileBytesDownloadedMap.entrySet()) {
-            bytesDownloaded += entry.getValue();
-        }
-        return bytesDownloaded;
     }
 
     private static boolean networkError(InternalDownloadBatchStatus downloadBatchStatus) {
@@ -430,6 +454,16 @@ class DownloadBatch {
         return null;
     }
 
+    @Nullable
+    InputStream openProgressiveInputStream(DownloadFileId downloadFileId) {
+        for (DownloadFile downloadFile : downloadFiles) {
+            if (downloadFile.matches(downloadFileId)) {
+                return downloadFile.openProgressiveInputStream();
+            }
+        }
+        return null;
+    }
+
     void persistAsync() {
         downloadsBatchPersistence.persistAsync(
                 downloadBatchStatus.getDownloadBatchTitle(),
@@ -442,9 +476,12 @@ class DownloadBatch {
         );
     }
 
+    /**
+     * @return whether the batch was persisted, otherwise it is marked as error and must not be downloaded.
+     */
     @WorkerThread
-    void persist() {
-        downloadsBatchPersistence.persist(
+    boolean persist() {
+        boolean persisted = downloadsBatchPersistence.persist(
                 downloadBatchStatus.getDownloadBatchTitle(),
                 downloadBatchStatus.getDownloadBatchId(),
                 downloadBatchStatus.status(),
@@ -453,6 +490,12 @@ class DownloadBatch {
                 downloadBatchStatus.notificationSeen(),
                 downloadBatchStatus.storageRoot()
         );
+        if (!persisted) {
+            DownloadError downloadError = DownloadErrorFactory.createCannotPersistBatchError(downloadBatchStatus.getDownloadBatchId());
+            downloadBatchStatus.markAsError(Optional.of(downloadError), downloadsBatchPersistence);
+            notifyCallback(callback, downloadBatchStatus);
+        }
+        return persisted;
     }
 
     @WorkerThread
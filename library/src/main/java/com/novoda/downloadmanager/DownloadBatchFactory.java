@@ -1,7 +1,6 @@
 package com.novoda.downloadmanager;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 final class DownloadBatchFactory {
@@ -64,6 +63,7 @@ final class DownloadBatchFactory {
                     fileDownloader,
                     fileSizeRequester,
                     filePersistence,
+                    fileOperations.fileWriterCreator(),
                     downloadsFilePersistence
             );
             downloadFiles.add(downloadFile);
@@ -84,11 +84,12 @@ final class DownloadBatchFactory {
         return new DownloadBatch(
                 liteDownloadBatchStatus,
                 downloadFiles,
-                new HashMap<>(),
+                BatchBytesDownloaded.ofFiles(downloadFiles.size()),
                 downloadsBatchPersistence,
                 fileCallbackThrottle,
                 connectionChecker,
-                downloadBatchRequirementRule
+                downloadBatchRequirementRule,
+                fileOperations.filePersistenceCreator().createStorageReservation(downloadBatchId)
         );
     }
 
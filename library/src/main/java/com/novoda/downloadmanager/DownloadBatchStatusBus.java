@@ -0,0 +1,258 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers {@link DownloadBatchStatus} updates to every subscribed {@link DownloadBatchStatusCallback},
+ * each on its own {@link Executor} and at most once per its own interval.
+ * <p>
+ * While a delivery is pending, a subscriber only keeps the latest status of every batch, so a slow subscriber
+ * receives fewer updates rather than making them queue up. Statuses a batch ends up in, DOWNLOADED, DELETED and ERROR,
+ * are never replaced by a later one and are always delivered.
+ * <p>
+ * Subscriptions to one batch or to some statuses are indexed by batch and by status, so an update only reaches the
+ * subscribers interested in it. Every callback is held until it is unsubscribed.
+ */
+class DownloadBatchStatusBus {
+
+    private final List<Subscription> allBatchesSubscriptions = new CopyOnWriteArrayList<>();
+    private final Map<DownloadBatchId, List<Subscription>> subscriptionsByBatchId = new ConcurrentHashMap<>();
+    private final Map<DownloadBatchStatus.Status, List<Subscription>> subscriptionsByStatus = new ConcurrentHashMap<>();
+    private final Map<DownloadBatchStatusCallback, Subscription> subscriptionsByCallback = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+
+    DownloadBatchStatusBus(ScheduledExecutorService scheduler, Clock clock) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    void subscribe(DownloadBatchStatusCallback callback, Executor executor, long minDeliveryIntervalInMillis) {
+        subscribe(callback, DownloadBatchStatusSubscriptionFilter.allBatches(), executor, minDeliveryIntervalInMillis);
+    }
+
+    void subscribe(DownloadBatchStatusCallback callback,
+                   DownloadBatchStatusSubscriptionFilter filter,
+                   Executor executor,
+                   long minDeliveryIntervalInMillis) {
+        synchronized (subscriptionsByCallback) {
+            Subscription previousSubscription = subscriptionsByCallback.get(callback);
+            if (previousSubscription != null) {
+                removeFromIndex(previousSubscription);
+            }
+
+            Subscription subscription = new Subscription(callback, filter, executor, minDeliveryIntervalInMillis);
+            subscriptionsByCallback.put(callback, subscription);
+            addToIndex(subscription);
+        }
+    }
+
+    void unsubscribe(DownloadBatchStatusCallback callback) {
+        synchronized (subscriptionsByCallback) {
+            Subscription subscription = subscriptionsByCallback.remove(callback);
+            if (subscription != null) {
+                removeFromIndex(subscription);
+            }
+        }
+    }
+
+    boolean isSubscribed(DownloadBatchStatusCallback callback) {
+        synchronized (subscriptionsByCallback) {
+            return subscriptionsByCallback.containsKey(callback);
+        }
+    }
+
+    private void addToIndex(Subscription subscription) {
+        DownloadBatchStatusSubscriptionFilter filter = subscription.filter;
+        if (filter.downloadBatchId() != null) {
+            indexedSubscriptions(subscriptionsByBatchId, filter.downloadBatchId()).add(subscription);
+        } else if (filter.filtersStatuses()) {
+            for (DownloadBatchStatus.Status status : filter.statuses()) {
+                indexedSubscriptions(subscriptionsByStatus, status).add(subscription);
+            }
+        } else {
+            allBatchesSubscriptions.add(subscription);
+        }
+    }
+
+    private static <K> List<Subscription> indexedSubscriptions(Map<K, List<Subscription>> index, K key) {
+        List<Subscription> subscriptions = index.get(key);
+        if (subscriptions == null) {
+            subscriptions = new CopyOnWriteArrayList<>();
+            index.put(key, subscriptions);
+        }
+        return subscriptions;
+    }
+
+    private void removeFromIndex(Subscription subscription) {
+        subscription.cancel();
+        DownloadBatchStatusSubscriptionFilter filter = subscription.filter;
+        if (filter.downloadBatchId() != null) {
+            removeIndexedSubscription(subscriptionsByBatchId, filter.downloadBatchId(), subscription);
+        } else if (filter.filtersStatuses()) {
+            for (DownloadBatchStatus.Status status : filter.statuses()) {
+                removeIndexedSubscription(subscriptionsByStatus, status, subscription);
+            }
+        } else {
+            allBatchesSubscriptions.remove(subscription);
+        }
+    }
+
+    private static <K> void removeIndexedSubscription(Map<K, List<Subscription>> index, K key, Subscription subscription) {
+        List<Subscription> subscriptions = index.get(key);
+        if (subscriptions != null) {
+            subscriptions.remove(subscription);
+            if (subscriptions.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @param downloadBatchStatus a status that will not change anymore, as it may be delivered later and on any thread.
+     */
+    void publish(DownloadBatchStatus downloadBatchStatus) {
+        offer(allBatchesSubscriptions, downloadBatchStatus);
+        offer(subscriptionsByBatchId.get(downloadBatchStatus.getDownloadBatchId()), downloadBatchStatus);
+        offer(subscriptionsByStatus.get(downloadBatchStatus.status()), downloadBatchStatus);
+    }
+
+    private static void offer(List<Subscription> subscriptions, DownloadBatchStatus downloadBatchStatus) {
+        if (subscriptions == null) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.filter.matches(downloadBatchStatus)) {
+                subscription.offer(downloadBatchStatus);
+            }
+        }
+    }
+
+    private final class Subscription implements Runnable {
+
+        private static final long NEVER_DELIVERED = Long.MIN_VALUE;
+
+        private final DownloadBatchStatusCallback callback;
+        private final DownloadBatchStatusSubscriptionFilter filter;
+        private final Executor executor;
+        private final long minDeliveryIntervalInMillis;
+        private final Map<DownloadBatchId, Deque<DownloadBatchStatus>> pendingStatuses = new LinkedHashMap<>();
+
+        private boolean deliveryScheduled;
+        private long lastDeliveryTimeInMillis = NEVER_DELIVERED;
+        private volatile boolean cancelled;
+
+        Subscription(DownloadBatchStatusCallback callback,
+                     DownloadBatchStatusSubscriptionFilter filter,
+                     Executor executor,
+                     long minDeliveryIntervalInMillis) {
+            this.callback = callback;
+            this.filter = filter;
+            this.executor = executor;
+            this.minDeliveryIntervalInMillis = minDeliveryIntervalInMillis;
+        }
+
+        void offer(DownloadBatchStatus downloadBatchStatus) {
+            synchronized (this) {
+                DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
+                Deque<DownloadBatchStatus> batchStatuses = pendingStatuses.get(downloadBatchId);
+                if (batchStatuses == null) {
+                    batchStatuses = new ArrayDeque<>(1);
+                    pendingStatuses.put(downloadBatchId, batchStatuses);
+                }
+
+                DownloadBatchStatus lastStatus = batchStatuses.peekLast();
+                if (lastStatus != null && !DownloadBatchStatusSubscriptionFilter.isTerminal(lastStatus.status())) {
+                    batchStatuses.pollLast();
+                }
+                batchStatuses.addLast(downloadBatchStatus);
+
+                if (deliveryScheduled) {
+                    return;
+                }
+                deliveryScheduled = true;
+            }
+            scheduleDelivery();
+        }
+
+        private void scheduleDelivery() {
+            long delayInMillis = delayUntilNextDeliveryInMillis();
+            if (delayInMillis <= 0) {
+                executor.execute(this);
+            } else {
+                scheduler.schedule(() -> executor.execute(this), delayInMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized long delayUntilNextDeliveryInMillis() {
+            if (lastDeliveryTimeInMillis == NEVER_DELIVERED) {
+                return 0;
+            }
+            return lastDeliveryTimeInMillis + minDeliveryIntervalInMillis - clock.nowInMillis();
+        }
+
+        @Override
+        public void run() {
+            try {
+                deliver(takePendingStatuses());
+            } finally {
+                // Deliveries stay in order even on a pool, as the next one is only scheduled once this one is done.
+                if (hasStatusesToDeliver()) {
+                    scheduleDelivery();
+                }
+            }
+        }
+
+        private void deliver(List<DownloadBatchStatus> statusesToDeliver) {
+            for (DownloadBatchStatus downloadBatchStatus : statusesToDeliver) {
+                if (cancelled) {
+                    return;
+                }
+                try {
+                    callback.onUpdate(downloadBatchStatus);
+                } catch (RuntimeException e) {
+                    // Any exception would stop the delivery of the other statuses and of every later update.
+                    Logger.e(e, "callback of " + filter + " failed on the update of batch " + downloadBatchStatus.getDownloadBatchId().rawId());
+                }
+            }
+        }
+
+        private synchronized boolean hasStatusesToDeliver() {
+            if (cancelled || pendingStatuses.isEmpty()) {
+                deliveryScheduled = false;
+                return false;
+            }
+            return true;
+        }
+
+        private synchronized List<DownloadBatchStatus> takePendingStatuses() {
+            lastDeliveryTimeInMillis = clock.nowInMillis();
+            if (pendingStatuses.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            List<DownloadBatchStatus> statuses = new ArrayList<>();
+            for (Deque<DownloadBatchStatus> batchStatuses : pendingStatuses.values()) {
+                statuses.addAll(batchStatuses);
+            }
+            pendingStatuses.clear();
+            return statuses;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -1,8 +1,20 @@
 package com.novoda.downloadmanager;
 
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Filters out updates of a batch that has not changed since the last update of the same batch that went through.
+ * <p>
+ * Batches downloading at the same time interleave their updates, so a fingerprint of the last update that went
+ * through is kept per batch. Fingerprints only hold what the callbacks and notifications show: the status,
+ * the bytes downloaded, the total size and the type of error, and are compared rather than copying the whole status.
+ */
 class DownloadBatchStatusFilter {
 
-    private InternalDownloadBatchStatus currentStatus;
+    private final ConcurrentMap<DownloadBatchId, Fingerprint> fingerprints = new ConcurrentHashMap<>();
 
     boolean shouldFilterOut(DownloadBatchStatus currentDownloadBatchStatus) {
         if (!(currentDownloadBatchStatus instanceof InternalDownloadBatchStatus)) {
@@ -10,8 +22,8 @@ class DownloadBatchStatusFilter {
             return true;
         }
 
-        InternalDownloadBatchStatus copiedStatus = ((InternalDownloadBatchStatus) currentDownloadBatchStatus).copy();
-        if (copiedStatus.equals(currentStatus)) {
+        InternalDownloadBatchStatus downloadBatchStatus = (InternalDownloadBatchStatus) currentDownloadBatchStatus;
+        if (fingerprintOf(downloadBatchStatus.getDownloadBatchId()).matchesOrUpdate(downloadBatchStatus)) {
             Logger.v("Failed filter. "
                              + "ID: " + currentDownloadBatchStatus.getDownloadBatchId().rawId()
                              + " Status: " + currentDownloadBatchStatus.status().toRawValue()
@@ -24,7 +36,56 @@ class DownloadBatchStatusFilter {
                         + "ID: " + currentDownloadBatchStatus.getDownloadBatchId().rawId()
                         + " Status: " + currentDownloadBatchStatus.status().toRawValue()
         );
-        currentStatus = copiedStatus;
         return false;
     }
+
+    private Fingerprint fingerprintOf(DownloadBatchId downloadBatchId) {
+        Fingerprint fingerprint = fingerprints.get(downloadBatchId);
+        if (fingerprint == null) {
+            Fingerprint newFingerprint = new Fingerprint();
+            fingerprint = fingerprints.putIfAbsent(downloadBatchId, newFingerprint);
+            if (fingerprint == null) {
+                fingerprint = newFingerprint;
+            }
+        }
+        return fingerprint;
+    }
+
+    void forget(DownloadBatchId downloadBatchId) {
+        fingerprints.remove(downloadBatchId);
+    }
+
+    private static final class Fingerprint {
+
+        private static final long NO_VERSION = -1;
+
+        private long version = NO_VERSION;
+        private DownloadBatchStatus.Status status;
+        private long bytesDownloaded;
+        private long bytesTotalSize;
+        @Nullable
+        private DownloadError.Type errorType;
+
+        synchronized boolean matchesOrUpdate(InternalDownloadBatchStatus downloadBatchStatus) {
+            long currentVersion = downloadBatchStatus.version();
+            if (currentVersion == version) {
+                return true;
+            }
+
+            DownloadError downloadError = downloadBatchStatus.downloadError();
+            DownloadError.Type currentErrorType = downloadError == null ? null : downloadError.type();
+            boolean matches = version != NO_VERSION
+                    && downloadBatchStatus.status() == status
+                    && downloadBatchStatus.bytesDownloaded() == bytesDownloaded
+                    && downloadBatchStatus.bytesTotalSize() == bytesTotalSize
+                    && currentErrorType == errorType;
+
+            version = currentVersion;
+            status = downloadBatchStatus.status();
+            bytesDownloaded = downloadBatchStatus.bytesDownloaded();
+            bytesTotalSize = downloadBatchStatus.bytesTotalSize();
+            errorType = currentErrorType;
+            return matches;
+        }
+    }
 }
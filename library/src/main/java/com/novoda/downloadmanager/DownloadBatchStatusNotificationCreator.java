@@ -57,6 +57,16 @@ class DownloadBatchStatusNotificationCreator implements NotificationCreator<Down
             public NotificationCustomizer.NotificationDisplayState notificationDisplayState() {
                 return notificationCustomizer.notificationDisplayState(downloadBatchStatus);
             }
+
+            @Override
+            public NotificationContent content() {
+                return new NotificationContent(
+                        notificationDisplayState(),
+                        downloadBatchStatus.status(),
+                        downloadBatchStatus.bytesDownloaded(),
+                        downloadBatchStatus.bytesTotalSize()
+                );
+            }
         };
     }
 }
@@ -12,16 +12,27 @@ class DownloadBatchStatusNotificationDispatcher {
     private final DownloadsNotificationSeenPersistence notificationSeenPersistence;
     private final ServiceNotificationDispatcher<DownloadBatchStatus> notificationDispatcher;
     private final Set<String> downloadBatchIdNotificationSeen;
+    private final Optional<SummaryNotificationDispatcher> summaryNotificationDispatcher;
 
     DownloadBatchStatusNotificationDispatcher(DownloadsNotificationSeenPersistence notificationSeenPersistence,
                                               ServiceNotificationDispatcher<DownloadBatchStatus> notificationDispatcher,
-                                              Set<String> downloadBatchIdNotificationSeen) {
+                                              Set<String> downloadBatchIdNotificationSeen,
+                                              Optional<SummaryNotificationDispatcher> summaryNotificationDispatcher) {
         this.notificationSeenPersistence = notificationSeenPersistence;
         this.notificationDispatcher = notificationDispatcher;
         this.downloadBatchIdNotificationSeen = downloadBatchIdNotificationSeen;
+        this.summaryNotificationDispatcher = summaryNotificationDispatcher;
     }
 
     void updateNotification(InternalDownloadBatchStatus downloadBatchStatus) {
+        if (summaryNotificationDispatcher.isPresent()) {
+            summaryNotificationDispatcher.get().updateNotification(downloadBatchStatus);
+            // Only terminal statuses get a notification of their own, so paused batches are shown in neither.
+            if (!DownloadBatchStatusSubscriptionFilter.isTerminal(downloadBatchStatus.status())) {
+                return;
+            }
+        }
+
         if (downloadBatchStatus.notificationSeen()) {
             Logger.v("DownloadBatchStatus:", downloadBatchStatus.getDownloadBatchId(), "notification has already been seen.");
             return;
@@ -50,5 +61,8 @@ class DownloadBatchStatusNotificationDispatcher {
 
     void setDownloadService(DownloadService downloadService) {
         notificationDispatcher.setService(downloadService);
+        if (summaryNotificationDispatcher.isPresent()) {
+            summaryNotificationDispatcher.get().setDownloadService(downloadService);
+        }
     }
 }
@@ -0,0 +1,85 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Given to {@link DownloadManager#addDownloadBatchCallback} to only receive the {@link DownloadBatchStatus} updates
+ * of one batch, or of some statuses.
+ */
+public final class DownloadBatchStatusSubscriptionFilter {
+
+    private static final Set<DownloadBatchStatus.Status> TERMINAL_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            DownloadBatchStatus.Status.DOWNLOADED,
+            DownloadBatchStatus.Status.DELETED,
+            DownloadBatchStatus.Status.ERROR
+    ));
+    private static final Set<DownloadBatchStatus.Status> ALL_STATUSES = Collections.unmodifiableSet(
+            EnumSet.allOf(DownloadBatchStatus.Status.class)
+    );
+
+    @Nullable
+    private final DownloadBatchId downloadBatchId;
+    private final Set<DownloadBatchStatus.Status> statuses;
+
+    private DownloadBatchStatusSubscriptionFilter(@Nullable DownloadBatchId downloadBatchId, Set<DownloadBatchStatus.Status> statuses) {
+        this.downloadBatchId = downloadBatchId;
+        this.statuses = statuses;
+    }
+
+    public static DownloadBatchStatusSubscriptionFilter allBatches() {
+        return new DownloadBatchStatusSubscriptionFilter(null, ALL_STATUSES);
+    }
+
+    public static DownloadBatchStatusSubscriptionFilter batch(DownloadBatchId downloadBatchId) {
+        return new DownloadBatchStatusSubscriptionFilter(downloadBatchId, ALL_STATUSES);
+    }
+
+    public static DownloadBatchStatusSubscriptionFilter statuses(Set<DownloadBatchStatus.Status> statuses) {
+        if (statuses.isEmpty()) {
+            throw new IllegalArgumentException("At least one status must be given.");
+        }
+        return new DownloadBatchStatusSubscriptionFilter(null, Collections.unmodifiableSet(EnumSet.copyOf(statuses)));
+    }
+
+    /**
+     * Only the statuses a batch ends up in: {@link DownloadBatchStatus.Status#DOWNLOADED},
+     * {@link DownloadBatchStatus.Status#DELETED} and {@link DownloadBatchStatus.Status#ERROR}.
+     */
+    public static DownloadBatchStatusSubscriptionFilter terminalStatuses() {
+        return new DownloadBatchStatusSubscriptionFilter(null, TERMINAL_STATUSES);
+    }
+
+    static boolean isTerminal(DownloadBatchStatus.Status status) {
+        return TERMINAL_STATUSES.contains(status);
+    }
+
+    @Nullable
+    DownloadBatchId downloadBatchId() {
+        return downloadBatchId;
+    }
+
+    Set<DownloadBatchStatus.Status> statuses() {
+        return statuses;
+    }
+
+    boolean filtersStatuses() {
+        return statuses.size() < ALL_STATUSES.size();
+    }
+
+    boolean matches(DownloadBatchStatus downloadBatchStatus) {
+        boolean matchesBatch = downloadBatchId == null || downloadBatchId.equals(downloadBatchStatus.getDownloadBatchId());
+        return matchesBatch && statuses.contains(downloadBatchStatus.status());
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadBatchStatusSubscriptionFilter{"
+                + "downloadBatchId=" + downloadBatchId
+                + ", statuses=" + statuses
+                + '}';
+    }
+}
@@ -0,0 +1,35 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Represents the batches that are downloading, as a whole.
+ * It is the payload of the aggregated notification, see {@link DownloadManagerBuilder#withAggregatedNotification()}.
+ * Only batches that are queued, downloading or waiting for the network are summarised, paused batches are not,
+ * and they get no notification of their own either while the aggregated notification is enabled.
+ */
+public interface DownloadBatchesSummary {
+
+    /**
+     * @return the number of batches that are queued, downloading or waiting for the network.
+     */
+    int activeBatchCount();
+
+    /**
+     * @return the bytes downloaded of all the active batches.
+     */
+    long bytesDownloaded();
+
+    /**
+     * @return the total size of all the active batches, in bytes.
+     */
+    long bytesTotalSize();
+
+    /**
+     * @return the percentage downloaded of all the active batches.
+     */
+    int percentageDownloaded();
+
+    /**
+     * @return the bytes downloaded per second by all the active batches, measured over the last second or so.
+     */
+    long bytesPerSecond();
+}
@@ -0,0 +1,63 @@
+package com.novoda.downloadmanager;
+
+import android.app.Notification;
+import android.content.Context;
+import android.support.v4.app.NotificationCompat;
+
+import java.util.Arrays;
+
+class DownloadBatchesSummaryNotificationCreator implements NotificationCreator<DownloadBatchesSummary> {
+
+    private static final int SUMMARY_NOTIFICATION_ID = "download-manager-summary".hashCode();
+
+    private final Context applicationContext;
+    private final NotificationCustomizer<DownloadBatchesSummary> notificationCustomizer;
+    private NotificationChannelProvider notificationChannelProvider;
+
+    DownloadBatchesSummaryNotificationCreator(Context context,
+                                              NotificationCustomizer<DownloadBatchesSummary> customizer,
+                                              NotificationChannelProvider notificationChannelProvider) {
+        this.applicationContext = context.getApplicationContext();
+        this.notificationCustomizer = customizer;
+        this.notificationChannelProvider = notificationChannelProvider;
+    }
+
+    @Override
+    public void setNotificationChannelProvider(NotificationChannelProvider notificationChannelProvider) {
+        this.notificationChannelProvider = notificationChannelProvider;
+    }
+
+    @Override
+    public NotificationInformation createNotification(final DownloadBatchesSummary downloadBatchesSummary) {
+        return new NotificationInformation() {
+            @Override
+            public int getId() {
+                return SUMMARY_NOTIFICATION_ID;
+            }
+
+            @Override
+            public Notification getNotification() {
+                NotificationCompat.Builder builder = new NotificationCompat.Builder(
+                        applicationContext,
+                        notificationChannelProvider.channelId()
+                );
+                return notificationCustomizer.customNotificationFrom(builder, downloadBatchesSummary);
+            }
+
+            @Override
+            public NotificationCustomizer.NotificationDisplayState notificationDisplayState() {
+                return notificationCustomizer.notificationDisplayState(downloadBatchesSummary);
+            }
+
+            @Override
+            public NotificationContent content() {
+                return new NotificationContent(
+                        notificationDisplayState(),
+                        Arrays.asList(downloadBatchesSummary.activeBatchCount(), downloadBatchesSummary.bytesPerSecond()),
+                        downloadBatchesSummary.bytesDownloaded(),
+                        downloadBatchesSummary.bytesTotalSize()
+                );
+            }
+        };
+    }
+}
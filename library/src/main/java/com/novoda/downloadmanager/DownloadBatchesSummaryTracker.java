@@ -0,0 +1,163 @@
+package com.novoda.downloadmanager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DOWNLOADING;
+import static com.novoda.downloadmanager.DownloadBatchStatus.Status.QUEUED;
+import static com.novoda.downloadmanager.DownloadBatchStatus.Status.WAITING_FOR_NETWORK;
+
+/**
+ * Keeps the bytes of every active batch as running totals, so summarising them does not depend on the number of batches.
+ * The speed is measured on the bytes downloaded since the last sample, so batches that end do not make it drop.
+ * It drops to zero once a sample interval passes without any bytes, when sampled with {@link #summary()}.
+ */
+class DownloadBatchesSummaryTracker {
+
+    static final long SPEED_SAMPLE_INTERVAL_IN_MILLIS = 1000;
+    private static final long NO_SAMPLE = -1;
+    private static final long MILLIS_IN_A_SECOND = 1000;
+
+    private final Clock clock;
+    private final Map<DownloadBatchId, ActiveBatch> activeBatches = new HashMap<>();
+
+    private long bytesDownloaded;
+    private long bytesTotalSize;
+    private long bytesDownloadedSinceStart;
+    private long lastSampleTimeInMillis = NO_SAMPLE;
+    private long lastSampleBytesDownloadedSinceStart;
+    private long bytesPerSecond;
+
+    DownloadBatchesSummaryTracker(Clock clock) {
+        this.clock = clock;
+    }
+
+    synchronized DownloadBatchesSummary update(DownloadBatchStatus downloadBatchStatus) {
+        DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
+        if (isActive(downloadBatchStatus.status())) {
+            ActiveBatch activeBatch = activeBatches.get(downloadBatchId);
+            if (activeBatch == null) {
+                activeBatch = new ActiveBatch();
+                activeBatches.put(downloadBatchId, activeBatch);
+            }
+            updateActiveBatch(activeBatch, downloadBatchStatus);
+        } else {
+            ActiveBatch activeBatch = activeBatches.remove(downloadBatchId);
+            if (activeBatch != null) {
+                countBytesDownloadedSinceStart(downloadBatchStatus.bytesDownloaded() - activeBatch.bytesDownloaded);
+                bytesDownloaded -= activeBatch.bytesDownloaded;
+                bytesTotalSize -= activeBatch.bytesTotalSize;
+            }
+        }
+
+        return summary();
+    }
+
+    synchronized DownloadBatchesSummary summary() {
+        sampleSpeed();
+        return new Summary(activeBatches.size(), bytesDownloaded, bytesTotalSize, bytesPerSecond);
+    }
+
+    private static boolean isActive(DownloadBatchStatus.Status status) {
+        return status == QUEUED || status == DOWNLOADING || status == WAITING_FOR_NETWORK;
+    }
+
+    private void updateActiveBatch(ActiveBatch activeBatch, DownloadBatchStatus downloadBatchStatus) {
+        long bytesDownloadedDelta = downloadBatchStatus.bytesDownloaded() - activeBatch.bytesDownloaded;
+        countBytesDownloadedSinceStart(bytesDownloadedDelta);
+        bytesDownloaded += bytesDownloadedDelta;
+        bytesTotalSize += downloadBatchStatus.bytesTotalSize() - activeBatch.bytesTotalSize;
+        activeBatch.bytesDownloaded = downloadBatchStatus.bytesDownloaded();
+        activeBatch.bytesTotalSize = downloadBatchStatus.bytesTotalSize();
+    }
+
+    private void countBytesDownloadedSinceStart(long bytesDownloadedDelta) {
+        if (bytesDownloadedDelta > 0) {
+            bytesDownloadedSinceStart += bytesDownloadedDelta;
+        }
+    }
+
+    private void sampleSpeed() {
+        long nowInMillis = clock.nowInMillis();
+        if (activeBatches.isEmpty()) {
+            bytesPerSecond = 0;
+            lastSampleTimeInMillis = NO_SAMPLE;
+            return;
+        }
+
+        if (lastSampleTimeInMillis == NO_SAMPLE) {
+            lastSampleTimeInMillis = nowInMillis;
+            lastSampleBytesDownloadedSinceStart = bytesDownloadedSinceStart;
+            return;
+        }
+
+        long elapsedTimeInMillis = nowInMillis - lastSampleTimeInMillis;
+        if (elapsedTimeInMillis >= SPEED_SAMPLE_INTERVAL_IN_MILLIS) {
+            long sampledBytes = bytesDownloadedSinceStart - lastSampleBytesDownloadedSinceStart;
+            bytesPerSecond = sampledBytes * MILLIS_IN_A_SECOND / elapsedTimeInMillis;
+            lastSampleTimeInMillis = nowInMillis;
+            lastSampleBytesDownloadedSinceStart = bytesDownloadedSinceStart;
+        }
+    }
+
+    private static final class ActiveBatch {
+
+        private long bytesDownloaded;
+        private long bytesTotalSize;
+    }
+
+    private static final class Summary implements DownloadBatchesSummary {
+
+        private static final int TOTAL_PERCENTAGE = 100;
+
+        private final int activeBatchCount;
+        private final long bytesDownloaded;
+        private final long bytesTotalSize;
+        private final long bytesPerSecond;
+
+        Summary(int activeBatchCount, long bytesDownloaded, long bytesTotalSize, long bytesPerSecond) {
+            this.activeBatchCount = activeBatchCount;
+            this.bytesDownloaded = bytesDownloaded;
+            this.bytesTotalSize = bytesTotalSize;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int activeBatchCount() {
+            return activeBatchCount;
+        }
+
+        @Override
+        public long bytesDownloaded() {
+            return bytesDownloaded;
+        }
+
+        @Override
+        public long bytesTotalSize() {
+            return bytesTotalSize;
+        }
+
+        @Override
+        public int percentageDownloaded() {
+            if (bytesTotalSize <= 0) {
+                return 0;
+            }
+            return (int) (bytesDownloaded * TOTAL_PERCENTAGE / bytesTotalSize);
+        }
+
+        @Override
+        public long bytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "DownloadBatchesSummary{"
+                    + "activeBatchCount=" + activeBatchCount
+                    + ", bytesDownloaded=" + bytesDownloaded
+                    + ", bytesTotalSize=" + bytesTotalSize
+                    + ", bytesPerSecond=" + bytesPerSecond
+                    + '}';
+        }
+    }
+}
@@ -36,6 +36,16 @@ final class DownloadErrorFactory {
         return new DownloadError(DownloadError.Type.FILE_CANNOT_BE_CREATED_LOCALLY_INSUFFICIENT_FREE_SPACE, insufficientFreeSpaceMessage);
     }
 
+    static DownloadError createInsufficientFreeSpaceError(DownloadBatchId downloadBatchId, long bytesRequired) {
+        String insufficientFreeSpaceMessage =
+                "Insufficient free space to download batch with ID: "
+                        + downloadBatchId.rawId()
+                        + " Bytes Required: "
+                        + bytesRequired;
+
+        return new DownloadError(DownloadError.Type.FILE_CANNOT_BE_CREATED_LOCALLY_INSUFFICIENT_FREE_SPACE, insufficientFreeSpaceMessage);
+    }
+
     static DownloadError createCannotWriteToFileError(DownloadFileStatus downloadFileStatus) {
         String cannotWriteToFileMessage = "Cannot write to file with Id: " + downloadFileStatus.downloadFileId().rawId();
         return new DownloadError(DownloadError.Type.FILE_CANNOT_BE_WRITTEN, cannotWriteToFileMessage);
@@ -46,6 +56,11 @@ final class DownloadErrorFactory {
         return new DownloadError(DownloadError.Type.NETWORK_ERROR_CANNOT_DOWNLOAD_FILE, networkErrorMessage);
     }
 
+    static DownloadError createCannotPersistBatchError(DownloadBatchId downloadBatchId) {
+        String cannotPersistBatchMessage = "Batch " + downloadBatchId.rawId() + " and its files could not be persisted";
+        return new DownloadError(DownloadError.Type.UNKNOWN, cannotPersistBatchMessage);
+    }
+
     static DownloadError createUnknownErrorFor(FilePersistenceResult status) {
         String unknownErrorMessage = "Unhandled error for FilePersistenceResult: " + status.name();
         return new DownloadError(DownloadError.Type.UNKNOWN, unknownErrorMessage);
@@ -1,11 +1,16 @@
 package com.novoda.downloadmanager;
 
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
+import java.io.InputStream;
+
 // This model knows how to interact with low level components.
 @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.StdCyclomaticComplexity", "PMD.ModifiedCyclomaticComplexity"})
 class DownloadFile {
 
+    private static final String NO_VALIDATOR = null;
+
     private final DownloadBatchId downloadBatchId;
     private final DownloadFileId downloadFileId;
     private final String url;
@@ -13,8 +18,11 @@ class DownloadFile {
     private final FileDownloader fileDownloader;
     private final FileSizeRequester fileSizeRequester;
     private final FilePersistence filePersistence;
+    private final WriteBehindFileWriterCreator fileWriterCreator;
     private final DownloadsFilePersistence downloadsFilePersistence;
     private final FilePath filePath;
+    private final PersistedBytesMonitor persistedBytesMonitor;
+    private final ProgressSnapshot progressSnapshot = new ProgressSnapshot();
 
     private InternalFileSize fileSize;
 
@@ -29,6 +37,7 @@ class DownloadFile {
                  FileDownloader fileDownloader,
                  FileSizeRequester fileSizeRequester,
                  FilePersistence filePersistence,
+                 WriteBehindFileWriterCreator fileWriterCreator,
                  DownloadsFilePersistence downloadsFilePersistence) {
         this.downloadBatchId = downloadBatchId;
         this.downloadFileId = downloadFileId;
@@ -38,8 +47,10 @@ class DownloadFile {
         this.fileDownloader = fileDownloader;
         this.fileSizeRequester = fileSizeRequester;
         this.filePersistence = filePersistence;
+        this.fileWriterCreator = fileWriterCreator;
         this.fileSize = fileSize;
         this.downloadsFilePersistence = downloadsFilePersistence;
+        this.persistedBytesMonitor = new PersistedBytesMonitor(fileSize);
     }
 
     // This ia complex because we have to constantly check states and perform updates.
@@ -59,6 +70,7 @@ class DownloadFile {
         }
 
         fileSize.setCurrentSize(filePersistence.getCurrentSize(filePath));
+        persistedBytesMonitor.update(fileSize);
 
         if (downloadFileStatus.isMarkedAsDeleted()) {
             Logger.v("abort download file " + downloadFileId + " marked as deleted");
@@ -73,6 +85,7 @@ class DownloadFile {
 
         if (fileSize.currentSize() == fileSize.totalSize()) {
             downloadFileStatus.update(fileSize, filePath);
+            downloadsFilePersistence.updateAsync(asFilePersisted());
             callback.onUpdate(downloadFileStatus);
             Logger.w("abort download file " + downloadFileId + " because already downloaded");
             return;
@@ -86,20 +99,28 @@ class DownloadFile {
             return;
         }
 
+        WriteBehindFileWriter fileWriter = fileWriterCreator.create(filePersistence);
+        fileWriter.open();
+
+        try {
+            startDownloading(fileWriter, callback);
+        } finally {
+            // A downloader may return or throw without finishing, the buffers it filled must still be written.
+            fileWriter.close();
+        }
+    }
+
+    private void startDownloading(WriteBehindFileWriter fileWriter, Callback callback) {
         fileDownloader.startDownloading(url, fileSize, new FileDownloader.Callback() {
             @Override
             public void onBytesRead(byte[] buffer, int bytesRead) {
-                boolean success = filePersistence.write(buffer, 0, bytesRead);
+                boolean success = fileWriter.write(buffer, bytesRead);
                 if (!success) {
                     DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
                     updateAndFeedbackWithStatus(downloadError, callback);
                 }
 
-                if (downloadFileStatus.isMarkedAsDownloading()) {
-                    fileSize.addToCurrentSize(bytesRead);
-                    downloadFileStatus.update(fileSize, filePath);
-                    callback.onUpdate(downloadFileStatus);
-                }
+                updateWithPersistedBytes(fileWriter.drainPersistedBytes(), callback);
             }
 
             @Override
@@ -110,8 +131,16 @@ class DownloadFile {
 
             @Override
             public void onDownloadFinished() {
+                boolean success = fileWriter.close();
+                if (!success && !downloadFileStatus.isMarkedAsDeleted()) {
+                    DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
+                    updateAndFeedbackWithStatus(downloadError, callback);
+                }
+                updateWithPersistedBytes(fileWriter.drainPersistedBytes(), callback);
+
                 filePersistence.close();
                 if (downloadFileStatus.isMarkedAsDeleted()) {
+                    persistedBytesMonitor.fail("file was deleted");
                     filePersistence.delete(filePath);
                     callback.onDelete();
                 }
@@ -122,6 +151,22 @@ class DownloadFile {
         });
     }
 
+    private void updateWithPersistedBytes(long bytesPersisted, Callback callback) {
+        if (bytesPersisted > 0 && downloadFileStatus.isMarkedAsDownloading()) {
+            fileSize.addToCurrentSize(bytesPersisted);
+            persistedBytesMonitor.update(fileSize);
+            downloadFileStatus.update(fileSize, filePath);
+            if (downloadFileStatus.isMarkedAsDownloading()) {
+                progressSnapshot.update(fileSize.totalSize(), fileSize.currentSize());
+                downloadsFilePersistence.updateAsync(progressSnapshot);
+            } else {
+                // The last chunk completes the file, its status is handed over as its own copy and written straight away.
+                downloadsFilePersistence.updateAsync(asFilePersisted());
+            }
+            callback.onUpdate(downloadFileStatus);
+        }
+    }
+
     private DownloadError convertError(FilePersistenceResult status) {
         switch (status) {
             case ERROR_UNKNOWN_TOTAL_FILE_SIZE:
@@ -151,20 +196,25 @@ class DownloadFile {
 
     private void updateAndFeedbackWithStatus(DownloadError downloadError, Callback callback) {
         downloadFileStatus.markAsError(downloadError);
+        persistedBytesMonitor.fail(downloadError.message());
+        downloadsFilePersistence.updateAsync(asFilePersisted());
         callback.onUpdate(downloadFileStatus);
     }
 
     void pause() {
         downloadFileStatus.markAsPaused();
+        downloadsFilePersistence.updateAsync(asFilePersisted());
         fileDownloader.stopDownloading();
     }
 
     void resume() {
         downloadFileStatus.markAsQueued();
+        downloadsFilePersistence.updateAsync(asFilePersisted());
     }
 
     void waitForNetwork() {
         downloadFileStatus.waitForNetwork();
+        downloadsFilePersistence.updateAsync(asFilePersisted());
         fileDownloader.stopDownloading();
     }
 
@@ -176,6 +226,7 @@ class DownloadFile {
         } else {
             downloadFileStatus.markAsDeleted();
             Logger.v("mark file as deleted for batchId: " + downloadBatchId.rawId());
+            persistedBytesMonitor.fail("file was deleted");
             filePersistence.delete(filePath);
         }
     }
@@ -197,14 +248,35 @@ class DownloadFile {
         return fileSize.totalSize();
     }
 
+    /**
+     * @return the total size if it is already known, or zero, never requesting it from the network.
+     */
+    long getKnownTotalSize() {
+        return fileSize.isTotalSizeUnknown() ? 0 : fileSize.totalSize();
+    }
+
     @WorkerThread
     boolean persist() {
-        return downloadsFilePersistence.persistSync(
+        return downloadsFilePersistence.persistSync(asFilePersisted());
+    }
+
+    InputStream openProgressiveInputStream() {
+        return new ProgressiveFileInputStream(filePath, persistedBytesMonitor);
+    }
+
+    DownloadsFilePersisted asFilePersisted() {
+        Optional<DownloadError> downloadError = downloadFileStatus.isMarkedAsError() ? downloadFileStatus.error() : Optional.absent();
+        return new LiteDownloadsFilePersisted(
                 downloadBatchId,
+                downloadFileId,
                 filePath,
-                fileSize,
+                fileSize.totalSize(),
                 url,
-                downloadFileStatus
+                downloadFileStatus.status(),
+                fileSize.currentSize(),
+                NO_VALIDATOR,
+                downloadError.isPresent() ? downloadError.get().type() : null,
+                downloadError.isPresent() ? downloadError.get().message() : null
         );
     }
 
@@ -224,6 +296,74 @@ class DownloadFile {
         return downloadFileStatus;
     }
 
+    /**
+     * The progress of the file while it is downloading, handed to the persistence on every written chunk
+     * rather than a new copy. The persistence coalesces it by file id and copies it when it flushes.
+     */
+    private final class ProgressSnapshot implements DownloadsFilePersisted {
+
+        private volatile long totalFileSize;
+        private volatile long bytesDownloaded;
+
+        void update(long totalFileSize, long bytesDownloaded) {
+            this.totalFileSize = totalFileSize;
+            this.bytesDownloaded = bytesDownloaded;
+        }
+
+        @Override
+        public DownloadBatchId downloadBatchId() {
+            return downloadBatchId;
+        }
+
+        @Override
+        public FilePath filePath() {
+            return filePath;
+        }
+
+        @Override
+        public long totalFileSize() {
+            return totalFileSize;
+        }
+
+        @Override
+        public String url() {
+            return url;
+        }
+
+        @Override
+        public DownloadFileId downloadFileId() {
+            return downloadFileId;
+        }
+
+        @Override
+        public DownloadFileStatus.Status fileStatus() {
+            return DownloadFileStatus.Status.DOWNLOADING;
+        }
+
+        @Override
+        public long bytesDownloaded() {
+            return bytesDownloaded;
+        }
+
+        @Nullable
+        @Override
+        public String validator() {
+            return NO_VALIDATOR;
+        }
+
+        @Nullable
+        @Override
+        public DownloadError.Type errorType() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public String errorMessage() {
+            return null;
+        }
+    }
+
     interface Callback {
 
         void onUpdate(InternalDownloadFileStatus downloadFileStatus);
@@ -1,5 +1,7 @@
 package com.novoda.downloadmanager;
 
+import java.security.InvalidParameterException;
+
 /**
  * Represents the information of a {@link DownloadFile} that is accessible to clients.
  */
@@ -15,7 +17,21 @@ public interface DownloadFileStatus {
         DELETED,
         ERROR,
         DOWNLOADED,
-        WAITING_FOR_NETWORK
+        WAITING_FOR_NETWORK;
+
+        public String toRawValue() {
+            return this.name();
+        }
+
+        public static Status from(String rawValue) {
+            for (Status status : Status.values()) {
+                if (status.name().equals(rawValue)) {
+                    return status;
+                }
+            }
+
+            throw new InvalidParameterException("File status " + rawValue + " not supported");
+        }
     }
 
     /**
@@ -3,7 +3,11 @@ package com.novoda.downloadmanager;
 import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 public interface DownloadManager {
 
@@ -38,11 +42,40 @@ public interface DownloadManager {
     /**
      * Adds a {@link DownloadBatchStatusCallback} to the internal list of callbacks
      * to be notified on {@link DownloadBatchStatus} changes.
+     * Updates are delivered on the callback handler, gathered into one message per frame.
      *
      * @param downloadBatchCallback to add to the internal list of callbacks.
      */
     void addDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback);
 
+    /**
+     * Adds a {@link DownloadBatchStatusCallback} to the internal list of callbacks
+     * to be notified on {@link DownloadBatchStatus} changes, on the given {@link Executor} and at most once per interval.
+     * While an update is pending only the latest {@link DownloadBatchStatus} of each batch is kept,
+     * except for {@link DownloadBatchStatus.Status#DOWNLOADED}, {@link DownloadBatchStatus.Status#DELETED}
+     * and {@link DownloadBatchStatus.Status#ERROR} which are always delivered.
+     *
+     * @param downloadBatchCallback       to add to the internal list of callbacks.
+     * @param callbackExecutor            to notify the callback on.
+     * @param minDeliveryIntervalInMillis the minimum time between two notifications of the callback.
+     */
+    void addDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback, Executor callbackExecutor, long minDeliveryIntervalInMillis);
+
+    /**
+     * Adds a {@link DownloadBatchStatusCallback} to be notified of the {@link DownloadBatchStatus} changes matching the
+     * {@link DownloadBatchStatusSubscriptionFilter}, on the given {@link Executor} and at most once per interval.
+     * The callback is notified until it is removed with {@link #removeDownloadBatchCallback(DownloadBatchStatusCallback)}.
+     *
+     * @param downloadBatchCallback       to add to the internal list of callbacks.
+     * @param filter                      of the {@link DownloadBatchStatus} changes to be notified of.
+     * @param callbackExecutor            to notify the callback on.
+     * @param minDeliveryIntervalInMillis the minimum time between two notifications of the callback.
+     */
+    void addDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback,
+                                  DownloadBatchStatusSubscriptionFilter filter,
+                                  Executor callbackExecutor,
+                                  long minDeliveryIntervalInMillis);
+
     /**
      * Removes a {@link DownloadBatchStatusCallback} from the internal list of callbacks,
      * removing notifications on {@link DownloadBatchStatus} changes.
@@ -76,6 +109,100 @@ public interface DownloadManager {
      */
     void getAllDownloadBatchStatuses(AllBatchStatusesCallback callback);
 
+    /**
+     * Retrieves a page of {@link DownloadBatchStatus}, most recently downloaded first.
+     * This is a long-running blocking operation, clients should call this using their own Threading mechanism.
+     *
+     * @param offset of the first {@link DownloadBatchStatus} to retrieve.
+     * @param limit  of {@link DownloadBatchStatus} to retrieve.
+     * @return a list of at most limit {@link DownloadBatchStatus}.
+     */
+    @WorkerThread
+    List<DownloadBatchStatus> getDownloadBatchStatuses(int offset, int limit);
+
+    /**
+     * Retrieves a page of {@link DownloadBatchStatus}, most recently downloaded first,
+     * passing it to the {@link AllBatchStatusesCallback}.
+     *
+     * @param offset   of the first {@link DownloadBatchStatus} to retrieve.
+     * @param limit    of {@link DownloadBatchStatus} to retrieve.
+     * @param callback to pass the list of {@link DownloadBatchStatus} to.
+     */
+    void getDownloadBatchStatuses(int offset, int limit, AllBatchStatusesCallback callback);
+
+    /**
+     * Retrieves the {@link DownloadBatchStatus} of the stored batches with any of the given statuses, most recently downloaded first.
+     * This is a long-running blocking operation, clients should call this using their own Threading mechanism.
+     *
+     * @param statuses to match, e.g. {@link DownloadBatchStatus.Status#DOWNLOADING}.
+     * @return a list of the matching {@link DownloadBatchStatus}.
+     */
+    @WorkerThread
+    List<DownloadBatchStatus> getDownloadBatchStatusesWith(Set<DownloadBatchStatus.Status> statuses);
+
+    /**
+     * Retrieves the {@link DownloadBatchStatus} of the stored batches with any of the given statuses, most recently downloaded first,
+     * passing them to the {@link AllBatchStatusesCallback}.
+     *
+     * @param statuses to match, e.g. {@link DownloadBatchStatus.Status#DOWNLOADING}.
+     * @param callback to pass the list of {@link DownloadBatchStatus} to.
+     */
+    void getDownloadBatchStatusesWith(Set<DownloadBatchStatus.Status> statuses, AllBatchStatusesCallback callback);
+
+    /**
+     * Retrieves the {@link DownloadBatchStatus} of the batches stored in the given {@link StorageRoot}, most recently downloaded first.
+     * This is a long-running blocking operation, clients should call this using their own Threading mechanism.
+     *
+     * @param storageRoot to match.
+     * @return a list of the matching {@link DownloadBatchStatus}.
+     */
+    @WorkerThread
+    List<DownloadBatchStatus> getDownloadBatchStatusesIn(StorageRoot storageRoot);
+
+    /**
+     * Retrieves the {@link DownloadBatchStatus} of the batches stored in the given {@link StorageRoot}, most recently downloaded first,
+     * passing them to the {@link AllBatchStatusesCallback}.
+     *
+     * @param storageRoot to match.
+     * @param callback    to pass the list of {@link DownloadBatchStatus} to.
+     */
+    void getDownloadBatchStatusesIn(StorageRoot storageRoot, AllBatchStatusesCallback callback);
+
+    /**
+     * Retrieves the {@link DownloadBatchStatus} of the batches downloaded after the given time, most recently downloaded first.
+     * This is a long-running blocking operation, clients should call this using their own Threading mechanism.
+     *
+     * @param timestampInMillis exclusive lower bound of {@link DownloadBatchStatus#downloadedDateTimeInMillis()}.
+     * @return a list of the matching {@link DownloadBatchStatus}.
+     */
+    @WorkerThread
+    List<DownloadBatchStatus> getDownloadBatchStatusesDownloadedAfter(long timestampInMillis);
+
+    /**
+     * Retrieves the {@link DownloadBatchStatus} of the batches downloaded after the given time, most recently downloaded first,
+     * passing them to the {@link AllBatchStatusesCallback}.
+     *
+     * @param timestampInMillis exclusive lower bound of {@link DownloadBatchStatus#downloadedDateTimeInMillis()}.
+     * @param callback          to pass the list of {@link DownloadBatchStatus} to.
+     */
+    void getDownloadBatchStatusesDownloadedAfter(long timestampInMillis, AllBatchStatusesCallback callback);
+
+    /**
+     * Counts the stored batches for each {@link DownloadBatchStatus.Status}, without retrieving them.
+     * This is a long-running blocking operation, clients should call this using their own Threading mechanism.
+     *
+     * @return the number of batches for every {@link DownloadBatchStatus.Status}, zero when there are none.
+     */
+    @WorkerThread
+    Map<DownloadBatchStatus.Status, Integer> getDownloadBatchCountsByStatus();
+
+    /**
+     * Counts the stored batches for each {@link DownloadBatchStatus.Status}, passing the counts to the {@link BatchStatusCountsCallback}.
+     *
+     * @param callback to pass the number of batches for every {@link DownloadBatchStatus.Status} to.
+     */
+    void getDownloadBatchCountsByStatus(BatchStatusCountsCallback callback);
+
     /**
      * Retrieves {@link DownloadFileStatus} with the associated {@link DownloadBatchId} and {@link DownloadFileId}.
      * Will return null if a {@link DownloadFileStatus} is not found with the matching {@link DownloadBatchId} and {@link DownloadFileId}.
@@ -99,6 +226,21 @@ public interface DownloadManager {
      */
     void getDownloadFileStatusWithMatching(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, DownloadFileStatusCallback callback);
 
+    /**
+     * Opens an {@link InputStream} on the file with the associated {@link DownloadBatchId} and {@link DownloadFileId},
+     * which can be read while the file is still downloading, e.g. to start playback early.
+     * Reads block until the requested bytes have been persisted and fail if the download errors or is deleted.
+     * Will return null if a file is not found with the matching {@link DownloadBatchId} and {@link DownloadFileId}.
+     * This is a long-running blocking operation, clients should call this using their own Threading mechanism.
+     *
+     * @param downloadBatchId of the file to read.
+     * @param downloadFileId  of the file to read.
+     * @return an {@link InputStream} that clients must close, or null.
+     */
+    @Nullable
+    @WorkerThread
+    InputStream openProgressiveInputStream(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId);
+
     /**
      * Changes the {@link ConnectionType} that must be satisfied in order to download.
      * Will pause all current downloads that are violating this condition, resuming
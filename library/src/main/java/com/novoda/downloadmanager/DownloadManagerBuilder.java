@@ -18,13 +18,14 @@ import android.support.v4.app.NotificationManagerCompat;
 
 import com.novoda.merlin.MerlinsBeard;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
@@ -37,8 +38,13 @@ import static com.novoda.downloadmanager.DownloadBatchStatus.Status.PAUSED;
 public final class DownloadManagerBuilder {
 
     private static final Object SERVICE_LOCK = new Object();
-    private static final Object CALLBACK_LOCK = new Object();
     private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final Clock MONOTONIC_CLOCK = () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    private static final long BATCH_STATUS_FLUSH_INTERVAL_IN_MILLIS = 500;
+    private static final String IN_FLIGHT_SNAPSHOT_FILE_NAME = "downloads.inflight";
+    private static final long IN_FLIGHT_SNAPSHOT_UPDATE_INTERVAL_IN_MILLIS = 5000;
+    private static final long ONE_FRAME_IN_MILLIS = 16;
+    private static final long ONE_SECOND_IN_MILLIS = 1000;
 
     private final Context applicationContext;
     private final Handler callbackHandler;
@@ -54,11 +60,16 @@ public final class DownloadManagerBuilder {
     private NotificationChannelProvider notificationChannelProvider;
     private ConnectionType connectionTypeAllowed;
     private boolean allowNetworkRecovery;
+    private NotificationCustomizer<DownloadBatchesSummary> summaryNotificationCustomizer;
+    private boolean aggregatedNotification;
     private Class<? extends FileCallbackThrottle> customCallbackThrottle;
     private DownloadsPersistence downloadsPersistence;
     private CallbackThrottleCreator.Type callbackThrottleCreatorType;
     private TimeUnit timeUnit;
     private long frequency;
+    private long minBytesDelta;
+    private long mainThreadDispatchIntervalInMillis = ONE_FRAME_IN_MILLIS;
+    private long notificationProgressUpdateIntervalInMillis = ONE_SECOND_IN_MILLIS;
     private Optional<LogHandle> logHandle;
 
     public static DownloadManagerBuilder newInstance(Context context, Handler callbackHandler, @DrawableRes final int notificationIcon) {
@@ -89,6 +100,10 @@ public final class DownloadManagerBuilder {
                 notificationCustomizer,
                 notificationChannelProvider
         );
+        NotificationCustomizer<DownloadBatchesSummary> summaryNotificationCustomizer = new DownloadsSummaryNotificationCustomizer(
+                context.getResources(),
+                notificationIcon
+        );
 
         ConnectionType connectionTypeAllowed = ConnectionType.ALL;
         boolean allowNetworkRecovery = true;
@@ -108,6 +123,7 @@ public final class DownloadManagerBuilder {
                 fileDownloaderCreator,
                 notificationChannelProvider,
                 notificationCreator,
+                summaryNotificationCustomizer,
                 connectionTypeAllowed,
                 allowNetworkRecovery,
                 callbackThrottleCreatorType,
@@ -127,6 +143,7 @@ public final class DownloadManagerBuilder {
                                    FileDownloaderCreator fileDownloaderCreator,
                                    NotificationChannelProvider notificationChannelProvider,
                                    NotificationCreator<DownloadBatchStatus> notificationCreator,
+                                   NotificationCustomizer<DownloadBatchesSummary> summaryNotificationCustomizer,
                                    ConnectionType connectionTypeAllowed,
                                    boolean allowNetworkRecovery,
                                    CallbackThrottleCreator.Type callbackThrottleCreatorType,
@@ -141,6 +158,7 @@ public final class DownloadManagerBuilder {
         this.fileDownloaderCreator = fileDownloaderCreator;
         this.notificationChannelProvider = notificationChannelProvider;
         this.notificationCreator = notificationCreator;
+        this.summaryNotificationCustomizer = summaryNotificationCustomizer;
         this.connectionTypeAllowed = connectionTypeAllowed;
         this.allowNetworkRecovery = allowNetworkRecovery;
         this.callbackThrottleCreatorType = callbackThrottleCreatorType;
@@ -202,6 +220,17 @@ public final class DownloadManagerBuilder {
         return this;
     }
 
+    public DownloadManagerBuilder withAggregatedNotification() {
+        this.aggregatedNotification = true;
+        return this;
+    }
+
+    public DownloadManagerBuilder withAggregatedNotification(NotificationCustomizer<DownloadBatchesSummary> summaryNotificationCustomizer) {
+        this.summaryNotificationCustomizer = summaryNotificationCustomizer;
+        this.aggregatedNotification = true;
+        return this;
+    }
+
     public DownloadManagerBuilder withAllowedConnectionType(ConnectionType connectionTypeAllowed) {
         this.connectionTypeAllowed = connectionTypeAllowed;
         return this;
@@ -225,11 +254,39 @@ public final class DownloadManagerBuilder {
         return this;
     }
 
+    public DownloadManagerBuilder withCallbackThrottleHybrid(TimeUnit timeUnit, long minInterval, long minBytesDelta) {
+        this.callbackThrottleCreatorType = CallbackThrottleCreator.Type.THROTTLE_HYBRID;
+        this.timeUnit = timeUnit;
+        this.frequency = minInterval;
+        this.minBytesDelta = minBytesDelta;
+        return this;
+    }
+
     public DownloadManagerBuilder withCallbackThrottleByProgressIncrease() {
         this.callbackThrottleCreatorType = CallbackThrottleCreator.Type.THROTTLE_BY_PROGRESS_INCREASE;
         return this;
     }
 
+    public DownloadManagerBuilder withFileDurabilityPolicy(FileDurabilityPolicy durabilityPolicy) {
+        filePersistenceCreator.withDurabilityPolicy(durabilityPolicy);
+        return this;
+    }
+
+    public DownloadManagerBuilder withPartFilesUntilComplete() {
+        filePersistenceCreator.withPartFiles();
+        return this;
+    }
+
+    public DownloadManagerBuilder withMainThreadDispatchInterval(TimeUnit timeUnit, long interval) {
+        this.mainThreadDispatchIntervalInMillis = timeUnit.toMillis(interval);
+        return this;
+    }
+
+    public DownloadManagerBuilder withNotificationProgressUpdateInterval(TimeUnit timeUnit, long interval) {
+        this.notificationProgressUpdateIntervalInMillis = timeUnit.toMillis(interval);
+        return this;
+    }
+
     public DownloadManagerBuilder withLogHandle(LogHandle logHandle) {
         this.logHandle = Optional.fromNullable(logHandle);
         return this;
@@ -238,32 +295,64 @@ public final class DownloadManagerBuilder {
     // It creates the whole LiteDownloadManager, it is a long process!
     @SuppressWarnings("PMD.ExcessiveMethodLength")
     public DownloadManager build() {
+        TimeToFirstResumedByte timeToFirstResumedByte = new TimeToFirstResumedByte(System.nanoTime());
         if (logHandle.isPresent()) {
             Logger.attach(logHandle.get());
         }
 
         filePersistenceCreator.withStorageRequirementRules(storageRequirementRules);
-        FileOperations fileOperations = new FileOperations(filePersistenceCreator, fileSizeRequester, fileDownloaderCreator);
-        Set<DownloadBatchStatusCallback> callbacks = new CopyOnWriteArraySet<>();
+        // Every filled buffer is written as its own task, so a single disk writer serves all the files downloading at once.
+        WriteBehindFileWriterCreator fileWriterCreator = new WriteBehindFileWriterCreator(
+                new InstrumentedExecutor("disk writes", Executors.newSingleThreadExecutor())
+        );
+        FileOperations fileOperations = new FileOperations(
+                filePersistenceCreator,
+                fileSizeRequester,
+                fileDownloaderCreator,
+                fileWriterCreator
+        );
 
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
         CallbackThrottleCreator callbackThrottleCreator = getCallbackThrottleCreator(
+                scheduler,
                 callbackThrottleCreatorType,
                 timeUnit,
                 frequency,
+                minBytesDelta,
                 customCallbackThrottle
         );
 
-        DownloadsFilePersistence downloadsFilePersistence = new DownloadsFilePersistence(downloadsPersistence);
         MerlinsBeard merlinsBeard = MerlinsBeard.from(applicationContext);
         ConnectionChecker connectionChecker = new ConnectionChecker(merlinsBeard, connectionTypeAllowed);
-        Executor executor = Executors.newSingleThreadExecutor();
+        Executor executor = new InstrumentedExecutor("downloads persistence writes", Executors.newSingleThreadExecutor());
+        Executor readExecutor = new InstrumentedExecutor("downloads persistence reads", Executors.newSingleThreadExecutor());
+        InFlightDownloadsSnapshot inFlightDownloadsSnapshot = new InFlightDownloadsSnapshot(
+                new File(applicationContext.getFilesDir(), IN_FLIGHT_SNAPSHOT_FILE_NAME),
+                IN_FLIGHT_SNAPSHOT_UPDATE_INTERVAL_IN_MILLIS
+        );
+        CoalescingBatchStatusWriter batchStatusWriter = new CoalescingBatchStatusWriter(
+                executor,
+                scheduler,
+                BATCH_STATUS_FLUSH_INTERVAL_IN_MILLIS,
+                downloadsPersistence,
+                inFlightDownloadsSnapshot
+        );
+        DownloadsFilePersistence downloadsFilePersistence = new DownloadsFilePersistence(
+                downloadsPersistence,
+                batchStatusWriter,
+                timeToFirstResumedByte
+        );
         DownloadsBatchPersistence downloadsBatchPersistence = new DownloadsBatchPersistence(
                 executor,
+                readExecutor,
                 downloadsFilePersistence,
                 downloadsPersistence,
                 callbackThrottleCreator,
                 connectionChecker,
-                downloadBatchRequirementRules
+                downloadBatchRequirementRules,
+                batchStatusWriter,
+                inFlightDownloadsSnapshot,
+                timeToFirstResumedByte
         );
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -276,28 +365,40 @@ public final class DownloadManagerBuilder {
                 SERVICE_LOCK,
                 serviceCriteria,
                 notificationCreator,
-                notificationManager
+                notificationManager,
+                MONOTONIC_CLOCK,
+                scheduler,
+                notificationProgressUpdateIntervalInMillis
         );
         DownloadBatchStatusNotificationDispatcher batchStatusNotificationDispatcher = new DownloadBatchStatusNotificationDispatcher(
                 downloadsBatchPersistence,
                 notificationDispatcher,
-                new HashSet<>()
+                new HashSet<>(),
+                createSummaryNotificationDispatcher(serviceCriteria, notificationManager, scheduler)
         );
 
         DownloadBatchStatusFilter downloadBatchStatusFilter = new DownloadBatchStatusFilter();
+        MainThreadDispatcher mainThreadDispatcher = new MainThreadDispatcher(
+                callbackHandler,
+                MONOTONIC_CLOCK,
+                mainThreadDispatchIntervalInMillis
+        );
+        DownloadBatchStatusBus statusBus = new DownloadBatchStatusBus(
+                scheduler,
+                MONOTONIC_CLOCK
+        );
 
         LiteDownloadManagerDownloader downloader = new LiteDownloadManagerDownloader(
                 SERVICE_LOCK,
-                CALLBACK_LOCK,
                 EXECUTOR,
-                callbackHandler,
+                mainThreadDispatcher,
                 fileOperations,
                 downloadsBatchPersistence,
                 downloadsFilePersistence,
                 batchStatusNotificationDispatcher,
                 downloadBatchRequirementRules,
                 connectionChecker,
-                callbacks,
+                statusBus,
                 callbackThrottleCreator,
                 downloadBatchStatusFilter,
                 serviceCriteria
@@ -305,11 +406,12 @@ public final class DownloadManagerBuilder {
 
         liteDownloadManager = new LiteDownloadManager(
                 SERVICE_LOCK,
-                CALLBACK_LOCK,
                 EXECUTOR,
                 callbackHandler,
+                mainThreadDispatcher,
                 new HashMap<>(),
-                callbacks,
+                new ConcurrentHashMap<>(),
+                statusBus,
                 fileOperations,
                 downloadsBatchPersistence,
                 downloader,
@@ -347,15 +449,47 @@ public final class DownloadManagerBuilder {
         return liteDownloadManager;
     }
 
-    private CallbackThrottleCreator getCallbackThrottleCreator(CallbackThrottleCreator.Type callbackThrottleType,
+    private Optional<SummaryNotificationDispatcher> createSummaryNotificationDispatcher(Wait.Criteria serviceCriteria,
+                                                                                       NotificationManagerCompat notificationManager,
+                                                                                       ScheduledExecutorService scheduler) {
+        if (!aggregatedNotification) {
+            return Optional.absent();
+        }
+
+        NotificationCreator<DownloadBatchesSummary> summaryNotificationCreator = new DownloadBatchesSummaryNotificationCreator(
+                applicationContext,
+                summaryNotificationCustomizer,
+                notificationChannelProvider
+        );
+        ServiceNotificationDispatcher<DownloadBatchesSummary> summaryNotificationDispatcher = new ServiceNotificationDispatcher<>(
+                SERVICE_LOCK,
+                serviceCriteria,
+                summaryNotificationCreator,
+                notificationManager,
+                MONOTONIC_CLOCK,
+                scheduler,
+                notificationProgressUpdateIntervalInMillis
+        );
+        return Optional.of(new SummaryNotificationDispatcher(
+                new DownloadBatchesSummaryTracker(MONOTONIC_CLOCK),
+                summaryNotificationDispatcher,
+                scheduler
+        ));
+    }
+
+    private CallbackThrottleCreator getCallbackThrottleCreator(ScheduledExecutorService scheduler,
+                                                               CallbackThrottleCreator.Type callbackThrottleType,
                                                                TimeUnit timeUnit,
                                                                long frequency,
+                                                               long minBytesDelta,
                                                                Class<? extends FileCallbackThrottle> customCallbackThrottle) {
         switch (callbackThrottleType) {
             case THROTTLE_BY_TIME:
-                return CallbackThrottleCreator.byTime(timeUnit, frequency);
+                return CallbackThrottleCreator.byTime(scheduler, timeUnit, frequency);
             case THROTTLE_BY_PROGRESS_INCREASE:
                 return CallbackThrottleCreator.byProgressIncrease();
+            case THROTTLE_HYBRID:
+                return CallbackThrottleCreator.hybrid(scheduler, MONOTONIC_CLOCK, timeUnit, frequency, minBytesDelta);
             case CUSTOM:
                 return CallbackThrottleCreator.byCustomThrottle(customCallbackThrottle);
             default:
@@ -437,4 +571,43 @@ public final class DownloadManagerBuilder {
         }
 
     }
+
+    private static class DownloadsSummaryNotificationCustomizer implements NotificationCustomizer<DownloadBatchesSummary> {
+
+        private static final boolean NOT_INDETERMINATE = false;
+        private static final int MAX_PERCENTAGE = 100;
+        private static final long BYTES_IN_A_KILOBYTE = 1024;
+        private final Resources resources;
+        private final int notificationIcon;
+
+        DownloadsSummaryNotificationCustomizer(Resources resources, int notificationIcon) {
+            this.resources = resources;
+            this.notificationIcon = notificationIcon;
+        }
+
+        @Override
+        public NotificationDisplayState notificationDisplayState(DownloadBatchesSummary payload) {
+            if (payload.activeBatchCount() > 0) {
+                return NotificationDisplayState.SINGLE_PERSISTENT_NOTIFICATION;
+            } else {
+                return NotificationDisplayState.HIDDEN_NOTIFICATION;
+            }
+        }
+
+        @Override
+        public Notification customNotificationFrom(NotificationCompat.Builder builder, DownloadBatchesSummary payload) {
+            String title = resources.getString(R.string.download_notification_summary_title, payload.activeBatchCount());
+            String content = resources.getString(
+                    R.string.download_notification_summary_content,
+                    payload.percentageDownloaded(),
+                    payload.bytesPerSecond() / BYTES_IN_A_KILOBYTE
+            );
+
+            return builder.setSmallIcon(notificationIcon)
+                    .setContentTitle(title)
+                    .setContentText(content)
+                    .setProgress(MAX_PERCENTAGE, payload.percentageDownloaded(), NOT_INDETERMINATE)
+                    .build();
+        }
+    }
 }
@@ -1,38 +1,60 @@
 package com.novoda.downloadmanager;
 
 import android.database.sqlite.SQLiteConstraintException;
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, DownloadsNotificationSeenPersistence {
 
     private static final Optional<DownloadError> NO_DOWNLOAD_ERROR = Optional.absent();
 
     private final Executor executor;
+    private final Executor readExecutor;
     private final DownloadsFilePersistence downloadsFilePersistence;
     private final DownloadsPersistence downloadsPersistence;
+    private final DownloadsPersistenceQueries downloadsPersistenceQueries;
     private final CallbackThrottleCreator callbackThrottleCreator;
     private final ConnectionChecker connectionChecker;
     private final DownloadBatchRequirementRule downloadBatchRequirementRule;
+    private final CoalescingBatchStatusWriter batchStatusWriter;
+    private final InFlightDownloadsSnapshot inFlightDownloadsSnapshot;
+    private final TimeToFirstResumedByte timeToFirstResumedByte;
 
+    @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     DownloadsBatchPersistence(Executor executor,
+                              Executor readExecutor,
                               DownloadsFilePersistence downloadsFilePersistence,
                               DownloadsPersistence downloadsPersistence,
                               CallbackThrottleCreator callbackThrottleCreator,
                               ConnectionChecker connectionChecker,
-                              DownloadBatchRequirementRule downloadBatchRequirementRule) {
+                              DownloadBatchRequirementRule downloadBatchRequirementRule,
+                              CoalescingBatchStatusWriter batchStatusWriter,
+                              InFlightDownloadsSnapshot inFlightDownloadsSnapshot,
+                              TimeToFirstResumedByte timeToFirstResumedByte) {
         this.executor = executor;
+        this.readExecutor = readExecutor;
         this.downloadsFilePersistence = downloadsFilePersistence;
         this.downloadsPersistence = downloadsPersistence;
+        this.downloadsPersistenceQueries = FilteringDownloadsPersistenceQueries.queriesFor(downloadsPersistence);
         this.callbackThrottleCreator = callbackThrottleCreator;
         this.connectionChecker = connectionChecker;
         this.downloadBatchRequirementRule = downloadBatchRequirementRule;
+        this.batchStatusWriter = batchStatusWriter;
+        this.inFlightDownloadsSnapshot = inFlightDownloadsSnapshot;
+        this.timeToFirstResumedByte = timeToFirstResumedByte;
     }
 
     void persistAsync(DownloadBatchTitle downloadBatchTitle,
@@ -47,55 +69,315 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         });
     }
 
+    /**
+     * Persists the batch together with its files, rolling both back if any of them cannot be persisted.
+     *
+     * @return whether the batch and its files were persisted.
+     */
     @WorkerThread
-    void persist(DownloadBatchTitle downloadBatchTitle,
-                 DownloadBatchId downloadBatchId,
-                 DownloadBatchStatus.Status status,
-                 List<DownloadFile> downloadFiles,
-                 long downloadedDateTimeInMillis,
-                 boolean notificationSeen,
-                 String storageRoot) {
+    boolean persist(DownloadBatchTitle downloadBatchTitle,
+                    DownloadBatchId downloadBatchId,
+                    DownloadBatchStatus.Status status,
+                    List<DownloadFile> downloadFiles,
+                    long downloadedDateTimeInMillis,
+                    boolean notificationSeen,
+                    String storageRoot) {
         List<DownloadFile> downloadFilesToPersist = new ArrayList<>(downloadFiles);
+        DownloadsBatchPersisted batchPersisted = new LiteDownloadsBatchPersisted(
+                downloadBatchTitle,
+                downloadBatchId,
+                status,
+                downloadedDateTimeInMillis,
+                notificationSeen,
+                storageRoot
+        );
+        List<DownloadsFilePersisted> filesPersisted = filesToPersistFrom(downloadFilesToPersist);
         downloadsPersistence.startTransaction();
 
         try {
-            DownloadsBatchPersisted batchPersisted = new LiteDownloadsBatchPersisted(
-                    downloadBatchTitle,
-                    downloadBatchId,
-                    status,
-                    downloadedDateTimeInMillis,
-                    notificationSeen,
-                    storageRoot
-            );
             downloadsPersistence.persistBatch(batchPersisted);
-            for (DownloadFile downloadFile : downloadFilesToPersist) {
-                downloadFile.persist();
-            }
+            downloadsPersistence.persistFiles(filesPersisted);
             downloadsPersistence.transactionSuccess();
+        } catch (SQLiteConstraintException e) {
+            Logger.e("failure to persist sync batch " + downloadBatchId.rawId() + " with " + filesPersisted.size() + " files");
+            return false;
         } finally {
             downloadsPersistence.endTransaction();
         }
+        inFlightDownloadsSnapshot.put(batchPersisted, filesPersisted);
+        return true;
+    }
+
+    private static List<DownloadsFilePersisted> filesToPersistFrom(List<DownloadFile> downloadFiles) {
+        List<DownloadsFilePersisted> filesPersisted = new ArrayList<>(downloadFiles.size());
+        for (DownloadFile downloadFile : downloadFiles) {
+            if (downloadFile.fileStatus().status() != DownloadFileStatus.Status.DELETED) {
+                filesPersisted.add(downloadFile.asFilePersisted());
+            }
+        }
+        return filesPersisted;
     }
 
+    /**
+     * Restores the batches in flight from their snapshot first, so that they can resume straight away,
+     * then writes pending updates and reads the stored batches on the read executor, so that writes submitted meanwhile
+     * are not held up, skipping the batches that were restored already.
+     */
     void loadAsync(FileOperations fileOperations, LoadBatchesCallback callback) {
-        executor.execute(() -> {
-            List<DownloadsBatchPersisted> batchPersistedList = downloadsPersistence.loadBatches();
+        readExecutor.execute(() -> {
+            Set<String> restoredRawBatchIds = restoreInFlight(fileOperations, callback);
+            executor.execute(() -> {
+                batchStatusWriter.flushSync();
+                readExecutor.execute(() -> load(fileOperations, restoredRawBatchIds, callback));
+            });
+        });
+    }
+
+    /**
+     * The stored batches are the source of truth: only their files are taken from the snapshot, for the downloaded bytes,
+     * and only when the stored batch is still in flight. Batches that are not stored, or no longer in flight, are dropped from it.
+     * Only the stored batches in the snapshot are read, without their files, which are what makes reading all the stored downloads slow.
+     */
+    @WorkerThread
+    private Set<String> restoreInFlight(FileOperations fileOperations, LoadBatchesCallback callback) {
+        Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> filesByBatches = inFlightDownloadsSnapshot.restore();
+        if (filesByBatches.isEmpty()) {
+            callback.onInFlightRestored(Collections.emptyList());
+            return Collections.emptySet();
+        }
+
+        List<DownloadBatchId> snapshotBatchIds = new ArrayList<>(filesByBatches.size());
+        for (DownloadsBatchPersisted snapshotBatchPersisted : filesByBatches.keySet()) {
+            snapshotBatchIds.add(snapshotBatchPersisted.downloadBatchId());
+        }
+
+        Map<String, DownloadsBatchPersisted> storedBatchesById = new HashMap<>();
+        for (DownloadsBatchPersisted storedBatchPersisted : downloadsPersistenceQueries.loadBatchesWithIds(snapshotBatchIds)) {
+            storedBatchesById.put(storedBatchPersisted.downloadBatchId().rawId(), storedBatchPersisted);
+        }
+
+        Set<String> restoredRawBatchIds = new HashSet<>(filesByBatches.size());
+        List<DownloadBatch> downloadBatches = new ArrayList<>(filesByBatches.size());
+        for (Map.Entry<DownloadsBatchPersisted, List<DownloadsFilePersisted>> entry : filesByBatches.entrySet()) {
+            DownloadBatchId downloadBatchId = entry.getKey().downloadBatchId();
+            DownloadsBatchPersisted storedBatchPersisted = storedBatchesById.get(downloadBatchId.rawId());
+            if (storedBatchPersisted == null || !InFlightDownloadsSnapshot.isInFlight(storedBatchPersisted.downloadBatchStatus())) {
+                Logger.w("dropping batch " + downloadBatchId.rawId() + " from the in flight snapshot, as it is no longer stored in flight");
+                inFlightDownloadsSnapshot.remove(downloadBatchId);
+                continue;
+            }
+
+            restoredRawBatchIds.add(downloadBatchId.rawId());
+            downloadBatches.add(getResumableDownloadBatch(fileOperations, storedBatchPersisted, entry.getValue()));
+        }
+
+        callback.onInFlightRestored(downloadBatches);
+        return restoredRawBatchIds;
+    }
+
+    /**
+     * Completed batches are loaded as status records built from the stored batches and the total size of their files,
+     * so only the files of the batches that are resumed are read.
+     */
+    @WorkerThread
+    private void load(FileOperations fileOperations, Set<String> restoredRawBatchIds, LoadBatchesCallback callback) {
+        List<DownloadsBatchPersisted> batchPersistedList = downloadsPersistence.loadBatches();
+
+        List<DownloadsBatchPersisted> resumableBatches = new ArrayList<>();
+        List<DownloadBatchId> resumableBatchIds = new ArrayList<>();
+        List<DownloadsBatchPersisted> completedBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : batchPersistedList) {
+            if (restoredRawBatchIds.contains(batchPersisted.downloadBatchId().rawId())) {
+                continue;
+            }
+
+            if (batchPersisted.downloadBatchStatus() == DownloadBatchStatus.Status.DOWNLOADED) {
+                completedBatches.add(batchPersisted);
+            } else {
+                resumableBatches.add(batchPersisted);
+                resumableBatchIds.add(batchPersisted.downloadBatchId());
+            }
+        }
+
+        List<DownloadBatchStatus> completedBatchStatuses = new ArrayList<>(completedBatches.size());
+        if (!completedBatches.isEmpty()) {
+            Map<String, Long> totalFileSizesByBatchId = new HashMap<>();
+            Set<DownloadBatchStatus.Status> completedStatuses = Collections.singleton(DownloadBatchStatus.Status.DOWNLOADED);
+            for (Map.Entry<DownloadBatchId, Long> entry : downloadsPersistenceQueries.sumTotalFileSizes(completedStatuses).entrySet()) {
+                totalFileSizesByBatchId.put(entry.getKey().rawId(), entry.getValue());
+            }
+
+            for (DownloadsBatchPersisted batchPersisted : completedBatches) {
+                Long totalFileSize = totalFileSizesByBatchId.get(batchPersisted.downloadBatchId().rawId());
+                long totalBatchSizeBytes = totalFileSize == null ? 0 : totalFileSize;
+                completedBatchStatuses.add(getStoredBatchStatus(batchPersisted, totalBatchSizeBytes, totalBatchSizeBytes));
+            }
+        }
+
+        List<DownloadBatch> downloadBatches = new ArrayList<>(resumableBatches.size());
+        if (!resumableBatches.isEmpty()) {
+            Map<String, List<DownloadsFilePersisted>> filesByBatchId = groupByBatchId(downloadsPersistenceQueries.loadFilesIn(resumableBatchIds));
+            for (DownloadsBatchPersisted batchPersisted : resumableBatches) {
+                String rawBatchId = batchPersisted.downloadBatchId().rawId();
+                List<DownloadsFilePersisted> filesPersisted = filesByBatchId.get(rawBatchId);
+                if (filesPersisted == null) {
+                    filesPersisted = Collections.emptyList();
+                }
 
-            List<DownloadBatch> downloadBatches = new ArrayList<>(batchPersistedList.size());
-            for (DownloadsBatchPersisted batchPersisted : batchPersistedList) {
                 try {
-                    DownloadBatch downloadBatch = getDownloadBatch(fileOperations, batchPersisted);
+                    DownloadBatch downloadBatch = getResumableDownloadBatch(fileOperations, batchPersisted, filesPersisted);
                     downloadBatches.add(downloadBatch);
                 } catch (SQLiteConstraintException e) {
-                    Logger.e("exception loading async batch " + batchPersisted.downloadBatchId().rawId());
+                    Logger.e("exception loading async batch " + rawBatchId);
                 }
             }
+        }
 
-            callback.onLoaded(downloadBatches);
-        });
+        callback.onLoaded(downloadBatches, completedBatchStatuses);
     }
 
-    private DownloadBatch getDownloadBatch(FileOperations fileOperations, DownloadsBatchPersisted batchPersisted) {
+    private DownloadBatch getResumableDownloadBatch(FileOperations fileOperations,
+                                                    DownloadsBatchPersisted batchPersisted,
+                                                    List<DownloadsFilePersisted> filesPersisted) {
+        if (batchPersisted.downloadBatchStatus() != DownloadBatchStatus.Status.PAUSED) {
+            timeToFirstResumedByte.onResuming(batchPersisted.downloadBatchId());
+        }
+        return getDownloadBatch(fileOperations, batchPersisted, filesPersisted);
+    }
+
+    /**
+     * Builds a status record from the stored rows alone, e.g. for completed batches which will not transfer another byte.
+     */
+    private static DownloadBatchStatus getStoredBatchStatus(DownloadsBatchPersisted batchPersisted, List<DownloadsFilePersisted> filesPersisted) {
+        long currentBytesDownloaded = 0;
+        long totalBatchSizeBytes = 0;
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            currentBytesDownloaded += filePersisted.bytesDownloaded();
+            totalBatchSizeBytes += filePersisted.totalFileSize();
+        }
+        if (batchPersisted.downloadBatchStatus() == DownloadBatchStatus.Status.DOWNLOADED) {
+            currentBytesDownloaded = totalBatchSizeBytes;
+        }
+        return getStoredBatchStatus(batchPersisted, currentBytesDownloaded, totalBatchSizeBytes);
+    }
+
+    private static DownloadBatchStatus getStoredBatchStatus(DownloadsBatchPersisted batchPersisted,
+                                                            long currentBytesDownloaded,
+                                                            long totalBatchSizeBytes) {
+        return new LiteDownloadBatchStatus(
+                batchPersisted.downloadBatchId(),
+                batchPersisted.downloadBatchTitle(),
+                batchPersisted.storageRoot(),
+                batchPersisted.downloadedDateTimeInMillis(),
+                currentBytesDownloaded,
+                totalBatchSizeBytes,
+                batchPersisted.downloadBatchStatus(),
+                batchPersisted.notificationSeen(),
+                NO_DOWNLOAD_ERROR
+        );
+    }
+
+    /**
+     * Instantiates a batch previously loaded as a status record, e.g. so that it can be deleted.
+     */
+    @WorkerThread
+    DownloadBatch loadSync(FileOperations fileOperations, DownloadBatchStatus completedBatchStatus) {
+        DownloadsBatchPersisted batchPersisted = new LiteDownloadsBatchPersisted(
+                completedBatchStatus.getDownloadBatchTitle(),
+                completedBatchStatus.getDownloadBatchId(),
+                completedBatchStatus.status(),
+                completedBatchStatus.downloadedDateTimeInMillis(),
+                completedBatchStatus.notificationSeen(),
+                completedBatchStatus.storageRoot()
+        );
+        List<DownloadsFilePersisted> filesPersisted = downloadsPersistence.loadFiles(completedBatchStatus.getDownloadBatchId());
+        return getDownloadBatch(fileOperations, batchPersisted, filesPersisted);
+    }
+
+    /**
+     * Queries the stored batches without waiting for pending writes. Each match resolves to the status
+     * known in memory when there is one, otherwise to a status record built from its stored files,
+     * which are read in one query for all the batches that are not known.
+     */
+    @WorkerThread
+    List<DownloadBatchStatus> queryBatchStatusesSync(BatchQuery batchQuery, KnownBatchStatuses knownBatchStatuses) {
+        return onReadExecutor(() -> {
+            List<DownloadsBatchPersisted> batchPersistedList = batchQuery.run(downloadsPersistenceQueries);
+            List<DownloadBatchStatus> downloadBatchStatuses = new ArrayList<>(batchPersistedList.size());
+            List<DownloadBatchId> unknownBatchIds = new ArrayList<>();
+            for (DownloadsBatchPersisted batchPersisted : batchPersistedList) {
+                DownloadBatchStatus knownBatchStatus = knownBatchStatuses.statusOf(batchPersisted.downloadBatchId());
+                if (knownBatchStatus == null) {
+                    unknownBatchIds.add(batchPersisted.downloadBatchId());
+                }
+                downloadBatchStatuses.add(knownBatchStatus);
+            }
+
+            if (!unknownBatchIds.isEmpty()) {
+                Map<String, List<DownloadsFilePersisted>> filesByBatchId = groupByBatchId(downloadsPersistenceQueries.loadFilesIn(unknownBatchIds));
+                for (int position = 0; position < batchPersistedList.size(); position++) {
+                    if (downloadBatchStatuses.get(position) != null) {
+                        continue;
+                    }
+
+                    DownloadsBatchPersisted batchPersisted = batchPersistedList.get(position);
+                    List<DownloadsFilePersisted> filesPersisted = filesByBatchId.get(batchPersisted.downloadBatchId().rawId());
+                    if (filesPersisted == null) {
+                        filesPersisted = Collections.emptyList();
+                    }
+                    downloadBatchStatuses.set(position, getStoredBatchStatus(batchPersisted, filesPersisted));
+                }
+            }
+            return downloadBatchStatuses;
+        }, Collections.emptyList());
+    }
+
+    /**
+     * Counts the stored batches per status, reporting zero for statuses without batches.
+     * Status updates still waiting to be coalesced are not counted yet.
+     */
+    @WorkerThread
+    Map<DownloadBatchStatus.Status, Integer> countBatchesByStatusSync() {
+        Map<DownloadBatchStatus.Status, Integer> batchCountsByStatus = new EnumMap<>(DownloadBatchStatus.Status.class);
+        for (DownloadBatchStatus.Status status : DownloadBatchStatus.Status.values()) {
+            batchCountsByStatus.put(status, 0);
+        }
+        batchCountsByStatus.putAll(onReadExecutor(downloadsPersistenceQueries::countBatchesByStatus, Collections.emptyMap()));
+        return batchCountsByStatus;
+    }
+
+    private <T> T onReadExecutor(Callable<T> query, T valueOnFailure) {
+        FutureTask<T> queryTask = new FutureTask<>(query);
+        readExecutor.execute(queryTask);
+        try {
+            return queryTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.e(e, "interrupted while querying stored batches");
+            return valueOnFailure;
+        } catch (ExecutionException e) {
+            Logger.e(e, "failed to query stored batches");
+            return valueOnFailure;
+        }
+    }
+
+    private static Map<String, List<DownloadsFilePersisted>> groupByBatchId(List<DownloadsFilePersisted> filesPersisted) {
+        Map<String, List<DownloadsFilePersisted>> filesByBatchId = new HashMap<>();
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            String rawBatchId = filePersisted.downloadBatchId().rawId();
+            List<DownloadsFilePersisted> batchFiles = filesByBatchId.get(rawBatchId);
+            if (batchFiles == null) {
+                batchFiles = new ArrayList<>();
+                filesByBatchId.put(rawBatchId, batchFiles);
+            }
+            batchFiles.add(filePersisted);
+        }
+        return filesByBatchId;
+    }
+
+    private DownloadBatch getDownloadBatch(FileOperations fileOperations,
+                                           DownloadsBatchPersisted batchPersisted,
+                                           List<DownloadsFilePersisted> filesPersisted) {
         DownloadBatchStatus.Status status = batchPersisted.downloadBatchStatus();
         DownloadBatchId downloadBatchId = batchPersisted.downloadBatchId();
         DownloadBatchTitle downloadBatchTitle = batchPersisted.downloadBatchTitle();
@@ -106,20 +388,22 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         List<DownloadFile> downloadFiles = downloadsFilePersistence.loadSync(
                 downloadBatchId,
                 status,
+                filesPersisted,
                 fileOperations,
                 downloadsFilePersistence
         );
 
         downloadFiles = Collections.unmodifiableList(downloadFiles);
 
-        Map<DownloadFileId, Long> downloadedFileSizeMap = new HashMap<>(downloadFiles.size());
+        long[] fileBytesDownloaded = new long[downloadFiles.size()];
 
         long currentBytesDownloaded = 0;
         long totalBatchSizeBytes = 0;
-        for (DownloadFile downloadFile : downloadFiles) {
-            downloadedFileSizeMap.put(downloadFile.id(), downloadFile.getCurrentDownloadedBytes());
+        for (int fileOrdinal = 0; fileOrdinal < downloadFiles.size(); fileOrdinal++) {
+            DownloadFile downloadFile = downloadFiles.get(fileOrdinal);
+            fileBytesDownloaded[fileOrdinal] = downloadFile.getCurrentDownloadedBytes();
             currentBytesDownloaded += downloadFile.getCurrentDownloadedBytes();
-            long totalFileSize = downloadFile.getTotalSize();
+            long totalFileSize = downloadFile.getKnownTotalSize();
             if (totalFileSize == 0) {
                 totalBatchSizeBytes = 0;
                 currentBytesDownloaded = 0;
@@ -146,11 +430,12 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         return new DownloadBatch(
                 liteDownloadBatchStatus,
                 downloadFiles,
-                downloadedFileSizeMap,
+                new BatchBytesDownloaded(fileBytesDownloaded),
                 DownloadsBatchPersistence.this,
                 fileCallbackThrottle,
                 connectionChecker,
-                downloadBatchRequirementRule
+                downloadBatchRequirementRule,
+                fileOperations.filePersistenceCreator().createStorageReservation(downloadBatchId)
         );
     }
 
@@ -169,6 +454,8 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
     @WorkerThread
     boolean deleteSync(DownloadBatchStatus downloadBatchStatus) {
         DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
+        batchStatusWriter.discard(downloadBatchId);
+        inFlightDownloadsSnapshot.remove(downloadBatchId);
         downloadsPersistence.startTransaction();
         try {
             if (downloadsPersistence.delete(downloadBatchId)) {
@@ -184,35 +471,19 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
 
     @Override
     public void updateStatusAsync(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
-        executor.execute(() -> {
-            downloadsPersistence.startTransaction();
-            try {
-                if (downloadsPersistence.update(downloadBatchId, status)) {
-                    downloadsPersistence.transactionSuccess();
-                } else {
-                    Logger.e("could not update batch status " + status + " failed for " + downloadBatchId.rawId());
-                }
-            } finally {
-                downloadsPersistence.endTransaction();
-            }
-        });
+        batchStatusWriter.updateStatus(downloadBatchId, status);
     }
 
     @Override
     public void updateNotificationSeenAsync(DownloadBatchStatus downloadBatchStatus, boolean notificationSeen) {
-        executor.execute(() -> {
-            downloadsPersistence.startTransaction();
-            try {
-                if (downloadsPersistence.update(downloadBatchStatus.getDownloadBatchId(), notificationSeen)) {
-                    downloadsPersistence.transactionSuccess();
-                } else {
-                    Logger.e("could not update notification to status " + downloadBatchStatus.status()
-                                     + " for batch id " + downloadBatchStatus.getDownloadBatchId().rawId());
-                }
-            } finally {
-                downloadsPersistence.endTransaction();
-            }
-        });
+        batchStatusWriter.updateNotificationSeen(downloadBatchStatus.getDownloadBatchId(), notificationSeen);
+    }
+
+    /**
+     * Writes pending status and notification seen updates without waiting for the flush interval.
+     */
+    void flushPendingUpdatesAsync() {
+        batchStatusWriter.flushAsync();
     }
 
     @WorkerThread
@@ -234,11 +505,30 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
 
     interface LoadBatchesCallback {
 
-        void onLoaded(List<DownloadBatch> downloadBatches);
+        /**
+         * Called first with the batches restored from the in flight snapshot, before the stored batches are read.
+         */
+        void onInFlightRestored(List<DownloadBatch> downloadBatches);
+
+        /**
+         * Called once the stored batches are read, with only those that were not restored already.
+         */
+        void onLoaded(List<DownloadBatch> downloadBatches, List<DownloadBatchStatus> completedBatchStatuses);
     }
 
     interface DeleteCallback {
 
         void onDeleted(DownloadBatchId downloadBatchId);
     }
+
+    interface BatchQuery {
+
+        List<DownloadsBatchPersisted> run(DownloadsPersistenceQueries downloadsPersistenceQueries);
+    }
+
+    interface KnownBatchStatuses {
+
+        @Nullable
+        DownloadBatchStatus statusOf(DownloadBatchId downloadBatchId);
+    }
 }
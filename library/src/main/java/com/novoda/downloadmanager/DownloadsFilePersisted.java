@@ -1,5 +1,7 @@
 package com.novoda.downloadmanager;
 
+import android.support.annotation.Nullable;
+
 /**
  * Defines the information that is stored in the persistence layer for a {@link BatchFile}.
  */
@@ -15,4 +17,27 @@ public interface DownloadsFilePersisted {
 
     DownloadFileId downloadFileId();
 
+    /**
+     * @return the status of the file, or null if it was stored before file statuses were persisted.
+     */
+    @Nullable
+    DownloadFileStatus.Status fileStatus();
+
+    /**
+     * @return the bytes written to the file when it was last persisted, verified against the file itself before resuming.
+     */
+    long bytesDownloaded();
+
+    /**
+     * @return the validator, e.g. an ETag, of the remote file the bytes were downloaded from, or null if it is unknown.
+     */
+    @Nullable
+    String validator();
+
+    @Nullable
+    DownloadError.Type errorType();
+
+    @Nullable
+    String errorMessage();
+
 }
@@ -10,47 +10,60 @@ import java.util.List;
 class DownloadsFilePersistence {
 
     private final DownloadsPersistence downloadsPersistence;
+    private final CoalescingBatchStatusWriter batchStatusWriter;
+    private final TimeToFirstResumedByte timeToFirstResumedByte;
 
-    DownloadsFilePersistence(DownloadsPersistence downloadsPersistence) {
+    DownloadsFilePersistence(DownloadsPersistence downloadsPersistence,
+                             CoalescingBatchStatusWriter batchStatusWriter,
+                             TimeToFirstResumedByte timeToFirstResumedByte) {
         this.downloadsPersistence = downloadsPersistence;
+        this.batchStatusWriter = batchStatusWriter;
+        this.timeToFirstResumedByte = timeToFirstResumedByte;
     }
 
     @WorkerThread
-    boolean persistSync(DownloadBatchId downloadBatchId,
-                        FilePath filePath,
-                        FileSize fileSize,
-                        String url,
-                        DownloadFileStatus downloadFileStatus) {
-        if (downloadFileStatus.status() == DownloadFileStatus.Status.DELETED) {
+    boolean persistSync(DownloadsFilePersisted filePersisted) {
+        if (filePersisted.fileStatus() == DownloadFileStatus.Status.DELETED) {
             return false;
         }
-        DownloadsFilePersisted filePersisted = new LiteDownloadsFilePersisted(
-                downloadBatchId,
-                downloadFileStatus.downloadFileId(),
-                filePath,
-                fileSize.totalSize(),
-                url
-        );
 
+        // An update still pending for the file, e.g. from before it was resumed, must not be written over this one.
+        batchStatusWriter.discardFile(filePersisted.downloadBatchId(), filePersisted.downloadFileId());
         downloadsPersistence.startTransaction();
         try {
             downloadsPersistence.persistFile(filePersisted);
             downloadsPersistence.transactionSuccess();
             return true;
         } catch (SQLiteConstraintException e) {
-            Logger.e("failure to persist sync file " + downloadFileStatus.downloadFileId().rawId() + " with status " + downloadFileStatus.status());
+            Logger.e("failure to persist sync file " + filePersisted.downloadFileId().rawId() + " with status " + filePersisted.fileStatus());
             return false;
         } finally {
             downloadsPersistence.endTransaction();
         }
     }
 
+    /**
+     * Records the latest status and downloaded bytes of a file, written together with other pending updates.
+     */
+    void updateAsync(DownloadsFilePersisted filePersisted) {
+        if (filePersisted.fileStatus() == DownloadFileStatus.Status.DELETED) {
+            return;
+        }
+        if (filePersisted.fileStatus() == DownloadFileStatus.Status.DOWNLOADING) {
+            timeToFirstResumedByte.onBytesDownloaded(filePersisted.downloadBatchId());
+        }
+        batchStatusWriter.updateFile(filePersisted);
+    }
+
+    /**
+     * Creates the files of a stored batch from already loaded rows, without touching the network or the disk.
+     * Files stored before their status was persisted fall back to the batch status and are sized from disk.
+     */
     List<DownloadFile> loadSync(DownloadBatchId batchId,
                                 DownloadBatchStatus.Status batchStatus,
+                                List<DownloadsFilePersisted> filePersistedList,
                                 FileOperations fileOperations,
                                 DownloadsFilePersistence downloadsFilePersistence) {
-        List<DownloadsFilePersisted> filePersistedList = downloadsPersistence.loadFiles(batchId);
-
         List<DownloadFile> downloadFiles = new ArrayList<>(filePersistedList.size());
         for (DownloadsFilePersisted filePersisted : filePersistedList) {
             DownloadFileId downloadFileId = filePersisted.downloadFileId();
@@ -58,23 +71,26 @@ class DownloadsFilePersistence {
             FilePersistenceCreator filePersistenceCreator = fileOperations.filePersistenceCreator();
             FilePersistence filePersistence = filePersistenceCreator.create();
 
-            long currentSize = filePersistence.getCurrentSize(filePersisted.filePath());
             long totalFileSize = filePersisted.totalFileSize();
+            long currentSize = getCurrentSizeFrom(batchStatus, filePersisted, filePersistence);
             InternalFileSize fileSize = InternalFileSizeCreator.createFromCurrentAndTotalSize(currentSize, totalFileSize);
             String url = filePersisted.url();
 
             FilePath filePath = filePersisted.filePath();
+            InternalDownloadFileStatus.Status fileStatus = getFileStatusFrom(batchStatus, filePersisted);
             InternalDownloadFileStatus downloadFileStatus = new LiteDownloadFileStatus(
                     batchId,
                     downloadFileId,
-                    getFileStatusFrom(batchStatus),
+                    fileStatus,
                     fileSize,
                     filePath
             );
+            if (fileStatus == InternalDownloadFileStatus.Status.ERROR && filePersisted.errorType() != null) {
+                downloadFileStatus.markAsError(new DownloadError(filePersisted.errorType(), filePersisted.errorMessage()));
+            }
 
             FileSizeRequester fileSizeRequester = fileOperations.fileSizeRequester();
-            FileDownloaderCreator fileDownloaderCreator = fileOperations.fileDownloaderCreator();
-            FileDownloader fileDownloader = fileDownloaderCreator.create();
+            FileDownloader fileDownloader = new LazyFileDownloader(fileOperations.fileDownloaderCreator());
 
             DownloadFile downloadFile = new DownloadFile(
                     batchId,
@@ -86,6 +102,7 @@ class DownloadsFilePersistence {
                     fileDownloader,
                     fileSizeRequester,
                     filePersistence,
+                    fileOperations.fileWriterCreator(),
                     downloadsFilePersistence
             );
 
@@ -95,7 +112,29 @@ class DownloadsFilePersistence {
         return downloadFiles;
     }
 
-    private InternalDownloadFileStatus.Status getFileStatusFrom(DownloadBatchStatus.Status batchStatus) {
+    private static boolean isFinalForAllFiles(DownloadBatchStatus.Status batchStatus) {
+        return batchStatus == DownloadBatchStatus.Status.DOWNLOADED
+                || batchStatus == DownloadBatchStatus.Status.DELETING
+                || batchStatus == DownloadBatchStatus.Status.DELETED;
+    }
+
+    private long getCurrentSizeFrom(DownloadBatchStatus.Status batchStatus,
+                                    DownloadsFilePersisted filePersisted,
+                                    FilePersistence filePersistence) {
+        if (batchStatus == DownloadBatchStatus.Status.DOWNLOADED) {
+            return filePersisted.totalFileSize();
+        }
+        if (filePersisted.fileStatus() != null) {
+            return filePersisted.bytesDownloaded();
+        }
+        return filePersistence.getCurrentSize(filePersisted.filePath());
+    }
+
+    private InternalDownloadFileStatus.Status getFileStatusFrom(DownloadBatchStatus.Status batchStatus, DownloadsFilePersisted filePersisted) {
+        if (filePersisted.fileStatus() != null && !isFinalForAllFiles(batchStatus)) {
+            return filePersisted.fileStatus();
+        }
+
         switch (batchStatus) {
             case QUEUED:
                 return InternalDownloadFileStatus.Status.QUEUED;
@@ -0,0 +1,463 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of frames, each holding the records written by one transaction.
+ * <p>
+ * The file starts with a magic number and a format version, followed by frames made of
+ * the length of their payload, a CRC32 of it and the payload itself. A frame that is
+ * cut short or fails its checksum, e.g. because the process died while appending it,
+ * marks the end of the journal and is truncated away on load.
+ * <p>
+ * Compacting rewrites the journal as a single snapshot frame holding the latest state
+ * of every batch and file, then atomically renames it over the old journal.
+ * The same snapshot format is used on its own by {@link InFlightDownloadsSnapshot}.
+ */
+final class DownloadsJournal {
+
+    private static final int MAGIC = 0x444d4a4c; // "DMJL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE_IN_BYTES = 8;
+    private static final int FRAME_HEADER_SIZE_IN_BYTES = 8;
+    private static final int NULL_STRING_LENGTH = -1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte BATCH_UPSERT = 1;
+    private static final byte FILE_UPSERT = 2;
+    private static final byte STATUS_CHANGE = 3;
+    private static final byte NOTIFICATION_SEEN_CHANGE = 4;
+    private static final byte DELETE = 5;
+
+    private final File file;
+    private final long minCompactionSizeInBytes;
+
+    private FileOutputStream outputStream;
+    private long sizeInBytes;
+    private long snapshotSizeInBytes;
+
+    DownloadsJournal(File file, long minCompactionSizeInBytes) {
+        this.file = file;
+        this.minCompactionSizeInBytes = minCompactionSizeInBytes;
+    }
+
+    /**
+     * Replays every complete frame into a new index, drops any torn frame at the end
+     * and opens the journal for appending.
+     */
+    @WorkerThread
+    DownloadsJournalIndex load() throws IOException {
+        DownloadsJournalIndex index = DownloadsJournalIndex.empty();
+        long validSizeInBytes = 0;
+        int frameCount = 0;
+
+        if (file.exists()) {
+            try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (hasValidHeader(inputStream)) {
+                    validSizeInBytes = HEADER_SIZE_IN_BYTES;
+                    byte[] payload;
+                    while ((payload = readFrame(inputStream, file.length() - validSizeInBytes)) != null) {
+                        applyFrame(payload, index);
+                        validSizeInBytes += FRAME_HEADER_SIZE_IN_BYTES + payload.length;
+                        frameCount++;
+                    }
+                } else {
+                    Logger.w("downloads journal " + file.getPath() + " has an unknown header, starting from an empty journal");
+                }
+            }
+        }
+
+        if (validSizeInBytes == 0) {
+            writeHeaderOnly();
+            validSizeInBytes = HEADER_SIZE_IN_BYTES;
+        } else if (validSizeInBytes < file.length()) {
+            Logger.w("truncating " + (file.length() - validSizeInBytes) + " bytes of torn frames from the downloads journal");
+            truncate(validSizeInBytes);
+        }
+
+        outputStream = new FileOutputStream(file, true);
+        sizeInBytes = validSizeInBytes;
+        snapshotSizeInBytes = validSizeInBytes;
+        Logger.v("replayed " + frameCount + " frames, " + sizeInBytes + " bytes, from the downloads journal");
+        return index;
+    }
+
+    /**
+     * Moves a journal that could not be loaded aside, keeping it for inspection rather than appending to it,
+     * and opens an empty journal in its place.
+     */
+    @WorkerThread
+    DownloadsJournalIndex startOver() throws IOException {
+        if (outputStream != null) {
+            outputStream.close();
+            outputStream = null;
+        }
+
+        File unreadableFile = new File(file.getPath() + ".unreadable");
+        if (file.exists() && !file.renameTo(unreadableFile)) {
+            throw new IOException("could not move " + file.getPath() + " aside");
+        }
+
+        DownloadsJournalIndex index = DownloadsJournalIndex.empty();
+        sizeInBytes = writeSnapshot(file, index, true);
+        snapshotSizeInBytes = sizeInBytes;
+        outputStream = new FileOutputStream(file, true);
+        Logger.w("moved the unreadable downloads journal to " + unreadableFile.getPath());
+        return index;
+    }
+
+    private static boolean hasValidHeader(DataInputStream inputStream) throws IOException {
+        try {
+            return inputStream.readInt() == MAGIC && inputStream.readInt() == FORMAT_VERSION;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    @Nullable
+    private static byte[] readFrame(DataInputStream inputStream, long remainingBytes) throws IOException {
+        try {
+            int payloadLength = inputStream.readInt();
+            long checksum = inputStream.readInt() & 0xffffffffL;
+            if (payloadLength < 0 || payloadLength > remainingBytes - FRAME_HEADER_SIZE_IN_BYTES) {
+                return null;
+            }
+
+            byte[] payload = new byte[payloadLength];
+            inputStream.readFully(payload);
+            return checksumOf(payload) == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static long checksumOf(byte[] payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, payload.length);
+        return crc32.getValue();
+    }
+
+    private static void applyFrame(byte[] payload, DownloadsJournalIndex index) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(payload));
+        while (inputStream.available() > 0) {
+            byte recordType = inputStream.readByte();
+            switch (recordType) {
+                case BATCH_UPSERT:
+                    index.putBatch(readBatch(inputStream));
+                    break;
+                case FILE_UPSERT:
+                    index.putFile(readFile(inputStream));
+                    break;
+                case STATUS_CHANGE:
+                    index.updateStatus(readString(inputStream), DownloadBatchStatus.Status.from(readString(inputStream)));
+                    break;
+                case NOTIFICATION_SEEN_CHANGE:
+                    index.updateNotificationSeen(readString(inputStream), inputStream.readBoolean());
+                    break;
+                case DELETE:
+                    index.deleteBatch(readString(inputStream));
+                    break;
+                default:
+                    throw new IOException("unknown downloads journal record type " + recordType);
+            }
+        }
+    }
+
+    private static DownloadsBatchPersisted readBatch(DataInputStream inputStream) throws IOException {
+        DownloadBatchId downloadBatchId = DownloadBatchIdCreator.createSanitizedFrom(readString(inputStream));
+        DownloadBatchStatus.Status status = DownloadBatchStatus.Status.from(readString(inputStream));
+        DownloadBatchTitle downloadBatchTitle = DownloadBatchTitleCreator.createFrom(readString(inputStream));
+        long downloadedDateTimeInMillis = inputStream.readLong();
+        boolean notificationSeen = inputStream.readBoolean();
+        String storageRoot = readString(inputStream);
+        return new LiteDownloadsBatchPersisted(
+                downloadBatchTitle,
+                downloadBatchId,
+                status,
+                downloadedDateTimeInMillis,
+                notificationSeen,
+                storageRoot
+        );
+    }
+
+    private static DownloadsFilePersisted readFile(DataInputStream inputStream) throws IOException {
+        DownloadBatchId downloadBatchId = DownloadBatchIdCreator.createSanitizedFrom(readString(inputStream));
+        DownloadFileId downloadFileId = DownloadFileIdCreator.createFrom(readString(inputStream));
+        FilePath filePath = new LiteFilePath(readString(inputStream));
+        long totalFileSize = inputStream.readLong();
+        String url = readString(inputStream);
+        String rawFileStatus = readString(inputStream);
+        long bytesDownloaded = inputStream.readLong();
+        String validator = readString(inputStream);
+        String rawErrorType = readString(inputStream);
+        String errorMessage = readString(inputStream);
+        return new LiteDownloadsFilePersisted(
+                downloadBatchId,
+                downloadFileId,
+                filePath,
+                totalFileSize,
+                url,
+                rawFileStatus == null ? null : DownloadFileStatus.Status.from(rawFileStatus),
+                bytesDownloaded,
+                validator,
+                rawErrorType == null ? null : DownloadError.Type.valueOf(rawErrorType),
+                errorMessage
+        );
+    }
+
+    @Nullable
+    private static String readString(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        if (length == NULL_STRING_LENGTH) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        inputStream.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private void writeHeaderOnly() throws IOException {
+        try (DataOutputStream headerStream = new DataOutputStream(new FileOutputStream(file))) {
+            headerStream.writeInt(MAGIC);
+            headerStream.writeInt(FORMAT_VERSION);
+        }
+    }
+
+    private void truncate(long validSizeInBytes) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(validSizeInBytes);
+        }
+    }
+
+    /**
+     * Appends the frame and syncs it to the storage device before returning,
+     * rolling the file back to its previous size if the write fails.
+     */
+    @WorkerThread
+    void append(Frame frame) throws IOException {
+        if (outputStream == null) {
+            throw new IOException("downloads journal " + file.getPath() + " is not loaded");
+        }
+
+        byte[] frameBytes = frame.toFrameBytes();
+        try {
+            outputStream.write(frameBytes);
+            outputStream.getFD().sync();
+            sizeInBytes += frameBytes.length;
+        } catch (IOException e) {
+            outputStream.getChannel().truncate(sizeInBytes);
+            throw e;
+        }
+    }
+
+    boolean shouldCompact() {
+        return sizeInBytes >= minCompactionSizeInBytes && sizeInBytes >= 2 * snapshotSizeInBytes;
+    }
+
+    /**
+     * Replaces the journal with a single frame holding every batch and file of the index.
+     */
+    @WorkerThread
+    void compact(DownloadsJournalIndex index) throws IOException {
+        outputStream.close();
+        outputStream = null;
+        long previousSizeInBytes = sizeInBytes;
+        try {
+            sizeInBytes = writeSnapshot(file, index, true);
+        } finally {
+            outputStream = new FileOutputStream(file, true);
+        }
+        snapshotSizeInBytes = sizeInBytes;
+        Logger.v("compacted the downloads journal from " + previousSizeInBytes + " to " + sizeInBytes + " bytes");
+    }
+
+    /**
+     * Writes every batch and file of the index as a journal holding a single frame, next to the given file first
+     * and then renamed over it, so that readers never see a partially written snapshot.
+     *
+     * @param sync whether to sync the snapshot to the storage device before renaming it.
+     * @return the size of the snapshot in bytes.
+     */
+    @WorkerThread
+    static long writeSnapshot(File file, DownloadsJournalIndex index, boolean sync) throws IOException {
+        Frame snapshot = new Frame();
+        for (DownloadsBatchPersisted batchPersisted : index.batches()) {
+            snapshot.batchUpsert(batchPersisted);
+            for (DownloadsFilePersisted filePersisted : index.files(batchPersisted.downloadBatchId().rawId())) {
+                snapshot.fileUpsert(filePersisted);
+            }
+        }
+
+        File snapshotFile = new File(file.getPath() + ".snapshot");
+        byte[] frameBytes = snapshot.toFrameBytes();
+        try (FileOutputStream snapshotStream = new FileOutputStream(snapshotFile)) {
+            DataOutputStream headerStream = new DataOutputStream(snapshotStream);
+            headerStream.writeInt(MAGIC);
+            headerStream.writeInt(FORMAT_VERSION);
+            snapshotStream.write(frameBytes);
+            if (sync) {
+                snapshotStream.getFD().sync();
+            }
+        }
+
+        if (!snapshotFile.renameTo(file)) {
+            throw new IOException("could not replace " + file.getPath() + " with its snapshot");
+        }
+        return HEADER_SIZE_IN_BYTES + frameBytes.length;
+    }
+
+    /**
+     * Maps a snapshot written by {@link #writeSnapshot(File, DownloadsJournalIndex, boolean)} into memory and replays it.
+     *
+     * @return the replayed index, or null if there is no snapshot or it is incomplete.
+     */
+    @Nullable
+    @WorkerThread
+    static DownloadsJournalIndex readSnapshot(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+            if (buffer.remaining() < HEADER_SIZE_IN_BYTES + FRAME_HEADER_SIZE_IN_BYTES
+                    || buffer.getInt() != MAGIC
+                    || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            int payloadLength = buffer.getInt();
+            long checksum = buffer.getInt() & 0xffffffffL;
+            if (payloadLength < 0 || payloadLength != buffer.remaining()) {
+                return null;
+            }
+
+            byte[] payload = new byte[payloadLength];
+            buffer.get(payload);
+            if (checksumOf(payload) != checksum) {
+                return null;
+            }
+
+            DownloadsJournalIndex index = DownloadsJournalIndex.empty();
+            applyFrame(payload, index);
+            return index;
+        }
+    }
+
+    long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * The records written by one transaction, encoded as they are added.
+     */
+    static final class Frame {
+
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        private final DataOutputStream payloadStream = new DataOutputStream(payload);
+
+        void batchUpsert(DownloadsBatchPersisted batchPersisted) {
+            try {
+                payloadStream.writeByte(BATCH_UPSERT);
+                writeString(batchPersisted.downloadBatchId().rawId());
+                writeString(batchPersisted.downloadBatchStatus().toRawValue());
+                writeString(batchPersisted.downloadBatchTitle().asString());
+                payloadStream.writeLong(batchPersisted.downloadedDateTimeInMillis());
+                payloadStream.writeBoolean(batchPersisted.notificationSeen());
+                writeString(batchPersisted.storageRoot());
+            } catch (IOException e) {
+                throw new IllegalStateException("could not encode batch " + batchPersisted.downloadBatchId().rawId(), e);
+            }
+        }
+
+        void fileUpsert(DownloadsFilePersisted filePersisted) {
+            try {
+                payloadStream.writeByte(FILE_UPSERT);
+                writeString(filePersisted.downloadBatchId().rawId());
+                writeString(filePersisted.downloadFileId().rawId());
+                writeString(filePersisted.filePath().path());
+                payloadStream.writeLong(filePersisted.totalFileSize());
+                writeString(filePersisted.url());
+                writeString(filePersisted.fileStatus() == null ? null : filePersisted.fileStatus().toRawValue());
+                payloadStream.writeLong(filePersisted.bytesDownloaded());
+                writeString(filePersisted.validator());
+                writeString(filePersisted.errorType() == null ? null : filePersisted.errorType().name());
+                writeString(filePersisted.errorMessage());
+            } catch (IOException e) {
+                throw new IllegalStateException("could not encode file " + filePersisted.downloadFileId().rawId(), e);
+            }
+        }
+
+        void statusChange(String rawBatchId, DownloadBatchStatus.Status status) {
+            try {
+                payloadStream.writeByte(STATUS_CHANGE);
+                writeString(rawBatchId);
+                writeString(status.toRawValue());
+            } catch (IOException e) {
+                throw new IllegalStateException("could not encode status change of batch " + rawBatchId, e);
+            }
+        }
+
+        void notificationSeenChange(String rawBatchId, boolean notificationSeen) {
+            try {
+                payloadStream.writeByte(NOTIFICATION_SEEN_CHANGE);
+                writeString(rawBatchId);
+                payloadStream.writeBoolean(notificationSeen);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not encode notification seen change of batch " + rawBatchId, e);
+            }
+        }
+
+        void delete(String rawBatchId) {
+            try {
+                payloadStream.writeByte(DELETE);
+                writeString(rawBatchId);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not encode deletion of batch " + rawBatchId, e);
+            }
+        }
+
+        private void writeString(@Nullable String value) throws IOException {
+            if (value == null) {
+                payloadStream.writeInt(NULL_STRING_LENGTH);
+                return;
+            }
+
+            byte[] bytes = value.getBytes(UTF_8);
+            payloadStream.writeInt(bytes.length);
+            payloadStream.write(bytes);
+        }
+
+        boolean isEmpty() {
+            return payload.size() == 0;
+        }
+
+        private byte[] toFrameBytes() throws IOException {
+            byte[] payloadBytes = payload.toByteArray();
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(FRAME_HEADER_SIZE_IN_BYTES + payloadBytes.length);
+            DataOutputStream frameStream = new DataOutputStream(frame);
+            frameStream.writeInt(payloadBytes.length);
+            frameStream.writeInt((int) checksumOf(payloadBytes));
+            frameStream.write(payloadBytes);
+            return frame.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The latest state of every batch and file replayed from a {@link DownloadsJournal}.
+ * <p>
+ * While changes are recorded, every change also records how to undo it, so that a transaction only pays for
+ * what it touches: it changes the index in place, and rolling it back or reading the last committed state
+ * undoes its changes, newest first. A rolled back batch that had been replaced is left at the end.
+ * <p>
+ * A copy shares the files of each batch with the original until it changes them,
+ * so the original must not change while a copy is in use.
+ */
+final class DownloadsJournalIndex {
+
+    private final Map<String, DownloadsBatchPersisted> batches;
+    private final Map<String, Map<String, DownloadsFilePersisted>> filesByBatchId;
+    private final Set<String> ownedFileBatchIds;
+
+    @Nullable
+    private List<Undo> undoLog;
+
+    static DownloadsJournalIndex empty() {
+        return new DownloadsJournalIndex(new LinkedHashMap<>(), new HashMap<>());
+    }
+
+    private DownloadsJournalIndex(Map<String, DownloadsBatchPersisted> batches, Map<String, Map<String, DownloadsFilePersisted>> filesByBatchId) {
+        this.batches = batches;
+        this.filesByBatchId = filesByBatchId;
+        this.ownedFileBatchIds = new HashSet<>();
+    }
+
+    void startRecordingChanges() {
+        undoLog = new ArrayList<>();
+    }
+
+    boolean isRecordingChanges() {
+        return undoLog != null;
+    }
+
+    void commitChanges() {
+        undoLog = null;
+    }
+
+    void rollBackChanges() {
+        List<Undo> changes = undoLog;
+        undoLog = null;
+        if (changes != null) {
+            undo(changes, this);
+        }
+    }
+
+    /**
+     * @return a copy without the recorded changes, to be read before this index changes again.
+     */
+    DownloadsJournalIndex committedCopy() {
+        DownloadsJournalIndex committedIndex = new DownloadsJournalIndex(new LinkedHashMap<>(batches), new HashMap<>(filesByBatchId));
+        if (undoLog != null) {
+            undo(undoLog, committedIndex);
+        }
+        return committedIndex;
+    }
+
+    private static void undo(List<Undo> changes, DownloadsJournalIndex index) {
+        for (int position = changes.size() - 1; position >= 0; position--) {
+            changes.get(position).applyTo(index);
+        }
+    }
+
+    Collection<DownloadsBatchPersisted> batches() {
+        return Collections.unmodifiableCollection(batches.values());
+    }
+
+    @Nullable
+    DownloadsBatchPersisted batch(String rawBatchId) {
+        return batches.get(rawBatchId);
+    }
+
+    int batchCount() {
+        return batches.size();
+    }
+
+    Collection<DownloadsFilePersisted> files(String rawBatchId) {
+        Map<String, DownloadsFilePersisted> files = filesByBatchId.get(rawBatchId);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableCollection(files.values());
+    }
+
+    List<DownloadsFilePersisted> allFiles() {
+        List<DownloadsFilePersisted> allFiles = new ArrayList<>();
+        for (String rawBatchId : batches.keySet()) {
+            allFiles.addAll(files(rawBatchId));
+        }
+        return allFiles;
+    }
+
+    /**
+     * Replaces any batch with the same id, as well as its files, moving it to the end like a REPLACE in SQLite would.
+     */
+    void putBatch(DownloadsBatchPersisted batchPersisted) {
+        String rawBatchId = batchPersisted.downloadBatchId().rawId();
+        recordBatchWithFiles(rawBatchId);
+        batches.remove(rawBatchId);
+        batches.put(rawBatchId, batchPersisted);
+        filesByBatchId.remove(rawBatchId);
+        ownedFileBatchIds.remove(rawBatchId);
+    }
+
+    boolean updateStatus(String rawBatchId, DownloadBatchStatus.Status status) {
+        DownloadsBatchPersisted batchPersisted = batches.get(rawBatchId);
+        if (batchPersisted == null) {
+            return false;
+        }
+        recordBatch(rawBatchId, batchPersisted);
+
+        batches.put(rawBatchId, new LiteDownloadsBatchPersisted(
+                batchPersisted.downloadBatchTitle(),
+                batchPersisted.downloadBatchId(),
+                status,
+                batchPersisted.downloadedDateTimeInMillis(),
+                batchPersisted.notificationSeen(),
+                batchPersisted.storageRoot()
+        ));
+        return true;
+    }
+
+    boolean updateNotificationSeen(String rawBatchId, boolean notificationSeen) {
+        DownloadsBatchPersisted batchPersisted = batches.get(rawBatchId);
+        if (batchPersisted == null) {
+            return false;
+        }
+        recordBatch(rawBatchId, batchPersisted);
+
+        batches.put(rawBatchId, new LiteDownloadsBatchPersisted(
+                batchPersisted.downloadBatchTitle(),
+                batchPersisted.downloadBatchId(),
+                batchPersisted.downloadBatchStatus(),
+                batchPersisted.downloadedDateTimeInMillis(),
+                notificationSeen,
+                batchPersisted.storageRoot()
+        ));
+        return true;
+    }
+
+    /**
+     * @return false if the batch of the file is unknown, like a foreign key violation would.
+     */
+    boolean putFile(DownloadsFilePersisted filePersisted) {
+        String rawBatchId = filePersisted.downloadBatchId().rawId();
+        if (!batches.containsKey(rawBatchId)) {
+            return false;
+        }
+
+        putOwnedFile(rawBatchId, filePersisted);
+        return true;
+    }
+
+    /**
+     * @return false if the file is unknown, in which case nothing changes.
+     */
+    boolean updateFile(DownloadsFilePersisted filePersisted) {
+        String rawBatchId = filePersisted.downloadBatchId().rawId();
+        Map<String, DownloadsFilePersisted> files = filesByBatchId.get(rawBatchId);
+        if (files == null || !files.containsKey(filePersisted.downloadFileId().rawId())) {
+            return false;
+        }
+
+        putOwnedFile(rawBatchId, filePersisted);
+        return true;
+    }
+
+    boolean deleteBatch(String rawBatchId) {
+        if (!batches.containsKey(rawBatchId)) {
+            return false;
+        }
+
+        recordBatchWithFiles(rawBatchId);
+        batches.remove(rawBatchId);
+        filesByBatchId.remove(rawBatchId);
+        ownedFileBatchIds.remove(rawBatchId);
+        return true;
+    }
+
+    private void putOwnedFile(String rawBatchId, DownloadsFilePersisted filePersisted) {
+        String rawFileId = filePersisted.downloadFileId().rawId();
+        Map<String, DownloadsFilePersisted> files = ownedFilesOf(rawBatchId);
+        DownloadsFilePersisted previousFile = files.put(rawFileId, filePersisted);
+        if (undoLog != null) {
+            undoLog.add(index -> index.restoreFile(rawBatchId, rawFileId, previousFile));
+        }
+    }
+
+    private void recordBatch(String rawBatchId, DownloadsBatchPersisted previousBatch) {
+        if (undoLog != null) {
+            undoLog.add(index -> index.batches.put(rawBatchId, previousBatch));
+        }
+    }
+
+    /**
+     * The files can be recorded without copying them, as the batch stops referring to them right after.
+     */
+    private void recordBatchWithFiles(String rawBatchId) {
+        if (undoLog != null) {
+            DownloadsBatchPersisted previousBatch = batches.get(rawBatchId);
+            Map<String, DownloadsFilePersisted> previousFiles = filesByBatchId.get(rawBatchId);
+            undoLog.add(index -> index.restoreBatchWithFiles(rawBatchId, previousBatch, previousFiles));
+        }
+    }
+
+    private void restoreBatchWithFiles(String rawBatchId,
+                                       @Nullable DownloadsBatchPersisted batchPersisted,
+                                       @Nullable Map<String, DownloadsFilePersisted> files) {
+        if (batchPersisted == null) {
+            batches.remove(rawBatchId);
+        } else {
+            batches.put(rawBatchId, batchPersisted);
+        }
+
+        if (files == null) {
+            filesByBatchId.remove(rawBatchId);
+        } else {
+            filesByBatchId.put(rawBatchId, files);
+        }
+        ownedFileBatchIds.remove(rawBatchId);
+    }
+
+    private void restoreFile(String rawBatchId, String rawFileId, @Nullable DownloadsFilePersisted filePersisted) {
+        if (filePersisted == null) {
+            ownedFilesOf(rawBatchId).remove(rawFileId);
+        } else {
+            ownedFilesOf(rawBatchId).put(rawFileId, filePersisted);
+        }
+    }
+
+    private interface Undo {
+        void applyTo(DownloadsJournalIndex index);
+    }
+
+    private Map<String, DownloadsFilePersisted> ownedFilesOf(String rawBatchId) {
+        Map<String, DownloadsFilePersisted> sharedFiles = filesByBatchId.get(rawBatchId);
+        if (ownedFileBatchIds.contains(rawBatchId)) {
+            return sharedFiles;
+        }
+
+        Map<String, DownloadsFilePersisted> ownedFiles = sharedFiles == null ? new LinkedHashMap<>() : new LinkedHashMap<>(sharedFiles);
+        filesByBatchId.put(rawBatchId, ownedFiles);
+        ownedFileBatchIds.add(rawBatchId);
+        return ownedFiles;
+    }
+}
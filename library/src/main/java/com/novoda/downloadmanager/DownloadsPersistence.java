@@ -20,15 +20,57 @@ public interface DownloadsPersistence {
 
     void persistFile(DownloadsFilePersisted filePersisted);
 
+    /**
+     * Persists all the given files at once, called within a transaction.
+     * Implementations should write them in a single round trip rather than one by one.
+     *
+     * @param filesPersisted to persist.
+     */
+    void persistFiles(List<DownloadsFilePersisted> filesPersisted);
+
+    /**
+     * Updates the status, downloaded bytes, validator and error of all the given files at once, called within a transaction.
+     *
+     * @param filesPersisted to update.
+     * @return the number of files updated.
+     */
+    int updateFiles(List<DownloadsFilePersisted> filesPersisted);
+
     List<DownloadsFilePersisted> loadAllFiles();
 
     List<DownloadsFilePersisted> loadFiles(DownloadBatchId batchId);
 
     boolean delete(DownloadBatchId downloadBatchId);
 
+    /**
+     * Deletes all the given batches at once, called within a transaction.
+     *
+     * @param downloadBatchIds of the batches to delete.
+     * @return the number of batches deleted.
+     */
+    int delete(List<DownloadBatchId> downloadBatchIds);
+
     boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status);
 
+    /**
+     * Updates all the given batches to the same status at once, called within a transaction.
+     *
+     * @param downloadBatchIds of the batches to update.
+     * @param status           to update the batches to.
+     * @return the number of batches updated.
+     */
+    int update(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status);
+
     boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen);
 
+    /**
+     * Updates whether the notification was seen for all the given batches at once, called within a transaction.
+     *
+     * @param downloadBatchIds of the batches to update.
+     * @param notificationSeen to update the batches to.
+     * @return the number of batches updated.
+     */
+    int update(List<DownloadBatchId> downloadBatchIds, boolean notificationSeen);
+
     void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch);
 }
@@ -0,0 +1,77 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optional queries that a {@link DownloadsPersistence} can also implement to filter batches in the persistence layer.
+ * When it does not, the download-manager filters the batches from {@link DownloadsPersistence#loadBatches()} itself.
+ */
+public interface DownloadsPersistenceQueries {
+
+    /**
+     * Loads the batches with any of the given statuses, most recently downloaded first.
+     *
+     * @param statuses to match.
+     * @return the matching batches.
+     */
+    List<DownloadsBatchPersisted> loadBatches(Set<DownloadBatchStatus.Status> statuses);
+
+    /**
+     * Loads the batches stored in the given storage root, most recently downloaded first.
+     *
+     * @param storageRoot to match.
+     * @return the matching batches.
+     */
+    List<DownloadsBatchPersisted> loadBatchesIn(String storageRoot);
+
+    /**
+     * Loads the batches with any of the given ids, in no particular order. Ids that are not stored are skipped.
+     *
+     * @param downloadBatchIds of the batches to load.
+     * @return the stored batches among the given ones.
+     */
+    List<DownloadsBatchPersisted> loadBatchesWithIds(List<DownloadBatchId> downloadBatchIds);
+
+    /**
+     * Loads the batches downloaded after the given time, most recently downloaded first.
+     *
+     * @param timestampInMillis exclusive lower bound of the downloaded date time.
+     * @return the matching batches.
+     */
+    List<DownloadsBatchPersisted> loadBatchesDownloadedAfter(long timestampInMillis);
+
+    /**
+     * Loads a page of the stored batches, most recently downloaded first, then by ascending batch id.
+     *
+     * @param offset of the first batch to load.
+     * @param limit  of batches to load.
+     * @return at most limit batches.
+     */
+    List<DownloadsBatchPersisted> loadBatchesPage(int offset, int limit);
+
+    /**
+     * Counts the stored batches per status. Statuses without batches may be omitted.
+     *
+     * @return the number of batches for each status.
+     */
+    Map<DownloadBatchStatus.Status, Integer> countBatchesByStatus();
+
+    /**
+     * Sums the total size of the files of each batch with any of the given statuses, without loading the files.
+     * Batches without files may be omitted.
+     *
+     * @param statuses to match.
+     * @return the total size in bytes of the files of each matching batch.
+     */
+    Map<DownloadBatchId, Long> sumTotalFileSizes(Set<DownloadBatchStatus.Status> statuses);
+
+    /**
+     * Loads the files of all the given batches at once.
+     *
+     * @param downloadBatchIds of the batches to load the files of.
+     * @return the files of the given batches.
+     */
+    List<DownloadsFilePersisted> loadFilesIn(List<DownloadBatchId> downloadBatchIds);
+}
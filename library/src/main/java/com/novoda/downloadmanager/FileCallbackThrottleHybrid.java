@@ -0,0 +1,103 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Emits a {@link DownloadBatchStatus} as soon as its status changes, once enough bytes have been downloaded since the
+ * last emission, or once the minimum interval has elapsed as long as some bytes have been downloaded.
+ * Unlike throttling by progress increase it does not depend on the size of the batch,
+ * and unlike throttling by time it stays silent while nothing changes.
+ * A status held back is emitted on a later tick of the {@link ActionScheduler}, so that progress does not stall
+ * when no further update arrives.
+ */
+class FileCallbackThrottleHybrid implements FileCallbackThrottle {
+
+    private final ActionScheduler actionScheduler;
+    private final Clock clock;
+    private final long minIntervalInMillis;
+    private final long minBytesDelta;
+
+    private DownloadBatchStatusCallback callback;
+    private DownloadBatchStatus pendingDownloadBatchStatus;
+    private DownloadBatchStatus.Status lastEmittedStatus;
+    private long lastEmittedBytesDownloaded;
+    private long lastEmissionTimeInMillis;
+
+    FileCallbackThrottleHybrid(ActionScheduler actionScheduler, Clock clock, long minIntervalInMillis, long minBytesDelta) {
+        this.actionScheduler = actionScheduler;
+        this.clock = clock;
+        this.minIntervalInMillis = minIntervalInMillis;
+        this.minBytesDelta = minBytesDelta;
+    }
+
+    @Override
+    public synchronized void setCallback(DownloadBatchStatusCallback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public synchronized void update(DownloadBatchStatus downloadBatchStatus) {
+        if (callback == null) {
+            Logger.w("A DownloadBatchStatusCallback must be set before an update is called.");
+            return;
+        }
+
+        long nowInMillis = clock.nowInMillis();
+        if (shouldEmit(downloadBatchStatus, nowInMillis)) {
+            emit(downloadBatchStatus, nowInMillis);
+        } else {
+            pendingDownloadBatchStatus = downloadBatchStatus;
+            if (!actionScheduler.isScheduled(emitPendingStatus)) {
+                actionScheduler.schedule(emitPendingStatus);
+            }
+        }
+    }
+
+    private boolean shouldEmit(DownloadBatchStatus downloadBatchStatus, long nowInMillis) {
+        if (downloadBatchStatus.status() != lastEmittedStatus) {
+            return true;
+        }
+
+        long bytesDelta = Math.abs(downloadBatchStatus.bytesDownloaded() - lastEmittedBytesDownloaded);
+        if (bytesDelta == 0) {
+            return false;
+        }
+        return bytesDelta >= minBytesDelta || nowInMillis - lastEmissionTimeInMillis >= minIntervalInMillis;
+    }
+
+    private void emit(DownloadBatchStatus downloadBatchStatus, long nowInMillis) {
+        lastEmittedStatus = downloadBatchStatus.status();
+        lastEmittedBytesDownloaded = downloadBatchStatus.bytesDownloaded();
+        lastEmissionTimeInMillis = nowInMillis;
+        pendingDownloadBatchStatus = null;
+        actionScheduler.cancel(emitPendingStatus);
+        callback.onUpdate(downloadBatchStatus);
+    }
+
+    private final ActionScheduler.Action emitPendingStatus = new ActionScheduler.Action() {
+        @Override
+        public void perform() {
+            synchronized (FileCallbackThrottleHybrid.this) {
+                if (callback == null || pendingDownloadBatchStatus == null) {
+                    actionScheduler.cancel(this);
+                    return;
+                }
+
+                long nowInMillis = clock.nowInMillis();
+                if (shouldEmit(pendingDownloadBatchStatus, nowInMillis)) {
+                    emit(pendingDownloadBatchStatus, nowInMillis);
+                } else if (pendingDownloadBatchStatus.bytesDownloaded() == lastEmittedBytesDownloaded) {
+                    pendingDownloadBatchStatus = null;
+                    actionScheduler.cancel(this);
+                }
+            }
+        }
+    };
+
+    @Override
+    public synchronized void stopUpdates() {
+        if (callback != null && pendingDownloadBatchStatus != null) {
+            emit(pendingDownloadBatchStatus, clock.nowInMillis());
+        }
+        actionScheduler.cancelAll();
+        callback = null;
+    }
+}
@@ -0,0 +1,84 @@
+package com.novoda.downloadmanager;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Records the offset up to which a partially downloaded file has been flushed to the storage device,
+ * in a small sidecar file next to it.
+ */
+final class FileCheckpoint {
+
+    private static final String CHECKPOINT_EXTENSION = ".checkpoint";
+    private static final String READ_WRITE_SYNCHRONOUSLY = "rws";
+    private static final String READ_ONLY = "r";
+    private static final long NO_CHECKPOINT = -1;
+    private static final int CHECKPOINT_SIZE_IN_BYTES = 8;
+
+    private final File checkpointFile;
+
+    static FileCheckpoint forFile(File file) {
+        return new FileCheckpoint(new File(file.getPath() + CHECKPOINT_EXTENSION));
+    }
+
+    private FileCheckpoint(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @return the durable offset, or {@code -1} if the file was never checkpointed.
+     */
+    long read() {
+        if (!checkpointFile.exists() || checkpointFile.length() < CHECKPOINT_SIZE_IN_BYTES) {
+            return NO_CHECKPOINT;
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(checkpointFile, READ_ONLY)) {
+            return randomAccessFile.readLong();
+        } catch (IOException e) {
+            Logger.e(e, "Failed to read checkpoint " + checkpointFile.getPath());
+            return NO_CHECKPOINT;
+        }
+    }
+
+    boolean exists() {
+        return read() != NO_CHECKPOINT;
+    }
+
+    void write(long durableOffset) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(checkpointFile, READ_WRITE_SYNCHRONOUSLY)) {
+            randomAccessFile.seek(0);
+            randomAccessFile.writeLong(durableOffset);
+        } catch (FileNotFoundException e) {
+            Logger.e(e, "Checkpoint could not be opened " + checkpointFile.getPath());
+        } catch (IOException e) {
+            Logger.e(e, "Failed to write checkpoint " + checkpointFile.getPath());
+        }
+    }
+
+    /**
+     * Moves the checkpoint next to the given file, which the checkpointed file is being renamed to.
+     *
+     * @return false if the checkpoint exists but could not be moved.
+     */
+    boolean moveTo(File file) {
+        if (!checkpointFile.exists()) {
+            return true;
+        }
+
+        File movedCheckpointFile = forFile(file).checkpointFile;
+        if (checkpointFile.renameTo(movedCheckpointFile)) {
+            return true;
+        }
+        Logger.w("Failed to move checkpoint " + checkpointFile.getPath() + " to " + movedCheckpointFile.getPath());
+        return false;
+    }
+
+    void delete() {
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            Logger.w("Failed to delete checkpoint " + checkpointFile.getPath());
+        }
+    }
+}
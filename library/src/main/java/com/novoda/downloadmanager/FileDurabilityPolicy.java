@@ -0,0 +1,97 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines how often partially downloaded files are flushed to the storage device.
+ * Each flush records a checkpoint, the offset up to which the file is known to be durable,
+ * and downloads resume from that checkpoint rather than from the reported file length.
+ * Pass it to {@link DownloadManagerBuilder#withFileDurabilityPolicy(FileDurabilityPolicy)}.
+ */
+public final class FileDurabilityPolicy {
+
+    private static final long NO_THRESHOLD = 0;
+
+    private final String name;
+    private final long syncEveryBytes;
+    private final long syncEveryMillis;
+    private final boolean syncOnClose;
+
+    /**
+     * Never flushes files, resuming from the reported file length. This is the default.
+     *
+     * @return a policy without checkpoints.
+     */
+    public static FileDurabilityPolicy never() {
+        return new FileDurabilityPolicy("never", NO_THRESHOLD, NO_THRESHOLD, false);
+    }
+
+    /**
+     * Flushes a file only when it stops being written to, e.g. when the download is paused or completes.
+     *
+     * @return a policy checkpointing on pause and close.
+     */
+    public static FileDurabilityPolicy onPauseAndClose() {
+        return new FileDurabilityPolicy("onPauseAndClose", NO_THRESHOLD, NO_THRESHOLD, true);
+    }
+
+    /**
+     * Flushes a file every time the given number of bytes have been written since the last flush,
+     * as well as when it stops being written to.
+     *
+     * @param bytes written between two flushes, e.g. 8MB.
+     * @return a policy checkpointing by written bytes.
+     */
+    public static FileDurabilityPolicy everyBytes(long bytes) {
+        if (bytes <= NO_THRESHOLD) {
+            throw new IllegalArgumentException("Bytes between flushes must be positive but was " + bytes);
+        }
+        return new FileDurabilityPolicy("every " + bytes + " bytes", bytes, NO_THRESHOLD, true);
+    }
+
+    /**
+     * Flushes a file on the first write after the given interval has elapsed since the last flush,
+     * as well as when it stops being written to.
+     *
+     * @param timeUnit of the interval.
+     * @param interval between two flushes.
+     * @return a policy checkpointing by elapsed time.
+     */
+    public static FileDurabilityPolicy everyInterval(TimeUnit timeUnit, long interval) {
+        long intervalInMillis = timeUnit.toMillis(interval);
+        if (intervalInMillis <= NO_THRESHOLD) {
+            throw new IllegalArgumentException("Interval between flushes must be positive but was " + interval + " " + timeUnit);
+        }
+        return new FileDurabilityPolicy("every " + intervalInMillis + "ms", NO_THRESHOLD, intervalInMillis, true);
+    }
+
+    private FileDurabilityPolicy(String name, long syncEveryBytes, long syncEveryMillis, boolean syncOnClose) {
+        this.name = name;
+        this.syncEveryBytes = syncEveryBytes;
+        this.syncEveryMillis = syncEveryMillis;
+        this.syncOnClose = syncOnClose;
+    }
+
+    boolean recordsCheckpoints() {
+        return syncOnClose;
+    }
+
+    boolean syncsOnClose() {
+        return syncOnClose;
+    }
+
+    boolean shouldSync(long bytesSinceLastSync, long millisSinceLastSync) {
+        if (bytesSinceLastSync <= NO_THRESHOLD) {
+            return false;
+        }
+
+        boolean bytesThresholdReached = syncEveryBytes > NO_THRESHOLD && bytesSinceLastSync >= syncEveryBytes;
+        boolean timeThresholdReached = syncEveryMillis > NO_THRESHOLD && millisSinceLastSync >= syncEveryMillis;
+        return bytesThresholdReached || timeThresholdReached;
+    }
+
+    @Override
+    public String toString() {
+        return "FileDurabilityPolicy{" + name + '}';
+    }
+}
@@ -5,11 +5,16 @@ class FileOperations {
     private final FilePersistenceCreator filePersistenceCreator;
     private final FileSizeRequester fileSizeRequester;
     private final FileDownloaderCreator fileDownloaderCreator;
+    private final WriteBehindFileWriterCreator fileWriterCreator;
 
-    FileOperations(FilePersistenceCreator filePersistenceCreator, FileSizeRequester fileSizeRequester, FileDownloaderCreator fileDownloaderCreator) {
+    FileOperations(FilePersistenceCreator filePersistenceCreator,
+                   FileSizeRequester fileSizeRequester,
+                   FileDownloaderCreator fileDownloaderCreator,
+                   WriteBehindFileWriterCreator fileWriterCreator) {
         this.filePersistenceCreator = filePersistenceCreator;
         this.fileSizeRequester = fileSizeRequester;
         this.fileDownloaderCreator = fileDownloaderCreator;
+        this.fileWriterCreator = fileWriterCreator;
     }
 
     FilePersistenceCreator filePersistenceCreator() {
@@ -23,4 +28,8 @@ class FileOperations {
     FileDownloaderCreator fileDownloaderCreator() {
         return fileDownloaderCreator;
     }
+
+    WriteBehindFileWriterCreator fileWriterCreator() {
+        return fileWriterCreator;
+    }
 }
@@ -7,6 +7,8 @@ final class FilePersistenceCreator {
     private final Context context;
 
     private StorageRequirementRule storageRequirementRule;
+    private FileDurabilityPolicy durabilityPolicy = FileDurabilityPolicy.never();
+    private boolean writesToPartFiles;
 
     FilePersistenceCreator(Context context) {
         this.context = context.getApplicationContext();
@@ -16,10 +18,22 @@ final class FilePersistenceCreator {
         this.storageRequirementRule = storageRequirementRule;
     }
 
+    void withDurabilityPolicy(FileDurabilityPolicy durabilityPolicy) {
+        this.durabilityPolicy = durabilityPolicy;
+    }
+
+    void withPartFiles() {
+        this.writesToPartFiles = true;
+    }
+
     FilePersistence create() {
-        FilePersistence filePersistence = new PathBasedFilePersistence();
+        FilePersistence filePersistence = new PathBasedFilePersistence(durabilityPolicy, writesToPartFiles);
         filePersistence.initialiseWith(context, storageRequirementRule);
         return filePersistence;
     }
 
+    BatchStorageReservation createStorageReservation(DownloadBatchId downloadBatchId) {
+        return new BatchStorageReservation(StorageLedger.getInstance(), storageRequirementRule, downloadBatchId);
+    }
+
 }
@@ -0,0 +1,131 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the {@link DownloadsPersistenceQueries} against a {@link DownloadsPersistence} that does not implement them,
+ * by filtering all of its batches in memory.
+ */
+final class FilteringDownloadsPersistenceQueries implements DownloadsPersistenceQueries {
+
+    private static final Comparator<DownloadsBatchPersisted> MOST_RECENTLY_DOWNLOADED_FIRST = (first, second) -> {
+        int byDownloadedDateTime = Long.compare(second.downloadedDateTimeInMillis(), first.downloadedDateTimeInMillis());
+        return byDownloadedDateTime == 0
+                ? first.downloadBatchId().rawId().compareTo(second.downloadBatchId().rawId())
+                : byDownloadedDateTime;
+    };
+
+    private final DownloadsPersistence downloadsPersistence;
+
+    static DownloadsPersistenceQueries queriesFor(DownloadsPersistence downloadsPersistence) {
+        if (downloadsPersistence instanceof DownloadsPersistenceQueries) {
+            return (DownloadsPersistenceQueries) downloadsPersistence;
+        }
+        return new FilteringDownloadsPersistenceQueries(downloadsPersistence);
+    }
+
+    private FilteringDownloadsPersistenceQueries(DownloadsPersistence downloadsPersistence) {
+        this.downloadsPersistence = downloadsPersistence;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatches(Set<DownloadBatchStatus.Status> statuses) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : downloadsPersistence.loadBatches()) {
+            if (statuses.contains(batchPersisted.downloadBatchStatus())) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        Collections.sort(matchingBatches, MOST_RECENTLY_DOWNLOADED_FIRST);
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesIn(String storageRoot) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : downloadsPersistence.loadBatches()) {
+            if (storageRoot.equals(batchPersisted.storageRoot())) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        Collections.sort(matchingBatches, MOST_RECENTLY_DOWNLOADED_FIRST);
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesDownloadedAfter(long timestampInMillis) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : downloadsPersistence.loadBatches()) {
+            if (batchPersisted.downloadedDateTimeInMillis() > timestampInMillis) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        Collections.sort(matchingBatches, MOST_RECENTLY_DOWNLOADED_FIRST);
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesWithIds(List<DownloadBatchId> downloadBatchIds) {
+        Set<String> rawBatchIds = new HashSet<>(downloadBatchIds.size());
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            rawBatchIds.add(downloadBatchId.rawId());
+        }
+
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>(downloadBatchIds.size());
+        for (DownloadsBatchPersisted batchPersisted : downloadsPersistence.loadBatches()) {
+            if (rawBatchIds.contains(batchPersisted.downloadBatchId().rawId())) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesPage(int offset, int limit) {
+        List<DownloadsBatchPersisted> batches = new ArrayList<>(downloadsPersistence.loadBatches());
+        Collections.sort(batches, MOST_RECENTLY_DOWNLOADED_FIRST);
+        int fromIndex = Math.min(offset, batches.size());
+        int toIndex = Math.min(fromIndex + limit, batches.size());
+        return new ArrayList<>(batches.subList(fromIndex, toIndex));
+    }
+
+    @Override
+    public Map<DownloadBatchStatus.Status, Integer> countBatchesByStatus() {
+        Map<DownloadBatchStatus.Status, Integer> batchCountsByStatus = new EnumMap<>(DownloadBatchStatus.Status.class);
+        for (DownloadsBatchPersisted batchPersisted : downloadsPersistence.loadBatches()) {
+            Integer count = batchCountsByStatus.get(batchPersisted.downloadBatchStatus());
+            batchCountsByStatus.put(batchPersisted.downloadBatchStatus(), count == null ? 1 : count + 1);
+        }
+        return batchCountsByStatus;
+    }
+
+    @Override
+    public Map<DownloadBatchId, Long> sumTotalFileSizes(Set<DownloadBatchStatus.Status> statuses) {
+        Map<DownloadBatchId, Long> totalFileSizesByBatchId = new HashMap<>();
+        for (DownloadsBatchPersisted batchPersisted : loadBatches(statuses)) {
+            long totalFileSize = 0;
+            for (DownloadsFilePersisted filePersisted : downloadsPersistence.loadFiles(batchPersisted.downloadBatchId())) {
+                totalFileSize += filePersisted.totalFileSize();
+            }
+            totalFileSizesByBatchId.put(batchPersisted.downloadBatchId(), totalFileSize);
+        }
+        return totalFileSizesByBatchId;
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadFilesIn(List<DownloadBatchId> downloadBatchIds) {
+        List<DownloadsFilePersisted> filesPersisted = new ArrayList<>();
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            filesPersisted.addAll(downloadsPersistence.loadFiles(downloadBatchId));
+        }
+        return filesPersisted;
+    }
+}
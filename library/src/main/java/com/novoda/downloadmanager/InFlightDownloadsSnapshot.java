@@ -0,0 +1,147 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the batches that have not finished downloading, along with their files, in a single small file,
+ * so that they can be resumed on the next launch before the stored downloads have been read.
+ * <p>
+ * It only ever holds a subset of the stored downloads: batches are added once they are persisted and removed before
+ * they are deleted. The stored downloads stay the source of truth, so only the downloaded bytes of the files
+ * of a batch are taken from the snapshot, and only while the stored batch is still in flight.
+ * The snapshot is rewritten and synced to disk straight away when a batch is added or removed.
+ * Status changes and progress, which arrive with every flush of the stored downloads, rewrite it at most once per interval
+ * and without syncing it, so that they are not held up behind the storage device. The snapshot may then lag behind
+ * the stored downloads, or be lost with the device's power, which is safe as it is verified against them on resume.
+ */
+class InFlightDownloadsSnapshot {
+
+    private static final boolean SYNC = true;
+    private static final boolean NO_SYNC = false;
+
+    private final File file;
+    private final long minUpdateWriteIntervalInMillis;
+
+    private DownloadsJournalIndex index;
+    private long lastWriteTimeInNanos;
+
+    InFlightDownloadsSnapshot(File file, long minUpdateWriteIntervalInMillis) {
+        this.file = file;
+        this.minUpdateWriteIntervalInMillis = minUpdateWriteIntervalInMillis;
+    }
+
+    /**
+     * @return the files of every batch that was in flight when the snapshot was last written.
+     */
+    @WorkerThread
+    synchronized Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> restore() {
+        Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> filesByBatches = new LinkedHashMap<>();
+        DownloadsJournalIndex loadedIndex = loadedIndex();
+        for (DownloadsBatchPersisted batchPersisted : loadedIndex.batches()) {
+            filesByBatches.put(batchPersisted, new ArrayList<>(loadedIndex.files(batchPersisted.downloadBatchId().rawId())));
+        }
+        return filesByBatches;
+    }
+
+    @WorkerThread
+    synchronized void put(DownloadsBatchPersisted batchPersisted, List<DownloadsFilePersisted> filesPersisted) {
+        if (!isInFlight(batchPersisted.downloadBatchStatus())) {
+            remove(batchPersisted.downloadBatchId());
+            return;
+        }
+
+        DownloadsJournalIndex loadedIndex = loadedIndex();
+        loadedIndex.putBatch(batchPersisted);
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            loadedIndex.putFile(filePersisted);
+        }
+        write(SYNC);
+    }
+
+    @WorkerThread
+    synchronized void update(Map<DownloadBatchId, DownloadBatchStatus.Status> statuses, List<DownloadsFilePersisted> filesPersisted) {
+        DownloadsJournalIndex loadedIndex = loadedIndex();
+        boolean changed = false;
+        for (Map.Entry<DownloadBatchId, DownloadBatchStatus.Status> entry : statuses.entrySet()) {
+            String rawBatchId = entry.getKey().rawId();
+            if (isInFlight(entry.getValue())) {
+                changed |= loadedIndex.updateStatus(rawBatchId, entry.getValue());
+            } else {
+                changed |= loadedIndex.deleteBatch(rawBatchId);
+            }
+        }
+
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            changed |= loadedIndex.updateFile(filePersisted);
+        }
+
+        if (changed && updateWriteIsDue()) {
+            write(NO_SYNC);
+        }
+    }
+
+    /**
+     * Called before the batch is deleted from the stored downloads.
+     */
+    @WorkerThread
+    synchronized void remove(DownloadBatchId downloadBatchId) {
+        if (loadedIndex().deleteBatch(downloadBatchId.rawId())) {
+            write(SYNC);
+        }
+    }
+
+    static boolean isInFlight(DownloadBatchStatus.Status status) {
+        switch (status) {
+            case DOWNLOADED:
+            case DELETING:
+            case DELETED:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private boolean updateWriteIsDue() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastWriteTimeInNanos) >= minUpdateWriteIntervalInMillis;
+    }
+
+    private DownloadsJournalIndex loadedIndex() {
+        if (index == null) {
+            index = read();
+        }
+        return index;
+    }
+
+    private DownloadsJournalIndex read() {
+        try {
+            DownloadsJournalIndex snapshotIndex = DownloadsJournal.readSnapshot(file);
+            if (snapshotIndex != null) {
+                Logger.v("read " + snapshotIndex.batchCount() + " in flight batches from " + file.getPath());
+                return snapshotIndex;
+            }
+        } catch (IOException e) {
+            Logger.e(e, "could not read the in flight downloads snapshot");
+        }
+        return DownloadsJournalIndex.empty();
+    }
+
+    private void write(boolean sync) {
+        lastWriteTimeInNanos = System.nanoTime();
+        try {
+            DownloadsJournal.writeSnapshot(file, index, sync);
+        } catch (IOException e) {
+            Logger.e(e, "could not write the in flight downloads snapshot, deleting it");
+            if (file.exists() && !file.delete()) {
+                Logger.e("could not delete the in flight downloads snapshot " + file.getPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks how many tasks are waiting on an executor, and reports every task that waited longer than a threshold before running
+ * along with the depth of the queue it leaves behind, so that a backlog shows up while it builds and drains.
+ * Tasks that run without a noticeable wait are not logged, as they are the common case on busy executors.
+ */
+final class InstrumentedExecutor implements Executor {
+
+    private static final long SLOW_WAIT_THRESHOLD_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String name;
+    private final Executor executor;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    InstrumentedExecutor(String name, Executor executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long enqueuedAtInNanos = System.nanoTime();
+        updateMaxQueueDepth(queueDepth.incrementAndGet());
+
+        try {
+            executor.execute(() -> {
+                long waitedInNanos = System.nanoTime() - enqueuedAtInNanos;
+                if (waitedInNanos > SLOW_WAIT_THRESHOLD_IN_NANOS) {
+                    Logger.v(name + " task waited " + TimeUnit.NANOSECONDS.toMillis(waitedInNanos) + "ms"
+                                     + ", queue depth " + queueDepth.get()
+                                     + ", max queue depth " + maxQueueDepth.get());
+                }
+                try {
+                    command.run();
+                } finally {
+                    queueDepth.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queueDepth.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void updateMaxQueueDepth(int depth) {
+        int currentMax = maxQueueDepth.get();
+        while (depth > currentMax && !maxQueueDepth.compareAndSet(currentMax, depth)) {
+            currentMax = maxQueueDepth.get();
+        }
+    }
+
+    int queueDepth() {
+        return queueDepth.get();
+    }
+
+    int maxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+}
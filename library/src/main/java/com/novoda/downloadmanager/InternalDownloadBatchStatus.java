@@ -24,5 +24,11 @@ interface InternalDownloadBatchStatus extends DownloadBatchStatus {
 
     void markAsNotificationSeen(DownloadsNotificationSeenPersistence persistence);
 
+    /**
+     * @return a number that changes whenever this status changes, unique across all the batches,
+     * and that is kept by its copies.
+     */
+    long version();
+
     InternalDownloadBatchStatus copy();
 }
@@ -0,0 +1,464 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link DownloadsPersistence} that appends compact binary records to a journal file rather than writing to SQLite,
+ * for devices where the write amplification of frequent status updates hurts.
+ * Every batch and file is kept in memory, and the journal is compacted into a snapshot once it has doubled in size.
+ * Pass it to {@link DownloadManagerBuilder#withDownloadsPersistenceCustom(DownloadsPersistence)}.
+ */
+public final class JournalDownloadsPersistence implements DownloadsPersistence, DownloadsPersistenceQueries {
+
+    private static final String JOURNAL_FILE_NAME = "downloads.journal";
+    private static final long MIN_COMPACTION_SIZE_IN_BYTES = 256 * 1024;
+    private static final Comparator<DownloadsBatchPersisted> MOST_RECENTLY_DOWNLOADED_FIRST = (first, second) -> {
+        int byDownloadedDateTime = Long.compare(second.downloadedDateTimeInMillis(), first.downloadedDateTimeInMillis());
+        return byDownloadedDateTime == 0
+                ? first.downloadBatchId().rawId().compareTo(second.downloadBatchId().rawId())
+                : byDownloadedDateTime;
+    };
+
+    private final DownloadsJournal journal;
+    private final ReentrantLock transactionLock = new ReentrantLock();
+    private final Object indexLock = new Object();
+
+    // Guarded by indexLock, and only changed by the thread holding transactionLock.
+    private DownloadsJournalIndex journalIndex;
+
+    // Guarded by transactionLock.
+    private DownloadsJournal.Frame transactionFrame;
+    private int transactionDepth;
+    private boolean transactionMarkedSuccessful;
+    private boolean transactionFailed;
+
+    public static JournalDownloadsPersistence newInstance(Context context) {
+        File journalFile = new File(context.getFilesDir(), JOURNAL_FILE_NAME);
+        return new JournalDownloadsPersistence(new DownloadsJournal(journalFile, MIN_COMPACTION_SIZE_IN_BYTES));
+    }
+
+    JournalDownloadsPersistence(DownloadsJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Nested transactions are committed with the outermost one, and only if every one of them was marked successful.
+     * Reads from the thread holding the transaction see its changes, while other threads see the last committed state.
+     *
+     * @throws IllegalStateException from {@link #endTransaction()} if the changes could not be appended to the journal,
+     *                               in which case they are rolled back.
+     */
+    @Override
+    public void startTransaction() {
+        transactionLock.lock();
+        if (transactionDepth == 0) {
+            try {
+                synchronized (indexLock) {
+                    loadedIndex().startRecordingChanges();
+                }
+            } catch (IllegalStateException e) {
+                transactionLock.unlock();
+                throw e;
+            }
+            transactionFrame = new DownloadsJournal.Frame();
+            transactionFailed = false;
+        }
+        transactionDepth++;
+        transactionMarkedSuccessful = false;
+    }
+
+    @Override
+    public void endTransaction() {
+        if (!transactionLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("endTransaction called without a matching startTransaction");
+        }
+
+        try {
+            if (!transactionMarkedSuccessful) {
+                transactionFailed = true;
+            }
+            transactionMarkedSuccessful = false;
+            transactionDepth--;
+            if (transactionDepth == 0) {
+                DownloadsJournal.Frame frame = transactionFrame;
+                transactionFrame = null;
+                if (transactionFailed) {
+                    rollBack();
+                } else {
+                    commit(frame);
+                }
+            }
+        } finally {
+            transactionLock.unlock();
+        }
+    }
+
+    @Override
+    public void transactionSuccess() {
+        transactionMarkedSuccessful = true;
+    }
+
+    private void commit(DownloadsJournal.Frame frame) {
+        if (!frame.isEmpty()) {
+            try {
+                journal.append(frame);
+            } catch (IOException e) {
+                rollBack();
+                throw new IllegalStateException("could not append to the downloads journal, the transaction was rolled back", e);
+            }
+        }
+        synchronized (indexLock) {
+            journalIndex.commitChanges();
+        }
+
+        if (journal.shouldCompact()) {
+            try {
+                journal.compact(journalIndex);
+            } catch (IOException e) {
+                Logger.e(e, "could not compact the downloads journal");
+            }
+        }
+    }
+
+    private void rollBack() {
+        synchronized (indexLock) {
+            journalIndex.rollBackChanges();
+        }
+    }
+
+    private DownloadsJournalIndex loadedIndex() {
+        synchronized (indexLock) {
+            if (journalIndex == null) {
+                journalIndex = loadJournal();
+            }
+            return journalIndex;
+        }
+    }
+
+    /**
+     * A journal that cannot be loaded is moved aside for a fresh one, rather than leaving every write to fail.
+     */
+    private DownloadsJournalIndex loadJournal() {
+        try {
+            return journal.load();
+        } catch (IOException e) {
+            Logger.e(e, "could not load the downloads journal, starting over from an empty one");
+        }
+
+        try {
+            return journal.startOver();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not start over from an empty downloads journal", e);
+        }
+    }
+
+    /**
+     * Reads from the thread holding the transaction see its changes, while other threads read a copy
+     * without them, so only reads that overlap with a transaction pay for undoing its changes.
+     */
+    private <T> T read(Read<T> read) {
+        synchronized (indexLock) {
+            DownloadsJournalIndex loadedIndex = loadedIndex();
+            if (loadedIndex.isRecordingChanges() && !transactionLock.isHeldByCurrentThread()) {
+                return read.from(loadedIndex.committedCopy());
+            }
+            return read.from(loadedIndex);
+        }
+    }
+
+    private interface Read<T> {
+        T from(DownloadsJournalIndex index);
+    }
+
+    private <T> T inTransaction(Write<T> write) {
+        startTransaction();
+        try {
+            T result;
+            synchronized (indexLock) {
+                result = write.applyTo(journalIndex, transactionFrame);
+            }
+            transactionSuccess();
+            return result;
+        } finally {
+            endTransaction();
+        }
+    }
+
+    private interface Write<T> {
+        T applyTo(DownloadsJournalIndex index, DownloadsJournal.Frame frame);
+    }
+
+    @Override
+    public void persistBatch(DownloadsBatchPersisted batchPersisted) {
+        DownloadsBatchPersisted batchCopy = copyOf(batchPersisted);
+        inTransaction((index, frame) -> {
+            index.putBatch(batchCopy);
+            frame.batchUpsert(batchCopy);
+            return null;
+        });
+    }
+
+    private static DownloadsBatchPersisted copyOf(DownloadsBatchPersisted batchPersisted) {
+        return new LiteDownloadsBatchPersisted(
+                batchPersisted.downloadBatchTitle(),
+                batchPersisted.downloadBatchId(),
+                batchPersisted.downloadBatchStatus(),
+                batchPersisted.downloadedDateTimeInMillis(),
+                batchPersisted.notificationSeen(),
+                batchPersisted.storageRoot()
+        );
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatches() {
+        return read(index -> new ArrayList<>(index.batches()));
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatches(Set<DownloadBatchStatus.Status> statuses) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : loadBatches()) {
+            if (statuses.contains(batchPersisted.downloadBatchStatus())) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        Collections.sort(matchingBatches, MOST_RECENTLY_DOWNLOADED_FIRST);
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesIn(String storageRoot) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : loadBatches()) {
+            if (storageRoot.equals(batchPersisted.storageRoot())) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        Collections.sort(matchingBatches, MOST_RECENTLY_DOWNLOADED_FIRST);
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesDownloadedAfter(long timestampInMillis) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : loadBatches()) {
+            if (batchPersisted.downloadedDateTimeInMillis() > timestampInMillis) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        Collections.sort(matchingBatches, MOST_RECENTLY_DOWNLOADED_FIRST);
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesWithIds(List<DownloadBatchId> downloadBatchIds) {
+        return read(index -> {
+            List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>(downloadBatchIds.size());
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                DownloadsBatchPersisted batchPersisted = index.batch(downloadBatchId.rawId());
+                if (batchPersisted != null) {
+                    matchingBatches.add(batchPersisted);
+                }
+            }
+            return matchingBatches;
+        });
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesPage(int offset, int limit) {
+        List<DownloadsBatchPersisted> batches = loadBatches();
+        Collections.sort(batches, MOST_RECENTLY_DOWNLOADED_FIRST);
+        int fromIndex = Math.min(offset, batches.size());
+        int toIndex = Math.min(fromIndex + limit, batches.size());
+        return new ArrayList<>(batches.subList(fromIndex, toIndex));
+    }
+
+    @Override
+    public Map<DownloadBatchStatus.Status, Integer> countBatchesByStatus() {
+        Map<DownloadBatchStatus.Status, Integer> batchCountsByStatus = new EnumMap<>(DownloadBatchStatus.Status.class);
+        for (DownloadsBatchPersisted batchPersisted : loadBatches()) {
+            Integer count = batchCountsByStatus.get(batchPersisted.downloadBatchStatus());
+            batchCountsByStatus.put(batchPersisted.downloadBatchStatus(), count == null ? 1 : count + 1);
+        }
+        return batchCountsByStatus;
+    }
+
+    @Override
+    public void persistFile(DownloadsFilePersisted filePersisted) {
+        persistFiles(Collections.singletonList(filePersisted));
+    }
+
+    @Override
+    public void persistFiles(List<DownloadsFilePersisted> filesPersisted) {
+        List<DownloadsFilePersisted> fileCopies = copyOf(filesPersisted);
+        inTransaction((index, frame) -> {
+            for (DownloadsFilePersisted fileCopy : fileCopies) {
+                if (index.putFile(fileCopy)) {
+                    frame.fileUpsert(fileCopy);
+                } else {
+                    Logger.w("could not persist file " + fileCopy.downloadFileId().rawId()
+                                     + " of unknown batch " + fileCopy.downloadBatchId().rawId());
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public int updateFiles(List<DownloadsFilePersisted> filesPersisted) {
+        List<DownloadsFilePersisted> fileCopies = copyOf(filesPersisted);
+        return inTransaction((index, frame) -> {
+            int updatedCount = 0;
+            for (DownloadsFilePersisted fileCopy : fileCopies) {
+                if (index.updateFile(fileCopy)) {
+                    frame.fileUpsert(fileCopy);
+                    updatedCount++;
+                }
+            }
+            return updatedCount;
+        });
+    }
+
+    private static long totalFileSizeOf(Collection<DownloadsFilePersisted> filesPersisted) {
+        long totalFileSize = 0;
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            totalFileSize += filePersisted.totalFileSize();
+        }
+        return totalFileSize;
+    }
+
+    private static List<DownloadsFilePersisted> copyOf(List<DownloadsFilePersisted> filesPersisted) {
+        List<DownloadsFilePersisted> fileCopies = new ArrayList<>(filesPersisted.size());
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            fileCopies.add(new LiteDownloadsFilePersisted(
+                    filePersisted.downloadBatchId(),
+                    filePersisted.downloadFileId(),
+                    filePersisted.filePath(),
+                    filePersisted.totalFileSize(),
+                    filePersisted.url(),
+                    filePersisted.fileStatus(),
+                    filePersisted.bytesDownloaded(),
+                    filePersisted.validator(),
+                    filePersisted.errorType(),
+                    filePersisted.errorMessage()
+            ));
+        }
+        return fileCopies;
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadAllFiles() {
+        return read(DownloadsJournalIndex::allFiles);
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadFiles(DownloadBatchId batchId) {
+        return read(index -> new ArrayList<>(index.files(batchId.rawId())));
+    }
+
+    @Override
+    public Map<DownloadBatchId, Long> sumTotalFileSizes(Set<DownloadBatchStatus.Status> statuses) {
+        return read(index -> {
+            Map<DownloadBatchId, Long> totalFileSizesByBatchId = new HashMap<>();
+            for (DownloadsBatchPersisted batchPersisted : index.batches()) {
+                if (statuses.contains(batchPersisted.downloadBatchStatus())) {
+                    DownloadBatchId downloadBatchId = batchPersisted.downloadBatchId();
+                    totalFileSizesByBatchId.put(downloadBatchId, totalFileSizeOf(index.files(downloadBatchId.rawId())));
+                }
+            }
+            return totalFileSizesByBatchId;
+        });
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadFilesIn(List<DownloadBatchId> downloadBatchIds) {
+        return read(index -> {
+            List<DownloadsFilePersisted> filesPersisted = new ArrayList<>();
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                filesPersisted.addAll(index.files(downloadBatchId.rawId()));
+            }
+            return filesPersisted;
+        });
+    }
+
+    @Override
+    public boolean delete(DownloadBatchId downloadBatchId) {
+        return delete(Collections.singletonList(downloadBatchId)) > 0;
+    }
+
+    @Override
+    public int delete(List<DownloadBatchId> downloadBatchIds) {
+        return inTransaction((index, frame) -> {
+            int deletedCount = 0;
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                if (index.deleteBatch(downloadBatchId.rawId())) {
+                    frame.delete(downloadBatchId.rawId());
+                    deletedCount++;
+                }
+            }
+            return deletedCount;
+        });
+    }
+
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        return update(Collections.singletonList(downloadBatchId), status) > 0;
+    }
+
+    @Override
+    public int update(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        return inTransaction((index, frame) -> {
+            int updatedCount = 0;
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                if (index.updateStatus(downloadBatchId.rawId(), status)) {
+                    frame.statusChange(downloadBatchId.rawId(), status);
+                    updatedCount++;
+                }
+            }
+            return updatedCount;
+        });
+    }
+
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen) {
+        return update(Collections.singletonList(downloadBatchId), notificationSeen) > 0;
+    }
+
+    @Override
+    public int update(List<DownloadBatchId> downloadBatchIds, boolean notificationSeen) {
+        return inTransaction((index, frame) -> {
+            int updatedCount = 0;
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                if (index.updateNotificationSeen(downloadBatchId.rawId(), notificationSeen)) {
+                    frame.notificationSeenChange(downloadBatchId.rawId(), notificationSeen);
+                    updatedCount++;
+                }
+            }
+            return updatedCount;
+        });
+    }
+
+    @Override
+    public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
+        startTransaction();
+        try {
+            CompletedDownloadBatchPersister.persist(completedDownloadBatch, this);
+            transactionSuccess();
+        } finally {
+            endTransaction();
+        }
+    }
+}
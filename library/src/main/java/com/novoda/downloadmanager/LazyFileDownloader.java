@@ -0,0 +1,41 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Defers creating the actual {@link FileDownloader} until a file is downloaded,
+ * so that loading stored batches does not instantiate one per file.
+ */
+class LazyFileDownloader implements FileDownloader {
+
+    private final FileDownloaderCreator fileDownloaderCreator;
+
+    @Nullable
+    private volatile FileDownloader fileDownloader;
+
+    LazyFileDownloader(FileDownloaderCreator fileDownloaderCreator) {
+        this.fileDownloaderCreator = fileDownloaderCreator;
+    }
+
+    @Override
+    public void startDownloading(String url, FileSize fileSize, Callback callback) {
+        fileDownloader().startDownloading(url, fileSize, callback);
+    }
+
+    @Override
+    public void stopDownloading() {
+        FileDownloader createdFileDownloader = fileDownloader;
+        if (createdFileDownloader != null) {
+            createdFileDownloader.stopDownloading();
+        }
+    }
+
+    private synchronized FileDownloader fileDownloader() {
+        FileDownloader createdFileDownloader = fileDownloader;
+        if (createdFileDownloader == null) {
+            createdFileDownloader = fileDownloaderCreator.create();
+            fileDownloader = createdFileDownloader;
+        }
+        return createdFileDownloader;
+    }
+}
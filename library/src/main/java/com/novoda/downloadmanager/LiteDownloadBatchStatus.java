@@ -2,11 +2,14 @@ package com.novoda.downloadmanager;
 
 import android.support.annotation.Nullable;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     private static final long ZERO_BYTES = 0;
     private static final int TOTAL_PERCENTAGE = 100;
     private static final boolean NOTIFICATION_SEEN = true;
+    private static final AtomicLong VERSIONS = new AtomicLong();
 
     private final DownloadBatchTitle downloadBatchTitle;
     private final DownloadBatchId downloadBatchId;
@@ -19,6 +22,7 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
     private long totalBatchSizeBytes;
     private int percentageDownloaded;
     private Optional<DownloadError> downloadError;
+    private volatile long version = VERSIONS.incrementAndGet();
 
     @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     LiteDownloadBatchStatus(DownloadBatchId downloadBatchId,
@@ -54,13 +58,19 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     @Override
     public void updateTotalSize(long totalBatchSizeBytes) {
-        this.totalBatchSizeBytes = totalBatchSizeBytes;
+        if (this.totalBatchSizeBytes != totalBatchSizeBytes) {
+            this.totalBatchSizeBytes = totalBatchSizeBytes;
+            bumpVersion();
+        }
     }
 
     @Override
     public void updateDownloaded(long currentBytesDownloaded) {
-        this.bytesDownloaded = currentBytesDownloaded;
-        this.percentageDownloaded = getPercentageFrom(bytesDownloaded, totalBatchSizeBytes);
+        if (bytesDownloaded != currentBytesDownloaded) {
+            this.bytesDownloaded = currentBytesDownloaded;
+            this.percentageDownloaded = getPercentageFrom(bytesDownloaded, totalBatchSizeBytes);
+            bumpVersion();
+        }
     }
 
     private int getPercentageFrom(long bytesDownloaded, long totalFileSizeBytes) {
@@ -103,62 +113,70 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     @Override
     public void markAsDownloading(DownloadsBatchStatusPersistence persistence) {
-        status = Status.DOWNLOADING;
+        updateStatus(Status.DOWNLOADING);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsPaused(DownloadsBatchStatusPersistence persistence) {
-        status = Status.PAUSED;
+        updateStatus(Status.PAUSED);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsQueued(DownloadsBatchStatusPersistence persistence) {
-        status = Status.QUEUED;
+        updateStatus(Status.QUEUED);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsDeleting() {
-        status = Status.DELETING;
-        notificationSeen = false;
+        updateStatus(Status.DELETING);
+        updateNotificationSeen(false);
     }
 
     @Override
     public void markAsDeleted() {
-        status = Status.DELETED;
-        notificationSeen = false;
+        updateStatus(Status.DELETED);
+        updateNotificationSeen(false);
     }
 
     @Override
     public void markAsError(Optional<DownloadError> downloadError, DownloadsBatchStatusPersistence persistence) {
-        this.status = Status.ERROR;
-        this.downloadError = downloadError;
+        if (!downloadError.equals(this.downloadError)) {
+            this.downloadError = downloadError;
+            bumpVersion();
+        }
+        updateStatus(Status.ERROR);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsDownloaded(DownloadsBatchStatusPersistence persistence) {
-        this.status = Status.DOWNLOADED;
+        updateStatus(Status.DOWNLOADED);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsWaitingForNetwork(DownloadsBatchPersistence persistence) {
-        this.status = Status.WAITING_FOR_NETWORK;
+        updateStatus(Status.WAITING_FOR_NETWORK);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsNotificationSeen(DownloadsNotificationSeenPersistence persistence) {
-        this.notificationSeen = NOTIFICATION_SEEN;
+        updateNotificationSeen(NOTIFICATION_SEEN);
         persistence.updateNotificationSeenAsync(this, NOTIFICATION_SEEN);
     }
 
+    @Override
+    public long version() {
+        return version;
+    }
+
     @Override
     public InternalDownloadBatchStatus copy() {
-        return new LiteDownloadBatchStatus(
+        LiteDownloadBatchStatus copy = new LiteDownloadBatchStatus(
                 downloadBatchId,
                 downloadBatchTitle,
                 storageRoot,
@@ -169,6 +187,26 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
                 notificationSeen,
                 downloadError
         );
+        copy.version = version;
+        return copy;
+    }
+
+    private void updateStatus(Status status) {
+        if (this.status != status) {
+            this.status = status;
+            bumpVersion();
+        }
+    }
+
+    private void updateNotificationSeen(boolean notificationSeen) {
+        if (this.notificationSeen != notificationSeen) {
+            this.notificationSeen = notificationSeen;
+            bumpVersion();
+        }
+    }
+
+    private void bumpVersion() {
+        version = VERSIONS.incrementAndGet();
     }
 
     private void updateStatusAsync(Status status, DownloadsBatchStatusPersistence persistence) {
@@ -4,20 +4,25 @@ import android.os.Handler;
 import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 class LiteDownloadManager implements DownloadManager {
 
+    private static final long NO_MIN_DELIVERY_INTERVAL = 0;
+
     private final Object waitForDownloadService;
-    private final Object waitForDownloadBatchStatusCallback;
     private final ExecutorService executor;
     private final Handler callbackHandler;
+    private final MainThreadDispatcher mainThreadDispatcher;
     private final Map<DownloadBatchId, DownloadBatch> downloadBatchMap;
-    private final Set<DownloadBatchStatusCallback> callbacks;
+    private final Map<DownloadBatchId, DownloadBatchStatus> completedBatchStatuses;
+    private final DownloadBatchStatusBus statusBus;
     private final FileOperations fileOperations;
     private final DownloadsBatchPersistence downloadsBatchPersistence;
     private final LiteDownloadManagerDownloader downloader;
@@ -27,22 +32,24 @@ class LiteDownloadManager implements DownloadManager {
     // LiteDownloadManager is a complex object.
     @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     LiteDownloadManager(Object waitForDownloadService,
-                        Object waitForDownloadBatchStatusCallback,
                         ExecutorService executor,
                         Handler callbackHandler,
+                        MainThreadDispatcher mainThreadDispatcher,
                         Map<DownloadBatchId, DownloadBatch> downloadBatchMap,
-                        Set<DownloadBatchStatusCallback> callbacks,
+                        Map<DownloadBatchId, DownloadBatchStatus> completedBatchStatuses,
+                        DownloadBatchStatusBus statusBus,
                         FileOperations fileOperations,
                         DownloadsBatchPersistence downloadsBatchPersistence,
                         LiteDownloadManagerDownloader downloader,
                         ConnectionChecker connectionChecker,
                         Wait.Criteria serviceCriteria) {
         this.waitForDownloadService = waitForDownloadService;
-        this.waitForDownloadBatchStatusCallback = waitForDownloadBatchStatusCallback;
         this.executor = executor;
         this.callbackHandler = callbackHandler;
+        this.mainThreadDispatcher = mainThreadDispatcher;
         this.downloadBatchMap = downloadBatchMap;
-        this.callbacks = callbacks;
+        this.completedBatchStatuses = completedBatchStatuses;
+        this.statusBus = statusBus;
         this.fileOperations = fileOperations;
         this.downloadsBatchPersistence = downloadsBatchPersistence;
         this.downloader = downloader;
@@ -64,12 +71,29 @@ class LiteDownloadManager implements DownloadManager {
     }
 
     private DownloadsBatchPersistence.LoadBatchesCallback loadBatchesCallback(AllStoredDownloadsSubmittedCallback callback) {
-        return downloadBatches -> {
-            for (DownloadBatch downloadBatch : downloadBatches) {
-                downloader.download(downloadBatch, downloadBatchMap);
+        return new DownloadsBatchPersistence.LoadBatchesCallback() {
+            @Override
+            public void onInFlightRestored(List<DownloadBatch> downloadBatches) {
+                for (DownloadBatch downloadBatch : downloadBatches) {
+                    downloader.download(downloadBatch, downloadBatchMap);
+                }
             }
 
-            callbackHandler.post(callback::onAllDownloadsSubmitted);
+            @Override
+            public void onLoaded(List<DownloadBatch> downloadBatches, List<DownloadBatchStatus> completedBatchStatuses) {
+                for (DownloadBatchStatus completedBatchStatus : completedBatchStatuses) {
+                    DownloadBatchId downloadBatchId = completedBatchStatus.getDownloadBatchId();
+                    if (!downloadBatchMap.containsKey(downloadBatchId)) {
+                        LiteDownloadManager.this.completedBatchStatuses.put(downloadBatchId, completedBatchStatus);
+                    }
+                }
+
+                for (DownloadBatch downloadBatch : downloadBatches) {
+                    downloader.download(downloadBatch, downloadBatchMap);
+                }
+
+                callbackHandler.post(callback::onAllDownloadsSubmitted);
+            }
         };
     }
 
@@ -77,7 +101,9 @@ class LiteDownloadManager implements DownloadManager {
     public void download(Batch batch) {
         DownloadBatchId downloadBatchId = batch.downloadBatchId();
         DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
-        if (downloadBatch == null) {
+        if (completedBatchStatuses.containsKey(downloadBatchId)) {
+            Logger.v("abort download batch " + downloadBatchId + " will not download as it is already downloaded");
+        } else if (downloadBatch == null) {
             downloader.download(batch, downloadBatchMap);
         } else {
             Logger.v("abort download batch " + downloadBatchId + " will not download as exists already in the running batches map");
@@ -113,6 +139,16 @@ class LiteDownloadManager implements DownloadManager {
 
     @Override
     public void delete(DownloadBatchId downloadBatchId) {
+        if (completedBatchStatuses.containsKey(downloadBatchId)) {
+            executor.submit(() -> {
+                DownloadBatchStatus completedBatchStatus = completedBatchStatuses.remove(downloadBatchId);
+                if (completedBatchStatus != null) {
+                    downloader.delete(downloadsBatchPersistence.loadSync(fileOperations, completedBatchStatus), downloadBatchMap);
+                }
+            });
+            return;
+        }
+
         DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
         if (downloadBatch == null) {
             Logger.v("abort delete batch " + downloadBatchId + " will not be deleted as it does not exists in the running batches map");
@@ -124,18 +160,27 @@ class LiteDownloadManager implements DownloadManager {
 
     @Override
     public void addDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback) {
-        synchronized (waitForDownloadBatchStatusCallback) {
-            callbacks.add(downloadBatchCallback);
-        }
+        statusBus.subscribe(downloadBatchCallback, mainThreadDispatcher, NO_MIN_DELIVERY_INTERVAL);
+    }
+
+    @Override
+    public void addDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback,
+                                         Executor callbackExecutor,
+                                         long minDeliveryIntervalInMillis) {
+        statusBus.subscribe(downloadBatchCallback, callbackExecutor, minDeliveryIntervalInMillis);
+    }
+
+    @Override
+    public void addDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback,
+                                         DownloadBatchStatusSubscriptionFilter filter,
+                                         Executor callbackExecutor,
+                                         long minDeliveryIntervalInMillis) {
+        statusBus.subscribe(downloadBatchCallback, filter, callbackExecutor, minDeliveryIntervalInMillis);
     }
 
     @Override
     public void removeDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback) {
-        synchronized (waitForDownloadBatchStatusCallback) {
-            if (callbacks.contains(downloadBatchCallback)) {
-                callbacks.remove(downloadBatchCallback);
-            }
-        }
+        statusBus.unsubscribe(downloadBatchCallback);
     }
 
     @WorkerThread
@@ -146,14 +191,135 @@ class LiteDownloadManager implements DownloadManager {
     }
 
     private List<DownloadBatchStatus> executeGetAllDownloadBatchStatuses() {
-        List<DownloadBatchStatus> downloadBatchStatuses = new ArrayList<>(downloadBatchMap.size());
+        List<DownloadBatchStatus> downloadBatchStatuses = new ArrayList<>(downloadBatchMap.size() + completedBatchStatuses.size());
 
         for (DownloadBatch downloadBatch : downloadBatchMap.values()) {
             downloadBatchStatuses.add(downloadBatch.status());
         }
+        downloadBatchStatuses.addAll(completedBatchStatuses.values());
         return downloadBatchStatuses;
     }
 
+    @WorkerThread
+    @Override
+    public List<DownloadBatchStatus> getDownloadBatchStatuses(int offset, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        int firstPosition = Math.max(offset, 0);
+        return downloadsBatchPersistence.queryBatchStatusesSync(
+                persistence -> persistence.loadBatchesPage(firstPosition, limit),
+                this::knownStatusOf
+        );
+    }
+
+    @Override
+    public void getDownloadBatchStatuses(int offset, int limit, AllBatchStatusesCallback callback) {
+        executor.submit(() -> {
+            List<DownloadBatchStatus> downloadBatchStatuses = getDownloadBatchStatuses(offset, limit);
+            callbackHandler.post(() -> callback.onReceived(downloadBatchStatuses));
+        });
+    }
+
+    @WorkerThread
+    @Override
+    public List<DownloadBatchStatus> getDownloadBatchStatusesWith(Set<DownloadBatchStatus.Status> statuses) {
+        List<DownloadBatchStatus> downloadBatchStatuses = downloadsBatchPersistence.queryBatchStatusesSync(
+                persistence -> persistence.loadBatches(statuses),
+                this::knownStatusOf
+        );
+        // the stored status can lag behind the one known in memory
+        List<DownloadBatchStatus> matchingBatchStatuses = new ArrayList<>(downloadBatchStatuses.size());
+        for (DownloadBatchStatus downloadBatchStatus : downloadBatchStatuses) {
+            if (statuses.contains(downloadBatchStatus.status())) {
+                matchingBatchStatuses.add(downloadBatchStatus);
+            }
+        }
+        return matchingBatchStatuses;
+    }
+
+    @Override
+    public void getDownloadBatchStatusesWith(Set<DownloadBatchStatus.Status> statuses, AllBatchStatusesCallback callback) {
+        executor.submit(() -> {
+            List<DownloadBatchStatus> downloadBatchStatuses = getDownloadBatchStatusesWith(statuses);
+            callbackHandler.post(() -> callback.onReceived(downloadBatchStatuses));
+        });
+    }
+
+    @WorkerThread
+    @Override
+    public List<DownloadBatchStatus> getDownloadBatchStatusesIn(StorageRoot storageRoot) {
+        return downloadsBatchPersistence.queryBatchStatusesSync(persistence -> persistence.loadBatchesIn(storageRoot.path()), this::knownStatusOf);
+    }
+
+    @Override
+    public void getDownloadBatchStatusesIn(StorageRoot storageRoot, AllBatchStatusesCallback callback) {
+        queryBatchStatusesAsync(persistence -> persistence.loadBatchesIn(storageRoot.path()), callback);
+    }
+
+    @WorkerThread
+    @Override
+    public List<DownloadBatchStatus> getDownloadBatchStatusesDownloadedAfter(long timestampInMillis) {
+        return downloadsBatchPersistence.queryBatchStatusesSync(
+                persistence -> persistence.loadBatchesDownloadedAfter(timestampInMillis),
+                this::knownStatusOf
+        );
+    }
+
+    @Override
+    public void getDownloadBatchStatusesDownloadedAfter(long timestampInMillis, AllBatchStatusesCallback callback) {
+        queryBatchStatusesAsync(persistence -> persistence.loadBatchesDownloadedAfter(timestampInMillis), callback);
+    }
+
+    private void queryBatchStatusesAsync(DownloadsBatchPersistence.BatchQuery batchQuery, AllBatchStatusesCallback callback) {
+        executor.submit(() -> {
+            List<DownloadBatchStatus> downloadBatchStatuses = downloadsBatchPersistence.queryBatchStatusesSync(batchQuery, this::knownStatusOf);
+            callbackHandler.post(() -> callback.onReceived(downloadBatchStatuses));
+        });
+    }
+
+    @Nullable
+    private DownloadBatchStatus knownStatusOf(DownloadBatchId downloadBatchId) {
+        DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
+        if (downloadBatch != null) {
+            return downloadBatch.status();
+        }
+        return completedBatchStatuses.get(downloadBatchId);
+    }
+
+    @WorkerThread
+    @Override
+    public Map<DownloadBatchStatus.Status, Integer> getDownloadBatchCountsByStatus() {
+        return downloadsBatchPersistence.countBatchesByStatusSync();
+    }
+
+    @Override
+    public void getDownloadBatchCountsByStatus(BatchStatusCountsCallback callback) {
+        executor.submit(() -> {
+            Map<DownloadBatchStatus.Status, Integer> batchCountsByStatus = downloadsBatchPersistence.countBatchesByStatusSync();
+            callbackHandler.post(() -> callback.onReceived(batchCountsByStatus));
+        });
+    }
+
+    /**
+     * Returns the running batch, or builds a completed batch from its stored rows for operations that only read its files.
+     * The completed batch is not handed to the service, so it is neither persisted nor downloaded again.
+     */
+    @Nullable
+    @WorkerThread
+    private DownloadBatch readOnlyBatchOf(DownloadBatchId downloadBatchId) {
+        DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
+        if (downloadBatch != null) {
+            return downloadBatch;
+        }
+
+        DownloadBatchStatus completedBatchStatus = completedBatchStatuses.get(downloadBatchId);
+        if (completedBatchStatus == null) {
+            return null;
+        }
+        return downloadsBatchPersistence.loadSync(fileOperations, completedBatchStatus);
+    }
+
     @Override
     public void getAllDownloadBatchStatuses(AllBatchStatusesCallback callback) {
         executor.submit((Runnable) () -> Wait.<Void>waitFor(serviceCriteria, waitForDownloadService)
@@ -174,7 +340,7 @@ class LiteDownloadManager implements DownloadManager {
 
     @Nullable
     private DownloadFileStatus executeGetDownloadStatusWithMatching(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId) {
-        DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
+        DownloadBatch downloadBatch = readOnlyBatchOf(downloadBatchId);
         if (downloadBatch == null) {
             return null;
         }
@@ -199,6 +365,19 @@ class LiteDownloadManager implements DownloadManager {
                 }));
     }
 
+    @Nullable
+    @Override
+    public InputStream openProgressiveInputStream(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId) {
+        return Wait.<InputStream>waitFor(serviceCriteria, waitForDownloadService)
+                .thenPerform(() -> {
+                    DownloadBatch downloadBatch = readOnlyBatchOf(downloadBatchId);
+                    if (downloadBatch == null) {
+                        return null;
+                    }
+                    return downloadBatch.openProgressiveInputStream(downloadFileId);
+                });
+    }
+
     @Override
     public void updateAllowedConnectionType(ConnectionType allowedConnectionType) {
         if (allowedConnectionType == null) {
@@ -228,7 +407,8 @@ class LiteDownloadManager implements DownloadManager {
     }
 
     private boolean alreadyContainsBatch(CompletedDownloadBatch completedDownloadBatch) {
-        return downloadBatchMap.containsKey(completedDownloadBatch.downloadBatchId());
+        DownloadBatchId downloadBatchId = completedDownloadBatch.downloadBatchId();
+        return downloadBatchMap.containsKey(downloadBatchId) || completedBatchStatuses.containsKey(downloadBatchId);
     }
 
 }
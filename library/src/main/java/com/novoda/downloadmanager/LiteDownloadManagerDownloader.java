@@ -1,9 +1,6 @@
 package com.novoda.downloadmanager;
 
-import android.os.Handler;
-
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
@@ -14,15 +11,14 @@ import static com.novoda.downloadmanager.DownloadBatchStatus.Status.PAUSED;
 class LiteDownloadManagerDownloader {
 
     private final Object waitForDownloadService;
-    private final Object waitForDownloadBatchStatusCallback;
     private final ExecutorService executor;
-    private final Handler callbackHandler;
+    private final MainThreadDispatcher mainThreadDispatcher;
     private final FileOperations fileOperations;
     private final DownloadsBatchPersistence downloadsBatchPersistence;
     private final DownloadsFilePersistence downloadsFilePersistence;
     private final DownloadBatchStatusNotificationDispatcher notificationDispatcher;
     private final DownloadBatchRequirementRule downloadBatchRequirementRule;
-    private final Set<DownloadBatchStatusCallback> callbacks;
+    private final DownloadBatchStatusBus statusBus;
     private final ConnectionChecker connectionChecker;
     private final CallbackThrottleCreator callbackThrottleCreator;
     private final DownloadBatchStatusFilter downloadBatchStatusFilter;
@@ -33,30 +29,28 @@ class LiteDownloadManagerDownloader {
     @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
 // Can't group anymore these are customisable options.
     LiteDownloadManagerDownloader(Object waitForDownloadService,
-                                  Object waitForDownloadBatchStatusCallback,
                                   ExecutorService executor,
-                                  Handler callbackHandler,
+                                  MainThreadDispatcher mainThreadDispatcher,
                                   FileOperations fileOperations,
                                   DownloadsBatchPersistence downloadsBatchPersistence,
                                   DownloadsFilePersistence downloadsFilePersistence,
                                   DownloadBatchStatusNotificationDispatcher notificationDispatcher,
                                   DownloadBatchRequirementRule downloadBatchRequirementRule,
                                   ConnectionChecker connectionChecker,
-                                  Set<DownloadBatchStatusCallback> callbacks,
+                                  DownloadBatchStatusBus statusBus,
                                   CallbackThrottleCreator callbackThrottleCreator,
                                   DownloadBatchStatusFilter downloadBatchStatusFilter,
                                   Wait.Criteria serviceCriteria) {
         this.waitForDownloadService = waitForDownloadService;
-        this.waitForDownloadBatchStatusCallback = waitForDownloadBatchStatusCallback;
         this.executor = executor;
-        this.callbackHandler = callbackHandler;
+        this.mainThreadDispatcher = mainThreadDispatcher;
         this.fileOperations = fileOperations;
         this.downloadsBatchPersistence = downloadsBatchPersistence;
         this.downloadsFilePersistence = downloadsFilePersistence;
         this.notificationDispatcher = notificationDispatcher;
         this.downloadBatchRequirementRule = downloadBatchRequirementRule;
         this.connectionChecker = connectionChecker;
-        this.callbacks = callbacks;
+        this.statusBus = statusBus;
         this.callbackThrottleCreator = callbackThrottleCreator;
         this.downloadBatchStatusFilter = downloadBatchStatusFilter;
         this.serviceCriteria = serviceCriteria;
@@ -94,6 +88,16 @@ class LiteDownloadManagerDownloader {
         });
     }
 
+    /**
+     * Deletes a batch that is not running, e.g. a completed batch loaded from its stored rows,
+     * without handing it to the service, which would persist and download it again.
+     */
+    void delete(DownloadBatch downloadBatch, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
+        downloadBatchMap.put(downloadBatch.getId(), downloadBatch);
+        downloadBatch.setCallback(downloadBatchCallback(downloadBatchMap));
+        downloadBatch.delete();
+    }
+
     private Wait.ThenPerform.Action<Void> executeDownload(DownloadBatch downloadBatch, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
         return () -> {
             InternalDownloadBatchStatus downloadBatchStatus = downloadBatch.status();
@@ -119,21 +123,20 @@ class LiteDownloadManagerDownloader {
             }
 
             DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
+            // Only updates that pass the filter are about to reach the callbacks, so only those are copied.
+            DownloadBatchStatus statusSnapshot = ((InternalDownloadBatchStatus) downloadBatchStatus).copy();
 
-            callbackHandler.post(() -> {
-                synchronized (waitForDownloadBatchStatusCallback) {
-                    for (DownloadBatchStatusCallback callback : callbacks) {
-                        callback.onUpdate(downloadBatchStatus);
-                    }
+            statusBus.publish(statusSnapshot);
 
-                    DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
-                    if (downloadBatch != null) {
-                        notificationDispatcher.updateNotification(downloadBatch.status());
+            mainThreadDispatcher.executeForBatch(downloadBatchId, () -> {
+                DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
+                if (downloadBatch != null) {
+                    notificationDispatcher.updateNotification(downloadBatch.status());
 
-                        if (downloadBatch.status().status() == DELETED) {
-                            Logger.v("batch " + downloadBatchId.rawId() + " is finally deleted, removing it from the map");
-                            downloadBatchMap.remove(downloadBatchId);
-                        }
+                    if (downloadBatch.status().status() == DELETED) {
+                        Logger.v("batch " + downloadBatchId.rawId() + " is finally deleted, removing it from the map");
+                        downloadBatchMap.remove(downloadBatchId);
+                        downloadBatchStatusFilter.forget(downloadBatchId);
                     }
                 }
             });
@@ -52,13 +52,14 @@ public class LiteDownloadService extends Service implements DownloadService {
 
     @Override
     public void download(DownloadBatch downloadBatch, DownloadBatchStatusCallback callback) {
-        callback.onUpdate(downloadBatch.status().copy());
+        callback.onUpdate(downloadBatch.status());
         downloadBatch.setCallback(callback);
 
         executor.execute(() -> {
             acquireCpuWakeLock();
-            downloadBatch.persist();
-            downloadBatch.download();
+            if (downloadBatch.persist()) {
+                downloadBatch.download();
+            }
             releaseHeldCpuWakeLock();
         });
     }
@@ -1,5 +1,7 @@
 package com.novoda.downloadmanager;
 
+import android.support.annotation.Nullable;
+
 class LiteDownloadsFilePersisted implements DownloadsFilePersisted {
 
     private final DownloadBatchId downloadBatchId;
@@ -7,17 +9,52 @@ class LiteDownloadsFilePersisted implements DownloadsFilePersisted {
     private final FilePath filePath;
     private final long totalFileSize;
     private final String url;
+    @Nullable
+    private final DownloadFileStatus.Status fileStatus;
+    private final long bytesDownloaded;
+    @Nullable
+    private final String validator;
+    @Nullable
+    private final DownloadError.Type errorType;
+    @Nullable
+    private final String errorMessage;
+
+    static DownloadsFilePersisted copyOf(DownloadsFilePersisted filePersisted) {
+        return new LiteDownloadsFilePersisted(
+                filePersisted.downloadBatchId(),
+                filePersisted.downloadFileId(),
+                filePersisted.filePath(),
+                filePersisted.totalFileSize(),
+                filePersisted.url(),
+                filePersisted.fileStatus(),
+                filePersisted.bytesDownloaded(),
+                filePersisted.validator(),
+                filePersisted.errorType(),
+                filePersisted.errorMessage()
+        );
+    }
 
+    @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     LiteDownloadsFilePersisted(DownloadBatchId downloadBatchId,
                                DownloadFileId downloadFileId,
                                FilePath filePath,
                                long totalFileSize,
-                               String url) {
+                               String url,
+                               @Nullable DownloadFileStatus.Status fileStatus,
+                               long bytesDownloaded,
+                               @Nullable String validator,
+                               @Nullable DownloadError.Type errorType,
+                               @Nullable String errorMessage) {
         this.downloadBatchId = downloadBatchId;
         this.downloadFileId = downloadFileId;
         this.filePath = filePath;
         this.totalFileSize = totalFileSize;
         this.url = url;
+        this.fileStatus = fileStatus;
+        this.bytesDownloaded = bytesDownloaded;
+        this.validator = validator;
+        this.errorType = errorType;
+        this.errorMessage = errorMessage;
     }
 
     @Override
@@ -45,4 +82,33 @@ class LiteDownloadsFilePersisted implements DownloadsFilePersisted {
         return downloadFileId;
     }
 
+    @Nullable
+    @Override
+    public DownloadFileStatus.Status fileStatus() {
+        return fileStatus;
+    }
+
+    @Override
+    public long bytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    @Nullable
+    @Override
+    public String validator() {
+        return validator;
+    }
+
+    @Nullable
+    @Override
+    public DownloadError.Type errorType() {
+        return errorType;
+    }
+
+    @Nullable
+    @Override
+    public String errorMessage() {
+        return errorMessage;
+    }
+
 }
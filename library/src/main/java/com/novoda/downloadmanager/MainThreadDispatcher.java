@@ -0,0 +1,109 @@
+package com.novoda.downloadmanager;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Gathers the work posted for the main thread by the download threads and runs it in one message per frame,
+ * instead of posting one message per update.
+ * <p>
+ * Messages are aligned on the frame interval of the {@link Clock}, so a burst of updates from many batches ends up
+ * in the same message. Work runs in the order it was posted, except that work for a batch takes the place of the work
+ * for the same batch that has not run yet, as it reads the latest status of the batch when it runs.
+ */
+class MainThreadDispatcher implements Executor {
+
+    private final Handler handler;
+    private final Clock clock;
+    private final long frameIntervalInMillis;
+    private final List<Runnable> pendingTasks = new ArrayList<>();
+    private final Map<DownloadBatchId, Integer> pendingBatchUpdatePositions = new HashMap<>();
+    private final Runnable flush = this::flush;
+
+    private boolean flushScheduled;
+    private long messageCount;
+    private long taskCount;
+    private long timeInTasksInNanos;
+
+    MainThreadDispatcher(Handler handler, Clock clock, long frameIntervalInMillis) {
+        this.handler = handler;
+        this.clock = clock;
+        this.frameIntervalInMillis = frameIntervalInMillis;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            pendingTasks.add(task);
+        }
+        scheduleFlushIfNeeded();
+    }
+
+    void executeForBatch(DownloadBatchId downloadBatchId, Runnable batchUpdate) {
+        synchronized (this) {
+            Integer pendingPosition = pendingBatchUpdatePositions.get(downloadBatchId);
+            if (pendingPosition == null) {
+                pendingBatchUpdatePositions.put(downloadBatchId, pendingTasks.size());
+                pendingTasks.add(batchUpdate);
+            } else {
+                pendingTasks.set(pendingPosition, batchUpdate);
+            }
+        }
+        scheduleFlushIfNeeded();
+    }
+
+    private void scheduleFlushIfNeeded() {
+        synchronized (this) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+
+        if (frameIntervalInMillis <= 0) {
+            handler.post(flush);
+        } else {
+            long delayUntilNextFrameInMillis = frameIntervalInMillis - clock.nowInMillis() % frameIntervalInMillis;
+            handler.postDelayed(flush, delayUntilNextFrameInMillis);
+        }
+    }
+
+    private void flush() {
+        List<Runnable> tasks;
+        synchronized (this) {
+            tasks = new ArrayList<>(pendingTasks);
+            pendingTasks.clear();
+            pendingBatchUpdatePositions.clear();
+            flushScheduled = false;
+        }
+
+        long startTimeInNanos = System.nanoTime();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        long elapsedTimeInNanos = System.nanoTime() - startTimeInNanos;
+
+        synchronized (this) {
+            messageCount++;
+            taskCount += tasks.size();
+            timeInTasksInNanos += elapsedTimeInNanos;
+        }
+    }
+
+    synchronized long messageCount() {
+        return messageCount;
+    }
+
+    synchronized long taskCount() {
+        return taskCount;
+    }
+
+    synchronized long timeInTasksInNanos() {
+        return timeInTasksInNanos;
+    }
+}
@@ -0,0 +1,69 @@
+package com.novoda.downloadmanager;
+
+/**
+ * What a notification shows, so that two notifications can be compared without building them.
+ * The state is what a notification is about, e.g. the status of a batch, and the progress is how far along it is.
+ */
+final class NotificationContent {
+
+    private final NotificationCustomizer.NotificationDisplayState notificationDisplayState;
+    private final Object state;
+    private final long progress;
+    private final long maxProgress;
+
+    NotificationContent(NotificationCustomizer.NotificationDisplayState notificationDisplayState,
+                        Object state,
+                        long progress,
+                        long maxProgress) {
+        this.notificationDisplayState = notificationDisplayState;
+        this.state = state;
+        this.progress = progress;
+        this.maxProgress = maxProgress;
+    }
+
+    boolean differsOnlyInProgressFrom(NotificationContent other) {
+        return notificationDisplayState == other.notificationDisplayState
+                && areEqual(state, other.state)
+                && (progress != other.progress || maxProgress != other.maxProgress);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        NotificationContent that = (NotificationContent) o;
+
+        return progress == that.progress
+                && maxProgress == that.maxProgress
+                && notificationDisplayState == that.notificationDisplayState
+                && areEqual(state, that.state);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = notificationDisplayState != null ? notificationDisplayState.hashCode() : 0;
+        result = 31 * result + (state != null ? state.hashCode() : 0);
+        result = 31 * result + (int) (progress ^ (progress >>> 32));
+        result = 31 * result + (int) (maxProgress ^ (maxProgress >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "NotificationContent{"
+                + "notificationDisplayState=" + notificationDisplayState
+                + ", state=" + state
+                + ", progress=" + progress
+                + ", maxProgress=" + maxProgress
+                + '}';
+    }
+
+    private static boolean areEqual(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -1,6 +1,7 @@
 package com.novoda.downloadmanager;
 
 import android.app.Notification;
+import android.support.annotation.Nullable;
 
 interface NotificationInformation {
 
@@ -9,4 +10,10 @@ interface NotificationInformation {
     Notification getNotification();
 
     NotificationCustomizer.NotificationDisplayState notificationDisplayState();
+
+    /**
+     * @return what the notification shows, or null if it is not known, in which case the notification is always posted.
+     */
+    @Nullable
+    NotificationContent content();
 }
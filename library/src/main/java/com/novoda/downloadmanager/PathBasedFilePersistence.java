@@ -7,19 +7,41 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
 
 class PathBasedFilePersistence implements FilePersistence {
 
     private static final boolean APPEND = true;
+    private static final long NO_CHECKPOINT = -1;
+    private static final String PART_FILE_EXTENSION = ".part";
 
-    private StorageRequirementRule storageRequirementRule;
+    private final FileDurabilityPolicy durabilityPolicy;
+    private final boolean writesToPartFile;
 
     @Nullable
     private FileOutputStream fileOutputStream;
+    @Nullable
+    private FileCheckpoint fileCheckpoint;
+    @Nullable
+    private File fileBeingWritten;
+    @Nullable
+    private File completedFile;
+    private long totalFileSize;
+    private long writtenOffset;
+    private long durableOffset;
+    private long lastSyncTimeInMillis;
+    private int syncCount;
+    private long syncDurationInNanos;
+
+    PathBasedFilePersistence(FileDurabilityPolicy durabilityPolicy, boolean writesToPartFile) {
+        this.durabilityPolicy = durabilityPolicy;
+        this.writesToPartFile = writesToPartFile;
+    }
 
     @Override
     public void initialiseWith(Context context, StorageRequirementRule storageRequirementRule) {
-        this.storageRequirementRule = storageRequirementRule;
+        // The storage requirement rule is checked by the BatchStorageReservation of the whole batch, before any of its files is created.
     }
 
     @Override
@@ -41,19 +63,72 @@ class PathBasedFilePersistence implements FilePersistence {
                 return FilePersistenceResult.ERROR_OPENING_FILE;
             }
 
-            if (storageRequirementRule.hasViolatedRule(file.getParentFile(), fileSize)) {
-                return FilePersistenceResult.ERROR_INSUFFICIENT_SPACE;
-            }
+            completedFile = file;
+            fileBeingWritten = writesToPartFile ? partFileOf(file) : file;
+            resumeInPlaceDownloadAsPartFile(file, fileBeingWritten);
 
-            fileOutputStream = new FileOutputStream(file, APPEND);
+            fileOutputStream = new FileOutputStream(fileBeingWritten, APPEND);
+            fileCheckpoint = FileCheckpoint.forFile(fileBeingWritten);
+            writtenOffset = truncateToDurableOffset(fileBeingWritten, fileOutputStream);
         } catch (FileNotFoundException e) {
             Logger.e(e, "File could not be opened");
             return FilePersistenceResult.ERROR_OPENING_FILE;
+        } catch (IOException e) {
+            Logger.e(e, "File could not be truncated to its last checkpoint");
+            return FilePersistenceResult.ERROR_OPENING_FILE;
         }
 
+        if (durabilityPolicy.recordsCheckpoints()) {
+            fileCheckpoint.write(writtenOffset);
+        }
+        totalFileSize = fileSize.totalSize();
+        durableOffset = writtenOffset;
+        lastSyncTimeInMillis = System.currentTimeMillis();
+        syncCount = 0;
+        syncDurationInNanos = 0;
         return FilePersistenceResult.SUCCESS;
     }
 
+    static File partFileOf(File file) {
+        return new File(file.getPath() + PART_FILE_EXTENSION);
+    }
+
+    private void resumeInPlaceDownloadAsPartFile(File file, File partFile) throws IOException {
+        if (file.equals(partFile) || !file.exists() || partFile.exists()) {
+            return;
+        }
+
+        Logger.w(String.format("path: %s was partially downloaded in place, moving it to its part file...", file.getAbsolutePath()));
+        // The checkpoint moves first, so that an interrupted move never leaves the part file without its durable offset.
+        if (!FileCheckpoint.forFile(file).moveTo(partFile)) {
+            throw new IOException("Failed to move the checkpoint of " + file.getAbsolutePath() + " to " + partFile.getAbsolutePath());
+        }
+        if (!file.renameTo(partFile)) {
+            FileCheckpoint.forFile(partFile).moveTo(file);
+            throw new IOException("Failed to move " + file.getAbsolutePath() + " to " + partFile.getAbsolutePath());
+        }
+    }
+
+    private long truncateToDurableOffset(File file, FileOutputStream outputStream) throws IOException {
+        FileChannel channel = outputStream.getChannel();
+        long durableSize = durableSizeOf(file);
+        if (channel.size() > durableSize) {
+            Logger.w(String.format("path: %s has %s bytes past its checkpoint, truncating...", file.getAbsolutePath(), channel.size() - durableSize));
+            channel.truncate(durableSize);
+        }
+        return channel.size();
+    }
+
+    private long durableSizeOf(File file) {
+        long length = file.length();
+        if (!durabilityPolicy.recordsCheckpoints()) {
+            return length;
+        }
+
+        long checkpoint = FileCheckpoint.forFile(file).read();
+        return checkpoint == NO_CHECKPOINT ? length : Math.min(checkpoint, length);
+    }
+
     private boolean ensureParentDirectoriesExistFor(File outputFile) {
         boolean parentExists = outputFile.getParentFile().exists();
         if (parentExists) {
@@ -73,11 +148,68 @@ class PathBasedFilePersistence implements FilePersistence {
 
         try {
             fileOutputStream.write(buffer, offset, numberOfBytesToWrite);
-            return true;
+            writtenOffset += numberOfBytesToWrite;
         } catch (IOException e) {
             Logger.e(e, "Exception while writing to internal physical storage");
             return false;
         }
+
+        if (writesToPartFile && writtenOffset == totalFileSize) {
+            return completePartFile(fileOutputStream);
+        }
+
+        long millisSinceLastSync = System.currentTimeMillis() - lastSyncTimeInMillis;
+        if (durabilityPolicy.shouldSync(writtenOffset - durableOffset, millisSinceLastSync)) {
+            return checkpoint(fileOutputStream);
+        }
+        return true;
+    }
+
+    private boolean checkpoint(FileOutputStream outputStream) {
+        long startTimeInNanos = System.nanoTime();
+        try {
+            outputStream.getFD().sync();
+        } catch (IOException e) {
+            Logger.e(e, "Exception while flushing to internal physical storage");
+            return false;
+        }
+
+        if (fileCheckpoint != null) {
+            fileCheckpoint.write(writtenOffset);
+        }
+        durableOffset = writtenOffset;
+        lastSyncTimeInMillis = System.currentTimeMillis();
+        syncCount++;
+        syncDurationInNanos += System.nanoTime() - startTimeInNanos;
+        return true;
+    }
+
+    /**
+     * Publishes the part file at its final path once every byte has been written,
+     * so that the final path never exposes a partially written file.
+     */
+    private boolean completePartFile(FileOutputStream outputStream) {
+        if (durabilityPolicy.syncsOnClose() && !checkpoint(outputStream)) {
+            return false;
+        }
+
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            Logger.e(e, "Failed to close fileOutputStream.");
+            return false;
+        }
+        logDurability();
+        fileOutputStream = null;
+
+        if (fileBeingWritten == null || completedFile == null || !fileBeingWritten.renameTo(completedFile)) {
+            Logger.e("Failed to rename part file to " + completedFile);
+            return false;
+        }
+        if (fileCheckpoint != null) {
+            fileCheckpoint.delete();
+        }
+        return true;
     }
 
     @Override
@@ -88,6 +220,12 @@ class PathBasedFilePersistence implements FilePersistence {
         }
 
         File fileToDelete = new File(absoluteFilePath.path());
+        File partFileToDelete = partFileOf(fileToDelete);
+        FileCheckpoint.forFile(fileToDelete).delete();
+        FileCheckpoint.forFile(partFileToDelete).delete();
+        if (partFileToDelete.exists() && !partFileToDelete.delete()) {
+            Logger.w("Failed to delete part file: " + partFileToDelete.getPath());
+        }
         if (!fileToDelete.exists()) {
             Logger.w("Abort delete, file does not exist: " + absoluteFilePath.path());
             return;
@@ -102,20 +240,39 @@ class PathBasedFilePersistence implements FilePersistence {
     @Override
     public long getCurrentSize(FilePath filePath) {
         File file = new File(filePath.path());
-        return file.length();
+        File partFile = partFileOf(file);
+        return partFile.exists() ? durableSizeOf(partFile) : durableSizeOf(file);
     }
 
     @Override
     public void close() {
         if (fileOutputStream == null) {
+            if (writesToPartFile && writtenOffset == totalFileSize) {
+                return;
+            }
             Logger.w("Abort closing stream, does not exist.");
             return;
         }
 
+        if (durabilityPolicy.syncsOnClose() && writtenOffset > durableOffset) {
+            checkpoint(fileOutputStream);
+        }
+        if (fileCheckpoint != null && durableOffset == totalFileSize) {
+            fileCheckpoint.delete();
+        }
+        logDurability();
+
         try {
             fileOutputStream.close();
         } catch (IOException e) {
             Logger.e(e, "Failed to close fileOutputStream.");
         }
+        fileOutputStream = null;
+    }
+
+    private void logDurability() {
+        Logger.v("Durability " + durabilityPolicy
+                         + ", syncs: " + syncCount
+                         + ", time spent syncing in millis: " + TimeUnit.NANOSECONDS.toMillis(syncDurationInNanos));
     }
 }
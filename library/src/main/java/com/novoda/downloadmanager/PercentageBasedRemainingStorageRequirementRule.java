@@ -1,32 +1,30 @@
 package com.novoda.downloadmanager;
 
-import android.annotation.SuppressLint;
 import android.support.annotation.FloatRange;
 
 import java.io.File;
 
 class PercentageBasedRemainingStorageRequirementRule implements StorageRequirementRule {
 
-    private final StorageCapacityReader storageCapacityReader;
+    private final StorageLedger storageLedger;
     private final float percentageOfStorageRemaining;
 
-    PercentageBasedRemainingStorageRequirementRule(StorageCapacityReader storageCapacityReader,
+    PercentageBasedRemainingStorageRequirementRule(StorageLedger storageLedger,
                                                    @FloatRange(from = 0.0, to = 0.5) float percentageOfStorageRemaining) {
-        this.storageCapacityReader = storageCapacityReader;
+        this.storageLedger = storageLedger;
         this.percentageOfStorageRemaining = percentageOfStorageRemaining;
     }
 
-    @SuppressLint("UsableSpace")
     @Override
     public boolean hasViolatedRule(File storageDirectory,
                                    FileSize downloadFileSize) {
-        long storageCapacityInBytes = storageCapacityReader.storageCapacityInBytes(storageDirectory.getPath());
+        long storageCapacityInBytes = storageLedger.capacityInBytes(storageDirectory);
         long minimumStorageRequiredInBytes = (long) (storageCapacityInBytes * percentageOfStorageRemaining);
-        long usableStorageInBytes = storageDirectory.getUsableSpace();
-        long remainingStorageAfterDownloadInBytes = usableStorageInBytes - downloadFileSize.remainingSize();
+        long availableStorageInBytes = storageLedger.availableInBytes(storageDirectory);
+        long remainingStorageAfterDownloadInBytes = availableStorageInBytes - downloadFileSize.remainingSize();
 
         Logger.v("Storage capacity in bytes: ", storageCapacityInBytes);
-        Logger.v("Usable storage in bytes: ", usableStorageInBytes);
+        Logger.v("Available storage in bytes: ", availableStorageInBytes);
         Logger.v("Minimum required storage in bytes: ", minimumStorageRequiredInBytes);
         return remainingStorageAfterDownloadInBytes < minimumStorageRequiredInBytes;
     }
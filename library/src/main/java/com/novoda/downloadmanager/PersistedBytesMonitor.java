@@ -0,0 +1,70 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Tracks how many bytes of a file have been persisted, so that readers can block
+ * until the range they are interested in is available.
+ */
+class PersistedBytesMonitor {
+
+    static final long END_OF_FILE = -1;
+
+    private long persistedBytes;
+    private long totalBytes;
+    @Nullable
+    private String failure;
+
+    PersistedBytesMonitor(FileSize fileSize) {
+        this.persistedBytes = fileSize.currentSize();
+        this.totalBytes = fileSize.totalSize();
+    }
+
+    synchronized void update(FileSize fileSize) {
+        persistedBytes = fileSize.currentSize();
+        totalBytes = fileSize.totalSize();
+        failure = null;
+        notifyAll();
+    }
+
+    synchronized void fail(String cause) {
+        failure = cause;
+        notifyAll();
+    }
+
+    synchronized long persistedBytes() {
+        return persistedBytes;
+    }
+
+    /**
+     * Blocks until bytes after the given position have been persisted.
+     *
+     * @return the number of persisted bytes, or {@link #END_OF_FILE} if the file is complete and the position is past its end.
+     * @throws IOException if the download fails or is deleted, or the reader is interrupted.
+     */
+    synchronized long awaitBytesAfter(long position) throws IOException {
+        while (persistedBytes <= position) {
+            if (isComplete()) {
+                return END_OF_FILE;
+            }
+            if (failure != null) {
+                throw new IOException("Download stopped before byte " + position + " was persisted: " + failure);
+            }
+
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for byte " + position + " to be persisted");
+            }
+        }
+        return persistedBytes;
+    }
+
+    private boolean isComplete() {
+        return totalBytes > 0 && persistedBytes >= totalBytes;
+    }
+}
@@ -0,0 +1,108 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads a file while it is being downloaded. Reads block until the requested bytes have been persisted
+ * and only return end of stream once the whole file has been downloaded.
+ */
+class ProgressiveFileInputStream extends InputStream {
+
+    private static final String READ_ONLY = "r";
+    private static final int UNSIGNED_BYTE_MASK = 0xFF;
+
+    private final FilePath filePath;
+    private final PersistedBytesMonitor persistedBytesMonitor;
+
+    @Nullable
+    private RandomAccessFile file;
+    private long position;
+    private boolean closed;
+
+    ProgressiveFileInputStream(FilePath filePath, PersistedBytesMonitor persistedBytesMonitor) {
+        this.filePath = filePath;
+        this.persistedBytesMonitor = persistedBytesMonitor;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] singleByte = new byte[1];
+        int bytesRead = read(singleByte, 0, 1);
+        return bytesRead == -1 ? -1 : singleByte[0] & UNSIGNED_BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        ensureNotClosed();
+        if (length == 0) {
+            return 0;
+        }
+
+        long persistedBytes = persistedBytesMonitor.awaitBytesAfter(position);
+        if (persistedBytes == PersistedBytesMonitor.END_OF_FILE) {
+            return -1;
+        }
+
+        int bytesToRead = (int) Math.min(length, persistedBytes - position);
+        RandomAccessFile randomAccessFile = openFileIfNecessary();
+        randomAccessFile.seek(position);
+        int bytesRead = randomAccessFile.read(buffer, offset, bytesToRead);
+        if (bytesRead > 0) {
+            position += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long bytes) throws IOException {
+        ensureNotClosed();
+        long bytesToSkip = Math.max(0, Math.min(bytes, persistedBytesMonitor.persistedBytes() - position));
+        position += bytesToSkip;
+        return bytesToSkip;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureNotClosed();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, persistedBytesMonitor.persistedBytes() - position));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    private void ensureNotClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed for " + filePath.path());
+        }
+    }
+
+    /**
+     * The bytes may still be in a part file, the open descriptor stays valid once it is renamed.
+     */
+    private RandomAccessFile openFileIfNecessary() throws FileNotFoundException {
+        if (file != null) {
+            return file;
+        }
+
+        File completedFile = new File(filePath.path());
+        File partFile = PathBasedFilePersistence.partFileOf(completedFile);
+        try {
+            file = new RandomAccessFile(partFile.exists() ? partFile : completedFile, READ_ONLY);
+        } catch (FileNotFoundException e) {
+            file = new RandomAccessFile(completedFile, READ_ONLY);
+        }
+        return file;
+    }
+}
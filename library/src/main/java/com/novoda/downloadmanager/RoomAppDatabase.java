@@ -8,13 +8,15 @@ import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-@Database(entities = {RoomBatch.class, RoomFile.class}, version = 4)
+@Database(entities = {RoomBatch.class, RoomFile.class}, version = 6)
 abstract class RoomAppDatabase extends RoomDatabase {
 
     private static final int VERSION_ONE = 1;
     private static final int VERSION_TWO = 2;
     private static final int VERSION_THREE = 3;
     private static final int VERSION_FOUR = 4;
+    private static final int VERSION_FIVE = 5;
+    private static final int VERSION_SIX = 6;
 
     private static volatile RoomAppDatabase singleInstance;
 
@@ -44,6 +46,9 @@ abstract class RoomAppDatabase extends RoomDatabase {
                 .addMigrations(new VersionOneToVersionTwoMigration())
                 .addMigrations(new VersionTwoToVersionThreeMigration(storageRoot))
                 .addMigrations(new VersionThreeToVersionFourMigration())
+                .addMigrations(new VersionFourToVersionFiveMigration())
+                .addMigrations(new VersionFiveToVersionSixMigration())
+                .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
                 .build();
     }
 
@@ -104,4 +109,35 @@ abstract class RoomAppDatabase extends RoomDatabase {
         }
     }
 
+    private static final class VersionFourToVersionFiveMigration extends Migration {
+
+        VersionFourToVersionFiveMigration() {
+            super(VERSION_FOUR, VERSION_FIVE);
+        }
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `file_status` TEXT");
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `bytes_downloaded` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `validator` TEXT");
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `error_type` TEXT");
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `error_message` TEXT");
+        }
+    }
+
+    private static final class VersionFiveToVersionSixMigration extends Migration {
+
+        VersionFiveToVersionSixMigration() {
+            super(VERSION_FIVE, VERSION_SIX);
+        }
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_RoomBatch_batch_status` ON `RoomBatch` (`batch_status`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_RoomBatch_batch_downloaded_date_time_in_millis` "
+                                     + "ON `RoomBatch` (`batch_downloaded_date_time_in_millis`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_RoomBatch_storage_root` ON `RoomBatch` (`storage_root`)");
+        }
+    }
+
 }
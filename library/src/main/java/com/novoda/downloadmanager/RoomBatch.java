@@ -7,7 +7,12 @@ import android.arch.persistence.room.PrimaryKey;
 import android.support.annotation.NonNull;
 
 @SuppressWarnings("checkstyle:visibilitymodifier") // Accessors will add a lot of boilerplate code.
-@Entity(indices = {@Index("batch_id")})
+@Entity(indices = {
+        @Index("batch_id"),
+        @Index("batch_status"),
+        @Index("batch_downloaded_date_time_in_millis"),
+        @Index("storage_root")
+})
 class RoomBatch {
 
     @NonNull
@@ -1,12 +1,10 @@
 package com.novoda.downloadmanager;
 
 import android.arch.persistence.room.Dao;
-import android.arch.persistence.room.Delete;
 import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
 import android.arch.persistence.room.Transaction;
-import android.arch.persistence.room.Update;
 
 import java.util.List;
 
@@ -24,9 +22,40 @@ interface RoomBatchDao {
     @Query("SELECT * FROM RoomBatch WHERE RoomBatch.batch_id = :batchId")
     RoomBatch load(String batchId);
 
-    @Delete
-    void delete(RoomBatch... roomBatches);
+    @Query("SELECT * FROM RoomBatch WHERE batch_id IN (:batchIds)")
+    List<RoomBatch> loadAll(List<String> batchIds);
 
-    @Update(onConflict = OnConflictStrategy.REPLACE)
-    void update(RoomBatch... roomBatches);
+    @Query("SELECT * FROM RoomBatch WHERE batch_status IN (:statuses) ORDER BY batch_downloaded_date_time_in_millis DESC")
+    List<RoomBatch> loadAllWithStatusIn(List<String> statuses);
+
+    @Query("SELECT * FROM RoomBatch WHERE storage_root = :storageRoot ORDER BY batch_downloaded_date_time_in_millis DESC")
+    List<RoomBatch> loadAllIn(String storageRoot);
+
+    @Query("SELECT * FROM RoomBatch WHERE batch_downloaded_date_time_in_millis > :timestampInMillis "
+            + "ORDER BY batch_downloaded_date_time_in_millis DESC")
+    List<RoomBatch> loadAllDownloadedAfter(long timestampInMillis);
+
+    @Query("SELECT * FROM RoomBatch ORDER BY batch_downloaded_date_time_in_millis DESC, batch_id ASC LIMIT :limit OFFSET :offset")
+    List<RoomBatch> loadPage(int offset, int limit);
+
+    @Query("SELECT batch_status, COUNT(*) AS batch_count FROM RoomBatch GROUP BY batch_status")
+    List<RoomBatchStatusCount> countByStatus();
+
+    @Query("DELETE FROM RoomBatch WHERE batch_id = :batchId")
+    int delete(String batchId);
+
+    @Query("DELETE FROM RoomBatch WHERE batch_id IN (:batchIds)")
+    int delete(List<String> batchIds);
+
+    @Query("UPDATE RoomBatch SET batch_status = :status WHERE batch_id = :batchId")
+    int updateStatus(String batchId, String status);
+
+    @Query("UPDATE RoomBatch SET batch_status = :status WHERE batch_id IN (:batchIds)")
+    int updateStatus(List<String> batchIds, String status);
+
+    @Query("UPDATE RoomBatch SET notification_seen = :notificationSeen WHERE batch_id = :batchId")
+    int updateNotificationSeen(String batchId, boolean notificationSeen);
+
+    @Query("UPDATE RoomBatch SET notification_seen = :notificationSeen WHERE batch_id IN (:batchIds)")
+    int updateNotificationSeen(List<String> batchIds, boolean notificationSeen);
 }
@@ -0,0 +1,13 @@
+package com.novoda.downloadmanager;
+
+import android.arch.persistence.room.ColumnInfo;
+
+@SuppressWarnings("checkstyle:visibilitymodifier") // Accessors will add a lot of boilerplate code.
+class RoomBatchStatusCount {
+
+    @ColumnInfo(name = "batch_status")
+    public String status;
+
+    @ColumnInfo(name = "batch_count")
+    public int count;
+}
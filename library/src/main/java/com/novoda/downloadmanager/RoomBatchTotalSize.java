@@ -0,0 +1,13 @@
+package com.novoda.downloadmanager;
+
+import android.arch.persistence.room.ColumnInfo;
+
+@SuppressWarnings("checkstyle:visibilitymodifier") // Accessors will add a lot of boilerplate code.
+class RoomBatchTotalSize {
+
+    @ColumnInfo(name = "batch_id")
+    public String batchId;
+
+    @ColumnInfo(name = "batch_total_size")
+    public long totalSize;
+}
@@ -3,13 +3,26 @@ package com.novoda.downloadmanager;
 import android.content.Context;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-final class RoomDownloadsPersistence implements DownloadsPersistence {
+final class RoomDownloadsPersistence implements DownloadsPersistence, DownloadsPersistenceQueries {
 
-    private static final boolean NOTIFICATION_SEEN = true;
+    // SQLite limits a statement to 999 bound variables.
+    private static final int MAX_BATCH_IDS_PER_STATEMENT = 900;
     private final RoomAppDatabase database;
+    // Transactions nest, so only the outermost one of each thread is timed.
+    private final ThreadLocal<TransactionTimer> transactionTimer = new ThreadLocal<TransactionTimer>() {
+        @Override
+        protected TransactionTimer initialValue() {
+            return new TransactionTimer();
+        }
+    };
 
     static RoomDownloadsPersistence newInstance(Context context) {
         RoomAppDatabase database = RoomAppDatabase.obtainInstance(context);
@@ -22,12 +35,24 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
 
     @Override
     public void startTransaction() {
+        long startTimeInNanos = System.nanoTime();
         database.beginTransaction();
+        TransactionTimer timer = transactionTimer.get();
+        if (timer.depth == 0) {
+            timer.startTimeInNanos = startTimeInNanos;
+        }
+        timer.depth++;
     }
 
     @Override
     public void endTransaction() {
+        TransactionTimer timer = transactionTimer.get();
+        timer.depth--;
         database.endTransaction();
+        if (timer.depth == 0) {
+            long durationInMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - timer.startTimeInNanos);
+            Logger.v("transaction on " + Thread.currentThread().getName() + " took " + durationInMicros + "us");
+        }
     }
 
     @Override
@@ -50,8 +75,56 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
 
     @Override
     public List<DownloadsBatchPersisted> loadBatches() {
-        List<RoomBatch> roomBatches = database.roomBatchDao().loadAll();
+        return getDownloadsBatchPersisted(database.roomBatchDao().loadAll());
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatches(Set<DownloadBatchStatus.Status> statuses) {
+        if (statuses.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> rawStatuses = new ArrayList<>(statuses.size());
+        for (DownloadBatchStatus.Status status : statuses) {
+            rawStatuses.add(status.toRawValue());
+        }
+        return getDownloadsBatchPersisted(database.roomBatchDao().loadAllWithStatusIn(rawStatuses));
+    }
 
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesIn(String storageRoot) {
+        return getDownloadsBatchPersisted(database.roomBatchDao().loadAllIn(storageRoot));
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesDownloadedAfter(long timestampInMillis) {
+        return getDownloadsBatchPersisted(database.roomBatchDao().loadAllDownloadedAfter(timestampInMillis));
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesWithIds(List<DownloadBatchId> downloadBatchIds) {
+        List<RoomBatch> roomBatches = new ArrayList<>();
+        for (List<String> rawBatchIds : rawIdsInChunksFrom(downloadBatchIds)) {
+            roomBatches.addAll(database.roomBatchDao().loadAll(rawBatchIds));
+        }
+        return getDownloadsBatchPersisted(roomBatches);
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesPage(int offset, int limit) {
+        return getDownloadsBatchPersisted(database.roomBatchDao().loadPage(offset, limit));
+    }
+
+    @Override
+    public Map<DownloadBatchStatus.Status, Integer> countBatchesByStatus() {
+        Map<DownloadBatchStatus.Status, Integer> batchCountsByStatus = new EnumMap<>(DownloadBatchStatus.Status.class);
+        for (RoomBatchStatusCount roomBatchStatusCount : database.roomBatchDao().countByStatus()) {
+            batchCountsByStatus.put(DownloadBatchStatus.Status.from(roomBatchStatusCount.status), roomBatchStatusCount.count);
+        }
+        return batchCountsByStatus;
+    }
+
+    private List<DownloadsBatchPersisted> getDownloadsBatchPersisted(List<RoomBatch> roomBatches) {
         List<DownloadsBatchPersisted> batchPersistedList = new ArrayList<>(roomBatches.size());
         for (RoomBatch roomBatch : roomBatches) {
             DownloadsBatchPersisted batchPersisted = new LiteDownloadsBatchPersisted(
@@ -70,14 +143,42 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
 
     @Override
     public void persistFile(DownloadsFilePersisted filePersisted) {
+        database.roomFileDao().insert(roomFileFrom(filePersisted));
+    }
+
+    @Override
+    public void persistFiles(List<DownloadsFilePersisted> filesPersisted) {
+        List<RoomFile> roomFiles = new ArrayList<>(filesPersisted.size());
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            roomFiles.add(roomFileFrom(filePersisted));
+        }
+
+        database.roomFileDao().insert(roomFiles);
+    }
+
+    private RoomFile roomFileFrom(DownloadsFilePersisted filePersisted) {
         RoomFile roomFile = new RoomFile();
         roomFile.totalSize = filePersisted.totalFileSize();
         roomFile.batchId = filePersisted.downloadBatchId().rawId();
         roomFile.url = filePersisted.url();
         roomFile.path = filePersisted.filePath().path();
         roomFile.fileId = filePersisted.downloadFileId().rawId();
+        roomFile.status = filePersisted.fileStatus() == null ? null : filePersisted.fileStatus().toRawValue();
+        roomFile.bytesDownloaded = filePersisted.bytesDownloaded();
+        roomFile.validator = filePersisted.validator();
+        roomFile.errorType = filePersisted.errorType() == null ? null : filePersisted.errorType().name();
+        roomFile.errorMessage = filePersisted.errorMessage();
+        return roomFile;
+    }
 
-        database.roomFileDao().insert(roomFile);
+    @Override
+    public int updateFiles(List<DownloadsFilePersisted> filesPersisted) {
+        List<RoomFile> roomFiles = new ArrayList<>(filesPersisted.size());
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            roomFiles.add(roomFileFrom(filePersisted));
+        }
+
+        return database.roomFileDao().update(roomFiles);
     }
 
     @Override
@@ -92,6 +193,32 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
         return getDownloadsFilePersisted(roomFiles);
     }
 
+    @Override
+    public Map<DownloadBatchId, Long> sumTotalFileSizes(Set<DownloadBatchStatus.Status> statuses) {
+        Map<DownloadBatchId, Long> totalFileSizesByBatchId = new HashMap<>();
+        if (statuses.isEmpty()) {
+            return totalFileSizesByBatchId;
+        }
+
+        List<String> rawStatuses = new ArrayList<>(statuses.size());
+        for (DownloadBatchStatus.Status status : statuses) {
+            rawStatuses.add(status.toRawValue());
+        }
+        for (RoomBatchTotalSize roomBatchTotalSize : database.roomFileDao().sumTotalSizesForBatchesWithStatusIn(rawStatuses)) {
+            totalFileSizesByBatchId.put(DownloadBatchIdCreator.createSanitizedFrom(roomBatchTotalSize.batchId), roomBatchTotalSize.totalSize);
+        }
+        return totalFileSizesByBatchId;
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadFilesIn(List<DownloadBatchId> downloadBatchIds) {
+        List<RoomFile> roomFiles = new ArrayList<>();
+        for (List<String> rawBatchIds : rawIdsInChunksFrom(downloadBatchIds)) {
+            roomFiles.addAll(database.roomFileDao().loadAllFilesFor(rawBatchIds));
+        }
+        return getDownloadsFilePersisted(roomFiles);
+    }
+
     private List<DownloadsFilePersisted> getDownloadsFilePersisted(List<RoomFile> roomFiles) {
         List<DownloadsFilePersisted> filePersistedList = new ArrayList<>(roomFiles.size());
         for (RoomFile roomFile : roomFiles) {
@@ -100,7 +227,12 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
                     DownloadFileIdCreator.createFrom(roomFile.fileId),
                     new LiteFilePath(roomFile.path),
                     roomFile.totalSize,
-                    roomFile.url
+                    roomFile.url,
+                    roomFile.status == null ? null : DownloadFileStatus.Status.from(roomFile.status),
+                    roomFile.bytesDownloaded,
+                    roomFile.validator,
+                    roomFile.errorType == null ? null : DownloadError.Type.valueOf(roomFile.errorType),
+                    roomFile.errorMessage
             );
             filePersistedList.add(filePersisted);
         }
@@ -110,78 +242,70 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
 
     @Override
     public boolean delete(DownloadBatchId downloadBatchId) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
-        }
+        return database.roomBatchDao().delete(downloadBatchId.rawId()) > 0;
+    }
 
-        database.roomBatchDao().delete(roomBatch);
-        return true;
+    @Override
+    public int delete(List<DownloadBatchId> downloadBatchIds) {
+        int deletedCount = 0;
+        for (List<String> rawBatchIds : rawIdsInChunksFrom(downloadBatchIds)) {
+            deletedCount += database.roomBatchDao().delete(rawBatchIds);
+        }
+        return deletedCount;
     }
 
     @Override
     public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
-        }
+        return database.roomBatchDao().updateStatus(downloadBatchId.rawId(), status.toRawValue()) > 0;
+    }
 
-        roomBatch.status = status.toRawValue();
-        database.roomBatchDao().update(roomBatch);
-        return true;
+    @Override
+    public int update(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        int updatedCount = 0;
+        for (List<String> rawBatchIds : rawIdsInChunksFrom(downloadBatchIds)) {
+            updatedCount += database.roomBatchDao().updateStatus(rawBatchIds, status.toRawValue());
+        }
+        return updatedCount;
     }
 
     @Override
     public boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
-        }
-        roomBatch.notificationSeen = notificationSeen;
-        database.roomBatchDao().update(roomBatch);
-        return true;
+        return database.roomBatchDao().updateNotificationSeen(downloadBatchId.rawId(), notificationSeen) > 0;
     }
 
     @Override
-    public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
-        DownloadBatchId downloadBatchId = completedDownloadBatch.downloadBatchId();
-        DownloadBatchTitle downloadBatchTitle = completedDownloadBatch.downloadBatchTitle();
-        DownloadBatchStatus.Status downloadBatchStatus = DownloadBatchStatus.Status.DOWNLOADED;
-        long downloadedDateTimeInMillis = completedDownloadBatch.downloadedDateTimeInMillis();
-        StorageRoot storageRoot = completedDownloadBatch.storageRoot();
-
-        DownloadsBatchPersisted persistedBatch = new LiteDownloadsBatchPersisted(
-                downloadBatchTitle,
-                downloadBatchId,
-                downloadBatchStatus,
-                downloadedDateTimeInMillis,
-                NOTIFICATION_SEEN,
-                storageRoot.path()
-        );
-        persistBatch(persistedBatch);
-
-        for (CompletedDownloadFile completedDownloadFile : completedDownloadBatch.completedDownloadFiles()) {
-            String url = completedDownloadFile.originalNetworkAddress();
-
-            String rawDownloadFileId = rawFileIdFrom(completedDownloadBatch.downloadBatchTitle(), completedDownloadFile);
-            DownloadFileId downloadFileId = DownloadFileIdCreator.createFrom(rawDownloadFileId);
-
-            DownloadsFilePersisted persistedFile = new LiteDownloadsFilePersisted(
-                    downloadBatchId,
-                    downloadFileId,
-                    new LiteFilePath(completedDownloadFile.newFileLocation()),
-                    completedDownloadFile.fileSize().totalSize(),
-                    url
-            );
-            persistFile(persistedFile);
+    public int update(List<DownloadBatchId> downloadBatchIds, boolean notificationSeen) {
+        int updatedCount = 0;
+        for (List<String> rawBatchIds : rawIdsInChunksFrom(downloadBatchIds)) {
+            updatedCount += database.roomBatchDao().updateNotificationSeen(rawBatchIds, notificationSeen);
         }
+        return updatedCount;
     }
 
-    private String rawFileIdFrom(DownloadBatchTitle batch, CompletedDownloadFile completedDownloadFile) {
-        if (completedDownloadFile.fileId() == null || completedDownloadFile.fileId().isEmpty()) {
-            return batch.asString() + UUID.randomUUID();
-        } else {
-            return completedDownloadFile.fileId();
+    private static List<List<String>> rawIdsInChunksFrom(List<DownloadBatchId> downloadBatchIds) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>(Math.min(downloadBatchIds.size(), MAX_BATCH_IDS_PER_STATEMENT));
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            if (chunk.size() == MAX_BATCH_IDS_PER_STATEMENT) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(MAX_BATCH_IDS_PER_STATEMENT);
+            }
+            chunk.add(downloadBatchId.rawId());
         }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    @Override
+    public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
+        CompletedDownloadBatchPersister.persist(completedDownloadBatch, this);
+    }
+
+    private static final class TransactionTimer {
+
+        private int depth;
+        private long startTimeInNanos;
     }
 }
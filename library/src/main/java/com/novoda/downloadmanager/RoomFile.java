@@ -32,4 +32,19 @@ class RoomFile {
 
     @ColumnInfo(name = "url")
     String url;
+
+    @ColumnInfo(name = "file_status")
+    String status;
+
+    @ColumnInfo(name = "bytes_downloaded")
+    long bytesDownloaded;
+
+    @ColumnInfo(name = "validator")
+    String validator;
+
+    @ColumnInfo(name = "error_type")
+    String errorType;
+
+    @ColumnInfo(name = "error_message")
+    String errorMessage;
 }
@@ -5,6 +5,7 @@ import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
 import android.arch.persistence.room.Transaction;
+import android.arch.persistence.room.Update;
 
 import java.util.List;
 
@@ -14,10 +15,24 @@ interface RoomFileDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insert(RoomFile roomFile);
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(List<RoomFile> roomFiles);
+
+    @Update
+    int update(List<RoomFile> roomFiles);
+
     @Transaction
     @Query("SELECT * FROM RoomFile WHERE RoomFile.batch_id = :batchId")
     List<RoomFile> loadAllFilesFor(String batchId);
 
+    @Query("SELECT * FROM RoomFile WHERE RoomFile.batch_id IN (:batchIds)")
+    List<RoomFile> loadAllFilesFor(List<String> batchIds);
+
+    @Query("SELECT RoomFile.batch_id, SUM(RoomFile.total_size) AS batch_total_size FROM RoomFile"
+            + " INNER JOIN RoomBatch ON RoomBatch.batch_id = RoomFile.batch_id"
+            + " WHERE RoomBatch.batch_status IN (:batchStatuses) GROUP BY RoomFile.batch_id")
+    List<RoomBatchTotalSize> sumTotalSizesForBatchesWithStatusIn(List<String> batchStatuses);
+
     @Transaction
     @Query("SELECT * FROM RoomFile")
     List<RoomFile> loadAllFiles();
@@ -4,6 +4,18 @@ import android.app.Notification;
 import android.support.annotation.WorkerThread;
 import android.support.v4.app.NotificationManagerCompat;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts the notification of a payload, unless it shows the same content as the last one posted with its id.
+ * Notifications that only differ in progress are posted at most once per progress update interval,
+ * while any other change, such as a download that completes, fails or is deleted, is posted straight away.
+ * The latest progress skipped within the interval is posted once the interval has passed, so that the notification does not stall.
+ */
 class ServiceNotificationDispatcher<T> {
 
     private static final String NOTIFICATION_TAG = "download-manager";
@@ -12,6 +24,11 @@ class ServiceNotificationDispatcher<T> {
     private final Wait.Criteria serviceCriteria;
     private final NotificationCreator<T> notificationCreator;
     private final NotificationManagerCompat notificationManager;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+    private final long minProgressUpdateIntervalInMillis;
+    private final Map<Integer, PostedNotification> postedNotifications = new HashMap<>();
+    private final Map<Integer, T> skippedPayloads = new HashMap<>();
 
     private int persistentNotificationId;
     private DownloadManagerService service;
@@ -19,11 +36,17 @@ class ServiceNotificationDispatcher<T> {
     ServiceNotificationDispatcher(Object waitForDownloadService,
                                   Wait.Criteria serviceCriteria,
                                   NotificationCreator<T> notificationCreator,
-                                  NotificationManagerCompat notificationManager) {
+                                  NotificationManagerCompat notificationManager,
+                                  Clock clock,
+                                  ScheduledExecutorService scheduler,
+                                  long minProgressUpdateIntervalInMillis) {
         this.waitForDownloadService = waitForDownloadService;
         this.serviceCriteria = serviceCriteria;
         this.notificationCreator = notificationCreator;
         this.notificationManager = notificationManager;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.minProgressUpdateIntervalInMillis = minProgressUpdateIntervalInMillis;
     }
 
     @WorkerThread
@@ -35,6 +58,10 @@ class ServiceNotificationDispatcher<T> {
     private Wait.ThenPerform.Action<Void> executeUpdateNotification(T payload) {
         return () -> {
             NotificationInformation notificationInformation = notificationCreator.createNotification(payload);
+            if (shouldSkip(notificationInformation, payload)) {
+                Logger.v("skipping notification " + notificationInformation.getId() + ", its content is unchanged or too recent");
+                return null;
+            }
 
             dismissStackedNotification(notificationInformation);
 
@@ -44,6 +71,7 @@ class ServiceNotificationDispatcher<T> {
                     break;
                 case SINGLE_DISMISSIBLE_NOTIFICATION:
                     notificationManager.cancelAll();
+                    forgetPostedNotificationsExcept(notificationInformation.getId());
                     stackNotification(notificationInformation);
                     break;
                 case STACK_NOTIFICATION_NOT_DISMISSIBLE:
@@ -68,6 +96,65 @@ class ServiceNotificationDispatcher<T> {
         };
     }
 
+    private boolean shouldSkip(NotificationInformation notificationInformation, T payload) {
+        NotificationContent content = notificationInformation.content();
+        if (content == null) {
+            return false;
+        }
+
+        int notificationId = notificationInformation.getId();
+        long nowInMillis = clock.nowInMillis();
+        synchronized (postedNotifications) {
+            PostedNotification postedNotification = postedNotifications.get(notificationId);
+            if (postedNotification != null) {
+                if (postedNotification.content.equals(content)) {
+                    skippedPayloads.remove(notificationId);
+                    return true;
+                }
+                boolean progressOnly = content.differsOnlyInProgressFrom(postedNotification.content);
+                long elapsedTimeInMillis = nowInMillis - postedNotification.postedTimeInMillis;
+                if (progressOnly && elapsedTimeInMillis < minProgressUpdateIntervalInMillis) {
+                    if (skippedPayloads.put(notificationId, payload) == null) {
+                        scheduleSkippedUpdate(notificationId, minProgressUpdateIntervalInMillis - elapsedTimeInMillis);
+                    }
+                    return true;
+                }
+            }
+            skippedPayloads.remove(notificationId);
+            postedNotifications.put(notificationId, new PostedNotification(content, nowInMillis));
+            return false;
+        }
+    }
+
+    private void scheduleSkippedUpdate(int notificationId, long delayInMillis) {
+        scheduler.schedule(() -> {
+            T skippedPayload;
+            synchronized (postedNotifications) {
+                skippedPayload = skippedPayloads.remove(notificationId);
+            }
+            if (skippedPayload != null) {
+                updateNotification(skippedPayload);
+            }
+        }, delayInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void forgetPostedNotificationsExcept(int notificationId) {
+        synchronized (postedNotifications) {
+            PostedNotification postedNotification = postedNotifications.get(notificationId);
+            postedNotifications.clear();
+            if (postedNotification != null) {
+                postedNotifications.put(notificationId, postedNotification);
+            }
+
+            Iterator<Integer> skippedNotificationIds = skippedPayloads.keySet().iterator();
+            while (skippedNotificationIds.hasNext()) {
+                if (skippedNotificationIds.next() != notificationId) {
+                    skippedNotificationIds.remove();
+                }
+            }
+        }
+    }
+
     private void dismissStackedNotification(NotificationInformation notificationInformation) {
         notificationManager.cancel(NOTIFICATION_TAG, notificationInformation.getId());
     }
@@ -100,4 +187,15 @@ class ServiceNotificationDispatcher<T> {
         this.service = service;
         serviceCriteria.update(service);
     }
+
+    private static final class PostedNotification {
+
+        private final NotificationContent content;
+        private final long postedTimeInMillis;
+
+        PostedNotification(NotificationContent content, long postedTimeInMillis) {
+            this.content = content;
+            this.postedTimeInMillis = postedTimeInMillis;
+        }
+    }
 }
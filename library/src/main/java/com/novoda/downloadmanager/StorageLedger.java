@@ -0,0 +1,148 @@
+package com.novoda.downloadmanager;
+
+import android.annotation.SuppressLint;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the capacity of storage directories for a short interval and keeps track of
+ * the bytes reserved by batches that are still being downloaded. Storage requirement rules evaluate
+ * against the ledger instead of querying the file system, and see space promised to other downloads as taken.
+ * Bytes written since a capacity was read are subtracted from it until it is read again.
+ * Reservations are not attributed to volumes, so they are counted against every storage directory.
+ */
+final class StorageLedger {
+
+    private static final long REFRESH_INTERVAL_IN_MILLIS = 2000;
+
+    private final StorageCapacityReader storageCapacityReader;
+    private final long refreshIntervalInNanos;
+    private final Map<String, Capacity> capacities = new HashMap<>();
+    private final Map<String, Reservation> reservations = new HashMap<>();
+
+    private long reservedInBytes;
+    private long consumedInBytes;
+
+    static StorageLedger getInstance() {
+        return LazySingleton.INSTANCE;
+    }
+
+    StorageLedger(StorageCapacityReader storageCapacityReader, long refreshIntervalInMillis) {
+        this.storageCapacityReader = storageCapacityReader;
+        this.refreshIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalInMillis);
+    }
+
+    synchronized long capacityInBytes(File storageDirectory) {
+        return capacityOf(storageDirectory).capacityInBytes;
+    }
+
+    /**
+     * @return the usable space of the directory, minus the bytes written since it was read
+     * and the bytes reserved by downloads that have not been written yet.
+     */
+    synchronized long availableInBytes(File storageDirectory) {
+        Capacity capacity = capacityOf(storageDirectory);
+        return capacity.usableInBytes - (consumedInBytes - capacity.consumedAtReadInBytes) - reservedInBytes;
+    }
+
+    /**
+     * Reserves the given bytes under the key, replacing any previous reservation under it.
+     */
+    synchronized void reserve(String key, long bytes) {
+        release(key);
+        if (bytes > 0) {
+            reservations.put(key, new Reservation(bytes));
+            reservedInBytes += bytes;
+        }
+    }
+
+    /**
+     * Checks the rule and reserves the bytes in one step, so that no other reservation can take the space in between.
+     * Any previous reservation under the key is released first, so that it is not counted against itself.
+     *
+     * @return whether the bytes were reserved.
+     */
+    synchronized boolean tryReserve(String key, File storageDirectory, long bytes, StorageRequirementRule storageRequirementRule) {
+        release(key);
+        if (storageRequirementRule.hasViolatedRule(storageDirectory, InternalFileSizeCreator.createFromCurrentAndTotalSize(0, bytes))) {
+            return false;
+        }
+
+        reserve(key, bytes);
+        return true;
+    }
+
+    /**
+     * Marks bytes as written, taking them off the reservation under the key if there is one.
+     */
+    synchronized void consume(String key, long bytes) {
+        consumedInBytes += bytes;
+        Reservation reservation = reservations.get(key);
+        if (reservation == null) {
+            return;
+        }
+
+        long consumed = Math.min(reservation.bytes, bytes);
+        reservedInBytes -= consumed;
+        reservation.bytes -= consumed;
+        if (reservation.bytes == 0) {
+            reservations.remove(key);
+        }
+    }
+
+    synchronized void release(String key) {
+        Reservation reservation = reservations.remove(key);
+        if (reservation != null) {
+            reservedInBytes -= reservation.bytes;
+        }
+    }
+
+    @SuppressLint("UsableSpace")
+    private Capacity capacityOf(File storageDirectory) {
+        String path = storageDirectory.getPath();
+        long now = System.nanoTime();
+        Capacity capacity = capacities.get(path);
+        if (capacity == null || now - capacity.readAtInNanos >= refreshIntervalInNanos) {
+            long capacityInBytes = storageCapacityReader.storageCapacityInBytes(path);
+            long usableInBytes = storageDirectory.getUsableSpace();
+            capacity = new Capacity(capacityInBytes, usableInBytes, consumedInBytes, now);
+            capacities.put(path, capacity);
+        }
+        return capacity;
+    }
+
+    private static final class Capacity {
+
+        private final long capacityInBytes;
+        private final long usableInBytes;
+        private final long consumedAtReadInBytes;
+        private final long readAtInNanos;
+
+        Capacity(long capacityInBytes, long usableInBytes, long consumedAtReadInBytes, long readAtInNanos) {
+            this.capacityInBytes = capacityInBytes;
+            this.usableInBytes = usableInBytes;
+            this.consumedAtReadInBytes = consumedAtReadInBytes;
+            this.readAtInNanos = readAtInNanos;
+        }
+    }
+
+    /**
+     * Mutable, so that consuming bytes does not box a new value on every write.
+     */
+    private static final class Reservation {
+
+        private long bytes;
+
+        Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private static class LazySingleton {
+
+        private static final StorageLedger INSTANCE = new StorageLedger(new StorageCapacityReader(), REFRESH_INTERVAL_IN_MILLIS);
+    }
+}
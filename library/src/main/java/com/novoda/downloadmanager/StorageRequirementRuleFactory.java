@@ -18,7 +18,7 @@ public final class StorageRequirementRuleFactory {
      * @return the storage requirement rule to be evaluated when creating a file.
      */
     public static StorageRequirementRule createByteBasedRule(long bytesRemainingAfterDownload) {
-        return new ByteBasedRemainingStorageRequirementRule(new StorageCapacityReader(), bytesRemainingAfterDownload);
+        return new ByteBasedRemainingStorageRequirementRule(StorageLedger.getInstance(), bytesRemainingAfterDownload);
     }
 
     /**
@@ -32,6 +32,6 @@ public final class StorageRequirementRuleFactory {
      * @return the storage requirement rule to be evaluated when creating a file.
      */
     public static StorageRequirementRule createPercentageBasedRule(@FloatRange(from = 0.0, to = 0.5) float percentageOfStorageRemaining) {
-        return new PercentageBasedRemainingStorageRequirementRule(new StorageCapacityReader(), percentageOfStorageRemaining);
+        return new PercentageBasedRemainingStorageRequirementRule(StorageLedger.getInstance(), percentageOfStorageRemaining);
     }
 }
@@ -0,0 +1,54 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows every active batch in one notification, so that many batches downloading at the same time
+ * update a single notification rather than one each.
+ * While batches are active, the summary is sampled again every speed sample interval,
+ * so that its speed drops when no bytes arrive rather than showing the last one measured.
+ */
+class SummaryNotificationDispatcher {
+
+    private final DownloadBatchesSummaryTracker summaryTracker;
+    private final ServiceNotificationDispatcher<DownloadBatchesSummary> notificationDispatcher;
+    private final ScheduledExecutorService scheduler;
+
+    private boolean speedSampleScheduled;
+
+    SummaryNotificationDispatcher(DownloadBatchesSummaryTracker summaryTracker,
+                                  ServiceNotificationDispatcher<DownloadBatchesSummary> notificationDispatcher,
+                                  ScheduledExecutorService scheduler) {
+        this.summaryTracker = summaryTracker;
+        this.notificationDispatcher = notificationDispatcher;
+        this.scheduler = scheduler;
+    }
+
+    void updateNotification(DownloadBatchStatus downloadBatchStatus) {
+        DownloadBatchesSummary downloadBatchesSummary = summaryTracker.update(downloadBatchStatus);
+        notificationDispatcher.updateNotification(downloadBatchesSummary);
+        scheduleSpeedSample(downloadBatchesSummary);
+    }
+
+    private synchronized void scheduleSpeedSample(DownloadBatchesSummary downloadBatchesSummary) {
+        if (speedSampleScheduled || downloadBatchesSummary.activeBatchCount() == 0) {
+            return;
+        }
+        speedSampleScheduled = true;
+        scheduler.schedule(this::sampleSpeed, DownloadBatchesSummaryTracker.SPEED_SAMPLE_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void sampleSpeed() {
+        synchronized (this) {
+            speedSampleScheduled = false;
+        }
+        DownloadBatchesSummary downloadBatchesSummary = summaryTracker.summary();
+        notificationDispatcher.updateNotification(downloadBatchesSummary);
+        scheduleSpeedSample(downloadBatchesSummary);
+    }
+
+    void setDownloadService(DownloadService downloadService) {
+        notificationDispatcher.setService(downloadService);
+    }
+}
@@ -0,0 +1,49 @@
+package com.novoda.downloadmanager;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps track of the actions it scheduled on the shared {@link ActionTicker}.
+ * Every method holds the same lock, so that an action is added to or removed from both this scheduler and the ticker at once,
+ * otherwise a concurrent cancel could leave an action ticking that is no longer scheduled, or stop the ticks of one that is.
+ */
+class TickingActionScheduler implements ActionScheduler {
+
+    private final ActionTicker actionTicker;
+    private final Set<Action> scheduledActions = new HashSet<>();
+
+    TickingActionScheduler(ActionTicker actionTicker) {
+        this.actionTicker = actionTicker;
+    }
+
+    @Override
+    public synchronized void schedule(Action action) {
+        if (!scheduledActions.add(action)) {
+            Logger.v("Already contains action, aborting schedule");
+            return;
+        }
+        actionTicker.add(action);
+    }
+
+    @Override
+    public synchronized void cancel(Action action) {
+        if (scheduledActions.remove(action)) {
+            actionTicker.remove(action);
+        }
+    }
+
+    @Override
+    public synchronized void cancelAll() {
+        for (Action action : scheduledActions) {
+            actionTicker.remove(action);
+        }
+        scheduledActions.clear();
+    }
+
+    @Override
+    public synchronized boolean isScheduled(Action action) {
+        return scheduledActions.contains(action);
+    }
+
+}
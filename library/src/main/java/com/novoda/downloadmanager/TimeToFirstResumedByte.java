@@ -0,0 +1,51 @@
+package com.novoda.downloadmanager;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures how long it takes from the download manager being created until the first stored batch downloads a byte,
+ * reported once per process.
+ */
+class TimeToFirstResumedByte {
+
+    private static final long NOT_MEASURED = -1;
+
+    private final long startTimeInNanos;
+    private final Set<String> resumedRawBatchIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicBoolean measured = new AtomicBoolean();
+
+    private volatile long timeToFirstResumedByteInMillis = NOT_MEASURED;
+
+    TimeToFirstResumedByte(long startTimeInNanos) {
+        this.startTimeInNanos = startTimeInNanos;
+    }
+
+    void onResuming(DownloadBatchId downloadBatchId) {
+        if (!measured.get()) {
+            resumedRawBatchIds.add(downloadBatchId.rawId());
+        }
+    }
+
+    void onBytesDownloaded(DownloadBatchId downloadBatchId) {
+        if (measured.get() || !resumedRawBatchIds.contains(downloadBatchId.rawId())) {
+            return;
+        }
+
+        if (measured.compareAndSet(false, true)) {
+            timeToFirstResumedByteInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeInNanos);
+            resumedRawBatchIds.clear();
+            Logger.i("time to first resumed byte " + timeToFirstResumedByteInMillis + "ms, batch " + downloadBatchId.rawId());
+        }
+    }
+
+    /**
+     * @return the time to the first resumed byte in milliseconds, or -1 if no stored batch has downloaded a byte yet.
+     */
+    long inMillis() {
+        return timeToFirstResumedByteInMillis;
+    }
+}
@@ -0,0 +1,199 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decouples the network read loop from storage I/O. Bytes read from the network are copied
+ * into a bounded ring of pre-allocated buffers, and every buffer that fills up is handed to the executor as its own task,
+ * which writes it to the {@link FilePersistence} and returns it to the ring. No thread is held while the buffers fill,
+ * so a single disk writer can serve every downloading file. Persisted bytes are therefore reported a buffer at a time.
+ * When every buffer is waiting to be written, {@link #write(byte[], int)} blocks, applying back-pressure to the reader.
+ */
+class WriteBehindFileWriter {
+
+    private final Executor executor;
+    private final FilePersistence filePersistence;
+    private final int bufferCount;
+    private final BlockingQueue<Chunk> freeChunks;
+    private final Queue<Chunk> filledChunks = new ConcurrentLinkedQueue<>();
+    private final Object persistLock = new Object();
+    private final AtomicLong bytesPersisted = new AtomicLong();
+
+    private volatile boolean writeFailed;
+    private Chunk currentChunk;
+    private long bytesReported;
+    private boolean opened;
+
+    WriteBehindFileWriter(Executor executor, FilePersistence filePersistence, int bufferCount, int bufferSizeInBytes) {
+        this.executor = executor;
+        this.filePersistence = filePersistence;
+        this.bufferCount = bufferCount;
+        this.freeChunks = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            freeChunks.add(new Chunk(bufferSizeInBytes));
+        }
+    }
+
+    void open() {
+        if (opened) {
+            Logger.w("Abort opening writer, it is already open.");
+            return;
+        }
+        opened = true;
+    }
+
+    /**
+     * Copies the given bytes into the ring, blocking while no buffer is free.
+     *
+     * @return false if the writer has already failed to persist previous bytes.
+     */
+    boolean write(byte[] buffer, int bytesRead) {
+        if (writeFailed) {
+            return false;
+        }
+
+        int offset = 0;
+        try {
+            while (offset < bytesRead) {
+                if (currentChunk == null) {
+                    currentChunk = freeChunks.take();
+                }
+                offset += currentChunk.append(buffer, offset, bytesRead - offset);
+                if (currentChunk.isFull()) {
+                    submit(currentChunk);
+                    currentChunk = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Logger.e(e, "Interrupted while waiting for a free buffer.");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return !writeFailed;
+    }
+
+    /**
+     * @return the number of bytes persisted since the last call, never counting bytes still held in the ring.
+     */
+    long drainPersistedBytes() {
+        long persisted = bytesPersisted.get();
+        long newlyPersisted = persisted - bytesReported;
+        bytesReported = persisted;
+        return newlyPersisted;
+    }
+
+    /**
+     * Flushes any partially filled buffer and blocks until every buffer has been written and returned to the ring.
+     *
+     * @return whether every byte handed to the writer was persisted.
+     */
+    boolean close() {
+        if (!opened) {
+            return !writeFailed;
+        }
+        opened = false;
+
+        List<Chunk> returnedChunks = new ArrayList<>(bufferCount);
+        if (currentChunk != null) {
+            if (currentChunk.isEmpty()) {
+                returnedChunks.add(currentChunk);
+            } else {
+                submit(currentChunk);
+            }
+            currentChunk = null;
+        }
+
+        try {
+            while (returnedChunks.size() < bufferCount) {
+                returnedChunks.add(freeChunks.take());
+            }
+        } catch (InterruptedException e) {
+            Logger.e(e, "Interrupted while waiting for the buffers to be written.");
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            freeChunks.addAll(returnedChunks);
+        }
+
+        return !writeFailed;
+    }
+
+    private void submit(Chunk chunk) {
+        filledChunks.add(chunk);
+        try {
+            executor.execute(this::persistNextChunk);
+        } catch (RejectedExecutionException e) {
+            Logger.e(e, "Disk writer rejected a buffer.");
+            writeFailed = true;
+            persistNextChunk();
+        }
+    }
+
+    /**
+     * Each task writes the oldest filled buffer, under a lock so that buffers stay in order on an executor with several threads.
+     */
+    private void persistNextChunk() {
+        synchronized (persistLock) {
+            Chunk chunk = filledChunks.poll();
+            if (chunk == null) {
+                return;
+            }
+            try {
+                persist(chunk);
+            } finally {
+                chunk.clear();
+                freeChunks.add(chunk);
+            }
+        }
+    }
+
+    private void persist(Chunk chunk) {
+        if (writeFailed) {
+            return;
+        }
+
+        if (filePersistence.write(chunk.buffer, 0, chunk.length)) {
+            bytesPersisted.addAndGet(chunk.length);
+        } else {
+            writeFailed = true;
+        }
+    }
+
+    private static final class Chunk {
+
+        private final byte[] buffer;
+        private int length;
+
+        Chunk(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        int append(byte[] source, int offset, int count) {
+            int copied = Math.min(count, buffer.length - length);
+            System.arraycopy(source, offset, buffer, length, copied);
+            length += copied;
+            return copied;
+        }
+
+        boolean isFull() {
+            return length == buffer.length;
+        }
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+
+        void clear() {
+            length = 0;
+        }
+    }
+}
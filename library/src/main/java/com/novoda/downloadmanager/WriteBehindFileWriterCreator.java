@@ -0,0 +1,23 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Creates the writers of the downloading files. Each writer hands its filled buffers to the given executor,
+ * one task per buffer, so a single thread can write the buffers of every file downloading at the same time.
+ */
+final class WriteBehindFileWriterCreator {
+
+    private static final int BUFFER_COUNT = 4;
+    private static final int BUFFER_SIZE_IN_BYTES = 64 * 1024;
+
+    private final Executor diskWriterExecutor;
+
+    WriteBehindFileWriterCreator(Executor diskWriterExecutor) {
+        this.diskWriterExecutor = diskWriterExecutor;
+    }
+
+    WriteBehindFileWriter create(FilePersistence filePersistence) {
+        return new WriteBehindFileWriter(diskWriterExecutor, filePersistence, BUFFER_COUNT, BUFFER_SIZE_IN_BYTES);
+    }
+}
@@ -0,0 +1,75 @@
+package com.novoda.downloadmanager;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class BatchBytesDownloadedTest {
+
+    private static final int FILE_COUNT = 2000;
+    private static final int CHUNK_SIZE_IN_BYTES = 4096;
+    private static final int UPDATES_PER_FILE = 10;
+
+    @Test
+    public void startsFromTheBytesAlreadyDownloaded() {
+        BatchBytesDownloaded batchBytesDownloaded = new BatchBytesDownloaded(100, 0, 50);
+
+        assertThat(batchBytesDownloaded.total()).isEqualTo(150);
+    }
+
+    @Test
+    public void addsTheDifference_withTheLastBytesReportedForAFile() {
+        BatchBytesDownloaded batchBytesDownloaded = new BatchBytesDownloaded(100, 0, 50);
+
+        batchBytesDownloaded.update(1, 30);
+        long totalBytesDownloaded = batchBytesDownloaded.update(1, 80);
+
+        assertThat(totalBytesDownloaded).isEqualTo(230);
+    }
+
+    @Test
+    public void subtractsBytes_whenAFileStartsOver() {
+        BatchBytesDownloaded batchBytesDownloaded = new BatchBytesDownloaded(100, 0, 50);
+
+        long totalBytesDownloaded = batchBytesDownloaded.update(0, 0);
+
+        assertThat(totalBytesDownloaded).isEqualTo(50);
+    }
+
+    @Test
+    public void doesNotAllocate_whenUpdatingProgress() {
+        com.sun.management.ThreadMXBean threadMXBean = allocationTrackingThreadMXBean();
+        BatchBytesDownloaded batchBytesDownloaded = BatchBytesDownloaded.ofFiles(FILE_COUNT);
+        downloadEveryFile(batchBytesDownloaded);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long totalBytesDownloaded = downloadEveryFile(batchBytesDownloaded);
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+
+        assertThat(totalBytesDownloaded).isEqualTo((long) FILE_COUNT * UPDATES_PER_FILE * CHUNK_SIZE_IN_BYTES);
+        assertThat(allocatedBytes).isEqualTo(0L);
+    }
+
+    private static long downloadEveryFile(BatchBytesDownloaded batchBytesDownloaded) {
+        long totalBytesDownloaded = 0;
+        for (int fileOrdinal = 0; fileOrdinal < FILE_COUNT; fileOrdinal++) {
+            for (int chunk = 1; chunk <= UPDATES_PER_FILE; chunk++) {
+                totalBytesDownloaded = batchBytesDownloaded.update(fileOrdinal, (long) chunk * CHUNK_SIZE_IN_BYTES);
+            }
+        }
+        return totalBytesDownloaded;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationTrackingThreadMXBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationTrackingThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocationTrackingThreadMXBean.isThreadAllocatedMemorySupported());
+        allocationTrackingThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+        return allocationTrackingThreadMXBean;
+    }
+}
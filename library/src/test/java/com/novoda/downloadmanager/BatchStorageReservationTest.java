@@ -0,0 +1,80 @@
+package com.novoda.downloadmanager;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class BatchStorageReservationTest {
+
+    private static final String RAW_BATCH_ID = "batch_01";
+    private static final long TOTAL_BATCH_SIZE_IN_BYTES = 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final StorageLedger storageLedger = mock(StorageLedger.class);
+    private final StorageRequirementRule storageRequirementRule = mock(StorageRequirementRule.class);
+    private final BatchStorageReservation storageReservation = new BatchStorageReservation(
+            storageLedger,
+            storageRequirementRule,
+            aDownloadBatchId().withRawDownloadBatchId(RAW_BATCH_ID).build()
+    );
+
+    private File storageDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        storageDirectory = temporaryFolder.newFolder();
+        given(storageLedger.tryReserve(anyString(), eq(storageDirectory), anyLong(), eq(storageRequirementRule))).willReturn(true);
+    }
+
+    @Test
+    public void reservesTheBytesLeftToDownload_ofTheWholeBatch() {
+        boolean reserved = storageReservation.tryReserve(storageDirectory.getPath(), 200, TOTAL_BATCH_SIZE_IN_BYTES);
+
+        assertThat(reserved).isTrue();
+        verify(storageLedger).tryReserve(RAW_BATCH_ID, storageDirectory, 800, storageRequirementRule);
+    }
+
+    @Test
+    public void checksTheClosestExistingDirectory_whenTheStorageRootDoesNotExistYet() {
+        boolean reserved = storageReservation.tryReserve(new File(storageDirectory, "batch/files").getPath(), 0, TOTAL_BATCH_SIZE_IN_BYTES);
+
+        assertThat(reserved).isTrue();
+        verify(storageLedger).tryReserve(RAW_BATCH_ID, storageDirectory, TOTAL_BATCH_SIZE_IN_BYTES, storageRequirementRule);
+    }
+
+    @Test
+    public void consumesOnlyTheBytesDownloadedSinceTheLastUpdate() {
+        storageReservation.tryReserve(storageDirectory.getPath(), 200, TOTAL_BATCH_SIZE_IN_BYTES);
+
+        storageReservation.consumeUpTo(300);
+        storageReservation.consumeUpTo(300);
+        storageReservation.consumeUpTo(450);
+
+        verify(storageLedger).consume(RAW_BATCH_ID, 100);
+        verify(storageLedger).consume(RAW_BATCH_ID, 150);
+        verify(storageLedger, never()).consume(RAW_BATCH_ID, 0);
+    }
+
+    @Test
+    public void releasesTheReservation_ofTheBatch() {
+        storageReservation.release();
+
+        verify(storageLedger).release(RAW_BATCH_ID);
+    }
+}
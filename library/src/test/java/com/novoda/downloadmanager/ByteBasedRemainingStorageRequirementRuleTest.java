@@ -17,11 +17,13 @@ public class ByteBasedRemainingStorageRequirementRuleTest {
     private static final long REMAINING_ONE_HUNDRED_MB_IN_BYTES = 100000000;
 
     private static final long TWO_HUNDRED_MB_IN_BYTES_REMAINING = 200000000;
+    private static final long REFRESH_INTERVAL_IN_MILLIS = 0;
 
     private final FileSize fileSize = mock(FileSize.class);
     private final File file = createFile();
     private final StorageCapacityReader storageCapacityReader = createStorageCapacityReader();
-    private final ByteBasedRemainingStorageRequirementRule storageRequirementRule = new ByteBasedRemainingStorageRequirementRule(storageCapacityReader, TWO_HUNDRED_MB_IN_BYTES_REMAINING);
+    private final StorageLedger storageLedger = new StorageLedger(storageCapacityReader, REFRESH_INTERVAL_IN_MILLIS);
+    private final ByteBasedRemainingStorageRequirementRule storageRequirementRule = new ByteBasedRemainingStorageRequirementRule(storageLedger, TWO_HUNDRED_MB_IN_BYTES_REMAINING);
 
     @Test
     public void doesNotViolateRule_whenRemainingFileSizeIsLessThanRestriction() {
@@ -0,0 +1,168 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class CoalescingBatchStatusWriterTest {
+
+    private static final long FLUSH_INTERVAL_IN_MILLIS = 500;
+    private static final DownloadBatchId DOWNLOAD_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_01").build();
+    private static final DownloadBatchId OTHER_DOWNLOAD_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_02").build();
+
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final DownloadsPersistence downloadsPersistence = mock(DownloadsPersistence.class);
+
+    private final CoalescingBatchStatusWriter batchStatusWriter = new CoalescingBatchStatusWriter(
+            Runnable::run,
+            scheduler,
+            FLUSH_INTERVAL_IN_MILLIS,
+            downloadsPersistence,
+            mock(InFlightDownloadsSnapshot.class)
+    );
+
+    @Test
+    public void schedulesSingleFlush_whenUpdatesArePending() {
+        batchStatusWriter.updateStatus(DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        batchStatusWriter.updateStatus(OTHER_DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        batchStatusWriter.updateNotificationSeen(DOWNLOAD_BATCH_ID, true);
+
+        verify(scheduler).schedule(any(Runnable.class), eq(FLUSH_INTERVAL_IN_MILLIS), eq(TimeUnit.MILLISECONDS));
+        verify(downloadsPersistence, never()).startTransaction();
+    }
+
+    @Test
+    public void writesOnlyLatestStatusPerBatch_inOneTransaction() {
+        batchStatusWriter.updateStatus(DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        batchStatusWriter.updateStatus(DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+        batchStatusWriter.updateStatus(OTHER_DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+
+        batchStatusWriter.flushSync();
+
+        InOrder inOrder = inOrder(downloadsPersistence);
+        inOrder.verify(downloadsPersistence).startTransaction();
+        inOrder.verify(downloadsPersistence).update(singletonList(OTHER_DOWNLOAD_BATCH_ID), DownloadBatchStatus.Status.QUEUED);
+        inOrder.verify(downloadsPersistence).update(singletonList(DOWNLOAD_BATCH_ID), DownloadBatchStatus.Status.DOWNLOADING);
+        inOrder.verify(downloadsPersistence).transactionSuccess();
+        inOrder.verify(downloadsPersistence).endTransaction();
+    }
+
+    @Test
+    public void writesBatchesWithSameStatus_inOneUpdate() {
+        batchStatusWriter.updateStatus(DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        batchStatusWriter.updateStatus(OTHER_DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        batchStatusWriter.updateNotificationSeen(DOWNLOAD_BATCH_ID, true);
+        batchStatusWriter.updateNotificationSeen(OTHER_DOWNLOAD_BATCH_ID, true);
+
+        batchStatusWriter.flushSync();
+
+        verify(downloadsPersistence).update(asList(DOWNLOAD_BATCH_ID, OTHER_DOWNLOAD_BATCH_ID), DownloadBatchStatus.Status.QUEUED);
+        verify(downloadsPersistence).update(asList(DOWNLOAD_BATCH_ID, OTHER_DOWNLOAD_BATCH_ID), true);
+    }
+
+    @Test
+    public void flushesImmediately_whenStatusMustNotBeLost() {
+        batchStatusWriter.updateStatus(DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.DELETING);
+
+        verify(downloadsPersistence).update(singletonList(DOWNLOAD_BATCH_ID), DownloadBatchStatus.Status.DELETING);
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void doesNotWrite_whenPendingUpdatesAreDiscarded() {
+        batchStatusWriter.updateStatus(DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+        batchStatusWriter.updateNotificationSeen(DOWNLOAD_BATCH_ID, true);
+
+        batchStatusWriter.discard(DOWNLOAD_BATCH_ID);
+        batchStatusWriter.flushSync();
+
+        verify(downloadsPersistence, never()).startTransaction();
+        verify(downloadsPersistence, never()).update(anyList(), anyBoolean());
+    }
+
+    @Test
+    public void writesOnlyLatestStatePerFile_inOneUpdate() {
+        DownloadsFilePersisted firstProgress = aFilePersisted("file_01", DownloadFileStatus.Status.DOWNLOADING, 100);
+        DownloadsFilePersisted latestProgress = aFilePersisted("file_01", DownloadFileStatus.Status.DOWNLOADING, 200);
+        DownloadsFilePersisted otherFileProgress = aFilePersisted("file_02", DownloadFileStatus.Status.QUEUED, 0);
+        batchStatusWriter.updateFile(firstProgress);
+        batchStatusWriter.updateFile(latestProgress);
+        batchStatusWriter.updateFile(otherFileProgress);
+
+        batchStatusWriter.flushSync();
+
+        assertThat(statesOf(writtenFiles())).containsExactly(stateOf(latestProgress), stateOf(otherFileProgress)).inOrder();
+    }
+
+    @Test
+    public void dropsThePendingStateOfADiscardedFile_only() {
+        DownloadsFilePersisted discardedFile = aFilePersisted("file_01", DownloadFileStatus.Status.QUEUED, 100);
+        DownloadsFilePersisted otherFile = aFilePersisted("file_02", DownloadFileStatus.Status.QUEUED, 0);
+        batchStatusWriter.updateFile(discardedFile);
+        batchStatusWriter.updateFile(otherFile);
+
+        batchStatusWriter.discardFile(DOWNLOAD_BATCH_ID, discardedFile.downloadFileId());
+        batchStatusWriter.flushSync();
+
+        assertThat(statesOf(writtenFiles())).containsExactly(stateOf(otherFile));
+    }
+
+    @Test
+    public void flushesFileImmediately_whenStatusMustNotBeLost() {
+        DownloadsFilePersisted pausedFile = aFilePersisted("file_01", DownloadFileStatus.Status.PAUSED, 100);
+
+        batchStatusWriter.updateFile(pausedFile);
+
+        assertThat(statesOf(writtenFiles())).containsExactly(stateOf(pausedFile));
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<DownloadsFilePersisted> writtenFiles() {
+        ArgumentCaptor<List<DownloadsFilePersisted>> filesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(downloadsPersistence).updateFiles(filesCaptor.capture());
+        return filesCaptor.getValue();
+    }
+
+    private static List<String> statesOf(List<DownloadsFilePersisted> filesPersisted) {
+        List<String> states = new ArrayList<>(filesPersisted.size());
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            states.add(stateOf(filePersisted));
+        }
+        return states;
+    }
+
+    private static String stateOf(DownloadsFilePersisted filePersisted) {
+        return filePersisted.downloadFileId().rawId() + " " + filePersisted.fileStatus() + " " + filePersisted.bytesDownloaded();
+    }
+
+    private static DownloadsFilePersisted aFilePersisted(String rawFileId, DownloadFileStatus.Status status, long bytesDownloaded) {
+        return aDownloadsFilePersisted()
+                .withDownloadBatchId(DOWNLOAD_BATCH_ID)
+                .withDownloadFileId(aDownloadFileId().withRawDownloadFileId(rawFileId).build())
+                .withFileStatus(status)
+                .withBytesDownloaded(bytesDownloaded)
+                .build();
+    }
+}
@@ -0,0 +1,244 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DownloadBatchStatusBusTest {
+
+    private static final long NO_MIN_DELIVERY_INTERVAL = 0;
+    private static final long MIN_DELIVERY_INTERVAL_IN_MILLIS = 200;
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_01").build();
+    private static final DownloadBatchId OTHER_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_02").build();
+
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final QueueingExecutor executor = new QueueingExecutor();
+    private final RecordingCallback callback = new RecordingCallback();
+
+    private long nowInMillis = 1000;
+
+    private final DownloadBatchStatusBus statusBus = new DownloadBatchStatusBus(scheduler, () -> nowInMillis);
+
+    @Test
+    public void deliversOnlyTheLatestStatusOfEachBatch_whileADeliveryIsPending() {
+        statusBus.subscribe(callback, executor, NO_MIN_DELIVERY_INTERVAL);
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        statusBus.publish(aStatus(OTHER_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 20));
+        executor.runAll();
+
+        assertThat(callback.deliveries).containsExactly("batch_01 DOWNLOADING 20", "batch_02 DOWNLOADING 10").inOrder();
+    }
+
+    @Test
+    public void neverDropsStatusesThatABatchEndsUpIn() {
+        statusBus.subscribe(callback, executor, NO_MIN_DELIVERY_INTERVAL);
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 90));
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED, 100));
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DELETING, 100));
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DELETED, 100));
+        executor.runAll();
+
+        assertThat(callback.deliveries).containsExactly("batch_01 DOWNLOADED 100", "batch_01 DELETED 100").inOrder();
+    }
+
+    @Test
+    public void schedulesASingleDelivery_forManyUpdates() {
+        statusBus.subscribe(callback, executor, NO_MIN_DELIVERY_INTERVAL);
+
+        for (int i = 0; i < 100; i++) {
+            statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, i));
+        }
+
+        assertThat(executor.runnables).hasSize(1);
+    }
+
+    @Test
+    public void delaysTheNextDelivery_untilTheIntervalHasPassed() {
+        statusBus.subscribe(callback, executor, MIN_DELIVERY_INTERVAL_IN_MILLIS);
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        executor.runAll();
+        nowInMillis += 50;
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 20));
+
+        assertThat(executor.runnables).isEmpty();
+        verify(scheduler).schedule(any(Runnable.class), eq(MIN_DELIVERY_INTERVAL_IN_MILLIS - 50), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void deliversStraightAway_whenTheIntervalHasAlreadyPassed() {
+        statusBus.subscribe(callback, executor, MIN_DELIVERY_INTERVAL_IN_MILLIS);
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        executor.runAll();
+        nowInMillis += MIN_DELIVERY_INTERVAL_IN_MILLIS;
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 20));
+        executor.runAll();
+
+        verify(scheduler, never()).schedule(any(Runnable.class), any(Long.class), any(TimeUnit.class));
+        assertThat(callback.deliveries).containsExactly("batch_01 DOWNLOADING 10", "batch_01 DOWNLOADING 20").inOrder();
+    }
+
+    @Test
+    public void doesNotDeliverPendingStatuses_onceUnsubscribed() {
+        statusBus.subscribe(callback, executor, NO_MIN_DELIVERY_INTERVAL);
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+
+        statusBus.unsubscribe(callback);
+        executor.runAll();
+
+        assertThat(callback.deliveries).isEmpty();
+    }
+
+    @Test
+    public void keepsDelivering_whenACallbackThrows() {
+        RecordingCallback throwingCallback = new ThrowingCallback();
+        statusBus.subscribe(throwingCallback, executor, NO_MIN_DELIVERY_INTERVAL);
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        statusBus.publish(aStatus(OTHER_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        executor.runAll();
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED, 20));
+        executor.runAll();
+
+        assertThat(throwingCallback.deliveries).containsExactly(
+                "batch_01 DOWNLOADING 10",
+                "batch_02 DOWNLOADING 10",
+                "batch_01 DOWNLOADED 20"
+        ).inOrder();
+    }
+
+    @Test
+    public void keepsEachSubscriberIndependent() {
+        RecordingCallback slowCallback = new RecordingCallback();
+        QueueingExecutor slowExecutor = new QueueingExecutor();
+        statusBus.subscribe(callback, Runnable::run, NO_MIN_DELIVERY_INTERVAL);
+        statusBus.subscribe(slowCallback, slowExecutor, NO_MIN_DELIVERY_INTERVAL);
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 20));
+        slowExecutor.runAll();
+
+        assertThat(callback.deliveries).containsExactly("batch_01 DOWNLOADING 10", "batch_01 DOWNLOADING 20").inOrder();
+        assertThat(slowCallback.deliveries).containsExactly("batch_01 DOWNLOADING 20");
+    }
+
+    @Test
+    public void deliversOnlyTheSubscribedBatch() {
+        statusBus.subscribe(callback, DownloadBatchStatusSubscriptionFilter.batch(OTHER_BATCH_ID), Runnable::run, NO_MIN_DELIVERY_INTERVAL);
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        statusBus.publish(aStatus(OTHER_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 20));
+
+        assertThat(callback.deliveries).containsExactly("batch_02 DOWNLOADING 20");
+    }
+
+    @Test
+    public void deliversOnlyTerminalStatuses_whenSubscribedToThem() {
+        statusBus.subscribe(callback, DownloadBatchStatusSubscriptionFilter.terminalStatuses(), Runnable::run, NO_MIN_DELIVERY_INTERVAL);
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED, 100));
+        statusBus.publish(aStatus(OTHER_BATCH_ID, DownloadBatchStatus.Status.PAUSED, 20));
+
+        assertThat(callback.deliveries).containsExactly("batch_01 DOWNLOADED 100");
+    }
+
+    @Test
+    public void doesNotScheduleDeliveries_forSubscribersNotInterestedInTheUpdate() {
+        statusBus.subscribe(callback, DownloadBatchStatusSubscriptionFilter.batch(OTHER_BATCH_ID), executor, NO_MIN_DELIVERY_INTERVAL);
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+
+        assertThat(executor.runnables).isEmpty();
+    }
+
+    @Test
+    public void replacesTheFilter_whenSubscribingTheSameCallbackAgain() {
+        statusBus.subscribe(callback, DownloadBatchStatusSubscriptionFilter.batch(BATCH_ID), Runnable::run, NO_MIN_DELIVERY_INTERVAL);
+        statusBus.subscribe(callback, DownloadBatchStatusSubscriptionFilter.batch(OTHER_BATCH_ID), Runnable::run, NO_MIN_DELIVERY_INTERVAL);
+
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+        statusBus.publish(aStatus(OTHER_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 20));
+
+        assertThat(callback.deliveries).containsExactly("batch_02 DOWNLOADING 20");
+    }
+
+    @Test
+    public void keepsNotifyingFilteredCallbacks_untilTheyAreUnsubscribed() throws InterruptedException {
+        List<String> deliveries = new ArrayList<>();
+        statusBus.subscribe(
+                status -> deliveries.add(status.status().name()),
+                DownloadBatchStatusSubscriptionFilter.batch(BATCH_ID),
+                Runnable::run,
+                NO_MIN_DELIVERY_INTERVAL
+        );
+
+        System.gc();
+        Thread.sleep(10);
+        statusBus.publish(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 10));
+
+        assertThat(deliveries).containsExactly("DOWNLOADING");
+    }
+
+    private static DownloadBatchStatus aStatus(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status, long bytesDownloaded) {
+        return anInternalDownloadsBatchStatus()
+                .withDownloadBatchId(downloadBatchId)
+                .withStatus(status)
+                .withBytesDownloaded(bytesDownloaded)
+                .build();
+    }
+
+    private static class QueueingExecutor implements Executor {
+
+        private final List<Runnable> runnables = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnables.add(runnable);
+        }
+
+        void runAll() {
+            while (!runnables.isEmpty()) {
+                runnables.remove(0).run();
+            }
+        }
+    }
+
+    private static class RecordingCallback implements DownloadBatchStatusCallback {
+
+        private final List<String> deliveries = new ArrayList<>();
+
+        @Override
+        public void onUpdate(DownloadBatchStatus downloadBatchStatus) {
+            deliveries.add(downloadBatchStatus.getDownloadBatchId().rawId()
+                                   + " " + downloadBatchStatus.status()
+                                   + " " + downloadBatchStatus.bytesDownloaded());
+        }
+    }
+
+    private static class ThrowingCallback extends RecordingCallback {
+
+        @Override
+        public void onUpdate(DownloadBatchStatus downloadBatchStatus) {
+            super.onUpdate(downloadBatchStatus);
+            throw new IllegalStateException("callback failed");
+        }
+    }
+}
@@ -3,25 +3,38 @@ package com.novoda.downloadmanager;
 import org.junit.Test;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
 import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
 
 public class DownloadBatchStatusFilterTest {
 
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().build();
+
     private final InternalDownloadBatchStatus firstPercentageStatus = anInternalDownloadsBatchStatus()
-            .withPercentageDownloaded(75)
+            .withDownloadBatchId(BATCH_ID)
+            .withBytesDownloaded(750)
             .build();
     private final InternalDownloadBatchStatus secondPercentageStatus = anInternalDownloadsBatchStatus()
-            .withPercentageDownloaded(80)
+            .withDownloadBatchId(BATCH_ID)
+            .withBytesDownloaded(800)
             .build();
     private final InternalDownloadBatchStatus firstErrorStatus = anInternalDownloadsBatchStatus()
+            .withDownloadBatchId(BATCH_ID)
             .withDownloadError(DownloadErrorFactory.createNetworkError("first"))
             .build();
     private final InternalDownloadBatchStatus secondErrorStatus = anInternalDownloadsBatchStatus()
+            .withDownloadBatchId(BATCH_ID)
+            .withDownloadError(DownloadErrorFactory.createUnknownErrorFor(FilePersistenceResult.ERROR_UNKNOWN_TOTAL_FILE_SIZE))
+            .build();
+    private final InternalDownloadBatchStatus sameTypeErrorStatus = anInternalDownloadsBatchStatus()
+            .withDownloadBatchId(BATCH_ID)
             .withDownloadError(DownloadErrorFactory.createNetworkError("second"))
             .build();
     private final InternalDownloadBatchStatus firstStatus = anInternalDownloadsBatchStatus()
+            .withDownloadBatchId(BATCH_ID)
             .build();
     private final InternalDownloadBatchStatus secondStatus = anInternalDownloadsBatchStatus()
+            .withDownloadBatchId(BATCH_ID)
             .withStatus(DownloadBatchStatus.Status.DOWNLOADED)
             .build();
 
@@ -63,6 +76,15 @@ public class DownloadBatchStatusFilterTest {
         assertThat(shouldFilterOut).isTrue();
     }
 
+    @Test
+    public void returnsTrue_whenErrorTypeIsUnchanged() {
+        givenPreviousUpdate(firstErrorStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(sameTypeErrorStatus);
+
+        assertThat(shouldFilterOut).isTrue();
+    }
+
     @Test
     public void returnsFalse_whenStatusDoesNotMatchPrevious() {
         givenPreviousUpdate(firstStatus);
@@ -81,6 +103,68 @@ public class DownloadBatchStatusFilterTest {
         assertThat(shouldFilterOut).isTrue();
     }
 
+    @Test
+    public void returnsTrue_forACopyOfThePreviousStatus() {
+        givenPreviousUpdate(firstStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(firstStatus.copy());
+
+        assertThat(shouldFilterOut).isTrue();
+    }
+
+    @Test
+    public void returnsFalse_whenPreviousStatusHasSinceChanged() {
+        givenPreviousUpdate(firstStatus);
+        firstStatus.updateDownloaded(500);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(firstStatus);
+
+        assertThat(shouldFilterOut).isFalse();
+    }
+
+    @Test
+    public void returnsTrue_whenPreviousStatusIsUpdatedWithTheSameValues() {
+        givenPreviousUpdate(firstStatus);
+        firstStatus.updateDownloaded(firstStatus.bytesDownloaded());
+        firstStatus.updateTotalSize(firstStatus.bytesTotalSize());
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(firstStatus);
+
+        assertThat(shouldFilterOut).isTrue();
+    }
+
+    @Test
+    public void returnsTrue_whenAnUnchangedStatusIsInterleavedWithAnotherBatch() {
+        InternalDownloadBatchStatus otherBatchStatus = anInternalDownloadsBatchStatus()
+                .withDownloadBatchId(aDownloadBatchId().withRawDownloadBatchId("other_batch").build())
+                .build();
+        givenPreviousUpdate(firstStatus);
+        givenPreviousUpdate(otherBatchStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(firstStatus.copy());
+
+        assertThat(shouldFilterOut).isTrue();
+    }
+
+    @Test
+    public void returnsTrue_forAnEqualStatusWithAnotherVersion() {
+        givenPreviousUpdate(firstStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(anInternalDownloadsBatchStatus().withDownloadBatchId(BATCH_ID).build());
+
+        assertThat(shouldFilterOut).isTrue();
+    }
+
+    @Test
+    public void returnsFalse_whenTheBatchHasBeenForgotten() {
+        givenPreviousUpdate(firstStatus);
+
+        downloadBatchStatusFilter.forget(firstStatus.getDownloadBatchId());
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(firstStatus);
+
+        assertThat(shouldFilterOut).isFalse();
+    }
+
     private void givenPreviousUpdate(InternalDownloadBatchStatus downloadBatchStatus) {
         downloadBatchStatusFilter.shouldFilterOut(downloadBatchStatus);
     }
@@ -14,13 +14,19 @@ public class DownloadBatchStatusNotificationDispatcherTest {
 
     private final ServiceNotificationDispatcher<DownloadBatchStatus> notificationDispatcher = mock(ServiceNotificationDispatcher.class);
     private final DownloadsNotificationSeenPersistence persistence = mock(DownloadsNotificationSeenPersistence.class);
+    private final SummaryNotificationDispatcher summaryNotificationDispatcher = mock(SummaryNotificationDispatcher.class);
 
     private DownloadBatchStatusNotificationDispatcher downloadBatchStatusNotificationDispatcher;
 
     @Before
     public void setUp() {
         HashSet<String> downloadBatchIdNotificationSeen = new HashSet<>();
-        downloadBatchStatusNotificationDispatcher = new DownloadBatchStatusNotificationDispatcher(persistence, notificationDispatcher, downloadBatchIdNotificationSeen);
+        downloadBatchStatusNotificationDispatcher = new DownloadBatchStatusNotificationDispatcher(
+                persistence,
+                notificationDispatcher,
+                downloadBatchIdNotificationSeen,
+                Optional.absent()
+        );
     }
 
     @Test
@@ -58,4 +64,45 @@ public class DownloadBatchStatusNotificationDispatcherTest {
 
         verify(notificationDispatcher).setService(downloadService);
     }
+
+    @Test
+    public void updatesOnlyTheSummaryNotification_whenAggregatedAndBatchIsDownloading() {
+        givenAggregatedNotification();
+        InternalDownloadBatchStatus downloadingStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.DOWNLOADING).build();
+
+        downloadBatchStatusNotificationDispatcher.updateNotification(downloadingStatus);
+
+        verify(summaryNotificationDispatcher).updateNotification(downloadingStatus);
+        verifyZeroInteractions(notificationDispatcher);
+    }
+
+    @Test
+    public void updatesBothNotifications_whenAggregatedAndBatchIsDownloaded() {
+        givenAggregatedNotification();
+        InternalDownloadBatchStatus downloadedStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.DOWNLOADED).build();
+
+        downloadBatchStatusNotificationDispatcher.updateNotification(downloadedStatus);
+
+        verify(summaryNotificationDispatcher).updateNotification(downloadedStatus);
+        verify(notificationDispatcher).updateNotification(downloadedStatus);
+    }
+
+    @Test
+    public void setsDownloadServiceOnSummaryNotificationDispatcher_whenAggregated() {
+        givenAggregatedNotification();
+        DownloadService downloadService = mock(LiteDownloadService.class);
+
+        downloadBatchStatusNotificationDispatcher.setDownloadService(downloadService);
+
+        verify(summaryNotificationDispatcher).setDownloadService(downloadService);
+    }
+
+    private void givenAggregatedNotification() {
+        downloadBatchStatusNotificationDispatcher = new DownloadBatchStatusNotificationDispatcher(
+                persistence,
+                notificationDispatcher,
+                new HashSet<>(),
+                Optional.of(summaryNotificationDispatcher)
+        );
+    }
 }
@@ -0,0 +1,114 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+
+public class DownloadBatchesSummaryTrackerTest {
+
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_01").build();
+    private static final DownloadBatchId OTHER_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_02").build();
+
+    private long nowInMillis = 1000;
+
+    private final DownloadBatchesSummaryTracker summaryTracker = new DownloadBatchesSummaryTracker(() -> nowInMillis);
+
+    @Test
+    public void sumsTheBytesOfEveryActiveBatch() {
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 100, 1000));
+
+        DownloadBatchesSummary summary = summaryTracker.update(aStatus(OTHER_BATCH_ID, DownloadBatchStatus.Status.QUEUED, 0, 1000));
+
+        assertThat(summary.activeBatchCount()).isEqualTo(2);
+        assertThat(summary.bytesDownloaded()).isEqualTo(100);
+        assertThat(summary.bytesTotalSize()).isEqualTo(2000);
+        assertThat(summary.percentageDownloaded()).isEqualTo(5);
+    }
+
+    @Test
+    public void replacesThePreviousBytesOfABatch() {
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 100, 1000));
+
+        DownloadBatchesSummary summary = summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 300, 1000));
+
+        assertThat(summary.activeBatchCount()).isEqualTo(1);
+        assertThat(summary.bytesDownloaded()).isEqualTo(300);
+        assertThat(summary.bytesTotalSize()).isEqualTo(1000);
+    }
+
+    @Test
+    public void removesBatches_thatAreNoLongerActive() {
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 100, 1000));
+        summaryTracker.update(aStatus(OTHER_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 200, 1000));
+
+        DownloadBatchesSummary summary = summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED, 1000, 1000));
+
+        assertThat(summary.activeBatchCount()).isEqualTo(1);
+        assertThat(summary.bytesDownloaded()).isEqualTo(200);
+        assertThat(summary.bytesTotalSize()).isEqualTo(1000);
+    }
+
+    @Test
+    public void measuresTheSpeed_overTheBytesDownloadedSinceTheLastSample() {
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 0, 10000));
+        nowInMillis += 500;
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 1000, 10000));
+        nowInMillis += 1500;
+
+        DownloadBatchesSummary summary = summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 4000, 10000));
+
+        assertThat(summary.bytesPerSecond()).isEqualTo(2000);
+    }
+
+    @Test
+    public void keepsTheSpeed_whenABatchEnds() {
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 0, 10000));
+        summaryTracker.update(aStatus(OTHER_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 0, 10000));
+        nowInMillis += 1000;
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 3000, 10000));
+        nowInMillis += 1000;
+
+        DownloadBatchesSummary summary = summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED, 10000, 10000));
+
+        assertThat(summary.bytesPerSecond()).isEqualTo(7000);
+    }
+
+    @Test
+    public void dropsTheSpeed_whenNoBytesArriveWithinASampleInterval() {
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 0, 10000));
+        nowInMillis += 1000;
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 5000, 10000));
+        nowInMillis += 1000;
+
+        DownloadBatchesSummary summary = summaryTracker.summary();
+
+        assertThat(summary.activeBatchCount()).isEqualTo(1);
+        assertThat(summary.bytesPerSecond()).isEqualTo(0);
+    }
+
+    @Test
+    public void resetsTheSpeed_whenNoBatchIsActive() {
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 0, 10000));
+        nowInMillis += 1000;
+        summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING, 5000, 10000));
+
+        DownloadBatchesSummary summary = summaryTracker.update(aStatus(BATCH_ID, DownloadBatchStatus.Status.PAUSED, 5000, 10000));
+
+        assertThat(summary.activeBatchCount()).isEqualTo(0);
+        assertThat(summary.bytesPerSecond()).isEqualTo(0);
+    }
+
+    private static DownloadBatchStatus aStatus(DownloadBatchId downloadBatchId,
+                                               DownloadBatchStatus.Status status,
+                                               long bytesDownloaded,
+                                               long bytesTotalSize) {
+        return anInternalDownloadsBatchStatus()
+                .withDownloadBatchId(downloadBatchId)
+                .withStatus(status)
+                .withBytesDownloaded(bytesDownloaded)
+                .withBytesTotalSize(bytesTotalSize)
+                .build();
+    }
+}
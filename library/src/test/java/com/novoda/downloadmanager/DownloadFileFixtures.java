@@ -1,5 +1,7 @@
 package com.novoda.downloadmanager;
 
+import java.util.concurrent.Executors;
+
 import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
 import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
 import static com.novoda.downloadmanager.DownloadFileStatusFixtures.aDownloadFileStatus;
@@ -19,6 +21,7 @@ class DownloadFileFixtures {
     private FileDownloader fileDownloader = mock(FileDownloader.class);
     private FileSizeRequester fileSizeRequester = new InMemoryFileSizeRequester();
     private FilePersistence filePersistence = aFilePersistence().build();
+    private WriteBehindFileWriterCreator fileWriterCreator = new WriteBehindFileWriterCreator(Executors.newSingleThreadExecutor());
     private DownloadsFilePersistence downloadsFilePersistence = mock(DownloadsFilePersistence.class);
 
     static DownloadFileFixtures aDownloadFile() {
@@ -70,6 +73,11 @@ class DownloadFileFixtures {
         return this;
     }
 
+    DownloadFileFixtures withFileWriterCreator(WriteBehindFileWriterCreator fileWriterCreator) {
+        this.fileWriterCreator = fileWriterCreator;
+        return this;
+    }
+
     DownloadFileFixtures withDownloadsFilePersistence(DownloadsFilePersistence downloadsFilePersistence) {
         this.downloadsFilePersistence = downloadsFilePersistence;
         return this;
@@ -86,6 +94,7 @@ class DownloadFileFixtures {
                 fileDownloader,
                 fileSizeRequester,
                 filePersistence,
+                fileWriterCreator,
                 downloadsFilePersistence
         );
     }
@@ -0,0 +1,136 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadFileFixtures.aDownloadFile;
+import static com.novoda.downloadmanager.FilePersistenceFixtures.aFilePersistence;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DownloadFileTest {
+
+    private static final int CHUNK_SIZE_IN_BYTES = 1024;
+    private static final int FILE_SIZE_IN_BYTES = 2 * CHUNK_SIZE_IN_BYTES;
+    private static final long FLUSH_INTERVAL_IN_MILLIS = 1000;
+
+    private final ExecutorService diskWriterExecutor = Executors.newSingleThreadExecutor();
+    private final WriteBehindFileWriterCreator fileWriterCreator = new WriteBehindFileWriterCreator(diskWriterExecutor);
+    private final DownloadsPersistence downloadsPersistence = mock(DownloadsPersistence.class);
+    private final CoalescingBatchStatusWriter batchStatusWriter = new CoalescingBatchStatusWriter(
+            Runnable::run,
+            mock(ScheduledExecutorService.class),
+            FLUSH_INTERVAL_IN_MILLIS,
+            downloadsPersistence,
+            mock(InFlightDownloadsSnapshot.class)
+    );
+    private final DownloadsFilePersistence downloadsFilePersistence = new DownloadsFilePersistence(
+            downloadsPersistence,
+            batchStatusWriter,
+            new TimeToFirstResumedByte(0)
+    );
+
+    @After
+    public void tearDown() {
+        diskWriterExecutor.shutdownNow();
+    }
+
+    @Test
+    public void writesTheDownloadedStatusStraightAway_whenTheLastChunkCompletesTheFile() {
+        DownloadFile downloadFile = aDownloadFileOfSize(FILE_SIZE_IN_BYTES, 0);
+
+        downloadFile.download(mock(DownloadFile.Callback.class));
+
+        DownloadsFilePersisted filePersisted = theOnlyFileWritten();
+        assertThat(filePersisted.fileStatus()).isEqualTo(DownloadFileStatus.Status.DOWNLOADED);
+        assertThat(filePersisted.bytesDownloaded()).isEqualTo(FILE_SIZE_IN_BYTES);
+    }
+
+    @Test
+    public void writesTheDownloadedStatusStraightAway_whenTheFileWasAlreadyDownloaded() {
+        DownloadFile downloadFile = aDownloadFileOfSize(FILE_SIZE_IN_BYTES, FILE_SIZE_IN_BYTES);
+
+        downloadFile.download(mock(DownloadFile.Callback.class));
+
+        assertThat(theOnlyFileWritten().fileStatus()).isEqualTo(DownloadFileStatus.Status.DOWNLOADED);
+    }
+
+    @Test(timeout = 1000)
+    public void releasesTheDiskWriter_whenTheDownloaderReturnsWithoutFinishing() {
+        DownloadFile abandonedDownloadFile = aDownloadFileOfSize(FILE_SIZE_IN_BYTES, 0, new AbandoningFileDownloader());
+        DownloadFile downloadFile = aDownloadFileOfSize(FILE_SIZE_IN_BYTES, 0);
+
+        abandonedDownloadFile.download(mock(DownloadFile.Callback.class));
+        downloadFile.download(mock(DownloadFile.Callback.class));
+
+        assertThat(theOnlyFileWritten().fileStatus()).isEqualTo(DownloadFileStatus.Status.DOWNLOADED);
+    }
+
+    private DownloadFile aDownloadFileOfSize(long totalSize, long currentSize) {
+        return aDownloadFileOfSize(totalSize, currentSize, new ChunkedFileDownloader());
+    }
+
+    private DownloadFile aDownloadFileOfSize(long totalSize, long currentSize, FileDownloader fileDownloader) {
+        return aDownloadFile()
+                .withFileSize(InternalFileSizeCreator.createFromCurrentAndTotalSize(currentSize, totalSize))
+                .withFileDownloader(fileDownloader)
+                .withFileWriterCreator(fileWriterCreator)
+                .withFilePersistence(aFilePersistence().withCurrentSize(currentSize).build())
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private DownloadsFilePersisted theOnlyFileWritten() {
+        ArgumentCaptor<List<DownloadsFilePersisted>> filesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(downloadsPersistence).updateFiles(filesCaptor.capture());
+        assertThat(filesCaptor.getValue()).hasSize(1);
+        return filesCaptor.getValue().get(0);
+    }
+
+    /**
+     * Reads the whole file from memory, one chunk at a time.
+     */
+    private static final class ChunkedFileDownloader implements FileDownloader {
+
+        private final byte[] chunk = new byte[CHUNK_SIZE_IN_BYTES];
+
+        @Override
+        public void startDownloading(String url, FileSize fileSize, Callback callback) {
+            for (long bytesRead = fileSize.currentSize(); bytesRead < fileSize.totalSize(); bytesRead += CHUNK_SIZE_IN_BYTES) {
+                callback.onBytesRead(chunk, CHUNK_SIZE_IN_BYTES);
+            }
+            callback.onDownloadFinished();
+        }
+
+        @Override
+        public void stopDownloading() {
+            // Nothing to stop, every chunk is read synchronously.
+        }
+    }
+
+    /**
+     * Reads a single chunk, then returns without finishing, e.g. a custom downloader that gave up.
+     */
+    private static final class AbandoningFileDownloader implements FileDownloader {
+
+        private final byte[] chunk = new byte[CHUNK_SIZE_IN_BYTES];
+
+        @Override
+        public void startDownloading(String url, FileSize fileSize, Callback callback) {
+            callback.onBytesRead(chunk, CHUNK_SIZE_IN_BYTES);
+        }
+
+        @Override
+        public void stopDownloading() {
+            // Nothing to stop, it has already returned.
+        }
+    }
+}
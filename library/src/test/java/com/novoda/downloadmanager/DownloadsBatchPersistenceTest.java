@@ -0,0 +1,410 @@
+package com.novoda.downloadmanager;
+
+import android.database.sqlite.SQLiteConstraintException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadBatchTitleFixtures.aDownloadBatchTitle;
+import static com.novoda.downloadmanager.DownloadFileFixtures.aDownloadFile;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadFileStatusFixtures.aDownloadFileStatus;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.withSettings;
+
+public class DownloadsBatchPersistenceTest {
+
+    private static final int THOUSAND_FILES = 1000;
+    private static final DownloadBatchId DOWNLOAD_BATCH_ID = aDownloadBatchId().build();
+    private static final long DOWNLOADED_DATE_TIME_IN_MILLIS = 12345L;
+    private static final boolean NOTIFICATION_SEEN = false;
+    private static final String STORAGE_ROOT = "storage/root";
+
+    private final DownloadsPersistence downloadsPersistence = mock(
+            DownloadsPersistence.class,
+            withSettings().extraInterfaces(DownloadsPersistenceQueries.class)
+    );
+    private final DownloadsPersistenceQueries downloadsPersistenceQueries = (DownloadsPersistenceQueries) downloadsPersistence;
+    private final DownloadsFilePersistence downloadsFilePersistence = mock(DownloadsFilePersistence.class);
+    private final CoalescingBatchStatusWriter batchStatusWriter = mock(CoalescingBatchStatusWriter.class);
+    private final InFlightDownloadsSnapshot inFlightDownloadsSnapshot = mock(InFlightDownloadsSnapshot.class);
+
+    private final DownloadsBatchPersistence downloadsBatchPersistence = new DownloadsBatchPersistence(
+            Runnable::run,
+            Runnable::run,
+            downloadsFilePersistence,
+            downloadsPersistence,
+            mock(CallbackThrottleCreator.class),
+            mock(ConnectionChecker.class),
+            mock(DownloadBatchRequirementRule.class),
+            batchStatusWriter,
+            inFlightDownloadsSnapshot,
+            mock(TimeToFirstResumedByte.class)
+    );
+
+    @Test
+    public void persistsAllFilesInOneCall_whenPersistingLargeBatch() {
+        List<DownloadFile> downloadFiles = givenDownloadFiles(THOUSAND_FILES);
+
+        persist(downloadFiles);
+
+        ArgumentCaptor<List<DownloadsFilePersisted>> captor = filesPersistedCaptor();
+        verify(downloadsPersistence).startTransaction();
+        verify(downloadsPersistence).persistFiles(captor.capture());
+        verify(downloadsPersistence, never()).persistFile(any(DownloadsFilePersisted.class));
+        verify(downloadsFilePersistence, never()).persistSync(any());
+        assertThat(captor.getValue()).hasSize(THOUSAND_FILES);
+    }
+
+    @Test
+    public void rollsBackTheBatch_andReportsTheFailure_whenItsFilesCannotBePersisted() {
+        List<DownloadFile> downloadFiles = givenDownloadFiles(2);
+        willThrow(mock(SQLiteConstraintException.class)).given(downloadsPersistence).persistFiles(any());
+
+        boolean persisted = persist(downloadFiles);
+
+        assertThat(persisted).isFalse();
+        verify(downloadsPersistence, never()).transactionSuccess();
+        verify(downloadsPersistence).endTransaction();
+        verifyZeroInteractions(inFlightDownloadsSnapshot);
+    }
+
+    @Test
+    public void doesNotPersistDeletedFiles() {
+        List<DownloadFile> downloadFiles = givenDownloadFiles(2);
+        downloadFiles.add(aDownloadFile()
+                                  .withDownloadFileStatus(aDownloadFileStatus().withStatus(InternalDownloadFileStatus.Status.DELETED).build())
+                                  .build());
+
+        persist(downloadFiles);
+
+        ArgumentCaptor<List<DownloadsFilePersisted>> captor = filesPersistedCaptor();
+        verify(downloadsPersistence).persistFiles(captor.capture());
+        assertThat(captor.getValue()).hasSize(2);
+    }
+
+    @Test
+    public void loadsFilesOfResumableBatchesInOneQuery_withoutNetworkOrDiskAccess() {
+        DownloadsBatchPersisted batchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.QUEUED)
+                .build();
+        DownloadsBatchPersisted otherBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_02")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.PAUSED)
+                .build();
+        given(downloadsPersistence.loadBatches()).willReturn(asList(batchPersisted, otherBatchPersisted));
+        given(downloadsPersistenceQueries.loadFilesIn(asList(batchPersisted.downloadBatchId(), otherBatchPersisted.downloadBatchId()))).willReturn(asList(
+                aFilePersistedFor(batchPersisted, "file_01"),
+                aFilePersistedFor(otherBatchPersisted, "file_02"),
+                aFilePersistedFor(batchPersisted, "file_03")
+        ));
+        FileOperations fileOperations = givenFileOperations();
+        RecordingLoadBatchesCallback callback = new RecordingLoadBatchesCallback();
+
+        downloadsBatchPersistence.loadAsync(fileOperations, callback);
+
+        assertThat(callback.loadedBatches).hasSize(2);
+        verify(downloadsPersistence, never()).loadAllFiles();
+        verify(downloadsPersistence, never()).loadFiles(any(DownloadBatchId.class));
+        verify(fileOperations.filePersistenceCreator().create(), never()).getCurrentSize(any(FilePath.class));
+        verifyZeroInteractions(fileOperations.fileSizeRequester(), fileOperations.fileDownloaderCreator());
+    }
+
+    @Test
+    public void restoresInFlightBatches_beforeLoadingTheOtherStoredBatches() {
+        DownloadsBatchPersisted inFlightBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADING)
+                .build();
+        DownloadsBatchPersisted storedBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_02")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.QUEUED)
+                .build();
+        Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> inFlightFilesByBatches = new LinkedHashMap<>();
+        inFlightFilesByBatches.put(inFlightBatchPersisted, singletonList(aFilePersistedFor(inFlightBatchPersisted, "file_01")));
+        given(inFlightDownloadsSnapshot.restore()).willReturn(inFlightFilesByBatches);
+        givenStoredBatchesWithIdsOf(inFlightBatchPersisted, inFlightBatchPersisted);
+        given(downloadsPersistence.loadBatches()).willReturn(asList(inFlightBatchPersisted, storedBatchPersisted));
+        given(downloadsPersistenceQueries.loadFilesIn(singletonList(storedBatchPersisted.downloadBatchId())))
+                .willReturn(singletonList(aFilePersistedFor(storedBatchPersisted, "file_02")));
+        RecordingLoadBatchesCallback callback = new RecordingLoadBatchesCallback();
+
+        downloadsBatchPersistence.loadAsync(givenFileOperations(), callback);
+
+        assertThat(rawIdsOf(callback.restoredBatches)).containsExactly("batch_01");
+        assertThat(rawIdsOf(callback.loadedBatches)).containsExactly("batch_02");
+    }
+
+    @Test
+    public void restoresInFlightBatches_withTheirStoredStatus() {
+        DownloadsBatchPersisted inFlightBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADING)
+                .build();
+        DownloadsBatchPersisted storedBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.PAUSED)
+                .build();
+        givenInFlightSnapshotOf(inFlightBatchPersisted);
+        givenStoredBatchesWithIdsOf(inFlightBatchPersisted, storedBatchPersisted);
+        given(downloadsPersistence.loadBatches()).willReturn(singletonList(storedBatchPersisted));
+        RecordingLoadBatchesCallback callback = new RecordingLoadBatchesCallback();
+
+        downloadsBatchPersistence.loadAsync(givenFileOperations(), callback);
+
+        assertThat(callback.restoredBatches).hasSize(1);
+        assertThat(callback.restoredBatches.get(0).status().status()).isEqualTo(DownloadBatchStatus.Status.PAUSED);
+        assertThat(callback.loadedBatches).isEmpty();
+        verify(downloadsPersistenceQueries).loadBatchesWithIds(singletonList(inFlightBatchPersisted.downloadBatchId()));
+    }
+
+    @Test
+    public void doesNotRestoreInFlightBatches_whenTheirStoredStatusIsNoLongerInFlight() {
+        DownloadsBatchPersisted inFlightBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADING)
+                .build();
+        DownloadsBatchPersisted storedBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADED)
+                .build();
+        givenInFlightSnapshotOf(inFlightBatchPersisted);
+        givenStoredBatchesWithIdsOf(inFlightBatchPersisted, storedBatchPersisted);
+        given(downloadsPersistence.loadBatches()).willReturn(singletonList(storedBatchPersisted));
+        RecordingLoadBatchesCallback callback = new RecordingLoadBatchesCallback();
+
+        downloadsBatchPersistence.loadAsync(givenFileOperations(), callback);
+
+        assertThat(callback.restoredBatches).isEmpty();
+        assertThat(callback.completedBatchStatuses).hasSize(1);
+        verify(inFlightDownloadsSnapshot).remove(inFlightBatchPersisted.downloadBatchId());
+    }
+
+    @Test
+    public void dropsInFlightBatches_whenTheyAreNotStored() {
+        DownloadsBatchPersisted inFlightBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADING)
+                .build();
+        givenInFlightSnapshotOf(inFlightBatchPersisted);
+        RecordingLoadBatchesCallback callback = new RecordingLoadBatchesCallback();
+
+        downloadsBatchPersistence.loadAsync(givenFileOperations(), callback);
+
+        assertThat(callback.restoredBatches).isEmpty();
+        assertThat(callback.loadedBatches).isEmpty();
+        verify(inFlightDownloadsSnapshot).remove(inFlightBatchPersisted.downloadBatchId());
+    }
+
+    @Test
+    public void removesBatchFromInFlightSnapshot_beforeDeletingIt() {
+        DownloadBatchStatus downloadBatchStatus = mock(DownloadBatchStatus.class);
+        given(downloadBatchStatus.getDownloadBatchId()).willReturn(DOWNLOAD_BATCH_ID);
+        given(downloadsPersistence.delete(DOWNLOAD_BATCH_ID)).willReturn(true);
+
+        downloadsBatchPersistence.deleteSync(downloadBatchStatus);
+
+        InOrder inOrder = inOrder(inFlightDownloadsSnapshot, downloadsPersistence);
+        inOrder.verify(inFlightDownloadsSnapshot).remove(DOWNLOAD_BATCH_ID);
+        inOrder.verify(downloadsPersistence).delete(DOWNLOAD_BATCH_ID);
+    }
+
+    @Test
+    public void loadsCompletedBatchesAsStatuses_withoutInstantiatingThem() {
+        DownloadsBatchPersisted batchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADED)
+                .build();
+        given(downloadsPersistence.loadBatches()).willReturn(singletonList(batchPersisted));
+        given(downloadsPersistenceQueries.sumTotalFileSizes(singleton(DownloadBatchStatus.Status.DOWNLOADED)))
+                .willReturn(singletonMap(batchPersisted.downloadBatchId(), 200L));
+        FileOperations fileOperations = mock(FileOperations.class);
+        RecordingLoadBatchesCallback callback = new RecordingLoadBatchesCallback();
+
+        downloadsBatchPersistence.loadAsync(fileOperations, callback);
+
+        assertThat(callback.loadedBatches).isEmpty();
+        assertThat(callback.completedBatchStatuses).hasSize(1);
+        DownloadBatchStatus completedBatchStatus = callback.completedBatchStatuses.get(0);
+        assertThat(completedBatchStatus.getDownloadBatchId()).isEqualTo(batchPersisted.downloadBatchId());
+        assertThat(completedBatchStatus.status()).isEqualTo(DownloadBatchStatus.Status.DOWNLOADED);
+        assertThat(completedBatchStatus.bytesTotalSize()).isEqualTo(200);
+        assertThat(completedBatchStatus.bytesDownloaded()).isEqualTo(200);
+        verify(downloadsPersistence, never()).loadAllFiles();
+        verify(downloadsPersistenceQueries, never()).loadFilesIn(anyList());
+        verifyZeroInteractions(fileOperations);
+    }
+
+    @Test
+    public void queriesBatches_withoutWaitingForPendingUpdates() {
+        Set<DownloadBatchStatus.Status> statuses = EnumSet.of(DownloadBatchStatus.Status.DOWNLOADING);
+
+        downloadsBatchPersistence.queryBatchStatusesSync(persistence -> persistence.loadBatches(statuses), downloadBatchId -> null);
+
+        verify(downloadsPersistenceQueries).loadBatches(statuses);
+        verify(batchStatusWriter, never()).flushSync();
+    }
+
+    @Test
+    public void resolvesQueriedBatches_fromMemoryOrFromTheStoredFilesOfUnknownBatchesOnly() {
+        DownloadsBatchPersisted knownBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_01")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADING)
+                .build();
+        DownloadsBatchPersisted storedBatchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("batch_02")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.PAUSED)
+                .build();
+        given(downloadsPersistenceQueries.loadBatchesIn(STORAGE_ROOT)).willReturn(asList(knownBatchPersisted, storedBatchPersisted));
+        given(downloadsPersistenceQueries.loadFilesIn(singletonList(storedBatchPersisted.downloadBatchId()))).willReturn(singletonList(
+                aDownloadsFilePersisted()
+                        .withDownloadBatchId(storedBatchPersisted.downloadBatchId())
+                        .withDownloadFileId(aDownloadFileId().withRawDownloadFileId("file_01").build())
+                        .withTotalFileSize(100)
+                        .withBytesDownloaded(40)
+                        .build()
+        ));
+        DownloadBatchStatus knownBatchStatus = mock(DownloadBatchStatus.class);
+
+        List<DownloadBatchStatus> downloadBatchStatuses = downloadsBatchPersistence.queryBatchStatusesSync(
+                persistence -> persistence.loadBatchesIn(STORAGE_ROOT),
+                downloadBatchId -> downloadBatchId.equals(knownBatchPersisted.downloadBatchId()) ? knownBatchStatus : null
+        );
+
+        assertThat(downloadBatchStatuses).hasSize(2);
+        assertThat(downloadBatchStatuses.get(0)).isSameInstanceAs(knownBatchStatus);
+        DownloadBatchStatus storedBatchStatus = downloadBatchStatuses.get(1);
+        assertThat(storedBatchStatus.status()).isEqualTo(DownloadBatchStatus.Status.PAUSED);
+        assertThat(storedBatchStatus.bytesDownloaded()).isEqualTo(40);
+        assertThat(storedBatchStatus.bytesTotalSize()).isEqualTo(100);
+        verify(downloadsPersistence, never()).loadAllFiles();
+    }
+
+    @Test
+    public void countsBatchesForEveryStatus() {
+        Map<DownloadBatchStatus.Status, Integer> storedCounts = new EnumMap<>(DownloadBatchStatus.Status.class);
+        storedCounts.put(DownloadBatchStatus.Status.ERROR, 3);
+        given(downloadsPersistenceQueries.countBatchesByStatus()).willReturn(storedCounts);
+
+        Map<DownloadBatchStatus.Status, Integer> batchCountsByStatus = downloadsBatchPersistence.countBatchesByStatusSync();
+
+        assertThat(batchCountsByStatus).hasSize(DownloadBatchStatus.Status.values().length);
+        assertThat(batchCountsByStatus).containsEntry(DownloadBatchStatus.Status.ERROR, 3);
+        assertThat(batchCountsByStatus).containsEntry(DownloadBatchStatus.Status.DOWNLOADING, 0);
+    }
+
+    private void givenInFlightSnapshotOf(DownloadsBatchPersisted inFlightBatchPersisted) {
+        Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> inFlightFilesByBatches = new LinkedHashMap<>();
+        inFlightFilesByBatches.put(inFlightBatchPersisted, singletonList(aFilePersistedFor(inFlightBatchPersisted, "file_01")));
+        given(inFlightDownloadsSnapshot.restore()).willReturn(inFlightFilesByBatches);
+    }
+
+    private void givenStoredBatchesWithIdsOf(DownloadsBatchPersisted inFlightBatchPersisted, DownloadsBatchPersisted storedBatchPersisted) {
+        given(downloadsPersistenceQueries.loadBatchesWithIds(singletonList(inFlightBatchPersisted.downloadBatchId())))
+                .willReturn(singletonList(storedBatchPersisted));
+    }
+
+    private static FileOperations givenFileOperations() {
+        FileOperations fileOperations = mock(FileOperations.class);
+        FilePersistenceCreator filePersistenceCreator = mock(FilePersistenceCreator.class);
+        FilePersistence filePersistence = mock(FilePersistence.class);
+        FileSizeRequester fileSizeRequester = mock(FileSizeRequester.class);
+        FileDownloaderCreator fileDownloaderCreator = mock(FileDownloaderCreator.class);
+        given(fileOperations.filePersistenceCreator()).willReturn(filePersistenceCreator);
+        given(filePersistenceCreator.create()).willReturn(filePersistence);
+        given(fileOperations.fileSizeRequester()).willReturn(fileSizeRequester);
+        given(fileOperations.fileDownloaderCreator()).willReturn(fileDownloaderCreator);
+        return fileOperations;
+    }
+
+    private static List<String> rawIdsOf(List<DownloadBatch> downloadBatches) {
+        List<String> rawIds = new ArrayList<>(downloadBatches.size());
+        for (DownloadBatch downloadBatch : downloadBatches) {
+            rawIds.add(downloadBatch.getId().rawId());
+        }
+        return rawIds;
+    }
+
+    private static DownloadsFilePersisted aFilePersistedFor(DownloadsBatchPersisted batchPersisted, String rawFileId) {
+        return aDownloadsFilePersisted()
+                .withDownloadBatchId(batchPersisted.downloadBatchId())
+                .withDownloadFileId(aDownloadFileId().withRawDownloadFileId(rawFileId).build())
+                .withFilePath(new LiteFilePath(rawFileId))
+                .withTotalFileSize(100)
+                .build();
+    }
+
+    private boolean persist(List<DownloadFile> downloadFiles) {
+        return downloadsBatchPersistence.persist(
+                aDownloadBatchTitle().build(),
+                DOWNLOAD_BATCH_ID,
+                DownloadBatchStatus.Status.QUEUED,
+                downloadFiles,
+                DOWNLOADED_DATE_TIME_IN_MILLIS,
+                NOTIFICATION_SEEN,
+                STORAGE_ROOT
+        );
+    }
+
+    private static List<DownloadFile> givenDownloadFiles(int count) {
+        List<DownloadFile> downloadFiles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DownloadFileId downloadFileId = aDownloadFileId().withRawDownloadFileId("file_" + i).build();
+            downloadFiles.add(aDownloadFile()
+                                      .withDownloadBatchId(DOWNLOAD_BATCH_ID)
+                                      .withDownloadFileId(downloadFileId)
+                                      .withDownloadFileStatus(aDownloadFileStatus().withDownloadFileId(downloadFileId).build())
+                                      .build());
+        }
+        return downloadFiles;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<DownloadsFilePersisted>> filesPersistedCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static class RecordingLoadBatchesCallback implements DownloadsBatchPersistence.LoadBatchesCallback {
+
+        private final List<DownloadBatch> restoredBatches = new ArrayList<>();
+        private final List<DownloadBatch> loadedBatches = new ArrayList<>();
+        private final List<DownloadBatchStatus> completedBatchStatuses = new ArrayList<>();
+
+        @Override
+        public void onInFlightRestored(List<DownloadBatch> downloadBatches) {
+            restoredBatches.addAll(downloadBatches);
+        }
+
+        @Override
+        public void onLoaded(List<DownloadBatch> downloadBatches, List<DownloadBatchStatus> completedBatchStatuses) {
+            loadedBatches.addAll(downloadBatches);
+            this.completedBatchStatuses.addAll(completedBatchStatuses);
+        }
+    }
+}
@@ -8,6 +8,11 @@ class DownloadsFilePersistedFixtures {
     private long totalFileSize;
     private String url;
     private DownloadFileId downloadFileId;
+    private DownloadFileStatus.Status fileStatus;
+    private long bytesDownloaded;
+    private String validator;
+    private DownloadError.Type errorType;
+    private String errorMessage;
 
     private DownloadsFilePersistedFixtures() {
         // use aFile() to get an instance of this class
@@ -42,6 +47,27 @@ class DownloadsFilePersistedFixtures {
         return this;
     }
 
+    DownloadsFilePersistedFixtures withFileStatus(DownloadFileStatus.Status fileStatus) {
+        this.fileStatus = fileStatus;
+        return this;
+    }
+
+    DownloadsFilePersistedFixtures withBytesDownloaded(long bytesDownloaded) {
+        this.bytesDownloaded = bytesDownloaded;
+        return this;
+    }
+
+    DownloadsFilePersistedFixtures withValidator(String validator) {
+        this.validator = validator;
+        return this;
+    }
+
+    DownloadsFilePersistedFixtures withError(DownloadError.Type errorType, String errorMessage) {
+        this.errorType = errorType;
+        this.errorMessage = errorMessage;
+        return this;
+    }
+
     DownloadsFilePersisted build() {
         return new DownloadsFilePersisted() {
             @Override
@@ -69,6 +95,31 @@ class DownloadsFilePersistedFixtures {
                 return downloadFileId;
             }
 
+            @Override
+            public DownloadFileStatus.Status fileStatus() {
+                return fileStatus;
+            }
+
+            @Override
+            public long bytesDownloaded() {
+                return bytesDownloaded;
+            }
+
+            @Override
+            public String validator() {
+                return validator;
+            }
+
+            @Override
+            public DownloadError.Type errorType() {
+                return errorType;
+            }
+
+            @Override
+            public String errorMessage() {
+                return errorMessage;
+            }
+
         };
     }
 }
@@ -0,0 +1,99 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DownloadsFilePersistenceTest {
+
+    private static final DownloadBatchId DOWNLOAD_BATCH_ID = aDownloadBatchId().build();
+    private static final FilePath FILE_PATH = new LiteFilePath("batch_01/file_01");
+    private static final long TOTAL_FILE_SIZE = 1000;
+    private static final long BYTES_DOWNLOADED = 400;
+
+    private final CoalescingBatchStatusWriter batchStatusWriter = mock(CoalescingBatchStatusWriter.class);
+    private final FileOperations fileOperations = mock(FileOperations.class);
+    private final FilePersistenceCreator filePersistenceCreator = mock(FilePersistenceCreator.class);
+    private final FilePersistence filePersistence = mock(FilePersistence.class);
+
+    private final DownloadsFilePersistence downloadsFilePersistence = new DownloadsFilePersistence(
+            mock(DownloadsPersistence.class),
+            batchStatusWriter,
+            mock(TimeToFirstResumedByte.class)
+    );
+
+    @Before
+    public void setUp() {
+        given(fileOperations.filePersistenceCreator()).willReturn(filePersistenceCreator);
+        given(filePersistenceCreator.create()).willReturn(filePersistence);
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(BYTES_DOWNLOADED);
+    }
+
+    @Test
+    public void restoresPersistedFileState_withoutReadingTheFile() {
+        DownloadsFilePersisted filePersisted = aFilePersisted()
+                .withFileStatus(DownloadFileStatus.Status.ERROR)
+                .withBytesDownloaded(BYTES_DOWNLOADED)
+                .withError(DownloadError.Type.NETWORK_ERROR_CANNOT_DOWNLOAD_FILE, "timeout")
+                .build();
+
+        DownloadFile downloadFile = loadSingleFile(DownloadBatchStatus.Status.ERROR, filePersisted);
+
+        InternalDownloadFileStatus fileStatus = (InternalDownloadFileStatus) downloadFile.fileStatus();
+        assertThat(fileStatus.status()).isEqualTo(DownloadFileStatus.Status.ERROR);
+        assertThat(fileStatus.bytesDownloaded()).isEqualTo(BYTES_DOWNLOADED);
+        assertThat(fileStatus.error().get()).isEqualTo(new DownloadError(DownloadError.Type.NETWORK_ERROR_CANNOT_DOWNLOAD_FILE, "timeout"));
+        verify(filePersistence, never()).getCurrentSize(any(FilePath.class));
+    }
+
+    @Test
+    public void derivesFileStateFromBatchAndFile_whenStoredWithoutFileStatus() {
+        DownloadsFilePersisted filePersisted = aFilePersisted().build();
+
+        DownloadFile downloadFile = loadSingleFile(DownloadBatchStatus.Status.PAUSED, filePersisted);
+
+        assertThat(downloadFile.fileStatus().status()).isEqualTo(DownloadFileStatus.Status.PAUSED);
+        assertThat(downloadFile.fileStatus().bytesDownloaded()).isEqualTo(BYTES_DOWNLOADED);
+    }
+
+    @Test
+    public void doesNotRecordUpdate_whenFileIsDeleted() {
+        DownloadsFilePersisted filePersisted = aFilePersisted().withFileStatus(DownloadFileStatus.Status.DELETED).build();
+
+        downloadsFilePersistence.updateAsync(filePersisted);
+
+        verify(batchStatusWriter, never()).updateFile(any(DownloadsFilePersisted.class));
+    }
+
+    private DownloadFile loadSingleFile(DownloadBatchStatus.Status batchStatus, DownloadsFilePersisted filePersisted) {
+        List<DownloadFile> downloadFiles = downloadsFilePersistence.loadSync(
+                DOWNLOAD_BATCH_ID,
+                batchStatus,
+                singletonList(filePersisted),
+                fileOperations,
+                downloadsFilePersistence
+        );
+        assertThat(downloadFiles).hasSize(1);
+        return downloadFiles.get(0);
+    }
+
+    private static DownloadsFilePersistedFixtures aFilePersisted() {
+        return aDownloadsFilePersisted()
+                .withDownloadBatchId(DOWNLOAD_BATCH_ID)
+                .withDownloadFileId(aDownloadFileId().withRawDownloadFileId("file_01").build())
+                .withFilePath(FILE_PATH)
+                .withTotalFileSize(TOTAL_FILE_SIZE);
+    }
+}
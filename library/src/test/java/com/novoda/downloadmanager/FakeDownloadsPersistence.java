@@ -2,11 +2,13 @@ package com.novoda.downloadmanager;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-class FakeDownloadsPersistence implements DownloadsPersistence {
+class FakeDownloadsPersistence implements DownloadsPersistence, DownloadsPersistenceQueries {
 
     private final Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> filesByBatches;
 
@@ -40,11 +42,85 @@ class FakeDownloadsPersistence implements DownloadsPersistence {
         return new ArrayList<>(batches);
     }
 
+    @Override
+    public List<DownloadsBatchPersisted> loadBatches(Set<DownloadBatchStatus.Status> statuses) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : filesByBatches.keySet()) {
+            if (statuses.contains(batchPersisted.downloadBatchStatus())) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesIn(String storageRoot) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : filesByBatches.keySet()) {
+            if (storageRoot.equals(batchPersisted.storageRoot())) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesDownloadedAfter(long timestampInMillis) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : filesByBatches.keySet()) {
+            if (batchPersisted.downloadedDateTimeInMillis() > timestampInMillis) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesWithIds(List<DownloadBatchId> downloadBatchIds) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : filesByBatches.keySet()) {
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                if (downloadBatchId.rawId().equals(batchPersisted.downloadBatchId().rawId())) {
+                    matchingBatches.add(batchPersisted);
+                }
+            }
+        }
+        return matchingBatches;
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatchesPage(int offset, int limit) {
+        List<DownloadsBatchPersisted> batches = new ArrayList<>(filesByBatches.keySet());
+        int fromIndex = Math.min(offset, batches.size());
+        int toIndex = Math.min(fromIndex + limit, batches.size());
+        return batches.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public Map<DownloadBatchStatus.Status, Integer> countBatchesByStatus() {
+        Map<DownloadBatchStatus.Status, Integer> batchCountsByStatus = new EnumMap<>(DownloadBatchStatus.Status.class);
+        for (DownloadsBatchPersisted batchPersisted : filesByBatches.keySet()) {
+            Integer count = batchCountsByStatus.get(batchPersisted.downloadBatchStatus());
+            batchCountsByStatus.put(batchPersisted.downloadBatchStatus(), count == null ? 1 : count + 1);
+        }
+        return batchCountsByStatus;
+    }
+
     @Override
     public void persistFile(DownloadsFilePersisted filePersisted) {
         // no-op.
     }
 
+    @Override
+    public void persistFiles(List<DownloadsFilePersisted> filesPersisted) {
+        // no-op.
+    }
+
+    @Override
+    public int updateFiles(List<DownloadsFilePersisted> filesPersisted) {
+        return filesPersisted.size();
+    }
+
     @Override
     public List<DownloadsFilePersisted> loadAllFiles() {
         List<DownloadsFilePersisted> allFiles = new ArrayList<>();
@@ -64,21 +140,60 @@ class FakeDownloadsPersistence implements DownloadsPersistence {
         return Collections.emptyList();
     }
 
+    @Override
+    public Map<DownloadBatchId, Long> sumTotalFileSizes(Set<DownloadBatchStatus.Status> statuses) {
+        Map<DownloadBatchId, Long> totalFileSizesByBatchId = new HashMap<>();
+        for (Map.Entry<DownloadsBatchPersisted, List<DownloadsFilePersisted>> entry : filesByBatches.entrySet()) {
+            if (statuses.contains(entry.getKey().downloadBatchStatus())) {
+                long totalFileSize = 0;
+                for (DownloadsFilePersisted filePersisted : entry.getValue()) {
+                    totalFileSize += filePersisted.totalFileSize();
+                }
+                totalFileSizesByBatchId.put(entry.getKey().downloadBatchId(), totalFileSize);
+            }
+        }
+        return totalFileSizesByBatchId;
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadFilesIn(List<DownloadBatchId> downloadBatchIds) {
+        List<DownloadsFilePersisted> filesPersisted = new ArrayList<>();
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            filesPersisted.addAll(loadFiles(downloadBatchId));
+        }
+        return filesPersisted;
+    }
+
     @Override
     public boolean delete(DownloadBatchId downloadBatchId) {
         return true;
     }
 
+    @Override
+    public int delete(List<DownloadBatchId> downloadBatchIds) {
+        return downloadBatchIds.size();
+    }
+
     @Override
     public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
         return true;
     }
 
+    @Override
+    public int update(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        return downloadBatchIds.size();
+    }
+
     @Override
     public boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen) {
         return true;
     }
 
+    @Override
+    public int update(List<DownloadBatchId> downloadBatchIds, boolean notificationSeen) {
+        return downloadBatchIds.size();
+    }
+
     @Override
     public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
         // no-op
@@ -0,0 +1,135 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+
+/**
+ * Replays the same download, on a fake clock, through every throttle and compares
+ * how many callbacks they emit and how long the final status takes to be emitted.
+ */
+public class FileCallbackThrottleComparisonTest {
+
+    private static final long TOTAL_BYTES = 10 * 1024 * 1024;
+    private static final long CHUNK_SIZE_IN_BYTES = 8 * 1024;
+    private static final long MILLIS_PER_CHUNK = 4;
+    private static final long STALL_IN_MILLIS = 3000;
+    private static final long TICK_INTERVAL_IN_MILLIS = 1000;
+    private static final long MIN_INTERVAL_IN_MILLIS = 500;
+    private static final long MIN_BYTES_DELTA = 1024 * 1024;
+
+    private final FakeClock clock = new FakeClock();
+
+    @Test
+    public void hybridThrottle_emitsFewerCallbacksThanProgressThrottle_andTheFinalStatusAsSoonAsTheTimeThrottle() {
+        Replay byTime = replay(new FileCallbackThrottleByTime(clock));
+        Replay byProgressIncrease = replay(new FileCallbackThrottleByProgressIncrease());
+        Replay hybrid = replay(new FileCallbackThrottleHybrid(clock, clock, MIN_INTERVAL_IN_MILLIS, MIN_BYTES_DELTA));
+
+        assertThat(hybrid.callbacks).isLessThan(byProgressIncrease.callbacks);
+        assertThat(hybrid.millisToFinalStatus).isEqualTo(0L);
+        assertThat(byTime.millisToFinalStatus).isGreaterThan(0L);
+    }
+
+    private Replay replay(FileCallbackThrottle throttle) {
+        clock.reset();
+        Replay replay = new Replay();
+        throttle.setCallback(downloadBatchStatus -> replay.onUpdate(downloadBatchStatus, clock.nowInMillis()));
+
+        throttle.update(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 0));
+        for (long bytesDownloaded = CHUNK_SIZE_IN_BYTES; bytesDownloaded <= TOTAL_BYTES; bytesDownloaded += CHUNK_SIZE_IN_BYTES) {
+            if (bytesDownloaded == TOTAL_BYTES / 2) {
+                clock.advanceBy(STALL_IN_MILLIS);
+            }
+            clock.advanceBy(MILLIS_PER_CHUNK);
+            throttle.update(aStatus(DownloadBatchStatus.Status.DOWNLOADING, bytesDownloaded));
+        }
+
+        replay.finalStatusUpdatedAtMillis = clock.nowInMillis();
+        throttle.update(aStatus(DownloadBatchStatus.Status.DOWNLOADED, TOTAL_BYTES));
+        clock.advanceBy(TICK_INTERVAL_IN_MILLIS);
+        throttle.stopUpdates();
+        return replay;
+    }
+
+    private static DownloadBatchStatus aStatus(DownloadBatchStatus.Status status, long bytesDownloaded) {
+        return anInternalDownloadsBatchStatus()
+                .withStatus(status)
+                .withBytesDownloaded(bytesDownloaded)
+                .withBytesTotalSize(TOTAL_BYTES)
+                .withPercentageDownloaded((int) (bytesDownloaded * 100 / TOTAL_BYTES))
+                .build();
+    }
+
+    private static class Replay {
+
+        private int callbacks;
+        private long finalStatusUpdatedAtMillis;
+        private long millisToFinalStatus = -1;
+
+        void onUpdate(DownloadBatchStatus downloadBatchStatus, long nowInMillis) {
+            callbacks++;
+            if (downloadBatchStatus.status() == DownloadBatchStatus.Status.DOWNLOADED && millisToFinalStatus == -1) {
+                millisToFinalStatus = nowInMillis - finalStatusUpdatedAtMillis;
+            }
+        }
+    }
+
+    /**
+     * Performs the scheduled actions of the time and hybrid throttles on every tick the clock goes past.
+     */
+    private static class FakeClock implements Clock, ActionScheduler {
+
+        private final List<Action> scheduledActions = new ArrayList<>();
+        private long nowInMillis;
+
+        void reset() {
+            nowInMillis = 0;
+            scheduledActions.clear();
+        }
+
+        void advanceBy(long millis) {
+            long targetInMillis = nowInMillis + millis;
+            long nextTickInMillis = (nowInMillis / TICK_INTERVAL_IN_MILLIS + 1) * TICK_INTERVAL_IN_MILLIS;
+            while (nextTickInMillis <= targetInMillis) {
+                nowInMillis = nextTickInMillis;
+                List<Action> actions = new ArrayList<>(scheduledActions);
+                scheduledActions.clear();
+                for (Action action : actions) {
+                    action.perform();
+                }
+                nextTickInMillis += TICK_INTERVAL_IN_MILLIS;
+            }
+            nowInMillis = targetInMillis;
+        }
+
+        @Override
+        public long nowInMillis() {
+            return nowInMillis;
+        }
+
+        @Override
+        public void schedule(Action action) {
+            scheduledActions.add(action);
+        }
+
+        @Override
+        public void cancel(Action action) {
+            scheduledActions.remove(action);
+        }
+
+        @Override
+        public void cancelAll() {
+            scheduledActions.clear();
+        }
+
+        @Override
+        public boolean isScheduled(Action action) {
+            return scheduledActions.contains(action);
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package com.novoda.downloadmanager;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
 
 public class FileCallbackThrottleCreatorTest {
 
     @Test
     public void createsTimeThrottle() {
-        FileCallbackThrottle fileCallbackThrottle = CallbackThrottleCreator.byTime(TimeUnit.SECONDS, 1)
+        FileCallbackThrottle fileCallbackThrottle = CallbackThrottleCreator.byTime(mock(ScheduledExecutorService.class), TimeUnit.SECONDS, 1)
                 .create();
 
         assertThat(fileCallbackThrottle).isInstanceOf(FileCallbackThrottleByTime.class);
@@ -24,6 +26,14 @@ public class FileCallbackThrottleCreatorTest {
         assertThat(fileCallbackThrottle).isInstanceOf(FileCallbackThrottleByProgressIncrease.class);
     }
 
+    @Test
+    public void createsHybridThrottle() {
+        FileCallbackThrottle fileCallbackThrottle = CallbackThrottleCreator.hybrid(mock(ScheduledExecutorService.class), () -> 0, TimeUnit.SECONDS, 1, 1024)
+                .create();
+
+        assertThat(fileCallbackThrottle).isInstanceOf(FileCallbackThrottleHybrid.class);
+    }
+
     @Test(expected = RuntimeException.class)
     public void throwsException_whenCallbackThrottleDoesNotExist() {
         CallbackThrottleCreator.byCustomThrottle(null)
@@ -0,0 +1,162 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+
+public class FileCallbackThrottleHybridTest {
+
+    private static final long MIN_INTERVAL_IN_MILLIS = 500;
+    private static final long MIN_BYTES_DELTA = 1000;
+
+    private final DownloadBatchStatusCallback callback = mock(DownloadBatchStatusCallback.class);
+    private final ActionScheduler actionScheduler = mock(ActionScheduler.class);
+
+    private long nowInMillis = 1000;
+
+    private final FileCallbackThrottleHybrid callbackThrottleHybrid = new FileCallbackThrottleHybrid(
+            actionScheduler,
+            () -> nowInMillis,
+            MIN_INTERVAL_IN_MILLIS,
+            MIN_BYTES_DELTA
+    );
+
+    @Before
+    public void setUp() {
+        callbackThrottleHybrid.setCallback(callback);
+        callbackThrottleHybrid.update(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 0));
+        reset(callback, actionScheduler);
+    }
+
+    @Test
+    public void doesNothing_whenCallbackUnset() {
+        FileCallbackThrottleHybrid throttleWithoutCallback = new FileCallbackThrottleHybrid(
+                actionScheduler,
+                () -> nowInMillis,
+                MIN_INTERVAL_IN_MILLIS,
+                MIN_BYTES_DELTA
+        );
+
+        throttleWithoutCallback.update(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 0));
+
+        then(callback).should(never()).onUpdate(any(DownloadBatchStatus.class));
+    }
+
+    @Test
+    public void emits_whenStatusChanges() {
+        DownloadBatchStatus pausedStatus = aStatus(DownloadBatchStatus.Status.PAUSED, 0);
+
+        callbackThrottleHybrid.update(pausedStatus);
+
+        then(callback).should().onUpdate(pausedStatus);
+    }
+
+    @Test
+    public void emits_whenBytesDeltaReachesThreshold() {
+        DownloadBatchStatus downloadingStatus = aStatus(DownloadBatchStatus.Status.DOWNLOADING, MIN_BYTES_DELTA);
+
+        callbackThrottleHybrid.update(downloadingStatus);
+
+        then(callback).should().onUpdate(downloadingStatus);
+    }
+
+    @Test
+    public void doesNotEmit_whenBytesDeltaIsBelowThreshold_andIntervalHasNotElapsed() {
+        nowInMillis += MIN_INTERVAL_IN_MILLIS - 1;
+
+        callbackThrottleHybrid.update(aStatus(DownloadBatchStatus.Status.DOWNLOADING, MIN_BYTES_DELTA - 1));
+
+        then(callback).should(never()).onUpdate(any(DownloadBatchStatus.class));
+    }
+
+    @Test
+    public void emits_whenIntervalHasElapsed_andBytesChanged() {
+        nowInMillis += MIN_INTERVAL_IN_MILLIS;
+        DownloadBatchStatus downloadingStatus = aStatus(DownloadBatchStatus.Status.DOWNLOADING, 1);
+
+        callbackThrottleHybrid.update(downloadingStatus);
+
+        then(callback).should().onUpdate(downloadingStatus);
+    }
+
+    @Test
+    public void doesNotEmit_whenIntervalHasElapsed_butBytesAreUnchanged() {
+        nowInMillis += MIN_INTERVAL_IN_MILLIS;
+
+        callbackThrottleHybrid.update(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 0));
+
+        then(callback).should(never()).onUpdate(any(DownloadBatchStatus.class));
+    }
+
+    @Test
+    public void emitsPendingStatus_onATickOnceTheIntervalHasElapsed() {
+        DownloadBatchStatus pendingStatus = aStatus(DownloadBatchStatus.Status.DOWNLOADING, 1);
+        callbackThrottleHybrid.update(pendingStatus);
+        ActionScheduler.Action emitPendingStatus = scheduledAction();
+
+        emitPendingStatus.perform();
+        then(callback).should(never()).onUpdate(any(DownloadBatchStatus.class));
+        nowInMillis += MIN_INTERVAL_IN_MILLIS;
+        emitPendingStatus.perform();
+
+        then(callback).should().onUpdate(pendingStatus);
+        then(actionScheduler).should().cancel(emitPendingStatus);
+    }
+
+    @Test
+    public void doesNotScheduleAgain_whileAnEmissionIsScheduled() {
+        callbackThrottleHybrid.update(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 1));
+        given(actionScheduler.isScheduled(any(ActionScheduler.Action.class))).willReturn(true);
+
+        callbackThrottleHybrid.update(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 2));
+
+        then(actionScheduler).should().schedule(any(ActionScheduler.Action.class));
+    }
+
+    @Test
+    public void emitsPendingStatus_whenStoppingUpdates() {
+        DownloadBatchStatus pendingStatus = aStatus(DownloadBatchStatus.Status.DOWNLOADING, 1);
+        callbackThrottleHybrid.update(pendingStatus);
+
+        callbackThrottleHybrid.stopUpdates();
+
+        then(callback).should().onUpdate(pendingStatus);
+    }
+
+    @Test
+    public void doesNotEmit_whenStoppingUpdates_withNothingPending() {
+        callbackThrottleHybrid.stopUpdates();
+
+        then(callback).should(never()).onUpdate(any(DownloadBatchStatus.class));
+    }
+
+    @Test
+    public void doesNotEmit_afterUpdatesAreStopped() {
+        callbackThrottleHybrid.stopUpdates();
+
+        callbackThrottleHybrid.update(aStatus(DownloadBatchStatus.Status.DOWNLOADED, MIN_BYTES_DELTA));
+
+        then(callback).should(never()).onUpdate(any(DownloadBatchStatus.class));
+    }
+
+    private ActionScheduler.Action scheduledAction() {
+        ArgumentCaptor<ActionScheduler.Action> action = ArgumentCaptor.forClass(ActionScheduler.Action.class);
+        then(actionScheduler).should().schedule(action.capture());
+        return action.getValue();
+    }
+
+    private static DownloadBatchStatus aStatus(DownloadBatchStatus.Status status, long bytesDownloaded) {
+        return anInternalDownloadsBatchStatus()
+                .withStatus(status)
+                .withBytesDownloaded(bytesDownloaded)
+                .build();
+    }
+}
@@ -0,0 +1,61 @@
+package com.novoda.downloadmanager;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static java.util.Arrays.asList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+public class FilteringDownloadsPersistenceQueriesTest {
+
+    private static final DownloadsBatchPersisted OLDER_PAUSED_BATCH = aDownloadsBatchPersisted()
+            .withRawDownloadBatchId("batch_01")
+            .withDownloadBatchStatus(DownloadBatchStatus.Status.PAUSED)
+            .withDownloadedDateTimeInMillis(100)
+            .build();
+    private static final DownloadsBatchPersisted DOWNLOADED_BATCH = aDownloadsBatchPersisted()
+            .withRawDownloadBatchId("batch_02")
+            .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADED)
+            .withDownloadedDateTimeInMillis(200)
+            .build();
+    private static final DownloadsBatchPersisted NEWER_PAUSED_BATCH = aDownloadsBatchPersisted()
+            .withRawDownloadBatchId("batch_03")
+            .withDownloadBatchStatus(DownloadBatchStatus.Status.PAUSED)
+            .withDownloadedDateTimeInMillis(300)
+            .build();
+
+    private final DownloadsPersistence downloadsPersistence = mock(DownloadsPersistence.class);
+
+    @Test
+    public void usesTheQueriesOfThePersistence_whenItImplementsThem() {
+        DownloadsPersistence queryablePersistence = mock(DownloadsPersistence.class, withSettings().extraInterfaces(DownloadsPersistenceQueries.class));
+
+        DownloadsPersistenceQueries downloadsPersistenceQueries = FilteringDownloadsPersistenceQueries.queriesFor(queryablePersistence);
+
+        assertThat(downloadsPersistenceQueries).isSameInstanceAs(queryablePersistence);
+    }
+
+    @Test
+    public void filtersAllBatches_mostRecentlyDownloadedFirst_whenThePersistenceDoesNotImplementTheQueries() {
+        given(downloadsPersistence.loadBatches()).willReturn(asList(OLDER_PAUSED_BATCH, DOWNLOADED_BATCH, NEWER_PAUSED_BATCH));
+
+        List<DownloadsBatchPersisted> batches = FilteringDownloadsPersistenceQueries.queriesFor(downloadsPersistence)
+                .loadBatches(EnumSet.of(DownloadBatchStatus.Status.PAUSED));
+
+        assertThat(batches).containsExactly(NEWER_PAUSED_BATCH, OLDER_PAUSED_BATCH).inOrder();
+    }
+
+    @Test
+    public void countsAllBatchesPerStatus_whenThePersistenceDoesNotImplementTheQueries() {
+        given(downloadsPersistence.loadBatches()).willReturn(asList(OLDER_PAUSED_BATCH, DOWNLOADED_BATCH, NEWER_PAUSED_BATCH));
+
+        assertThat(FilteringDownloadsPersistenceQueries.queriesFor(downloadsPersistence).countBatchesByStatus())
+                .containsExactly(DownloadBatchStatus.Status.PAUSED, 2, DownloadBatchStatus.Status.DOWNLOADED, 1);
+    }
+}
@@ -0,0 +1,125 @@
+package com.novoda.downloadmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static com.novoda.downloadmanager.FilePathFixtures.aFilePath;
+import static java.util.Collections.singletonList;
+
+public class InFlightDownloadsSnapshotTest {
+
+    private static final long NO_UPDATE_INTERVAL = 0;
+    private static final long LONG_UPDATE_INTERVAL = Long.MAX_VALUE;
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_01").build();
+    private static final Map<DownloadBatchId, DownloadBatchStatus.Status> NO_STATUSES = Collections.emptyMap();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File snapshotFile;
+
+    @Before
+    public void setUp() {
+        snapshotFile = new File(temporaryFolder.getRoot(), "downloads.inflight");
+    }
+
+    @Test
+    public void restoresBatchesInFlight_onTheNextLaunch() {
+        InFlightDownloadsSnapshot snapshot = new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL);
+        snapshot.put(aBatch(DownloadBatchStatus.Status.QUEUED), singletonList(aFile(0)));
+        snapshot.update(Collections.singletonMap(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING), singletonList(aFile(40)));
+
+        Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> restored = new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL).restore();
+
+        DownloadsBatchPersisted restoredBatch = restored.keySet().iterator().next();
+        assertThat(restoredBatch.downloadBatchId().rawId()).isEqualTo("batch_01");
+        assertThat(restoredBatch.downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.DOWNLOADING);
+        assertThat(restored.get(restoredBatch).get(0).bytesDownloaded()).isEqualTo(40);
+    }
+
+    @Test
+    public void dropsBatches_onceTheyFinishDownloading() {
+        InFlightDownloadsSnapshot snapshot = new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL);
+        snapshot.put(aBatch(DownloadBatchStatus.Status.DOWNLOADING), singletonList(aFile(0)));
+
+        snapshot.update(Collections.singletonMap(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED), Collections.emptyList());
+
+        assertThat(new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL).restore()).isEmpty();
+    }
+
+    @Test
+    public void dropsBatches_whenRemoved() {
+        InFlightDownloadsSnapshot snapshot = new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL);
+        snapshot.put(aBatch(DownloadBatchStatus.Status.PAUSED), singletonList(aFile(0)));
+
+        snapshot.remove(BATCH_ID);
+
+        assertThat(new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL).restore()).isEmpty();
+    }
+
+    @Test
+    public void doesNotRewriteSnapshot_forProgressWithinTheInterval() {
+        InFlightDownloadsSnapshot snapshot = new InFlightDownloadsSnapshot(snapshotFile, LONG_UPDATE_INTERVAL);
+        snapshot.put(aBatch(DownloadBatchStatus.Status.DOWNLOADING), singletonList(aFile(0)));
+
+        snapshot.update(NO_STATUSES, singletonList(aFile(40)));
+
+        Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> restored = new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL).restore();
+        assertThat(restored.values().iterator().next().get(0).bytesDownloaded()).isEqualTo(0);
+    }
+
+    @Test
+    public void doesNotRewriteSnapshot_forStatusChangesWithinTheInterval() {
+        InFlightDownloadsSnapshot snapshot = new InFlightDownloadsSnapshot(snapshotFile, LONG_UPDATE_INTERVAL);
+        snapshot.put(aBatch(DownloadBatchStatus.Status.QUEUED), singletonList(aFile(0)));
+
+        snapshot.update(Collections.singletonMap(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING), Collections.emptyList());
+
+        Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> restored = new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL).restore();
+        assertThat(restored.keySet().iterator().next().downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.QUEUED);
+    }
+
+    @Test
+    public void restoresNothing_whenTheSnapshotIsCorrupt() throws IOException {
+        InFlightDownloadsSnapshot snapshot = new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL);
+        snapshot.put(aBatch(DownloadBatchStatus.Status.DOWNLOADING), singletonList(aFile(0)));
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(snapshotFile, "rw")) {
+            randomAccessFile.setLength(snapshotFile.length() - 1);
+        }
+
+        assertThat(new InFlightDownloadsSnapshot(snapshotFile, NO_UPDATE_INTERVAL).restore()).isEmpty();
+    }
+
+    private static DownloadsBatchPersisted aBatch(DownloadBatchStatus.Status status) {
+        return aDownloadsBatchPersisted()
+                .withRawDownloadBatchId(BATCH_ID.rawId())
+                .withDownloadBatchStatus(status)
+                .build();
+    }
+
+    private static DownloadsFilePersisted aFile(long bytesDownloaded) {
+        return aDownloadsFilePersisted()
+                .withDownloadBatchId(BATCH_ID)
+                .withDownloadFileId(aDownloadFileId().withRawDownloadFileId("file_01").build())
+                .withFilePath(aFilePath().withRawPath("/downloads/file_01").build())
+                .withTotalFileSize(100)
+                .withUrl("http://example.com/file_01")
+                .withFileStatus(DownloadFileStatus.Status.DOWNLOADING)
+                .withBytesDownloaded(bytesDownloaded)
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class InstrumentedExecutorTest {
+
+    private final List<Runnable> queuedTasks = new ArrayList<>();
+    private final InstrumentedExecutor instrumentedExecutor = new InstrumentedExecutor("test", queuedTasks::add);
+
+    @Test
+    public void countsTasks_waitingToRun() {
+        instrumentedExecutor.execute(() -> { });
+        instrumentedExecutor.execute(() -> { });
+
+        assertThat(instrumentedExecutor.queueDepth()).isEqualTo(2);
+    }
+
+    @Test
+    public void stopsCountingTasks_onceTheyHaveRun() {
+        instrumentedExecutor.execute(() -> { });
+        instrumentedExecutor.execute(() -> { });
+
+        queuedTasks.get(0).run();
+
+        assertThat(instrumentedExecutor.queueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    public void stopsCountingTasks_whenTheyAreRejected() {
+        InstrumentedExecutor rejectingExecutor = new InstrumentedExecutor("test", command -> {
+            throw new RejectedExecutionException("shut down");
+        });
+
+        try {
+            rejectingExecutor.execute(() -> { });
+        } catch (RejectedExecutionException ignored) {
+            // Rejections are passed on to the caller.
+        }
+
+        assertThat(rejectingExecutor.queueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void keepsTheDeepestQueue_onceTasksHaveRun() {
+        instrumentedExecutor.execute(() -> { });
+        instrumentedExecutor.execute(() -> { });
+
+        queuedTasks.get(0).run();
+        queuedTasks.get(1).run();
+
+        assertThat(instrumentedExecutor.maxQueueDepth()).isEqualTo(2);
+    }
+
+    @Test
+    public void runsTheGivenTask() {
+        boolean[] ran = {false};
+        instrumentedExecutor.execute(() -> ran[0] = true);
+
+        queuedTasks.get(0).run();
+
+        assertThat(ran[0]).isTrue();
+    }
+}
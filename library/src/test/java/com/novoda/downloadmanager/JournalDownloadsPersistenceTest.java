@@ -0,0 +1,273 @@
+package com.novoda.downloadmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static com.novoda.downloadmanager.FilePathFixtures.aFilePath;
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+
+public class JournalDownloadsPersistenceTest {
+
+    private static final long NO_COMPACTION = Long.MAX_VALUE;
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_01").build();
+    private static final DownloadBatchId OTHER_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_02").build();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File journalFile;
+
+    @Before
+    public void setUp() {
+        journalFile = new File(temporaryFolder.getRoot(), "downloads.journal");
+    }
+
+    @Test
+    public void restoresBatchesAndFiles_fromTheJournal() {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        persistence.persistFiles(singletonList(aFile(BATCH_ID, "file_01", 0)));
+        persistence.update(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+        persistence.update(BATCH_ID, true);
+        persistence.updateFiles(singletonList(aFile(BATCH_ID, "file_01", 40)));
+
+        JournalDownloadsPersistence restoredPersistence = journalPersistence(NO_COMPACTION);
+
+        DownloadsBatchPersisted restoredBatch = restoredPersistence.loadBatches().get(0);
+        assertThat(restoredBatch.downloadBatchId().rawId()).isEqualTo("batch_01");
+        assertThat(restoredBatch.downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.DOWNLOADING);
+        assertThat(restoredBatch.notificationSeen()).isTrue();
+        DownloadsFilePersisted restoredFile = restoredPersistence.loadFiles(BATCH_ID).get(0);
+        assertThat(restoredFile.downloadFileId().rawId()).isEqualTo("file_01");
+        assertThat(restoredFile.bytesDownloaded()).isEqualTo(40);
+        assertThat(restoredFile.fileStatus()).isEqualTo(DownloadFileStatus.Status.DOWNLOADING);
+    }
+
+    @Test
+    public void discardsChanges_ofTransactionsNotMarkedSuccessful() {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+
+        persistence.startTransaction();
+        persistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+        persistence.persistBatch(aBatch(OTHER_BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        persistence.endTransaction();
+
+        assertThat(rawIdsOf(persistence.loadBatches())).containsExactly("batch_01");
+        assertThat(persistence.loadBatches().get(0).downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.QUEUED);
+        assertThat(rawIdsOf(journalPersistence(NO_COMPACTION).loadBatches())).containsExactly("batch_01");
+    }
+
+    @Test
+    public void restoresChangedFilesAndDeletedBatches_ofTransactionsNotMarkedSuccessful() {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        persistence.persistFiles(singletonList(aFile(BATCH_ID, "file_01", 10)));
+
+        persistence.startTransaction();
+        persistence.updateFiles(singletonList(aFile(BATCH_ID, "file_01", 40)));
+        persistence.persistFiles(singletonList(aFile(BATCH_ID, "file_02", 0)));
+        persistence.delete(BATCH_ID);
+        persistence.endTransaction();
+
+        assertThat(rawIdsOf(persistence.loadBatches())).containsExactly("batch_01");
+        List<DownloadsFilePersisted> files = persistence.loadFiles(BATCH_ID);
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0).bytesDownloaded()).isEqualTo(10);
+    }
+
+    @Test
+    public void rollsBackTheTransaction_andReportsTheFailure_whenItCannotBeAppendedToTheJournal() throws IOException {
+        DownloadsJournal journal = mock(DownloadsJournal.class);
+        given(journal.load()).willReturn(DownloadsJournalIndex.empty());
+        willThrow(new IOException("no space left")).given(journal).append(any(DownloadsJournal.Frame.class));
+        JournalDownloadsPersistence persistence = new JournalDownloadsPersistence(journal);
+
+        IllegalStateException reportedFailure = null;
+        try {
+            persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        } catch (IllegalStateException e) {
+            reportedFailure = e;
+        }
+
+        assertThat(reportedFailure).hasCauseThat().hasMessageThat().isEqualTo("no space left");
+        assertThat(persistence.loadBatches()).isEmpty();
+    }
+
+    @Test
+    public void startsOverFromAnEmptyJournal_whenTheJournalCannotBeLoaded() {
+        assertThat(journalFile.mkdir()).isTrue();
+
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+
+        assertThat(rawIdsOf(journalPersistence(NO_COMPACTION).loadBatches())).containsExactly("batch_01");
+        assertThat(new File(journalFile.getPath() + ".unreadable").isDirectory()).isTrue();
+    }
+
+    @Test
+    public void hidesChangesOfAnOpenTransaction_fromOtherThreads() throws InterruptedException {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.startTransaction();
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+
+        AtomicReference<List<DownloadsBatchPersisted>> batchesSeenByOtherThread = new AtomicReference<>();
+        Thread otherThread = new Thread(() -> batchesSeenByOtherThread.set(persistence.loadBatches()));
+        otherThread.start();
+        otherThread.join();
+
+        assertThat(batchesSeenByOtherThread.get()).isEmpty();
+        assertThat(rawIdsOf(persistence.loadBatches())).containsExactly("batch_01");
+        persistence.transactionSuccess();
+        persistence.endTransaction();
+    }
+
+    @Test
+    public void showsTheCommittedFiles_toOtherThreads_whileATransactionChangesThem() throws InterruptedException {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        persistence.persistFiles(singletonList(aFile(BATCH_ID, "file_01", 10)));
+        persistence.startTransaction();
+        persistence.updateFiles(singletonList(aFile(BATCH_ID, "file_01", 40)));
+
+        AtomicReference<List<DownloadsFilePersisted>> filesSeenByOtherThread = new AtomicReference<>();
+        Thread otherThread = new Thread(() -> filesSeenByOtherThread.set(persistence.loadFiles(BATCH_ID)));
+        otherThread.start();
+        otherThread.join();
+
+        assertThat(filesSeenByOtherThread.get().get(0).bytesDownloaded()).isEqualTo(10);
+        assertThat(persistence.loadFiles(BATCH_ID).get(0).bytesDownloaded()).isEqualTo(40);
+        persistence.transactionSuccess();
+        persistence.endTransaction();
+    }
+
+    @Test
+    public void countsOnlyExistingRows_whenUpdating() {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+
+        int updatedCount = persistence.update(Arrays.asList(BATCH_ID, OTHER_BATCH_ID), DownloadBatchStatus.Status.PAUSED);
+
+        assertThat(updatedCount).isEqualTo(1);
+    }
+
+    @Test
+    public void deletesFiles_withTheirBatch() {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        persistence.persistFiles(singletonList(aFile(BATCH_ID, "file_01", 0)));
+
+        boolean deleted = persistence.delete(BATCH_ID);
+
+        assertThat(deleted).isTrue();
+        assertThat(journalPersistence(NO_COMPACTION).loadAllFiles()).isEmpty();
+    }
+
+    @Test
+    public void queriesBatches_mostRecentlyDownloadedFirst() {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.PAUSED, 100));
+        persistence.persistBatch(aBatch(OTHER_BATCH_ID, DownloadBatchStatus.Status.PAUSED, 200));
+
+        List<DownloadsBatchPersisted> batches = persistence.loadBatches(EnumSet.of(DownloadBatchStatus.Status.PAUSED));
+
+        assertThat(rawIdsOf(batches)).containsExactly("batch_02", "batch_01").inOrder();
+    }
+
+    @Test
+    public void ignoresTornFrames_atTheEndOfTheJournal() throws IOException {
+        JournalDownloadsPersistence persistence = journalPersistence(NO_COMPACTION);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        long sizeBeforeLastFrame = journalFile.length();
+        persistence.persistBatch(aBatch(OTHER_BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        truncateJournalTo(journalFile.length() - 3);
+
+        JournalDownloadsPersistence restoredPersistence = journalPersistence(NO_COMPACTION);
+        restoredPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+
+        assertThat(rawIdsOf(restoredPersistence.loadBatches())).containsExactly("batch_01");
+        assertThat(journalFile.length()).isGreaterThan(sizeBeforeLastFrame);
+        assertThat(journalPersistence(NO_COMPACTION).loadBatches().get(0).downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void keepsLatestState_whenCompacting() {
+        JournalDownloadsPersistence persistence = journalPersistence(1);
+        persistence.persistBatch(aBatch(BATCH_ID, DownloadBatchStatus.Status.QUEUED));
+        persistence.persistFiles(singletonList(aFile(BATCH_ID, "file_01", 0)));
+        long sizeBeforeStatusUpdates = journalFile.length();
+        for (int i = 0; i < 100; i++) {
+            persistence.update(BATCH_ID, i % 2 == 0 ? DownloadBatchStatus.Status.PAUSED : DownloadBatchStatus.Status.DOWNLOADING);
+        }
+
+        JournalDownloadsPersistence restoredPersistence = journalPersistence(NO_COMPACTION);
+
+        assertThat(journalFile.length()).isAtMost(2 * sizeBeforeStatusUpdates);
+        assertThat(restoredPersistence.loadBatches().get(0).downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.DOWNLOADING);
+        assertThat(restoredPersistence.loadFiles(BATCH_ID)).hasSize(1);
+    }
+
+    private JournalDownloadsPersistence journalPersistence(long minCompactionSizeInBytes) {
+        return new JournalDownloadsPersistence(new DownloadsJournal(journalFile, minCompactionSizeInBytes));
+    }
+
+    private void truncateJournalTo(long sizeInBytes) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+            randomAccessFile.setLength(sizeInBytes);
+        }
+    }
+
+    private static DownloadsBatchPersisted aBatch(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        return aBatch(downloadBatchId, status, 123456789L);
+    }
+
+    private static DownloadsBatchPersisted aBatch(DownloadBatchId downloadBatchId,
+                                                  DownloadBatchStatus.Status status,
+                                                  long downloadedDateTimeInMillis) {
+        return aDownloadsBatchPersisted()
+                .withRawDownloadBatchId(downloadBatchId.rawId())
+                .withDownloadBatchStatus(status)
+                .withDownloadedDateTimeInMillis(downloadedDateTimeInMillis)
+                .build();
+    }
+
+    private static DownloadsFilePersisted aFile(DownloadBatchId downloadBatchId, String rawFileId, long bytesDownloaded) {
+        return aDownloadsFilePersisted()
+                .withDownloadBatchId(downloadBatchId)
+                .withDownloadFileId(aDownloadFileId().withRawDownloadFileId(rawFileId).build())
+                .withFilePath(aFilePath().withRawPath("/downloads/" + rawFileId).build())
+                .withTotalFileSize(100)
+                .withUrl("http://example.com/" + rawFileId)
+                .withFileStatus(DownloadFileStatus.Status.DOWNLOADING)
+                .withBytesDownloaded(bytesDownloaded)
+                .build();
+    }
+
+    private static List<String> rawIdsOf(List<DownloadsBatchPersisted> batchesPersisted) {
+        List<String> rawIds = new ArrayList<>(batchesPersisted.size());
+        for (DownloadsBatchPersisted batchPersisted : batchesPersisted) {
+            rawIds.add(batchPersisted.downloadBatchId().rawId());
+        }
+        return rawIds;
+    }
+}
@@ -1,11 +1,7 @@
 package com.novoda.downloadmanager;
 
-import android.os.Handler;
-
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
 import org.junit.Before;
@@ -18,21 +14,21 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 public class LiteDownloadManagerDownloaderTest {
 
     private final Object waitForDownloadService = new Object();
-    private final Object waitForDownloadBatchStatusCallback = new Object();
     private final ExecutorService executor = mock(ExecutorService.class);
-    private final Handler callbackHandler = mock(Handler.class);
+    private final MainThreadDispatcher mainThreadDispatcher = mock(MainThreadDispatcher.class);
     private final FileOperations fileOperations = mock(FileOperations.class);
     private final DownloadsBatchPersistence downloadsBatchPersistence = mock(DownloadsBatchPersistence.class);
     private final DownloadsFilePersistence downloadsFilePersistence = mock(DownloadsFilePersistence.class);
     private final DownloadBatchStatusNotificationDispatcher notificationDispatcher = mock(DownloadBatchStatusNotificationDispatcher.class);
     private final DownloadBatchRequirementRule downloadBatchRequirementRule = mock(DownloadBatchRequirementRule.class);
     private final ConnectionChecker connectionChecker = mock(ConnectionChecker.class);
-    private final Set<DownloadBatchStatusCallback> callbacks = new HashSet<>();
+    private final DownloadBatchStatusBus statusBus = mock(DownloadBatchStatusBus.class);
     private final CallbackThrottleCreator callbackThrottleCreator = mock(CallbackThrottleCreator.class);
     private final DownloadBatchStatusFilter downloadBatchStatusFilter = mock(DownloadBatchStatusFilter.class);
     private final Wait.Criteria serviceCriteria = mock(Wait.Criteria.class);
@@ -53,16 +49,15 @@ public class LiteDownloadManagerDownloaderTest {
 
         downloader = new LiteDownloadManagerDownloader(
                 waitForDownloadService,
-                waitForDownloadBatchStatusCallback,
                 executor,
-                callbackHandler,
+                mainThreadDispatcher,
                 fileOperations,
                 downloadsBatchPersistence,
                 downloadsFilePersistence,
                 notificationDispatcher,
                 downloadBatchRequirementRule,
                 connectionChecker,
-                callbacks,
+                statusBus,
                 callbackThrottleCreator,
                 downloadBatchStatusFilter,
                 serviceCriteria
@@ -110,6 +105,18 @@ public class LiteDownloadManagerDownloaderTest {
         verify(downloadService).download(eq(downloadBatch), any());
     }
 
+    @Test
+    public void deletesBatch_withoutHandingItToTheService() {
+        downloadingBatches.clear();
+
+        downloader.delete(downloadBatch, downloadingBatches);
+
+        assertThat(downloadingBatches).containsEntry(downloadBatchId, downloadBatch);
+        verify(downloadBatch).setCallback(any(DownloadBatchStatusCallback.class));
+        verify(downloadBatch).delete();
+        verify(downloadService, never()).download(any(DownloadBatch.class), any(DownloadBatchStatusCallback.class));
+    }
+
     @Test
     public void downloadsBatchByOriginalReference_whenIdAlreadyExists() {
         downloadingBatches.put(downloadBatchId, anotherDownloadBatchWithTheSameId);
@@ -4,12 +4,12 @@ import android.os.Handler;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -22,6 +22,7 @@ import org.junit.rules.Timeout;
 import org.junit.runner.Description;
 import org.junit.runner.RunWith;
 import org.junit.runners.model.Statement;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.InOrder;
 
@@ -217,14 +218,14 @@ public class LiteDownloadManagerTest {
 
             liteDownloadManager.addDownloadBatchCallback(additionalDownloadBatchCallback);
 
-            assertThat(downloadBatchCallbacks).contains(additionalDownloadBatchCallback);
+            assertThat(statusBus.isSubscribed(additionalDownloadBatchCallback)).isTrue();
         }
 
         @Test
         public void removesCallbackFromInternalList() {
             liteDownloadManager.removeDownloadBatchCallback(downloadBatchCallback);
 
-            assertThat(downloadBatchCallbacks).doesNotContain(downloadBatchCallback);
+            assertThat(statusBus.isSubscribed(downloadBatchCallback)).isFalse();
         }
 
         @Test
@@ -255,6 +256,98 @@ public class LiteDownloadManagerTest {
             assertThat(fileStatus).isEqualTo(DOWNLOAD_FILE_STATUS);
         }
 
+        @Test
+        public void keepsCompletedBatchesAsStatuses_whenSubmittingAllStoredDownloads() {
+            willAnswer(invocation -> {
+                DownloadsBatchPersistence.LoadBatchesCallback loadBatchesCallback = invocation.getArgument(1);
+                loadBatchesCallback.onLoaded(Collections.emptyList(), Collections.singletonList(COMPLETED_BATCH_STATUS));
+                return null;
+            }).given(downloadsBatchPersistence).loadAsync(any(FileOperations.class), any(DownloadsBatchPersistence.LoadBatchesCallback.class));
+
+            liteDownloadManager.submitAllStoredDownloads(allStoredDownloadsSubmittedCallback);
+
+            assertThat(completedBatchStatuses).containsEntry(COMPLETED_DOWNLOAD_BATCH_ID, COMPLETED_BATCH_STATUS);
+            verify(downloadManagerDownloader, never()).download(any(DownloadBatch.class), ArgumentMatchers.anyMap());
+        }
+
+        @Test
+        public void getsCompletedBatchStatuses_withoutInstantiatingBatches() {
+            completedBatchStatuses.put(COMPLETED_DOWNLOAD_BATCH_ID, COMPLETED_BATCH_STATUS);
+
+            List<DownloadBatchStatus> allDownloadBatchStatuses = liteDownloadManager.getAllDownloadBatchStatuses();
+
+            assertThat(allDownloadBatchStatuses).containsExactly(BATCH_STATUS, ADDITIONAL_BATCH_STATUS, COMPLETED_BATCH_STATUS);
+            verifyZeroInteractions(downloadsBatchPersistence);
+        }
+
+        @Test
+        public void getsPageOfBatchStatuses_fromAPagedQueryOfTheStoredBatches() {
+            List<DownloadBatchStatus> storedPage = Collections.singletonList(COMPLETED_BATCH_STATUS);
+            ArgumentCaptor<DownloadsBatchPersistence.BatchQuery> batchQueryCaptor = ArgumentCaptor.forClass(DownloadsBatchPersistence.BatchQuery.class);
+            given(downloadsBatchPersistence.queryBatchStatusesSync(
+                    batchQueryCaptor.capture(),
+                    any(DownloadsBatchPersistence.KnownBatchStatuses.class)
+            )).willReturn(storedPage);
+
+            List<DownloadBatchStatus> page = liteDownloadManager.getDownloadBatchStatuses(10, 5);
+
+            assertThat(page).isEqualTo(storedPage);
+            DownloadsPersistenceQueries downloadsPersistenceQueries = mock(DownloadsPersistenceQueries.class);
+            batchQueryCaptor.getValue().run(downloadsPersistenceQueries);
+            verify(downloadsPersistenceQueries).loadBatchesPage(10, 5);
+        }
+
+        @Test
+        public void deletesCompletedBatch_withoutDownloadingItAgain() {
+            DownloadBatch completedDownloadBatch = mock(DownloadBatch.class);
+            given(downloadsBatchPersistence.loadSync(fileOperations, COMPLETED_BATCH_STATUS)).willReturn(completedDownloadBatch);
+            completedBatchStatuses.put(COMPLETED_DOWNLOAD_BATCH_ID, COMPLETED_BATCH_STATUS);
+
+            liteDownloadManager.delete(COMPLETED_DOWNLOAD_BATCH_ID);
+
+            assertThat(completedBatchStatuses).doesNotContainKey(COMPLETED_DOWNLOAD_BATCH_ID);
+            verify(downloadManagerDownloader).delete(completedDownloadBatch, downloadingBatches);
+            verify(downloadManagerDownloader, never()).download(completedDownloadBatch, downloadingBatches);
+        }
+
+        @Test
+        public void doesNotDownload_whenBatchIsAlreadyDownloaded() {
+            completedBatchStatuses.put(DOWNLOAD_BATCH_ID, COMPLETED_BATCH_STATUS);
+            downloadingBatches.clear();
+
+            liteDownloadManager.download(BATCH);
+
+            verify(downloadManagerDownloader, never()).download(BATCH, downloadingBatches);
+        }
+
+        @Test
+        public void doesNotAddCompletedBatch_whenItIsAlreadyStoredAsCompleted() {
+            CompletedDownloadBatch completedDownloadBatch = mock(CompletedDownloadBatch.class);
+            given(completedDownloadBatch.downloadBatchId()).willReturn(COMPLETED_DOWNLOAD_BATCH_ID);
+            completedBatchStatuses.put(COMPLETED_DOWNLOAD_BATCH_ID, COMPLETED_BATCH_STATUS);
+
+            boolean added = liteDownloadManager.addCompletedBatch(completedDownloadBatch);
+
+            assertThat(added).isFalse();
+            assertThat(liteDownloadManager.getAllDownloadBatchStatuses()).containsExactly(BATCH_STATUS, ADDITIONAL_BATCH_STATUS, COMPLETED_BATCH_STATUS);
+            verify(downloadManagerDownloader, never()).addCompletedBatch(any(CompletedDownloadBatch.class), ArgumentMatchers.anyMap());
+        }
+
+        @Test
+        public void getsDownloadStatusMatchingIdOfCompletedBatch_withoutDownloadingItAgain() {
+            DownloadBatch completedDownloadBatch = mock(DownloadBatch.class);
+            given(completedDownloadBatch.downloadFileStatusWith(DOWNLOAD_FILE_ID)).willReturn(DOWNLOAD_FILE_STATUS);
+            given(downloadsBatchPersistence.loadSync(fileOperations, COMPLETED_BATCH_STATUS)).willReturn(completedDownloadBatch);
+            completedBatchStatuses.put(COMPLETED_DOWNLOAD_BATCH_ID, COMPLETED_BATCH_STATUS);
+
+            DownloadFileStatus fileStatus = liteDownloadManager.getDownloadFileStatusWithMatching(COMPLETED_DOWNLOAD_BATCH_ID, DOWNLOAD_FILE_ID);
+
+            assertThat(fileStatus).isEqualTo(DOWNLOAD_FILE_STATUS);
+            assertThat(completedBatchStatuses).containsEntry(COMPLETED_DOWNLOAD_BATCH_ID, COMPLETED_BATCH_STATUS);
+            assertThat(downloadingBatches).doesNotContainKey(COMPLETED_DOWNLOAD_BATCH_ID);
+            verify(downloadManagerDownloader, never()).download(any(DownloadBatch.class), ArgumentMatchers.anyMap());
+        }
+
         @Test
         public void updateAllowedConnectionTypeInConnectionChecker_whenUpdatedInDownloadManager() {
             liteDownloadManager.updateAllowedConnectionType(ANY_CONNECTION_TYPE);
@@ -288,15 +381,21 @@ public class LiteDownloadManagerTest {
         static final DownloadFileId DOWNLOAD_FILE_ID = aDownloadFileId().withRawDownloadFileId("file_id_01").build();
         static final DownloadFileStatus DOWNLOAD_FILE_STATUS = aDownloadFileStatus().withDownloadFileId(DOWNLOAD_FILE_ID).build();
         static final ConnectionType ANY_CONNECTION_TYPE = ConnectionType.METERED;
+        static final DownloadBatchId COMPLETED_DOWNLOAD_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("id03").build();
+        static final InternalDownloadBatchStatus COMPLETED_BATCH_STATUS = anInternalDownloadsBatchStatus()
+                .withDownloadBatchId(COMPLETED_DOWNLOAD_BATCH_ID)
+                .withStatus(DownloadBatchStatus.Status.DOWNLOADED)
+                .withDownloadedDateTimeInMillis(987654321L)
+                .build();
 
         final AllStoredDownloadsSubmittedCallback allStoredDownloadsSubmittedCallback = mock(AllStoredDownloadsSubmittedCallback.class);
         final AllBatchStatusesCallback allBatchStatusesCallback = mock(AllBatchStatusesCallback.class);
         final DownloadFileStatusCallback downloadFileStatusCallback = mock(DownloadFileStatusCallback.class);
         final DownloadService downloadService = mock(DownloadService.class);
         final Object serviceLock = spy(new Object());
-        final Object callbackLock = spy(new Object());
         final ExecutorService executorService = mock(ExecutorService.class);
         final Handler handler = mock(Handler.class);
+        final MainThreadDispatcher mainThreadDispatcher = mock(MainThreadDispatcher.class);
         final DownloadBatch downloadBatch = mock(DownloadBatch.class);
         final DownloadBatch additionalDownloadBatch = mock(DownloadBatch.class);
         final DownloadBatchStatusCallback downloadBatchCallback = mock(DownloadBatchStatusCallback.class);
@@ -310,8 +409,9 @@ public class LiteDownloadManagerTest {
 
         LiteDownloadManager liteDownloadManager;
         Map<DownloadBatchId, DownloadBatch> downloadingBatches = new HashMap<>();
+        Map<DownloadBatchId, DownloadBatchStatus> completedBatchStatuses = new HashMap<>();
         List<DownloadBatchStatus> downloadBatchStatuses = new ArrayList<>();
-        Set<DownloadBatchStatusCallback> downloadBatchCallbacks = new CopyOnWriteArraySet<>();
+        final DownloadBatchStatusBus statusBus = new DownloadBatchStatusBus(mock(ScheduledExecutorService.class), () -> 0);
         DownloadFileStatus downloadFileStatus = null;
 
         @Before
@@ -320,15 +420,16 @@ public class LiteDownloadManagerTest {
             downloadingBatches.put(DOWNLOAD_BATCH_ID, downloadBatch);
             downloadingBatches.put(ADDITIONAL_DOWNLOAD_BATCH_ID, additionalDownloadBatch);
 
-            downloadBatchCallbacks.add(downloadBatchCallback);
+            statusBus.subscribe(downloadBatchCallback, Runnable::run, 0);
 
             liteDownloadManager = new LiteDownloadManager(
                     serviceLock,
-                    callbackLock,
                     executorService,
                     handler,
+                    mainThreadDispatcher,
                     downloadingBatches,
-                    downloadBatchCallbacks,
+                    completedBatchStatuses,
+                    statusBus,
                     fileOperations,
                     downloadsBatchPersistence,
                     downloadManagerDownloader,
@@ -361,7 +462,7 @@ public class LiteDownloadManagerTest {
         private void setupDownloadBatchesResponse() {
             willAnswer(invocation -> {
                 DownloadsBatchPersistence.LoadBatchesCallback loadBatchesCallback = invocation.getArgument(1);
-                loadBatchesCallback.onLoaded(Arrays.asList(downloadBatch, additionalDownloadBatch));
+                loadBatchesCallback.onLoaded(Arrays.asList(downloadBatch, additionalDownloadBatch), Collections.emptyList());
                 return null;
             }).given(downloadsBatchPersistence).loadAsync(any(FileOperations.class), any(DownloadsBatchPersistence.LoadBatchesCallback.class));
         }
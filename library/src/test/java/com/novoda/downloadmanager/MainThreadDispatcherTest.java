@@ -0,0 +1,114 @@
+package com.novoda.downloadmanager;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class MainThreadDispatcherTest {
+
+    private static final long FRAME_INTERVAL_IN_MILLIS = 16;
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_01").build();
+    private static final DownloadBatchId OTHER_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_02").build();
+
+    private final Handler handler = mock(Handler.class);
+    private final List<String> ranTasks = new ArrayList<>();
+
+    private long nowInMillis = 1005;
+
+    private final MainThreadDispatcher mainThreadDispatcher = new MainThreadDispatcher(handler, () -> nowInMillis, FRAME_INTERVAL_IN_MILLIS);
+
+    @Test
+    public void postsOneMessage_forManyTasks() {
+        for (int i = 0; i < 100; i++) {
+            mainThreadDispatcher.execute(recordingTask("task " + i));
+        }
+
+        verify(handler, times(1)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void alignsTheMessage_onTheNextFrame() {
+        mainThreadDispatcher.execute(recordingTask("task"));
+
+        verify(handler).postDelayed(any(Runnable.class), eq(FRAME_INTERVAL_IN_MILLIS - nowInMillis % FRAME_INTERVAL_IN_MILLIS));
+    }
+
+    @Test
+    public void runsEveryTaskInOneMessage_inTheOrderTheyWerePosted() {
+        mainThreadDispatcher.executeForBatch(BATCH_ID, recordingTask("batch_01 update"));
+        mainThreadDispatcher.execute(recordingTask("callback delivery"));
+        mainThreadDispatcher.executeForBatch(OTHER_BATCH_ID, recordingTask("batch_02 update"));
+
+        flush();
+
+        assertThat(ranTasks).containsExactly("batch_01 update", "callback delivery", "batch_02 update").inOrder();
+        assertThat(mainThreadDispatcher.messageCount()).isEqualTo(1);
+        assertThat(mainThreadDispatcher.taskCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void runsOnlyTheLatestUpdateOfABatch() {
+        mainThreadDispatcher.executeForBatch(BATCH_ID, recordingTask("first update"));
+        mainThreadDispatcher.executeForBatch(BATCH_ID, recordingTask("second update"));
+
+        flush();
+
+        assertThat(ranTasks).containsExactly("second update");
+    }
+
+    @Test
+    public void runsTheLatestUpdateOfABatch_inThePlaceOfTheFirst() {
+        mainThreadDispatcher.executeForBatch(BATCH_ID, recordingTask("first update"));
+        mainThreadDispatcher.execute(recordingTask("callback delivery"));
+        mainThreadDispatcher.executeForBatch(BATCH_ID, recordingTask("second update"));
+
+        flush();
+
+        assertThat(ranTasks).containsExactly("second update", "callback delivery").inOrder();
+    }
+
+    @Test
+    public void postsAnotherMessage_forTasksAddedAfterAFlush() {
+        mainThreadDispatcher.execute(recordingTask("first task"));
+        flush();
+
+        mainThreadDispatcher.execute(recordingTask("second task"));
+
+        verify(handler, times(2)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void postsStraightAway_whenThereIsNoFrameInterval() {
+        MainThreadDispatcher unalignedDispatcher = new MainThreadDispatcher(handler, () -> nowInMillis, 0);
+
+        unalignedDispatcher.execute(recordingTask("task"));
+
+        verify(handler).post(any(Runnable.class));
+        verify(handler, never()).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    private void flush() {
+        ArgumentCaptor<Runnable> flushCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler, atLeastOnce()).postDelayed(flushCaptor.capture(), anyLong());
+        flushCaptor.getValue().run();
+    }
+
+    private Runnable recordingTask(String name) {
+        return () -> ranTasks.add(name);
+    }
+}
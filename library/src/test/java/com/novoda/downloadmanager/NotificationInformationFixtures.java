@@ -10,6 +10,7 @@ class NotificationInformationFixtures {
     private int id = 0;
     private Notification notification = mock(Notification.class);
     private NotificationCustomizer.NotificationDisplayState notificationDisplayState = SINGLE_PERSISTENT_NOTIFICATION;
+    private NotificationContent content = null;
 
     static NotificationInformationFixtures notificationInformation() {
         return new NotificationInformationFixtures();
@@ -30,6 +31,11 @@ class NotificationInformationFixtures {
         return this;
     }
 
+    NotificationInformationFixtures withContent(NotificationContent content) {
+        this.content = content;
+        return this;
+    }
+
     NotificationInformation build() {
         return new NotificationInformation() {
             @Override
@@ -46,6 +52,11 @@ class NotificationInformationFixtures {
             public NotificationCustomizer.NotificationDisplayState notificationDisplayState() {
                 return notificationDisplayState;
             }
+
+            @Override
+            public NotificationContent content() {
+                return content;
+            }
         };
     }
 }
@@ -0,0 +1,209 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class PathBasedFilePersistenceTest {
+
+    private static final byte[] BYTES = new byte[10];
+    private static final FileSize TOTAL_FILE_SIZE = InternalFileSizeCreator.createFromCurrentAndTotalSize(0, 40);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final StorageRequirementRule storageRequirementRule = (storageDirectory, downloadFileSize) -> false;
+
+    private FilePath filePath;
+
+    @Before
+    public void setUp() throws IOException {
+        File file = new File(temporaryFolder.newFolder(), "file.zip");
+        filePath = new LiteFilePath(file.getPath());
+    }
+
+    @Test
+    public void reportsFileLength_whenDurabilityIsNeverEnforced() {
+        FilePersistence filePersistence = givenFilePersistence(FileDurabilityPolicy.never());
+        filePersistence.create(filePath, TOTAL_FILE_SIZE);
+
+        filePersistence.write(BYTES, 0, BYTES.length);
+
+        assertThat(filePersistence.getCurrentSize(filePath)).isEqualTo(10);
+    }
+
+    @Test
+    public void reportsCheckpoint_whenBytesWereWrittenAfterIt() {
+        FilePersistence filePersistence = givenFilePersistence(FileDurabilityPolicy.everyBytes(20));
+        filePersistence.create(filePath, TOTAL_FILE_SIZE);
+
+        filePersistence.write(BYTES, 0, BYTES.length);
+        filePersistence.write(BYTES, 0, BYTES.length);
+        filePersistence.write(BYTES, 0, BYTES.length);
+
+        assertThat(new File(filePath.path()).length()).isEqualTo(30);
+        assertThat(filePersistence.getCurrentSize(filePath)).isEqualTo(20);
+    }
+
+    @Test
+    public void truncatesToCheckpoint_whenResuming() {
+        FilePersistence interruptedFilePersistence = givenFilePersistence(FileDurabilityPolicy.everyBytes(20));
+        interruptedFilePersistence.create(filePath, TOTAL_FILE_SIZE);
+        interruptedFilePersistence.write(BYTES, 0, BYTES.length);
+        interruptedFilePersistence.write(BYTES, 0, BYTES.length);
+        interruptedFilePersistence.write(BYTES, 0, BYTES.length);
+
+        FilePersistence resumedFilePersistence = givenFilePersistence(FileDurabilityPolicy.everyBytes(20));
+        resumedFilePersistence.create(filePath, TOTAL_FILE_SIZE);
+
+        assertThat(new File(filePath.path()).length()).isEqualTo(20);
+    }
+
+    @Test
+    public void checkpointsWrittenBytes_whenClosing() {
+        FilePersistence filePersistence = givenFilePersistence(FileDurabilityPolicy.onPauseAndClose());
+        filePersistence.create(filePath, TOTAL_FILE_SIZE);
+        filePersistence.write(BYTES, 0, BYTES.length);
+
+        assertThat(filePersistence.getCurrentSize(filePath)).isEqualTo(0);
+
+        filePersistence.close();
+
+        assertThat(filePersistence.getCurrentSize(filePath)).isEqualTo(10);
+    }
+
+    @Test
+    public void removesCheckpoint_whenFileIsComplete() {
+        FilePersistence filePersistence = givenFilePersistence(FileDurabilityPolicy.onPauseAndClose());
+        filePersistence.create(filePath, TOTAL_FILE_SIZE);
+        for (int i = 0; i < 4; i++) {
+            filePersistence.write(BYTES, 0, BYTES.length);
+        }
+
+        filePersistence.close();
+
+        assertThat(new File(filePath.path() + ".checkpoint").exists()).isFalse();
+        assertThat(filePersistence.getCurrentSize(filePath)).isEqualTo(40);
+    }
+
+    @Test
+    public void removesCheckpoint_whenDeletingFile() {
+        FilePersistence filePersistence = givenFilePersistence(FileDurabilityPolicy.onPauseAndClose());
+        filePersistence.create(filePath, TOTAL_FILE_SIZE);
+        filePersistence.write(BYTES, 0, BYTES.length);
+        filePersistence.close();
+
+        filePersistence.delete(filePath);
+
+        assertThat(new File(filePath.path() + ".checkpoint").exists()).isFalse();
+    }
+
+    @Test
+    public void keepsFinalPathEmpty_whilePartFileIsIncomplete() {
+        FilePersistence filePersistence = givenPartFilePersistence();
+        filePersistence.create(filePath, TOTAL_FILE_SIZE);
+
+        filePersistence.write(BYTES, 0, BYTES.length);
+        filePersistence.close();
+
+        assertThat(new File(filePath.path()).exists()).isFalse();
+        assertThat(new File(filePath.path() + ".part").length()).isEqualTo(10);
+        assertThat(filePersistence.getCurrentSize(filePath)).isEqualTo(10);
+    }
+
+    @Test
+    public void renamesPartFile_whenLastByteIsWritten() {
+        FilePersistence filePersistence = givenPartFilePersistence();
+        filePersistence.create(filePath, TOTAL_FILE_SIZE);
+
+        for (int i = 0; i < 4; i++) {
+            filePersistence.write(BYTES, 0, BYTES.length);
+        }
+
+        assertThat(new File(filePath.path() + ".part").exists()).isFalse();
+        assertThat(new File(filePath.path()).length()).isEqualTo(40);
+        assertThat(filePersistence.getCurrentSize(filePath)).isEqualTo(40);
+    }
+
+    @Test
+    public void resumesPartFile_whenRecreated() {
+        FilePersistence interruptedFilePersistence = givenPartFilePersistence();
+        interruptedFilePersistence.create(filePath, TOTAL_FILE_SIZE);
+        interruptedFilePersistence.write(BYTES, 0, BYTES.length);
+        interruptedFilePersistence.close();
+
+        FilePersistence resumedFilePersistence = givenPartFilePersistence();
+        resumedFilePersistence.create(filePath, TOTAL_FILE_SIZE);
+        for (int i = 0; i < 3; i++) {
+            resumedFilePersistence.write(BYTES, 0, BYTES.length);
+        }
+
+        assertThat(new File(filePath.path()).length()).isEqualTo(40);
+    }
+
+    @Test
+    public void movesInPlaceDownloadToPartFile_whenResuming() {
+        FilePersistence inPlaceFilePersistence = givenFilePersistence(FileDurabilityPolicy.never());
+        inPlaceFilePersistence.create(filePath, TOTAL_FILE_SIZE);
+        inPlaceFilePersistence.write(BYTES, 0, BYTES.length);
+        inPlaceFilePersistence.close();
+
+        FilePersistence partFilePersistence = givenPartFilePersistence();
+        partFilePersistence.create(filePath, TOTAL_FILE_SIZE);
+
+        assertThat(new File(filePath.path()).exists()).isFalse();
+        assertThat(partFilePersistence.getCurrentSize(filePath)).isEqualTo(10);
+    }
+
+    @Test
+    public void movesCheckpointWithInPlaceDownload_whenResumingAsPartFile() {
+        FilePersistence inPlaceFilePersistence = givenFilePersistence(FileDurabilityPolicy.everyBytes(20));
+        inPlaceFilePersistence.create(filePath, TOTAL_FILE_SIZE);
+        inPlaceFilePersistence.write(BYTES, 0, BYTES.length);
+        inPlaceFilePersistence.write(BYTES, 0, BYTES.length);
+        inPlaceFilePersistence.write(BYTES, 0, BYTES.length);
+
+        FilePersistence partFilePersistence = givenPartFilePersistence(FileDurabilityPolicy.everyBytes(20));
+        partFilePersistence.create(filePath, TOTAL_FILE_SIZE);
+
+        assertThat(new File(filePath.path() + ".checkpoint").exists()).isFalse();
+        assertThat(new File(filePath.path() + ".part").length()).isEqualTo(20);
+    }
+
+    @Test
+    public void removesPartFile_whenDeletingFile() {
+        FilePersistence filePersistence = givenPartFilePersistence();
+        filePersistence.create(filePath, TOTAL_FILE_SIZE);
+        filePersistence.write(BYTES, 0, BYTES.length);
+        filePersistence.close();
+
+        filePersistence.delete(filePath);
+
+        assertThat(new File(filePath.path() + ".part").exists()).isFalse();
+    }
+
+    private FilePersistence givenPartFilePersistence() {
+        return givenPartFilePersistence(FileDurabilityPolicy.never());
+    }
+
+    private FilePersistence givenPartFilePersistence(FileDurabilityPolicy durabilityPolicy) {
+        FilePersistence filePersistence = new PathBasedFilePersistence(durabilityPolicy, true);
+        filePersistence.initialiseWith(mock(Context.class), storageRequirementRule);
+        return filePersistence;
+    }
+
+    private FilePersistence givenFilePersistence(FileDurabilityPolicy durabilityPolicy) {
+        FilePersistence filePersistence = new PathBasedFilePersistence(durabilityPolicy, false);
+        filePersistence.initialiseWith(mock(Context.class), storageRequirementRule);
+        return filePersistence;
+    }
+}
@@ -16,11 +16,13 @@ public class PercentageBasedRemainingStorageRequirementRuleTest {
     private static final long REMAINING_OVER_ONE_HUNDRED_MB_IN_BYTES = 100000001;
     private static final long REMAINING_ONE_HUNDRED_MB_IN_BYTES = 100000000;
     private static final float TEN_PERCENT = 0.1f;
+    private static final long REFRESH_INTERVAL_IN_MILLIS = 0;
 
     private final FileSize fileSize = mock(FileSize.class);
     private final File file = createFile();
     private final StorageCapacityReader storageCapacityReader = createStorageCapacityReader();
-    private final PercentageBasedRemainingStorageRequirementRule storageRequirementRule = new PercentageBasedRemainingStorageRequirementRule(storageCapacityReader, TEN_PERCENT);
+    private final StorageLedger storageLedger = new StorageLedger(storageCapacityReader, REFRESH_INTERVAL_IN_MILLIS);
+    private final PercentageBasedRemainingStorageRequirementRule storageRequirementRule = new PercentageBasedRemainingStorageRequirementRule(storageLedger, TEN_PERCENT);
 
     @Test
     public void doesNotViolateRule_whenRemainingFileSizeIsLessThanRestriction() {
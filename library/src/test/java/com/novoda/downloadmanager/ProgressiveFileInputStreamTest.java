@@ -0,0 +1,98 @@
+package com.novoda.downloadmanager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ProgressiveFileInputStreamTest {
+
+    private static final byte[] BYTES = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    private static final int TOTAL_BYTES = 20;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private FilePath filePath;
+    private PersistedBytesMonitor persistedBytesMonitor;
+
+    @Before
+    public void setUp() throws IOException {
+        file = temporaryFolder.newFile("file.mp4");
+        filePath = new LiteFilePath(file.getPath());
+        persistedBytesMonitor = new PersistedBytesMonitor(InternalFileSizeCreator.createFromCurrentAndTotalSize(0, TOTAL_BYTES));
+    }
+
+    @Test
+    public void readsOnlyPersistedBytes() throws IOException {
+        givenPersisted(BYTES, 10);
+        InputStream inputStream = new ProgressiveFileInputStream(filePath, persistedBytesMonitor);
+
+        byte[] buffer = new byte[TOTAL_BYTES];
+        int bytesRead = inputStream.read(buffer, 0, buffer.length);
+
+        assertThat(bytesRead).isEqualTo(10);
+        assertThat(inputStream.available()).isEqualTo(0);
+    }
+
+    @Test(timeout = 1000)
+    public void blocksReader_untilBytesArePersisted() throws Exception {
+        givenPersisted(BYTES, 10);
+        InputStream inputStream = new ProgressiveFileInputStream(filePath, persistedBytesMonitor);
+        inputStream.skip(10);
+        CountDownLatch readerFinished = new CountDownLatch(1);
+
+        Thread reader = new Thread(() -> {
+            try {
+                inputStream.read(new byte[TOTAL_BYTES]);
+                readerFinished.countDown();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        reader.start();
+
+        assertThat(readerFinished.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        givenPersisted(BYTES, 20);
+        assertThat(readerFinished.await(500, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    @Test
+    public void returnsEndOfStream_whenFileIsComplete() throws IOException {
+        givenPersisted(BYTES, 10);
+        givenPersisted(BYTES, 20);
+        InputStream inputStream = new ProgressiveFileInputStream(filePath, persistedBytesMonitor);
+
+        inputStream.skip(TOTAL_BYTES);
+
+        assertThat(inputStream.read()).isEqualTo(-1);
+    }
+
+    @Test(expected = IOException.class)
+    public void failsReader_whenDownloadFails() throws IOException {
+        givenPersisted(BYTES, 10);
+        InputStream inputStream = new ProgressiveFileInputStream(filePath, persistedBytesMonitor);
+        inputStream.skip(10);
+
+        persistedBytesMonitor.fail("network error");
+
+        inputStream.read();
+    }
+
+    private void givenPersisted(byte[] bytes, long persistedBytes) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file, true)) {
+            outputStream.write(bytes);
+        }
+        persistedBytesMonitor.update(InternalFileSizeCreator.createFromCurrentAndTotalSize(persistedBytes, TOTAL_BYTES));
+    }
+}
@@ -3,6 +3,7 @@ package com.novoda.downloadmanager;
 import android.app.Notification;
 import android.support.v4.app.NotificationManagerCompat;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -15,6 +16,7 @@ import org.junit.rules.Timeout;
 import org.junit.runner.Description;
 import org.junit.runner.RunWith;
 import org.junit.runners.model.Statement;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 
 import static com.google.common.truth.Truth.assertThat;
@@ -25,10 +27,13 @@ import static com.novoda.downloadmanager.NotificationCustomizer.NotificationDisp
 import static com.novoda.downloadmanager.NotificationCustomizer.NotificationDisplayState.STACK_NOTIFICATION_NOT_DISMISSIBLE;
 import static com.novoda.downloadmanager.NotificationInformationFixtures.notificationInformation;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
@@ -175,34 +180,156 @@ public class ServiceNotificationDispatcherTest {
             verify(downloadService).stop(true);
         }
 
+        @Test
+        public void skipsNotification_whenContentIsUnchanged() {
+            NotificationInformation notificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 100);
+            NotificationInformation sameNotificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 100);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+            given(notificationCreator.createNotification(ANOTHER_DOWNLOAD_BATCH_STATUS)).willReturn(sameNotificationInfo);
+            nowInMillis += MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS;
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+            notificationDispatcher.updateNotification(ANOTHER_DOWNLOAD_BATCH_STATUS);
+
+            verify(downloadService).start(notificationInfo.getId(), notificationInfo.getNotification());
+            verify(downloadService, never()).start(sameNotificationInfo.getId(), sameNotificationInfo.getNotification());
+        }
+
+        @Test
+        public void skipsProgressOnlyNotification_withinTheProgressUpdateInterval() {
+            NotificationInformation notificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 100);
+            NotificationInformation progressedNotificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 200);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+            given(notificationCreator.createNotification(ANOTHER_DOWNLOAD_BATCH_STATUS)).willReturn(progressedNotificationInfo);
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+            nowInMillis += MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS - 1;
+            notificationDispatcher.updateNotification(ANOTHER_DOWNLOAD_BATCH_STATUS);
+
+            verify(downloadService, never()).start(progressedNotificationInfo.getId(), progressedNotificationInfo.getNotification());
+        }
+
+        @Test
+        public void postsProgressOnlyNotification_onceTheProgressUpdateIntervalHasPassed() {
+            NotificationInformation notificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 100);
+            NotificationInformation progressedNotificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 200);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+            given(notificationCreator.createNotification(ANOTHER_DOWNLOAD_BATCH_STATUS)).willReturn(progressedNotificationInfo);
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+            nowInMillis += MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS;
+            notificationDispatcher.updateNotification(ANOTHER_DOWNLOAD_BATCH_STATUS);
+
+            verify(downloadService).start(progressedNotificationInfo.getId(), progressedNotificationInfo.getNotification());
+        }
+
+        @Test
+        public void postsTheLatestSkippedProgress_onceTheProgressUpdateIntervalHasPassed() {
+            NotificationInformation notificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 100);
+            NotificationInformation progressedNotificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 200);
+            NotificationInformation latestNotificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 300);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+            given(notificationCreator.createNotification(ANOTHER_DOWNLOAD_BATCH_STATUS)).willReturn(progressedNotificationInfo);
+            given(notificationCreator.createNotification(LATEST_DOWNLOAD_BATCH_STATUS)).willReturn(latestNotificationInfo);
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+            nowInMillis += 400;
+            notificationDispatcher.updateNotification(ANOTHER_DOWNLOAD_BATCH_STATUS);
+            notificationDispatcher.updateNotification(LATEST_DOWNLOAD_BATCH_STATUS);
+            nowInMillis += MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS - 400;
+            skippedUpdateScheduledIn(MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS - 400).run();
+
+            verify(downloadService, never()).start(progressedNotificationInfo.getId(), progressedNotificationInfo.getNotification());
+            verify(downloadService).start(latestNotificationInfo.getId(), latestNotificationInfo.getNotification());
+        }
+
+        @Test
+        public void doesNotPostSkippedProgress_whenAStatusChangeWasPostedSinceThen() {
+            NotificationInformation notificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 100);
+            NotificationInformation progressedNotificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 200);
+            NotificationInformation downloadedNotificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADED, 1000);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+            given(notificationCreator.createNotification(ANOTHER_DOWNLOAD_BATCH_STATUS)).willReturn(progressedNotificationInfo);
+            given(notificationCreator.createNotification(LATEST_DOWNLOAD_BATCH_STATUS)).willReturn(downloadedNotificationInfo);
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+            notificationDispatcher.updateNotification(ANOTHER_DOWNLOAD_BATCH_STATUS);
+            notificationDispatcher.updateNotification(LATEST_DOWNLOAD_BATCH_STATUS);
+            nowInMillis += MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS;
+            skippedUpdateScheduledIn(MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS).run();
+
+            verify(downloadService, never()).start(progressedNotificationInfo.getId(), progressedNotificationInfo.getNotification());
+            verify(notificationCreator, times(1)).createNotification(ANOTHER_DOWNLOAD_BATCH_STATUS);
+        }
+
+        @Test
+        public void postsStatusChange_withinTheProgressUpdateInterval() {
+            NotificationInformation notificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADING, 100);
+            NotificationInformation downloadedNotificationInfo = createNotificationInfo(DownloadBatchStatus.Status.DOWNLOADED, 1000);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+            given(notificationCreator.createNotification(ANOTHER_DOWNLOAD_BATCH_STATUS)).willReturn(downloadedNotificationInfo);
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+            notificationDispatcher.updateNotification(ANOTHER_DOWNLOAD_BATCH_STATUS);
+
+            verify(downloadService).start(downloadedNotificationInfo.getId(), downloadedNotificationInfo.getNotification());
+        }
+
         @Test(timeout = 500)
         public void waitsForServiceToExist_whenUpdatingNotification() {
             notificationDispatcher.setService(downloadService);
 
             notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
         }
+
+        private Runnable skippedUpdateScheduledIn(long delayInMillis) {
+            ArgumentCaptor<Runnable> skippedUpdate = ArgumentCaptor.forClass(Runnable.class);
+            verify(scheduler).schedule(skippedUpdate.capture(), eq(delayInMillis), eq(TimeUnit.MILLISECONDS));
+            verify(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+            return skippedUpdate.getValue();
+        }
     }
 
     public abstract static class BaseTest {
 
         static final String NOTIFICATION_TAG = "download-manager";
+        static final long MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS = 1000;
 
         static final DownloadBatchStatus DOWNLOAD_BATCH_STATUS = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.QUEUED).build();
         static final DownloadBatchStatus ANOTHER_DOWNLOAD_BATCH_STATUS = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.QUEUED).build();
+        static final DownloadBatchStatus LATEST_DOWNLOAD_BATCH_STATUS = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.QUEUED).build();
 
         final Object lock = spy(new Object());
         final NotificationCreator<DownloadBatchStatus> notificationCreator = mock(NotificationCreator.class);
         final NotificationManagerCompat notificationManager = mock(NotificationManagerCompat.class);
         final DownloadManagerService downloadService = mock(DownloadManagerService.class);
         final Wait.Criteria serviceCriteria = new Wait.Criteria();
+        final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
 
+        long nowInMillis = 1000;
         ServiceNotificationDispatcher<DownloadBatchStatus> notificationDispatcher;
 
         @Before
         public void setUp() {
             given(notificationCreator.createNotification(any(DownloadBatchStatus.class))).willReturn(createNotificationInfo(SINGLE_PERSISTENT_NOTIFICATION, 100));
 
-            notificationDispatcher = new ServiceNotificationDispatcher<>(lock, serviceCriteria, notificationCreator, notificationManager);
+            notificationDispatcher = new ServiceNotificationDispatcher<>(
+                    lock,
+                    serviceCriteria,
+                    notificationCreator,
+                    notificationManager,
+                    () -> nowInMillis,
+                    scheduler,
+                    MIN_PROGRESS_UPDATE_INTERVAL_IN_MILLIS
+            );
+        }
+
+        NotificationInformation createNotificationInfo(DownloadBatchStatus.Status status, long bytesDownloaded) {
+            NotificationContent content = new NotificationContent(SINGLE_PERSISTENT_NOTIFICATION, status, bytesDownloaded, 1000);
+            return notificationInformation()
+                    .withId(100)
+                    .withContent(content)
+                    .build();
         }
 
         NotificationInformation createNotificationInfo(NotificationCustomizer.NotificationDisplayState displayState, int id) {
@@ -0,0 +1,146 @@
+package com.novoda.downloadmanager;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class StorageLedgerTest {
+
+    private static final long CAPACITY_IN_BYTES = 1000;
+    private static final long USABLE_IN_BYTES = 500;
+    private static final long NO_CACHING = 0;
+    private static final long ONE_HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final String FILE_PATH = "any_path/file";
+    private static final String OTHER_FILE_PATH = "any_path/other_file";
+
+    private final File storageDirectory = createStorageDirectory();
+    private final StorageCapacityReader storageCapacityReader = createStorageCapacityReader();
+
+    @Test
+    public void readsCapacityOnce_whenWithinRefreshInterval() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, ONE_HOUR_IN_MILLIS);
+
+        storageLedger.capacityInBytes(storageDirectory);
+        storageLedger.availableInBytes(storageDirectory);
+        storageLedger.availableInBytes(storageDirectory);
+
+        verify(storageCapacityReader).storageCapacityInBytes("any_path");
+        verify(storageDirectory).getUsableSpace();
+    }
+
+    @Test
+    public void readsCapacityAgain_whenRefreshIntervalHasElapsed() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, NO_CACHING);
+
+        storageLedger.availableInBytes(storageDirectory);
+        storageLedger.availableInBytes(storageDirectory);
+
+        verify(storageDirectory, times(2)).getUsableSpace();
+    }
+
+    @Test
+    public void subtractsReservedBytes_fromAvailableBytes() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, NO_CACHING);
+
+        storageLedger.reserve(FILE_PATH, 100);
+        storageLedger.reserve(OTHER_FILE_PATH, 50);
+
+        assertThat(storageLedger.availableInBytes(storageDirectory)).isEqualTo(350);
+    }
+
+    @Test
+    public void replacesPreviousReservation_whenReservingForTheSameFile() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, NO_CACHING);
+
+        storageLedger.reserve(FILE_PATH, 100);
+        storageLedger.reserve(FILE_PATH, 40);
+
+        assertThat(storageLedger.availableInBytes(storageDirectory)).isEqualTo(460);
+    }
+
+    @Test
+    public void reducesReservation_whenBytesAreConsumed() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, NO_CACHING);
+        storageLedger.reserve(FILE_PATH, 100);
+
+        storageLedger.consume(FILE_PATH, 30);
+
+        assertThat(storageLedger.availableInBytes(storageDirectory)).isEqualTo(430);
+    }
+
+    @Test
+    public void removesReservation_whenReleased() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, NO_CACHING);
+        storageLedger.reserve(FILE_PATH, 100);
+
+        storageLedger.release(FILE_PATH);
+
+        assertThat(storageLedger.availableInBytes(storageDirectory)).isEqualTo(USABLE_IN_BYTES);
+    }
+
+    @Test
+    public void subtractsConsumedBytes_fromCachedUsableBytes_untilTheyAreReadAgain() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, ONE_HOUR_IN_MILLIS);
+        storageLedger.availableInBytes(storageDirectory);
+        storageLedger.reserve(FILE_PATH, 100);
+
+        storageLedger.consume(FILE_PATH, 30);
+
+        assertThat(storageLedger.availableInBytes(storageDirectory)).isEqualTo(400);
+    }
+
+    @Test
+    public void reserves_whenTheRuleIsNotViolatedByTheReservedBytes() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, NO_CACHING);
+        StorageRequirementRule storageRequirementRule = new ByteBasedRemainingStorageRequirementRule(storageLedger, 100);
+
+        boolean reserved = storageLedger.tryReserve(FILE_PATH, storageDirectory, 400, storageRequirementRule);
+
+        assertThat(reserved).isTrue();
+        assertThat(storageLedger.availableInBytes(storageDirectory)).isEqualTo(100);
+    }
+
+    @Test
+    public void doesNotReserve_whenOtherReservationsLeaveTooLittleSpace() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, NO_CACHING);
+        StorageRequirementRule storageRequirementRule = new ByteBasedRemainingStorageRequirementRule(storageLedger, 100);
+        storageLedger.tryReserve(FILE_PATH, storageDirectory, 300, storageRequirementRule);
+
+        boolean reserved = storageLedger.tryReserve(OTHER_FILE_PATH, storageDirectory, 300, storageRequirementRule);
+
+        assertThat(reserved).isFalse();
+        assertThat(storageLedger.availableInBytes(storageDirectory)).isEqualTo(200);
+    }
+
+    @Test
+    public void doesNotCountThePreviousReservationOfTheSameKey_whenReservingAgain() {
+        StorageLedger storageLedger = new StorageLedger(storageCapacityReader, NO_CACHING);
+        StorageRequirementRule storageRequirementRule = new ByteBasedRemainingStorageRequirementRule(storageLedger, 100);
+        storageLedger.tryReserve(FILE_PATH, storageDirectory, 300, storageRequirementRule);
+
+        boolean reserved = storageLedger.tryReserve(FILE_PATH, storageDirectory, 300, storageRequirementRule);
+
+        assertThat(reserved).isTrue();
+    }
+
+    private static File createStorageDirectory() {
+        File file = mock(File.class);
+        given(file.getPath()).willReturn("any_path");
+        given(file.getUsableSpace()).willReturn(USABLE_IN_BYTES);
+        return file;
+    }
+
+    private static StorageCapacityReader createStorageCapacityReader() {
+        StorageCapacityReader storageCapacityReader = mock(StorageCapacityReader.class);
+        given(storageCapacityReader.storageCapacityInBytes(anyString())).willReturn(CAPACITY_IN_BYTES);
+        return storageCapacityReader;
+    }
+}
@@ -0,0 +1,84 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SummaryNotificationDispatcherTest {
+
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch_01").build();
+
+    private final ServiceNotificationDispatcher<DownloadBatchesSummary> notificationDispatcher = mock(ServiceNotificationDispatcher.class);
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+
+    private long nowInMillis = 1000;
+
+    private final SummaryNotificationDispatcher summaryNotificationDispatcher = new SummaryNotificationDispatcher(
+            new DownloadBatchesSummaryTracker(() -> nowInMillis),
+            notificationDispatcher,
+            scheduler
+    );
+
+    @Test
+    public void postsASummaryWithoutSpeed_whenNoBytesArriveWithinASampleInterval() {
+        summaryNotificationDispatcher.updateNotification(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 0));
+        nowInMillis += DownloadBatchesSummaryTracker.SPEED_SAMPLE_INTERVAL_IN_MILLIS;
+        summaryNotificationDispatcher.updateNotification(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 5000));
+        nowInMillis += DownloadBatchesSummaryTracker.SPEED_SAMPLE_INTERVAL_IN_MILLIS;
+
+        scheduledSpeedSample().run();
+
+        ArgumentCaptor<DownloadBatchesSummary> summaries = ArgumentCaptor.forClass(DownloadBatchesSummary.class);
+        verify(notificationDispatcher, times(3)).updateNotification(summaries.capture());
+        assertThat(summaries.getAllValues().get(1).bytesPerSecond()).isEqualTo(5000);
+        assertThat(summaries.getValue().bytesPerSecond()).isEqualTo(0);
+    }
+
+    @Test
+    public void samplesTheSpeedAgain_whileBatchesAreActive() {
+        summaryNotificationDispatcher.updateNotification(aStatus(DownloadBatchStatus.Status.DOWNLOADING, 0));
+
+        scheduledSpeedSample().run();
+
+        verify(scheduler, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void doesNotSampleTheSpeed_whenNoBatchIsActive() {
+        summaryNotificationDispatcher.updateNotification(aStatus(DownloadBatchStatus.Status.PAUSED, 0));
+
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    private Runnable scheduledSpeedSample() {
+        ArgumentCaptor<Runnable> speedSample = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(
+                speedSample.capture(),
+                eq(DownloadBatchesSummaryTracker.SPEED_SAMPLE_INTERVAL_IN_MILLIS),
+                eq(TimeUnit.MILLISECONDS)
+        );
+        return speedSample.getValue();
+    }
+
+    private static DownloadBatchStatus aStatus(DownloadBatchStatus.Status status, long bytesDownloaded) {
+        return anInternalDownloadsBatchStatus()
+                .withDownloadBatchId(BATCH_ID)
+                .withStatus(status)
+                .withBytesDownloaded(bytesDownloaded)
+                .withBytesTotalSize(10000)
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TickingActionSchedulerTest {
+
+    private static final long TICK_INTERVAL_IN_MILLIS = 100;
+
+    private final ScheduledExecutorService scheduledExecutor = mock(ScheduledExecutorService.class);
+    private final ScheduledFuture<?> ticks = mock(ScheduledFuture.class);
+    private final ActionTicker actionTicker = new ActionTicker(scheduledExecutor, TICK_INTERVAL_IN_MILLIS);
+    private final ActionScheduler.Action anyAction = mock(ActionScheduler.Action.class);
+    private final ActionScheduler.Action additionalAction = mock(ActionScheduler.Action.class);
+
+    private final TickingActionScheduler scheduler = new TickingActionScheduler(actionTicker);
+    private final TickingActionScheduler otherBatchScheduler = new TickingActionScheduler(actionTicker);
+
+    @Before
+    public void setUp() {
+        doReturn(ticks).when(scheduledExecutor).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void performsActionsOfEveryScheduler_onTheSameTick() {
+        scheduler.schedule(anyAction);
+        otherBatchScheduler.schedule(additionalAction);
+
+        tick();
+
+        verify(anyAction).perform();
+        verify(additionalAction).perform();
+    }
+
+    @Test
+    public void sharesASingleTask_betweenSchedulers() {
+        scheduler.schedule(anyAction);
+        otherBatchScheduler.schedule(additionalAction);
+
+        verify(scheduledExecutor, times(1))
+                .scheduleAtFixedRate(any(Runnable.class), eq(TICK_INTERVAL_IN_MILLIS), eq(TICK_INTERVAL_IN_MILLIS), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void doesNothing_whenActionAlreadyScheduled() {
+        scheduler.schedule(anyAction);
+
+        scheduler.schedule(anyAction);
+        tick();
+
+        verify(anyAction, times(1)).perform();
+    }
+
+    @Test
+    public void stopsPerformingAction_whenCancellingSpecificAction() {
+        scheduler.schedule(anyAction);
+        scheduler.schedule(additionalAction);
+
+        scheduler.cancel(anyAction);
+        tick();
+
+        verify(anyAction, never()).perform();
+        verify(additionalAction).perform();
+    }
+
+    @Test
+    public void keepsActionsOfOtherSchedulers_whenCancellingAll() {
+        scheduler.schedule(anyAction);
+        otherBatchScheduler.schedule(additionalAction);
+
+        scheduler.cancelAll();
+        tick();
+
+        verify(anyAction, never()).perform();
+        verify(additionalAction).perform();
+        verify(ticks, never()).cancel(false);
+    }
+
+    @Test
+    public void stopsTicking_whenNoActionIsLeft() {
+        scheduler.schedule(anyAction);
+        otherBatchScheduler.schedule(additionalAction);
+
+        scheduler.cancelAll();
+        otherBatchScheduler.cancelAll();
+
+        verify(ticks).cancel(false);
+    }
+
+    @Test
+    public void keepsTicking_whenAnActionFails() {
+        willThrow(new IllegalStateException("failed")).given(anyAction).perform();
+        scheduler.schedule(anyAction);
+        scheduler.schedule(additionalAction);
+
+        tick();
+
+        verify(additionalAction).perform();
+    }
+
+    @Test
+    public void returnsTrue_whenActionIsScheduled() {
+        scheduler.schedule(anyAction);
+
+        boolean scheduled = scheduler.isScheduled(anyAction);
+
+        assertThat(scheduled).isTrue();
+    }
+
+    @Test
+    public void returnsFalse_whenActionIsNotScheduled() {
+        otherBatchScheduler.schedule(anyAction);
+
+        boolean scheduled = scheduler.isScheduled(anyAction);
+
+        assertThat(scheduled).isFalse();
+    }
+
+    private void tick() {
+        ArgumentCaptor<Runnable> tickCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduledExecutor).scheduleAtFixedRate(tickCaptor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        tickCaptor.getValue().run();
+    }
+}
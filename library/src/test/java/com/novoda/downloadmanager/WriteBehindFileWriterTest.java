@@ -0,0 +1,164 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.FilePersistenceFixtures.aFilePersistence;
+
+public class WriteBehindFileWriterTest {
+
+    private static final int BUFFER_COUNT = 2;
+    private static final int BUFFER_SIZE = 4;
+    private static final byte[] BYTES = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void persistsAllBytesInOrder_whenClosing() {
+        RecordingFilePersistence filePersistence = new RecordingFilePersistence();
+        WriteBehindFileWriter fileWriter = new WriteBehindFileWriter(executor, filePersistence, BUFFER_COUNT, BUFFER_SIZE);
+        fileWriter.open();
+
+        fileWriter.write(BYTES, 6);
+        fileWriter.write(new byte[]{7, 8, 9, 10}, 4);
+        boolean success = fileWriter.close();
+
+        assertThat(success).isTrue();
+        assertThat(filePersistence.writtenBytes()).isEqualTo(BYTES);
+    }
+
+    @Test
+    public void reportsOnlyPersistedBytes() {
+        RecordingFilePersistence filePersistence = new RecordingFilePersistence();
+        WriteBehindFileWriter fileWriter = new WriteBehindFileWriter(executor, filePersistence, BUFFER_COUNT, BUFFER_SIZE);
+        fileWriter.open();
+
+        fileWriter.write(BYTES, 3);
+
+        assertThat(fileWriter.drainPersistedBytes()).isEqualTo(0);
+
+        fileWriter.close();
+
+        assertThat(fileWriter.drainPersistedBytes()).isEqualTo(3);
+        assertThat(fileWriter.drainPersistedBytes()).isEqualTo(0);
+    }
+
+    @Test(timeout = 1000)
+    public void blocksReader_whenAllBuffersAreWaitingToBePersisted() throws InterruptedException {
+        CountDownLatch unblockDisk = new CountDownLatch(1);
+        RecordingFilePersistence filePersistence = new RecordingFilePersistence(unblockDisk);
+        WriteBehindFileWriter fileWriter = new WriteBehindFileWriter(executor, filePersistence, BUFFER_COUNT, BUFFER_SIZE);
+        fileWriter.open();
+        CountDownLatch readerFinished = new CountDownLatch(1);
+
+        Thread reader = new Thread(() -> {
+            fileWriter.write(BYTES, BYTES.length);
+            readerFinished.countDown();
+        });
+        reader.start();
+
+        assertThat(readerFinished.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        unblockDisk.countDown();
+        assertThat(readerFinished.await(500, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    @Test(timeout = 1000)
+    public void sharesTheExecutorThread_betweenFilesWrittenAtTheSameTime() {
+        RecordingFilePersistence filePersistence = new RecordingFilePersistence();
+        RecordingFilePersistence otherFilePersistence = new RecordingFilePersistence();
+        WriteBehindFileWriter fileWriter = new WriteBehindFileWriter(executor, filePersistence, BUFFER_COUNT, BUFFER_SIZE);
+        WriteBehindFileWriter otherFileWriter = new WriteBehindFileWriter(executor, otherFilePersistence, BUFFER_COUNT, BUFFER_SIZE);
+        fileWriter.open();
+        otherFileWriter.open();
+
+        fileWriter.write(BYTES, BYTES.length);
+        otherFileWriter.write(BYTES, BYTES.length);
+        otherFileWriter.close();
+        fileWriter.close();
+
+        assertThat(filePersistence.writtenBytes()).isEqualTo(BYTES);
+        assertThat(otherFilePersistence.writtenBytes()).isEqualTo(BYTES);
+    }
+
+    @Test
+    public void failsWrites_whenPersistenceFails() {
+        FilePersistence filePersistence = aFilePersistence().withWriteResult(false).build();
+        WriteBehindFileWriter fileWriter = new WriteBehindFileWriter(executor, filePersistence, BUFFER_COUNT, BUFFER_SIZE);
+        fileWriter.open();
+
+        fileWriter.write(BYTES, BYTES.length);
+        boolean success = fileWriter.close();
+
+        assertThat(success).isFalse();
+        assertThat(fileWriter.write(BYTES, BYTES.length)).isFalse();
+        assertThat(fileWriter.drainPersistedBytes()).isEqualTo(0);
+    }
+
+    private static class RecordingFilePersistence implements FilePersistence {
+
+        private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        private final CountDownLatch unblockDisk;
+
+        RecordingFilePersistence() {
+            this(new CountDownLatch(0));
+        }
+
+        RecordingFilePersistence(CountDownLatch unblockDisk) {
+            this.unblockDisk = unblockDisk;
+        }
+
+        @Override
+        public void initialiseWith(Context context, StorageRequirementRule storageRequirementRule) {
+            // no-op.
+        }
+
+        @Override
+        public FilePersistenceResult create(FilePath absoluteFilePath, FileSize fileSize) {
+            return FilePersistenceResult.SUCCESS;
+        }
+
+        @Override
+        public boolean write(byte[] buffer, int offset, int numberOfBytesToWrite) {
+            try {
+                unblockDisk.await();
+            } catch (InterruptedException e) {
+                return false;
+            }
+            outputStream.write(buffer, offset, numberOfBytesToWrite);
+            return true;
+        }
+
+        @Override
+        public void delete(FilePath absoluteFilePath) {
+            // no-op.
+        }
+
+        @Override
+        public long getCurrentSize(FilePath filePath) {
+            return outputStream.size();
+        }
+
+        @Override
+        public void close() {
+            // no-op.
+        }
+
+        byte[] writtenBytes() {
+            return outputStream.toByteArray();
+        }
+    }
+}